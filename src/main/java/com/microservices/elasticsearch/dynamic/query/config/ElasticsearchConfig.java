@@ -2,6 +2,7 @@ package com.microservices.elasticsearch.dynamic.query.config;
 
 
 
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
 import co.elastic.clients.json.jackson.JacksonJsonpMapper;
 import co.elastic.clients.transport.rest_client.RestClientTransport;
@@ -18,7 +19,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
 
-import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 // Reactive beans are provided by Spring Boot auto-configuration when
 // spring-boot-starter-data-elasticsearch is on the classpath.
 
@@ -46,20 +47,20 @@ public class ElasticsearchConfig {
     private String password;
 
     /**
-     * Create virtual thread executor for async operations
+     * Shared virtual thread executor for async operations, closed on shutdown
      */
-    @Bean(name = "virtualThreadExecutor")
-    public Executor virtualThreadExecutor() {
+    @Bean(name = "virtualThreadExecutor", destroyMethod = "close")
+    public ExecutorService virtualThreadExecutor() {
         log.info("Creating virtual thread executor for async operations");
         return java.util.concurrent.Executors.newVirtualThreadPerTaskExecutor();
     }
 
     /**
-     * Create ElasticsearchClient bean for direct client operations
+     * Shared transport (one RestClient / connection pool) for the blocking and async clients
      */
     @Bean
-    public ElasticsearchClient elasticsearchClient() {
-        log.info("Configuring Elasticsearch client for {}://{}:{}", 
+    public RestClientTransport elasticsearchTransport() {
+        log.info("Configuring Elasticsearch transport for {}://{}:{}", 
                 elasticsearchScheme, elasticsearchHost, elasticsearchPort);
         
         RestClientBuilder builder = RestClient.builder(
@@ -90,13 +91,27 @@ public class ElasticsearchConfig {
         );
 
         RestClient restClient = builder.build();
-        RestClientTransport transport = new RestClientTransport(restClient, new JacksonJsonpMapper());
-        
+        return new RestClientTransport(restClient, new JacksonJsonpMapper());
+    }
+
+    /**
+     * Create ElasticsearchClient bean for direct client operations
+     */
+    @Bean
+    public ElasticsearchClient elasticsearchClient(RestClientTransport transport) {
         ElasticsearchClient client = new ElasticsearchClient(transport);
         log.info("Elasticsearch client configured successfully");
-        
         return client;
     }
 
+    /**
+     * Non-blocking client for the reactive endpoints. Requests run on the HTTP client's
+     * I/O dispatcher threads and cancelling the returned future aborts the exchange.
+     */
+    @Bean
+    public ElasticsearchAsyncClient elasticsearchAsyncClient(RestClientTransport transport) {
+        return new ElasticsearchAsyncClient(transport);
+    }
+
     // See Spring Boot's ReactiveElasticsearchClientAutoConfiguration.
 }
@@ -0,0 +1,38 @@
+package com.microservices.elasticsearch.dynamic.query.config;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * Hit counting defaults (app.elasticsearch.hit-count.*). A request's own hit_count wins, then
+ * the mapping's mode, then {@link #mode}.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.elasticsearch.hit-count")
+public class HitCountProperties {
+
+    /** exact, bounded, none or cached */
+    private String mode = "exact";
+
+    /** Hits counted at most in bounded and cached mode */
+    private int threshold = 10_000;
+
+    /** Mode per mapping name (service_id) on the v1 search endpoint */
+    private Map<String, String> mappings = new HashMap<>();
+
+    /** How long a cached count is served before it is refreshed in the background */
+    private Duration cachedRefresh = Duration.ofMinutes(1);
+
+    /** Cached counts not read for this long are dropped */
+    private Duration cachedExpiry = Duration.ofMinutes(10);
+
+    /** Distinct (index, query) counts kept */
+    private long cachedMaxSize = 10_000;
+}
@@ -0,0 +1,39 @@
+package com.microservices.elasticsearch.dynamic.query.config;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * Settings for the structured query log (app.elasticsearch.query-log.*). A request is logged
+ * when it is sampled at its endpoint's rate or when it takes at least the slow threshold.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.elasticsearch.query-log")
+public class QueryLogProperties {
+
+    /** Master switch; when false nothing is logged, not even slow requests */
+    private boolean enabled = true;
+
+    /** Fraction of requests logged (0..1) on endpoints without their own rate */
+    private double defaultSampleRate = 0.01;
+
+    /** Per-endpoint sample rates keyed by endpoint name (search, search-vt, batch-search, v1-search, ...) */
+    private Map<String, Double> sampleRates = new HashMap<>();
+
+    /** Requests at least this slow are always logged; zero disables the rule */
+    private Duration slowThreshold = Duration.ofSeconds(1);
+
+    /** Serialized queries longer than this are cut and logged as a string prefix */
+    private int maxQueryChars = 8192;
+
+    public double sampleRateFor(String endpoint) {
+        return sampleRates.getOrDefault(endpoint, defaultSampleRate);
+    }
+}
@@ -0,0 +1,40 @@
+package com.microservices.elasticsearch.dynamic.query.config;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * Settings for cache-aware query shaping (app.elasticsearch.query-shaping.*). Shaping is
+ * opt-in per endpoint or mapping so its effect on cluster load can be compared side by side.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.elasticsearch.query-shaping")
+public class QueryShapingProperties {
+
+    /** Master switch; when false no request is shaped regardless of the opt-in lists */
+    private boolean enabled = true;
+
+    /** Endpoints that opt in: search, search-vt, v1-search, aggregation */
+    private Set<String> endpoints = new HashSet<>();
+
+    /** Mapping names (service_id) that opt in on the v1 search endpoint */
+    private Set<String> mappings = new HashSet<>();
+
+    /** Put clauses that need no score (everything but match) in filter context */
+    private boolean filterContext = true;
+
+    /** Date math unit "now"-relative range bounds are rounded to (y, M, w, d, h, m, s); empty keeps them exact */
+    private String roundNowTo = "m";
+
+    /** Ask for the shard request cache on size:0 aggregation requests */
+    private boolean requestCache = true;
+
+    /** Route a client's searches to the same shard copies (preference = X-Client-Id) */
+    private boolean preference = true;
+}
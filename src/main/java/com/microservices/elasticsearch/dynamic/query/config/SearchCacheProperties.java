@@ -0,0 +1,47 @@
+package com.microservices.elasticsearch.dynamic.query.config;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+/**
+ * Settings for the in-process search result cache (app.elasticsearch.cache.*).
+ * Caching is opt-in: a search is only cached when its endpoint or mapping is listed.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.elasticsearch.cache")
+public class SearchCacheProperties {
+
+    /** Master switch; when false nothing is cached regardless of the opt-in lists */
+    private boolean enabled = true;
+
+    /** Upper bound on the estimated serialized size of all cached results */
+    private long maxBytes = 64L * 1024 * 1024;
+
+    /** How long a result is served as fresh unless the index has its own TTL */
+    private Duration defaultTtl = Duration.ofSeconds(30);
+
+    /** Per-index fresh TTL overrides */
+    private Map<String, Duration> indexTtl = new HashMap<>();
+
+    /** How long past its TTL a result may still be served while it is refreshed; zero disables */
+    private Duration staleWhileRevalidate = Duration.ZERO;
+
+    /** Endpoints that opt in: search, search-vt, v1-search */
+    private Set<String> endpoints = new HashSet<>();
+
+    /** Mapping names (service_id) that opt in on the v1 search endpoint */
+    private Set<String> mappings = new HashSet<>();
+
+    public Duration ttlFor(String indexName) {
+        return indexName == null ? defaultTtl : indexTtl.getOrDefault(indexName, defaultTtl);
+    }
+}
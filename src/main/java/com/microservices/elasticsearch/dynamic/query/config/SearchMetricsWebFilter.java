@@ -0,0 +1,96 @@
+package com.microservices.elasticsearch.dynamic.query.config;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.reactivestreams.Publisher;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+
+import com.microservices.elasticsearch.dynamic.query.service.QueryLog;
+import com.microservices.elasticsearch.dynamic.query.service.SearchMetrics;
+import com.microservices.elasticsearch.dynamic.query.service.SearchMetrics.Stage;
+
+import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Opens a {@link SearchMetrics.Trace} for every /api/elasticsearch request (exposed as the
+ * {@link SearchMetrics#TRACE_ATTRIBUTE} exchange attribute) and measures what happens after
+ * the handler: encoding of single-value bodies and the bytes written. Finished requests are
+ * handed to the {@link QueryLog}, which decides up front whether the request is sampled.
+ */
+@Component
+@RequiredArgsConstructor
+public class SearchMetricsWebFilter implements WebFilter {
+
+    private static final String API_PREFIX = "/api/elasticsearch/";
+
+    private final SearchMetrics searchMetrics;
+    private final QueryLog queryLog;
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String path = exchange.getRequest().getPath().pathWithinApplication().value();
+        if (!path.startsWith(API_PREFIX)) {
+            return chain.filter(exchange);
+        }
+        SearchMetrics.Trace trace = searchMetrics.trace(endpoint(path), null,
+                exchange.getRequest().getHeaders().getFirst("service_id"));
+        exchange.getAttributes().put(SearchMetrics.TRACE_ATTRIBUTE, trace);
+        boolean sampled = queryLog.sample(trace.endpoint());
+        AtomicLong bytes = new AtomicLong();
+
+        ServerHttpResponseDecorator response = new ServerHttpResponseDecorator(exchange.getResponse()) {
+            @Override
+            public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+                // single-value bodies are encoded when this publisher is subscribed
+                return Mono.defer(() -> {
+                    long start = System.nanoTime();
+                    Runnable encoded = () -> trace.record(Stage.ENCODE, System.nanoTime() - start);
+                    // keep a Mono a Mono: the response sets Content-Length instead of chunking for it
+                    return super.writeWith(body instanceof Mono<? extends DataBuffer> mono
+                            ? mono.doOnNext(buffer -> bytes.addAndGet(buffer.readableByteCount()))
+                                    .doOnSuccess(buffer -> encoded.run())
+                            : Flux.from(body)
+                                    .doOnNext(buffer -> bytes.addAndGet(buffer.readableByteCount()))
+                                    .doOnComplete(encoded));
+                });
+            }
+
+            @Override
+            public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+                // streaming bodies: encoding interleaves with the upstream, so only bytes are counted
+                return super.writeAndFlushWith(Flux.from(body).map(part -> Flux.from(part)
+                        .doOnNext(buffer -> bytes.addAndGet(buffer.readableByteCount()))));
+            }
+        };
+
+        return chain.filter(exchange.mutate().response(response).build())
+                .doFinally(signal -> {
+                    trace.bytes(bytes.get());
+                    trace.complete();
+                    HttpStatusCode status = response.getStatusCode();
+                    queryLog.completed(trace, sampled, status == null ? null : status.value(),
+                            signal.name().toLowerCase(Locale.ROOT));
+                });
+    }
+
+    /**
+     * First path segment below /api/elasticsearch ("v1/search" becomes "v1-search"),
+     * matching the endpoint names used by the result cache
+     */
+    static String endpoint(String path) {
+        String[] segments = path.substring(API_PREFIX.length()).split("/");
+        if (segments.length > 1 && "v1".equals(segments[0])) {
+            return "v1-" + segments[1];
+        }
+        return segments[0];
+    }
+}
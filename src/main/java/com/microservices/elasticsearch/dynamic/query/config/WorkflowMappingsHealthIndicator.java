@@ -0,0 +1,70 @@
+package com.microservices.elasticsearch.dynamic.query.config;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import com.microservices.elasticsearch.dynamic.query.service.WorkflowMappingsCache;
+import com.microservices.elasticsearch.dynamic.query.service.WorkflowMappingsReloader;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * "workflowMappings" health: OUT_OF_SERVICE while the startup warm-up compiles the mappings,
+ * UP once the compiled snapshot is published. It is part of the readiness group only, so
+ * Kubernetes holds traffic back during warm-up without the liveness probe ever failing.
+ */
+@Component
+@RequiredArgsConstructor
+public class WorkflowMappingsHealthIndicator implements HealthIndicator {
+
+    private enum Phase { LOADING, READY, FAILED }
+
+    private final WorkflowMappingsCache cache;
+
+    private volatile Phase phase = Phase.LOADING;
+    private volatile int compiled;
+    private volatile int total;
+    private volatile String error;
+
+    void progress(int compiled, int total) {
+        this.compiled = compiled;
+        this.total = total;
+    }
+
+    void ready(WorkflowMappingsReloader.Result result) {
+        this.compiled = result.size();
+        this.total = result.size();
+        this.phase = Phase.READY;
+    }
+
+    void failed(Throwable e) {
+        this.error = e.getMessage();
+        this.phase = Phase.FAILED;
+    }
+
+    @Override
+    public Health health() {
+        WorkflowMappingsCache.Snapshot snapshot = cache.current();
+        return switch (phase) {
+            case READY -> ready(snapshot);
+            // a later poll may still have loaded them
+            case FAILED -> snapshot.loaded()
+                    ? ready(snapshot)
+                    : Health.down().withDetail("error", String.valueOf(error)).build();
+            case LOADING -> Health.outOfService()
+                    .withDetail("compiled", compiled)
+                    .withDetail("total", total)
+                    .build();
+        };
+    }
+
+    private static Health ready(WorkflowMappingsCache.Snapshot snapshot) {
+        return Health.up()
+                .withDetail("version", snapshot.version())
+                .withDetail("mappings", snapshot.rows().size())
+                .withDetail("compiled", snapshot.plans().size())
+                .withDetail("loadedAt", snapshot.loadedAt().toString())
+                .build();
+    }
+}
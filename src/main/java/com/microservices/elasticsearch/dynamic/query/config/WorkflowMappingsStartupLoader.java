@@ -1,70 +1,54 @@
 package com.microservices.elasticsearch.dynamic.query.config;
 
-import java.time.Duration;
-import java.util.List;
-import java.util.Map;
-
 import org.springframework.boot.ApplicationArguments;
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.stereotype.Component;
 
-import com.microservices.elasticsearch.dynamic.query.service.WorkflowMappingsCache;
-import com.microservices.elasticsearch.dynamic.query.service.WorkflowMappingsService;
+import com.microservices.elasticsearch.dynamic.query.service.WorkflowMappingsReloader;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import reactor.core.publisher.Flux;
 
+/**
+ * Warms the mapping cache without holding up startup: every mapping is compiled in parallel
+ * in the background while {@link WorkflowMappingsHealthIndicator} keeps readiness down, so
+ * the first requests after a rollout find compiled plans.
+ */
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class WorkflowMappingsStartupLoader implements ApplicationRunner {
 
-    private final WorkflowMappingsService service;
-    private final WorkflowMappingsCache cache;
+    private final WorkflowMappingsReloader reloader;
+    private final WorkflowMappingsHealthIndicator health;
 
     @Override
-    public void run(ApplicationArguments args) throws Exception {
-        try {
-            log.info("Loading workflow mappings into cache at startup...");
-            List<Map<String, Object>> rows = service.getAll()
-                    .onErrorResume(e -> {
-                        log.warn("Failed to read workflow mappings DB: {}", e.getMessage());
-                        return Flux.empty();
-                    })
-                    .collectList()
-                    .block(Duration.ofSeconds(15));
-
-            if (rows == null) {
-                log.info("No workflow mappings loaded (no rows).");
-                return;
-            }
-
-            int added = 0;
-            for (Map<String, Object> row : rows) {
-                if (row == null || row.isEmpty()) continue;
-                String key = extractMappingName(row);
-                if (key != null) {
-                    cache.put(key, row);
-                    added++;
-                }
-            }
-
-            log.info("Workflow mappings cache initialized with {} entries", added);
-        } catch (Exception e) {
-            log.warn("Workflow mappings cache initialization failed: {}", e.getMessage());
-        }
+    public void run(ApplicationArguments args) {
+        log.info("Loading workflow mappings into cache at startup...");
+        long start = System.nanoTime();
+        reloader.reload(true, this::progress)
+                .doFinally(signal -> reloader.startPolling()) // later changes are picked up even if this load failed
+                .subscribe(result -> {
+                    health.ready(result);
+                    if (result.size() == 0) {
+                        log.info("No workflow mappings loaded (no rows).");
+                    } else {
+                        log.info("Workflow mappings cache initialized with {} entries ({} failed) in {} ms",
+                                result.size(), result.failed().size(), (System.nanoTime() - start) / 1_000_000);
+                    }
+                }, e -> {
+                    health.failed(e);
+                    log.warn("Workflow mappings cache initialization failed: {}", e.getMessage());
+                });
     }
 
-    private String extractMappingName(Map<String, Object> row) {
-        // Case-insensitive lookup for column 'mapping_name'
-        for (String k : row.keySet()) {
-            if ("mapping_name".equalsIgnoreCase(k)) {
-                Object v = row.get(k);
-                return v != null ? String.valueOf(v) : null;
-            }
+    /**
+     * Logs at every tenth of the way
+     */
+    private void progress(int done, int total) {
+        health.progress(done, total);
+        if (done == total || done * 10 / total != (done - 1) * 10 / total) {
+            log.info("Compiled {}/{} workflow mappings", done, total);
         }
-        return null;
     }
 }
-
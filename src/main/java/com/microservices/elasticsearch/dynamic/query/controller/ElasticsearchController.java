@@ -3,23 +3,35 @@ package com.microservices.elasticsearch.dynamic.query.controller;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestAttribute;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.microservices.elasticsearch.dynamic.query.dto.ElasticsearchQueryRequest;
 import com.microservices.elasticsearch.dynamic.query.dto.ElasticsearchResponse;
+import com.microservices.elasticsearch.dynamic.query.dto.RawJson;
 import com.microservices.elasticsearch.dynamic.query.dto.SearchRequest;
 import com.microservices.elasticsearch.dynamic.query.dto.SearchResult;
+import com.microservices.elasticsearch.dynamic.query.exception.BulkheadFullException;
 import com.microservices.elasticsearch.dynamic.query.service.ElasticsearchService;
+import com.microservices.elasticsearch.dynamic.query.service.HitCountPolicy;
+import com.microservices.elasticsearch.dynamic.query.service.QueryShapingPolicy;
+import com.microservices.elasticsearch.dynamic.query.service.SearchMetrics;
+import com.microservices.elasticsearch.dynamic.query.service.SearchResultCache;
+import com.microservices.elasticsearch.dynamic.query.service.TermsAggregationStreamer;
 
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
@@ -38,38 +50,66 @@ import reactor.core.publisher.Mono;
 public class ElasticsearchController {
 
     private final ElasticsearchService elasticsearchService;
+    private final SearchResultCache searchResultCache;
+    private final QueryShapingPolicy queryShapingPolicy;
+    private final HitCountPolicy hitCountPolicy;
 
+    /**
+     * @param rawSource return each hit's _source as the raw bytes Elasticsearch sent, without
+     *                  materializing it as a Map (the service never inspects it)
+     */
     @PostMapping("/search/{indexName}")
-    public Mono<ResponseEntity<SearchResult<Map>>> searchReactive(
+    public Mono<ResponseEntity<SearchResult<?>>> searchReactive(
             @PathVariable String indexName,
+            @RequestParam(defaultValue = "false") boolean rawSource,
+            @RequestAttribute(name = SearchMetrics.TRACE_ATTRIBUTE, required = false) SearchMetrics.Trace trace,
+            @RequestHeader(name = QueryShapingPolicy.CLIENT_ID_HEADER, required = false) String clientId,
             @Valid @RequestBody ElasticsearchQueryRequest request) {
 
-        log.info("Reactive search request for index: {}", indexName);
+        log.debug("Reactive search request for index: {}", indexName);
+        resolveHitCount(request);
 
         return elasticsearchService
-                .searchAsync(indexName, request, Map.class)
-                .map(ResponseEntity::ok)
-                .onErrorReturn(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build())
-                .doOnSuccess(result -> log.info("Reactive search completed for index: {}", indexName))
+                .searchAsync(indexName, request, targetClass(rawSource),
+                        searchResultCache.isEnabledFor(SearchResultCache.ENDPOINT_SEARCH, null),
+                        queryShapingPolicy.forRequest(SearchResultCache.ENDPOINT_SEARCH, null, clientId), orNone(trace))
+                .map(result -> ResponseEntity.<SearchResult<?>>ok(result))
+                .onErrorResume(error -> !(error instanceof BulkheadFullException),
+                        error -> Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build()))
+                .doOnSuccess(result -> log.debug("Reactive search completed for index: {}", indexName))
                 .doOnError(error -> log.error("Reactive search failed for index: {}", indexName, error));
     }
 
     @PostMapping("/search-vt/{indexName}")
-    public CompletableFuture<ResponseEntity<SearchResult<Map>>> searchWithVirtualThreads(
+    public CompletableFuture<ResponseEntity<SearchResult<?>>> searchWithVirtualThreads(
             @PathVariable String indexName,
+            @RequestParam(defaultValue = "false") boolean rawSource,
+            @RequestAttribute(name = SearchMetrics.TRACE_ATTRIBUTE, required = false) SearchMetrics.Trace trace,
+            @RequestHeader(name = QueryShapingPolicy.CLIENT_ID_HEADER, required = false) String clientId,
             @Valid @RequestBody ElasticsearchQueryRequest request) {
 
-        log.info("Virtual thread search request for index: {}", indexName);
+        log.debug("Virtual thread search request for index: {}", indexName);
+        resolveHitCount(request);
 
         return elasticsearchService
-                .searchWithVirtualThreads(indexName, request, Map.class)
-                .thenApply(ResponseEntity::ok)
+                .searchWithVirtualThreads(indexName, request, targetClass(rawSource),
+                        searchResultCache.isEnabledFor(SearchResultCache.ENDPOINT_SEARCH_VT, null),
+                        queryShapingPolicy.forRequest(SearchResultCache.ENDPOINT_SEARCH_VT, null, clientId), orNone(trace))
+                .thenApply(result -> ResponseEntity.<SearchResult<?>>ok(result))
                 .exceptionally(throwable -> {
                     log.error("Virtual thread search failed for index: {}", indexName, throwable);
-                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+                    return serverErrorUnlessRejected(throwable);
                 });
     }
 
+    /**
+     * Fills in the configured hit counting where the request leaves it open
+     */
+    private void resolveHitCount(ElasticsearchQueryRequest request) {
+        var queryStructure = request.getQueryStructure();
+        queryStructure.setHitCount(hitCountPolicy.resolve(queryStructure.getHitCount(), null));
+    }
+
     @GetMapping("/health")
     public Mono<ResponseEntity<Map<String, String>>> health() {
         return Mono.just(ResponseEntity.ok(Map.of(
@@ -82,7 +122,7 @@ public class ElasticsearchController {
 
     @GetMapping("/index/{indexName}/info")
     public Mono<ResponseEntity<Map<String, Object>>> getIndexInfo(@PathVariable String indexName) {
-        log.info("Index info request for: {}", indexName);
+        log.debug("Index info request for: {}", indexName);
 
         return Mono.just(ResponseEntity.ok(Map.of(
                 "index", indexName,
@@ -94,10 +134,10 @@ public class ElasticsearchController {
     public Flux<SearchResult<Map>> batchSearch(
             @Valid @RequestBody List<SearchRequest<Map>> requests) {
 
-        log.info("Batch search request for {} indices", requests.size());
+        log.debug("Batch search request for {} indices", requests.size());
 
         return elasticsearchService.batchSearch(requests)
-                .doOnComplete(() -> log.info("Batch search completed"))
+                .doOnComplete(() -> log.debug("Batch search completed"))
                 .doOnError(error -> log.error("Batch search failed", error));
     }
 
@@ -106,41 +146,62 @@ public class ElasticsearchController {
             @PathVariable String indexName,
             @Valid @RequestBody ElasticsearchQueryRequest request) {
 
-        log.info("Stream search request for index: {}", indexName);
+        log.debug("Stream search request for index: {}", indexName);
 
         return elasticsearchService.searchStream(indexName, request, Map.class)
-                .doOnComplete(() -> log.info("Stream search completed for index: {}", indexName))
+                .doOnComplete(() -> log.debug("Stream search completed for index: {}", indexName))
                 .doOnError(error -> log.error("Stream search failed for index: {}", indexName, error));
     }
 
     @PostMapping("/aggregation/{indexName}")
     public Mono<ResponseEntity<Map<String, Object>>> executeAggregation(
             @PathVariable String indexName,
+            @RequestHeader(name = QueryShapingPolicy.CLIENT_ID_HEADER, required = false) String clientId,
             @Valid @RequestBody ElasticsearchQueryRequest request) {
 
-        log.info("Aggregation request for index: {}", indexName);
+        log.debug("Aggregation request for index: {}", indexName);
 
         return elasticsearchService
-                .executeAggregation(indexName, request)
+                .executeAggregation(indexName, request,
+                        queryShapingPolicy.forRequest(QueryShapingPolicy.ENDPOINT_AGGREGATION, null, clientId))
                 .map(ResponseEntity::ok)
-                .onErrorReturn(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build())
-                .doOnSuccess(result -> log.info("Aggregation completed for index: {}", indexName))
+                .onErrorResume(error -> !(error instanceof BulkheadFullException),
+                        error -> Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build()))
+                .doOnSuccess(result -> log.debug("Aggregation completed for index: {}", indexName))
                 .doOnError(error -> log.error("Aggregation failed for index: {}", indexName, error));
     }
 
+    /**
+     * All buckets of one terms aggregation as NDJSON, for fields with too many distinct
+     * values for a single terms request.
+     *
+     * @param mode auto (by estimated cardinality), composite or partitions
+     */
+    @PostMapping(value = "/aggregation-stream/{indexName}", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Map<String, Object>> streamTermsAggregation(
+            @PathVariable String indexName,
+            @RequestParam(defaultValue = "auto") String mode,
+            @Valid @RequestBody ElasticsearchQueryRequest request) {
+
+        log.debug("Terms aggregation stream request for index: {}", indexName);
+
+        return elasticsearchService.streamTermsAggregation(indexName, request, TermsAggregationStreamer.Mode.parse(mode))
+                .doOnError(error -> log.error("Terms aggregation stream failed for index: {}", indexName, error));
+    }
+
     @PostMapping("/raw-query/{indexName}")
     public CompletableFuture<ResponseEntity<ElasticsearchResponse<Map<String, Object>>>> executeRawQuery(
             @PathVariable String indexName,
             @RequestBody Map<String, Object> esQuery) {
 
-        log.info("Raw query request for index: {}", indexName);
+        log.debug("Raw query request for index: {}", indexName);
 
         return elasticsearchService
                 .executeRawQuery(indexName, esQuery)
                 .thenApply(ResponseEntity::ok)
                 .exceptionally(throwable -> {
                     log.error("Raw query failed for index: {}", indexName, throwable);
-                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+                    return serverErrorUnlessRejected(throwable);
                 });
     }
 
@@ -151,10 +212,52 @@ public class ElasticsearchController {
     public Flux<Map> searchWithReactiveOperations(
             @PathVariable String indexName,
             @Valid @RequestBody ElasticsearchQueryRequest request) {
-        log.info("ReactiveElasticsearchOperations search request for index: {}", indexName);
+        log.debug("ReactiveElasticsearchOperations search request for index: {}", indexName);
         return elasticsearchService.searchWithReactiveOps(indexName, request);
     }
 
+    /**
+     * Drop cached search results for one index, e.g. after a reindex or bulk load
+     */
+    @DeleteMapping("/cache/{indexName}")
+    public Mono<ResponseEntity<Map<String, Object>>> invalidateCache(@PathVariable String indexName) {
+        searchResultCache.invalidateIndex(indexName);
+        return Mono.just(ResponseEntity.ok(Map.of("index", indexName, "invalidated", true)));
+    }
+
+    @DeleteMapping("/cache")
+    public Mono<ResponseEntity<Map<String, Object>>> invalidateAllCaches() {
+        searchResultCache.invalidateAll();
+        return Mono.just(ResponseEntity.ok(Map.of("invalidated", true)));
+    }
+
+    private static Class<?> targetClass(boolean rawSource) {
+        return rawSource ? RawJson.class : Map.class;
+    }
+
+    private static SearchMetrics.Trace orNone(SearchMetrics.Trace trace) {
+        return trace != null ? trace : SearchMetrics.Trace.NONE;
+    }
+
+    /**
+     * A bulkhead rejection is rethrown so {@link #handleBulkheadFull} answers 429; anything else is a 500
+     */
+    static <T> ResponseEntity<T> serverErrorUnlessRejected(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof BulkheadFullException rejected) throw rejected;
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+    }
+
+    @ExceptionHandler(BulkheadFullException.class)
+    public ResponseEntity<Map<String, Object>> handleBulkheadFull(BulkheadFullException e) {
+        log.warn("Rejected request: {}", e.getMessage());
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .body(Map.of(
+                        "error", e.getMessage(),
+                        "status", "rejected",
+                        "timestamp", System.currentTimeMillis()));
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<Map<String, Object>> handleException(Exception e) {
         log.error("Controller exception occurred", e);
@@ -7,16 +7,24 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestAttribute;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.microservices.elasticsearch.dynamic.query.dto.ElasticsearchQueryRequest;
+import com.microservices.elasticsearch.dynamic.query.dto.RawJson;
 import com.microservices.elasticsearch.dynamic.query.dto.SearchResult;
 import com.microservices.elasticsearch.dynamic.query.dto.TransformRequest;
+import com.microservices.elasticsearch.dynamic.query.exception.BulkheadFullException;
 import com.microservices.elasticsearch.dynamic.query.service.ElasticsearchService;
+import com.microservices.elasticsearch.dynamic.query.service.QueryShaping;
+import com.microservices.elasticsearch.dynamic.query.service.QueryShapingPolicy;
 import com.microservices.elasticsearch.dynamic.query.service.QueryTransformService;
+import com.microservices.elasticsearch.dynamic.query.service.SearchMetrics;
+import com.microservices.elasticsearch.dynamic.query.service.SearchResultCache;
 
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
@@ -30,22 +38,43 @@ public class TransformController {
 
 	private final QueryTransformService transformService;
 	private final ElasticsearchService elasticsearchService;
+	private final SearchResultCache searchResultCache;
+	private final QueryShapingPolicy queryShapingPolicy;
 
 	@PostMapping("/search")
-	public CompletableFuture<ResponseEntity<SearchResult<Map>>> buildFinalQuery(
-			@Valid @RequestBody TransformRequest request,@RequestHeader Map<String, String> headers) {
+	public CompletableFuture<ResponseEntity<SearchResult<?>>> buildFinalQuery(
+			@Valid @RequestBody TransformRequest request,@RequestHeader Map<String, String> headers,
+			@RequestHeader(name = QueryShapingPolicy.CLIENT_ID_HEADER, required = false) String clientId,
+			@RequestParam(defaultValue = "false") boolean rawSource,
+			@RequestAttribute(name = SearchMetrics.TRACE_ATTRIBUTE, required = false) SearchMetrics.Trace trace) {
+		SearchMetrics.Trace metrics = trace != null ? trace : SearchMetrics.Trace.NONE;
 		String mappingName=headers.get("service_id");
-		log.info("Transforming request buildFinalQuery  mapping: {}", mappingName);
-		log.info("Transforming request buildFinalQuery  getQuery: {}", request.getQuery());
-		ElasticsearchQueryRequest out = transformService.buildFinalQuery(request,mappingName);
-		log.info("Transforming request for out: {}", out);
-		return elasticsearchService.searchWithVirtualThreads(out.getIndexName(), out, Map.class)
-				.thenApply(ResponseEntity::ok).exceptionally(throwable -> {
+		log.debug("Transforming request for mapping: {}", mappingName);
+		ElasticsearchQueryRequest out = transformService.buildFinalQuery(request, mappingName, metrics);
+		boolean cacheable = searchResultCache.isEnabledFor(SearchResultCache.ENDPOINT_V1_SEARCH, mappingName);
+		QueryShaping shaping = queryShapingPolicy.forRequest(SearchResultCache.ENDPOINT_V1_SEARCH, mappingName, clientId);
+		return elasticsearchService
+				.searchWithVirtualThreads(out.getIndexName(), out, targetClass(rawSource), cacheable, shaping, metrics)
+				.thenApply(result -> ResponseEntity.<SearchResult<?>>ok(result)).exceptionally(throwable -> {
 					log.error("Virtual thread search failed for index: {}", mappingName, throwable);
-					return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+					return ElasticsearchController.serverErrorUnlessRejected(throwable);
 				});
 	}
 
+	private static Class<?> targetClass(boolean rawSource) {
+		return rawSource ? RawJson.class : Map.class;
+	}
+
+	@ExceptionHandler(BulkheadFullException.class)
+	public ResponseEntity<Map<String, Object>> handleBulkheadFull(BulkheadFullException ex) {
+		log.warn("Rejected request: {}", ex.getMessage());
+		return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+				.body(Map.of(
+						"error", ex.getMessage(),
+						"status", "rejected",
+						"timestamp", System.currentTimeMillis()));
+	}
+
 	@ExceptionHandler(IllegalArgumentException.class)
 	public ResponseEntity<String> handleBadRequest(IllegalArgumentException ex) {
 		return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
@@ -1,5 +1,6 @@
 package com.microservices.elasticsearch.dynamic.query.controller;
 
+import java.util.Comparator;
 import java.util.Map;
 
 import org.springframework.http.HttpStatus;
@@ -7,9 +8,13 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.microservices.elasticsearch.dynamic.query.service.WorkflowMappingsCache;
+import com.microservices.elasticsearch.dynamic.query.service.WorkflowMappingsReloader;
 import com.microservices.elasticsearch.dynamic.query.service.WorkflowMappingsService;
 
 import lombok.RequiredArgsConstructor;
@@ -23,20 +28,49 @@ import reactor.core.publisher.Mono;
 @RequiredArgsConstructor
 public class WorkflowMappingsController {
 
+    /** Rows by their id column, as SELECT * returned them */
+    private static final Comparator<Map<String, Object>> TABLE_ORDER = Comparator.comparingLong(
+            row -> row.get("id") instanceof Number id ? id.longValue() : Long.MAX_VALUE);
+
     private final WorkflowMappingsService service;
+    private final WorkflowMappingsCache cache;
+    private final WorkflowMappingsReloader reloader;
 
+    /**
+     * Served from the current in-memory snapshot, in table order; the database is only
+     * read if no snapshot has been loaded yet
+     */
     @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
     public Flux<Map<String, Object>> getAll() {
-        log.info("Fetching all workflow mappings");
-        return service.getAll();
+        log.debug("Fetching all workflow mappings");
+        WorkflowMappingsCache.Snapshot snapshot = cache.current();
+        if (!snapshot.loaded()) {
+            return service.getAll();
+        }
+        return Flux.fromStream(snapshot.rows().values().stream().sorted(TABLE_ORDER));
     }
 
     @GetMapping("/{mappingName}")
     public Mono<ResponseEntity<Map<String, Object>>> getByName(@PathVariable String mappingName) {
-        log.info("Fetching workflow mapping: {}", mappingName);
-        return service.getByMappingName(mappingName)
+        log.debug("Fetching workflow mapping: {}", mappingName);
+        WorkflowMappingsCache.Snapshot snapshot = cache.current();
+        Mono<Map<String, Object>> row = !snapshot.loaded()
+                ? service.getByMappingName(mappingName)
+                : Mono.justOrEmpty(snapshot.rows().get(mappingName));
+        return row
                 .map(ResponseEntity::ok)
                 .defaultIfEmpty(ResponseEntity.status(HttpStatus.NOT_FOUND).build());
     }
+
+    /**
+     * Picks up mapping changes now instead of at the next poll
+     *
+     * @param full recompile every mapping, not only rows whose updated_at changed
+     */
+    @PostMapping("/reload")
+    public Mono<WorkflowMappingsReloader.Result> reload(@RequestParam(defaultValue = "false") boolean full) {
+        log.info("Workflow mappings reload requested (full={})", full);
+        return reloader.reload(full);
+    }
 }
 
@@ -15,8 +15,11 @@ import lombok.NoArgsConstructor;
 @AllArgsConstructor
 public class AggregationRequest {
     private String name;
-    private String type; // terms, avg, sum
+    private String type; // terms, avg, sum, count (value_count), min, max
     private String field;
+
+    // terms only: number of buckets to return (Elasticsearch default when null)
+    private Integer size;
     
     @JsonProperty("nested_path")
     private String nestedPath;
@@ -0,0 +1,21 @@
+package com.microservices.elasticsearch.dynamic.query.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * How the total hit count of a search is computed: exact, bounded (up to threshold), none, or
+ * cached (an exact count refreshed in the background, bounded until the first one arrives)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class HitCountRequest {
+    private String mode;
+
+    /** Hits counted at most in bounded and cached mode */
+    private Integer threshold;
+}
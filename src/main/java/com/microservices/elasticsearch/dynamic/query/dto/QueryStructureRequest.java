@@ -28,6 +28,10 @@ public class QueryStructureRequest {
 
     @Valid
     private List<SortSpec> sort;
+
+    /** Hit counting strategy; exact when absent */
+    @JsonProperty("hit_count")
+    private HitCountRequest hitCount;
 }
 
 
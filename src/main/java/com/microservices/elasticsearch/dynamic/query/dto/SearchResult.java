@@ -1,7 +1,10 @@
 package com.microservices.elasticsearch.dynamic.query.dto;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
 
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -17,6 +20,8 @@ import lombok.ToString;
 public class SearchResult<T> {
     private List<T> documents;
     private Long totalHits;
+    /** "eq" when totalHits is exact, "gte" when it is a lower bound; null when hits were not counted */
+    private String totalHitsRelation;
     private Map<String, Object> aggregations;
     private Long took;
     private Boolean hasMore;
@@ -24,5 +29,26 @@ public class SearchResult<T> {
     private Integer pageSize;
     private List<HitEnvelope<T>> results;
     private boolean success;
-    
+    private String error;
+
+    /**
+     * A copy with its own lists, aggregation map and hit envelopes; the documents themselves are shared
+     */
+    public SearchResult<T> copy() {
+        return SearchResult.<T>builder()
+                .documents(documents == null ? null : new ArrayList<>(documents))
+                .totalHits(totalHits)
+                .totalHitsRelation(totalHitsRelation)
+                .aggregations(aggregations == null ? null : new LinkedHashMap<>(aggregations))
+                .took(took)
+                .hasMore(hasMore)
+                .currentPage(currentPage)
+                .pageSize(pageSize)
+                .results(results == null ? null : results.stream()
+                        .map(h -> HitEnvelope.<T>builder().id(h.getId()).score(h.getScore()).data(h.getData()).build())
+                        .collect(Collectors.toList()))
+                .success(success)
+                .error(error)
+                .build();
+    }
 }
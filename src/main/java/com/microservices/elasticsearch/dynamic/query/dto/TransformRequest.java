@@ -32,6 +32,10 @@ public class TransformRequest {
 
     @Valid
     private List<SortSpec> sort;
+
+    /** Hit counting strategy; the mapping's or the configured default when absent */
+    @JsonProperty("hit_count")
+    private HitCountRequest hitCount;
     
 }
 
@@ -0,0 +1,12 @@
+package com.microservices.elasticsearch.dynamic.query.exception;
+
+public class BulkheadFullException extends RuntimeException {
+    /**
+	 * 
+	 */
+	private static final long serialVersionUID = 1L;
+
+	public BulkheadFullException(String message) {
+        super(message);
+    }
+}
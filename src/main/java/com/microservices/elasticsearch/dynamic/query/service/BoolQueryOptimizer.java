@@ -0,0 +1,385 @@
+package com.microservices.elasticsearch.dynamic.query.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.query_dsl.BoolQuery;
+import co.elastic.clients.elasticsearch._types.query_dsl.ExistsQuery;
+import co.elastic.clients.elasticsearch._types.query_dsl.HasChildQuery;
+import co.elastic.clients.elasticsearch._types.query_dsl.MatchQuery;
+import co.elastic.clients.elasticsearch._types.query_dsl.NestedQuery;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch._types.query_dsl.RangeQuery;
+import co.elastic.clients.elasticsearch._types.query_dsl.TermQuery;
+import co.elastic.clients.elasticsearch._types.query_dsl.TermsQuery;
+import co.elastic.clients.json.JsonData;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+
+/**
+ * Rewrites a compiled query into a smaller one that matches the same documents, bottom-up:
+ * <ul>
+ * <li>a plain bool (no boost or _name) without should clauses inside must/filter is spliced
+ * into its parent, which flattens nested AND groups and folds negate wrappers
+ * ({@code bool{must_not:[x]}}) into the parent's must_not</li>
+ * <li>a plain OR bool inside an OR or inside must_not is spliced the same way
+ * (not (a or b) = not a and not b), and not-not-x inside must_not becomes a filter</li>
+ * <li>a plain bool left with one must, one required should or (where scores are not used)
+ * one filter collapses into that clause</li>
+ * <li>term/terms clauses on one field inside an OR or inside must_not merge into one terms</li>
+ * <li>nested clauses on one path inside an OR or inside must_not merge into one nested query
+ * over the OR of their inner queries, so the child documents are joined once (nested clauses
+ * under AND stay apart: each may be satisfied by a different child)</li>
+ * <li>duplicate term, terms, exists, range and match clauses are dropped</li>
+ * </ul>
+ * Scores change only where merged terms or nested clauses score as one clause and duplicate
+ * must clauses stop counting twice. Where splicing would change whether should clauses are required,
+ * minimum_should_match (or a match_all filter) keeps the original meaning.
+ */
+@Service
+public class BoolQueryOptimizer {
+
+    private final boolean enabled;
+    private final JacksonJsonpMapper jsonpMapper = new JacksonJsonpMapper();
+
+    public BoolQueryOptimizer(@Value("${app.elasticsearch.query-optimizer.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Query optimize(Query query) {
+        return enabled && query != null ? rewrite(query, true) : query;
+    }
+
+    /**
+     * @param scoring whether the clause contributes to the score (false under filter and must_not)
+     */
+    private Query rewrite(Query query, boolean scoring) {
+        return switch (query._kind()) {
+            case Bool -> rewriteBool(query.bool(), scoring);
+            case Nested -> {
+                NestedQuery n = query.nested();
+                Query inner = rewrite(n.query(), scoring);
+                yield inner == n.query() ? query : Query.of(q -> q.nested(b -> b
+                        .path(n.path()).query(inner).scoreMode(n.scoreMode()).ignoreUnmapped(n.ignoreUnmapped())
+                        .innerHits(n.innerHits()).boost(n.boost()).queryName(n.queryName())));
+            }
+            case HasChild -> {
+                HasChildQuery h = query.hasChild();
+                Query inner = rewrite(h.query(), scoring);
+                yield inner == h.query() ? query : Query.of(q -> q.hasChild(b -> b
+                        .type(h.type()).query(inner).scoreMode(h.scoreMode()).ignoreUnmapped(h.ignoreUnmapped())
+                        .innerHits(h.innerHits()).minChildren(h.minChildren()).maxChildren(h.maxChildren())
+                        .boost(h.boost()).queryName(h.queryName())));
+            }
+            default -> query;
+        };
+    }
+
+    private Query rewriteBool(BoolQuery bool, boolean scoring) {
+        int required = requiredShould(bool);
+        List<Query> must = new ArrayList<>();
+        List<Query> filter = new ArrayList<>();
+        List<Query> should = new ArrayList<>();
+        List<Query> mustNot = new ArrayList<>();
+
+        for (Query clause : bool.must()) {
+            splice(rewrite(clause, scoring), must, filter, mustNot);
+        }
+        for (Query clause : bool.filter()) {
+            splice(rewrite(clause, false), filter, filter, mustNot);
+        }
+        for (Query clause : bool.should()) {
+            Query r = rewrite(clause, scoring);
+            if (required == 1 && isPlainOr(r)) should.addAll(r.bool().should());
+            else should.add(r);
+        }
+        for (Query clause : bool.mustNot()) {
+            Query r = rewrite(clause, false);
+            if (isPlainOr(r)) {
+                mustNot.addAll(r.bool().should());
+            } else if (isPlain(r) && r.bool().mustNot().size() == 1 && clauseCount(r.bool()) == 1) {
+                filter.add(r.bool().mustNot().get(0));
+            } else {
+                mustNot.add(r);
+            }
+        }
+
+        must = distinct(must);
+        filter = distinct(filter);
+        mustNot = mergeTerms(mergeNested(distinct(mustNot), false));
+        if (required == 1) should = mergeTerms(mergeNested(distinct(should), scoring));
+
+        String minimumShouldMatch = bool.minimumShouldMatch();
+        if (minimumShouldMatch != null && required == 1) {
+            minimumShouldMatch = "1"; // a relative spec ("-1") would count the merged clauses differently
+        }
+        if (minimumShouldMatch == null && !should.isEmpty()) {
+            if (required == 0 && must.isEmpty() && filter.isEmpty()) {
+                filter.add(Query.of(q -> q.matchAll(m -> m))); // keeps the should clauses optional
+            } else if (required == 1 && !(must.isEmpty() && filter.isEmpty())) {
+                minimumShouldMatch = "1";
+            }
+        }
+
+        boolean plain = isPlain(bool);
+        if (plain && must.size() + filter.size() + should.size() + mustNot.size() == 1) {
+            if (must.size() == 1) return must.get(0);
+            if (should.size() == 1 && (minimumShouldMatch == null || "1".equals(minimumShouldMatch))) return should.get(0);
+            if (filter.size() == 1 && !scoring) return filter.get(0);
+        }
+
+        // lists set explicitly are serialized even when empty
+        BoolQuery.Builder out = new BoolQuery.Builder()
+                .minimumShouldMatch(minimumShouldMatch).boost(bool.boost()).queryName(bool.queryName());
+        if (!must.isEmpty()) out.must(must);
+        if (!filter.isEmpty()) out.filter(filter);
+        if (!should.isEmpty()) out.should(should);
+        if (!mustNot.isEmpty()) out.mustNot(mustNot);
+        return Query.of(q -> q.bool(out.build()));
+    }
+
+    /**
+     * Adds a must/filter clause, spreading a plain should-less bool over the parent's lists
+     */
+    private static void splice(Query clause, List<Query> target, List<Query> filter, List<Query> mustNot) {
+        if (isPlain(clause) && clause.bool().should().isEmpty() && clauseCount(clause.bool()) > 0) {
+            BoolQuery inner = clause.bool();
+            target.addAll(inner.must());
+            filter.addAll(inner.filter());
+            mustNot.addAll(inner.mustNot());
+        } else {
+            target.add(clause);
+        }
+    }
+
+    private static boolean isPlain(Query query) {
+        return query.isBool() && isPlain(query.bool());
+    }
+
+    private static boolean isPlain(BoolQuery bool) {
+        return (bool.boost() == null || bool.boost() == 1f) && bool.queryName() == null;
+    }
+
+    /**
+     * A plain bool that only holds should clauses of which at least one must match
+     */
+    private static boolean isPlainOr(Query query) {
+        if (!isPlain(query)) return false;
+        BoolQuery bool = query.bool();
+        return !bool.should().isEmpty() && clauseCount(bool) == bool.should().size() && requiredShould(bool) == 1;
+    }
+
+    private static int clauseCount(BoolQuery bool) {
+        return bool.must().size() + bool.filter().size() + bool.should().size() + bool.mustNot().size();
+    }
+
+    /**
+     * How many should clauses must match, or -1 when minimum_should_match is not a plain count
+     */
+    private static int requiredShould(BoolQuery bool) {
+        if (bool.should().isEmpty()) return 0;
+        String spec = bool.minimumShouldMatch();
+        if (spec == null) return bool.must().isEmpty() && bool.filter().isEmpty() ? 1 : 0;
+        try {
+            int n = Integer.parseInt(spec.trim());
+            return n < 0 ? Math.max(0, bool.should().size() + n) : n;
+        } catch (NumberFormatException e) {
+            return -1; // percentages and combinations are left alone
+        }
+    }
+
+    /**
+     * Drops repeated leaf clauses; compound clauses are kept as they are rather than
+     * serialized at every level to compare them
+     */
+    private List<Query> distinct(List<Query> clauses) {
+        if (clauses.size() < 2) return clauses;
+        Set<String> seen = new HashSet<>();
+        List<Query> out = new ArrayList<>(clauses.size());
+        for (Query clause : clauses) {
+            String key = leafKey(clause);
+            if (key == null || seen.add(key)) out.add(clause);
+        }
+        return out;
+    }
+
+    /**
+     * Identity of a plain term, terms, exists, range or match clause from its field, value and
+     * options, or null for every other clause. Values are length-prefixed so none can run into
+     * the next.
+     */
+    private String leafKey(Query clause) {
+        StringBuilder key = new StringBuilder(64);
+        switch (clause._kind()) {
+            case Term -> {
+                TermQuery term = clause.term();
+                if (!isPlain(term.boost(), term.queryName())) return null;
+                key.append("term|").append(term.field()).append('|').append(term.caseInsensitive());
+                append(key, term.value());
+            }
+            case Terms -> {
+                TermsQuery terms = clause.terms();
+                if (!isPlain(terms.boost(), terms.queryName()) || !terms.terms().isValue()) return null;
+                key.append("terms|").append(terms.field());
+                terms.terms().value().forEach(v -> append(key, v));
+            }
+            case Exists -> {
+                ExistsQuery exists = clause.exists();
+                if (!isPlain(exists.boost(), exists.queryName())) return null;
+                key.append("exists|").append(exists.field());
+            }
+            case Range -> {
+                RangeQuery range = clause.range();
+                if (!isPlain(range.boost(), range.queryName())) return null;
+                key.append("range|").append(range.field());
+                for (JsonData bound : Arrays.asList(range.gt(), range.gte(), range.lt(), range.lte())) {
+                    append(key, bound == null ? null : bound.toJson(jsonpMapper).toString());
+                }
+                for (String option : Arrays.asList(range.from(), range.to(), range.format(), range.timeZone())) {
+                    append(key, option);
+                }
+                key.append('|').append(range.relation());
+            }
+            case Match -> {
+                MatchQuery match = clause.match();
+                boolean plain = isPlain(match.boost(), match.queryName()) && match.analyzer() == null
+                        && match.autoGenerateSynonymsPhraseQuery() == null && match.cutoffFrequency() == null
+                        && match.fuzziness() == null && match.fuzzyRewrite() == null
+                        && match.fuzzyTranspositions() == null && match.lenient() == null
+                        && match.maxExpansions() == null && match.minimumShouldMatch() == null
+                        && match.prefixLength() == null && match.zeroTermsQuery() == null;
+                if (!plain) return null;
+                key.append("match|").append(match.field()).append('|').append(match.operator());
+                append(key, match.query());
+            }
+            default -> {
+                return null;
+            }
+        }
+        return key.toString();
+    }
+
+    private static void append(StringBuilder key, FieldValue value) {
+        append(key, value._kind() + ":" + value._get());
+    }
+
+    private static void append(StringBuilder key, String value) {
+        if (value == null) key.append("|-");
+        else key.append('|').append(value.length()).append(':').append(value);
+    }
+
+    private static boolean isPlain(Float boost, String queryName) {
+        return boost == null && queryName == null;
+    }
+
+    /**
+     * One terms query per field in place of its term/terms disjuncts, at the first one's position
+     */
+    private static List<Query> mergeTerms(List<Query> clauses) {
+        if (clauses.size() < 2) return clauses;
+        Map<String, Map<String, FieldValue>> values = new LinkedHashMap<>();
+        Map<String, Integer> counts = new HashMap<>();
+        for (Query clause : clauses) {
+            String field = mergeableField(clause);
+            if (field == null) continue;
+            counts.merge(field, 1, Integer::sum);
+            Map<String, FieldValue> fieldValues = values.computeIfAbsent(field, f -> new LinkedHashMap<>());
+            if (clause.isTerm()) {
+                add(fieldValues, clause.term().value());
+            } else {
+                clause.terms().terms().value().forEach(v -> add(fieldValues, v));
+            }
+        }
+        if (counts.values().stream().allMatch(c -> c < 2)) return clauses;
+
+        List<Query> out = new ArrayList<>(clauses.size());
+        Set<String> emitted = new HashSet<>();
+        for (Query clause : clauses) {
+            String field = mergeableField(clause);
+            if (field == null || counts.get(field) < 2) {
+                out.add(clause);
+            } else if (emitted.add(field)) {
+                List<FieldValue> merged = new ArrayList<>(values.get(field).values());
+                out.add(Query.of(q -> q.terms(t -> t.field(field).terms(v -> v.value(merged)))));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * One nested query per path in place of its disjuncts, at the first one's position
+     */
+    private List<Query> mergeNested(List<Query> clauses, boolean scoring) {
+        if (clauses.size() < 2) return clauses;
+        Map<String, List<Query>> inner = new LinkedHashMap<>();
+        for (Query clause : clauses) {
+            String path = mergeablePath(clause);
+            if (path != null) inner.computeIfAbsent(path, p -> new ArrayList<>()).add(clause.nested().query());
+        }
+        if (inner.values().stream().allMatch(q -> q.size() < 2)) return clauses;
+
+        List<Query> out = new ArrayList<>(clauses.size());
+        Set<String> emitted = new HashSet<>();
+        for (Query clause : clauses) {
+            String path = mergeablePath(clause);
+            if (path == null || inner.get(path).size() < 2) {
+                out.add(clause);
+            } else if (emitted.add(path)) {
+                Query or = anyOf(inner.get(path), scoring);
+                out.add(Query.of(q -> q.nested(n -> n.path(path).query(or))));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * The OR of already rewritten clauses, built the way {@link #rewriteBool} would build it
+     * without rewriting them again
+     */
+    private Query anyOf(List<Query> clauses, boolean scoring) {
+        List<Query> should = new ArrayList<>(clauses.size());
+        for (Query clause : clauses) {
+            if (isPlainOr(clause)) should.addAll(clause.bool().should());
+            else should.add(clause);
+        }
+        should = mergeTerms(mergeNested(distinct(should), scoring));
+        if (should.size() == 1) return should.get(0);
+        List<Query> merged = should;
+        return Query.of(q -> q.bool(b -> b.should(merged).minimumShouldMatch("1")));
+    }
+
+    private static String mergeablePath(Query clause) {
+        if (!clause.isNested()) return null;
+        NestedQuery nested = clause.nested();
+        boolean plain = nested.scoreMode() == null && nested.innerHits() == null && nested.boost() == null
+                && nested.queryName() == null && !Boolean.TRUE.equals(nested.ignoreUnmapped());
+        return plain ? nested.path() : null;
+    }
+
+    private static void add(Map<String, FieldValue> values, FieldValue value) {
+        values.putIfAbsent(value._kind() + ":" + value._get(), value);
+    }
+
+    private static String mergeableField(Query clause) {
+        if (clause.isTerm()) {
+            TermQuery term = clause.term();
+            boolean plain = term.boost() == null && term.queryName() == null && !Boolean.TRUE.equals(term.caseInsensitive());
+            return plain ? term.field() : null;
+        }
+        if (clause.isTerms()) {
+            TermsQuery terms = clause.terms();
+            boolean plain = terms.boost() == null && terms.queryName() == null && terms.terms().isValue();
+            return plain ? terms.field() : null;
+        }
+        return null;
+    }
+}
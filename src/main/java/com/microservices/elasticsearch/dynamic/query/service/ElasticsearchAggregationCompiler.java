@@ -0,0 +1,135 @@
+package com.microservices.elasticsearch.dynamic.query.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.springframework.stereotype.Service;
+
+import com.microservices.elasticsearch.dynamic.query.dto.AggregationRequest;
+import com.microservices.elasticsearch.dynamic.query.exception.InvalidOperatorException;
+import com.microservices.elasticsearch.dynamic.query.exception.InvalidValueException;
+
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregate;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregation;
+import co.elastic.clients.elasticsearch._types.aggregations.MultiBucketBase;
+import co.elastic.clients.elasticsearch._types.aggregations.SingleMetricAggregateBase;
+
+/**
+ * Compiles {@link AggregationRequest}s into typed aggregations (terms, avg, sum,
+ * value_count, min, max, nested paths and sub-aggregations, same shapes as
+ * {@link ElasticsearchQueryBuilderService}) and flattens the aggregate response.
+ * Flattened form: metrics become their numeric value, terms become a list of
+ * {key, doc_count, ...sub-aggregations} and nested wrappers collapse into their inner result.
+ */
+@Service
+public class ElasticsearchAggregationCompiler {
+
+    public Map<String, Aggregation> compile(List<AggregationRequest> aggregations) {
+        Map<String, Aggregation> out = new LinkedHashMap<>();
+        if (aggregations == null) return out;
+        for (AggregationRequest agg : aggregations) {
+            if (agg == null) continue;
+            if (agg.getName() == null || agg.getName().isBlank()) {
+                throw new InvalidValueException("Aggregation requires a name");
+            }
+            out.put(agg.getName(), compile(agg));
+        }
+        return out;
+    }
+
+    private Aggregation compile(AggregationRequest agg) {
+        if (agg.getNestedPath() != null && !agg.getNestedPath().isEmpty()) {
+            AggregationRequest inner = AggregationRequest.builder()
+                    .name(agg.getName())
+                    .type(agg.getType())
+                    .field(agg.getField())
+                    .size(agg.getSize())
+                    .subAggregations(agg.getSubAggregations())
+                    .build();
+            Aggregation innerAgg = compile(inner);
+            return Aggregation.of(a -> a.nested(n -> n.path(agg.getNestedPath()))
+                    .aggregations(agg.getName(), innerAgg));
+        }
+
+        String field = agg.getField();
+        if (agg.getType() == null) {
+            throw new InvalidOperatorException("Unsupported aggregation type: null");
+        }
+        Map<String, Aggregation> subs = compile(agg.getSubAggregations());
+        return switch (agg.getType()) {
+            case "terms" -> Aggregation.of(a -> withSubs(a.terms(t -> {
+                t.field(field);
+                return agg.getSize() == null ? t : t.size(agg.getSize());
+            }), subs));
+            case "avg" -> Aggregation.of(a -> withSubs(a.avg(m -> m.field(field)), subs));
+            case "sum" -> Aggregation.of(a -> withSubs(a.sum(m -> m.field(field)), subs));
+            case "count", "value_count" -> Aggregation.of(a -> withSubs(a.valueCount(m -> m.field(field)), subs));
+            case "min" -> Aggregation.of(a -> withSubs(a.min(m -> m.field(field)), subs));
+            case "max" -> Aggregation.of(a -> withSubs(a.max(m -> m.field(field)), subs));
+            default -> throw new InvalidOperatorException("Unsupported aggregation type: " + agg.getType());
+        };
+    }
+
+    private static Aggregation.Builder.ContainerBuilder withSubs(Aggregation.Builder.ContainerBuilder container,
+                                                                  Map<String, Aggregation> subs) {
+        return subs.isEmpty() ? container : container.aggregations(subs);
+    }
+
+    /**
+     * Compact, JSON-friendly view of an aggregations response
+     */
+    public Map<String, Object> flatten(Map<String, Aggregate> aggregations) {
+        Map<String, Object> out = new LinkedHashMap<>();
+        if (aggregations == null) return out;
+        aggregations.forEach((name, aggregate) -> out.put(name, flatten(name, aggregate)));
+        return out;
+    }
+
+    private Object flatten(String name, Aggregate aggregate) {
+        if (aggregate.isNested()) {
+            Map<String, Aggregate> inner = aggregate.nested().aggregations();
+            // nested wrappers built above hold a single aggregation under the same name
+            if (inner.size() == 1 && inner.containsKey(name)) {
+                return flatten(name, inner.get(name));
+            }
+            Map<String, Object> nested = new LinkedHashMap<>();
+            nested.put("doc_count", aggregate.nested().docCount());
+            nested.putAll(flatten(inner));
+            return nested;
+        }
+        if (aggregate.isSterms()) {
+            return buckets(aggregate.sterms().buckets().array(), b -> b.key().stringValue());
+        }
+        if (aggregate.isLterms()) {
+            return buckets(aggregate.lterms().buckets().array(),
+                    b -> b.keyAsString() != null ? b.keyAsString() : b.key());
+        }
+        if (aggregate.isDterms()) {
+            return buckets(aggregate.dterms().buckets().array(),
+                    b -> b.keyAsString() != null ? b.keyAsString() : b.key());
+        }
+        if (aggregate.isUmterms()) {
+            return List.of();
+        }
+        if (aggregate._get() instanceof SingleMetricAggregateBase metric) {
+            return metric.value();
+        }
+        return String.valueOf(aggregate._get()); // unexpected kind: keep something readable
+    }
+
+    private <B extends MultiBucketBase> List<Map<String, Object>> buckets(List<B> buckets,
+                                                                          Function<B, Object> key) {
+        List<Map<String, Object>> out = new ArrayList<>(buckets.size());
+        for (B bucket : buckets) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            row.put("key", key.apply(bucket));
+            row.put("doc_count", bucket.docCount());
+            row.putAll(flatten(bucket.aggregations()));
+            out.add(row);
+        }
+        return out;
+    }
+}
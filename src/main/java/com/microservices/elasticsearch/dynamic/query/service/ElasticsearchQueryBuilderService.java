@@ -36,15 +36,18 @@ public class ElasticsearchQueryBuilderService {
         var queryStructure = request.getQueryStructure();
         var queryAggregations = request.getQueryAggregations();
         
+        HitCount hitCount = HitCount.of(queryStructure);
         Map<String, Object> query = new HashMap<>();
-        query.put("track_total_hits", true);
+        query.put("track_total_hits", hitCount.trackTotalHits());
         query.put("query", groupToEs(queryStructure.getQuery(), null));
         
-        // Handle pagination
+        // Handle pagination (one extra hit when hasMore is probed)
         if (queryStructure.getPagination() != null) {
-            var pagination = queryStructure.getPagination();
-            query.put("from", pagination.getFrom());
-            query.put("size", pagination.getSize());
+            query.put("from", queryStructure.getPagination().getFrom());
+        }
+        Integer size = hitCount.requestSize(queryStructure.getPagination());
+        if (size != null || queryStructure.getPagination() != null) {
+            query.put("size", size);
         }
         
         // Handle aggregations
@@ -257,7 +260,7 @@ public class ElasticsearchQueryBuilderService {
     /**
      * Build a QueryGroup object from a generic map to support inline groups inside conditions[]
      */
-    private QueryGroup mapToQueryGroup(Map<String, Object> map) {
+    static QueryGroup mapToQueryGroup(Map<String, Object> map) {
         QueryGroup.QueryGroupBuilder builder = QueryGroup.builder();
         builder.operator((String) map.getOrDefault("operator", "AND"));
         // Support both has_child_type and has_child
@@ -287,14 +290,20 @@ public class ElasticsearchQueryBuilderService {
      * Convert a map-based condition to ES clause
      */
     private Map<String, Object> conditionMapToEs(Map<String, Object> cond) {
-        QueryCondition qc = QueryCondition.builder()
+        return conditionToEs(mapToCondition(cond));
+    }
+
+    /**
+     * Build a QueryCondition from a map-based condition
+     */
+    static QueryCondition mapToCondition(Map<String, Object> cond) {
+        return QueryCondition.builder()
                 .field((String) cond.get("field"))
                 .operator((String) cond.get("operator"))
                 .value(cond.get("value"))
                 .boost(cond.get("boost") instanceof Number n ? n.doubleValue() : null)
                 .fieldType((String) cond.get("field_type"))
                 .build();
-        return conditionToEs(qc);
     }
     
     /**
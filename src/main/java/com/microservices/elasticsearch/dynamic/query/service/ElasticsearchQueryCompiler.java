@@ -0,0 +1,351 @@
+package com.microservices.elasticsearch.dynamic.query.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+import org.springframework.stereotype.Service;
+
+import com.microservices.elasticsearch.dynamic.query.dto.ElasticsearchQueryRequest;
+import com.microservices.elasticsearch.dynamic.query.dto.PaginationRequest;
+import com.microservices.elasticsearch.dynamic.query.dto.QueryCondition;
+import com.microservices.elasticsearch.dynamic.query.dto.QueryGroup;
+import com.microservices.elasticsearch.dynamic.query.dto.QueryStructureRequest;
+import com.microservices.elasticsearch.dynamic.query.exception.InvalidOperatorException;
+import com.microservices.elasticsearch.dynamic.query.exception.InvalidValueException;
+
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.SortOptions;
+import co.elastic.clients.elasticsearch._types.SortOrder;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregation;
+import co.elastic.clients.elasticsearch._types.query_dsl.BoolQuery;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch._types.query_dsl.RangeQuery;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.elasticsearch.core.msearch.RequestItem;
+import co.elastic.clients.elasticsearch.core.search.SourceConfig;
+import co.elastic.clients.json.JsonData;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Compiles structured query requests straight into typed {@link Query} objects in one pass.
+ * Mirrors {@link ElasticsearchQueryBuilderService} clause for clause (including nested and
+ * has_child wrappers); the Map form built there is only needed for debugging output.
+ * The compiled query is then shrunk by {@link BoolQueryOptimizer}.
+ */
+@Service
+@RequiredArgsConstructor
+public class ElasticsearchQueryCompiler {
+
+    private static final List<String> RANGE_KEYS = List.of("gte", "lte", "gt", "lt");
+    private static final Set<String> SCORING_OPERATORS = Set.of("match");
+
+    private final ElasticsearchAggregationCompiler aggregationCompiler;
+    private final BoolQueryOptimizer optimizer;
+
+    /**
+     * Build a search request for the given index with query, pagination, _source and sort applied
+     */
+    public SearchRequest.Builder searchRequest(String indexName, ElasticsearchQueryRequest request) {
+        return searchRequest(indexName, request, QueryShaping.NONE);
+    }
+
+    /**
+     * Same as {@link #searchRequest(String, ElasticsearchQueryRequest)} shaped for Elasticsearch's caches
+     */
+    public SearchRequest.Builder searchRequest(String indexName, ElasticsearchQueryRequest request, QueryShaping shaping) {
+        var queryStructure = request.getQueryStructure();
+        HitCount hitCount = HitCount.of(queryStructure);
+        SearchRequest.Builder searchBuilder = new SearchRequest.Builder()
+                .index(indexName)
+                .trackTotalHits(hitCount.trackHits())
+                .query(compile(queryStructure.getQuery(), shaping));
+
+        if (queryStructure.getPagination() != null) {
+            searchBuilder.from(queryStructure.getPagination().getFrom());
+        }
+        searchBuilder.size(hitCount.requestSize(queryStructure.getPagination()));
+
+        SourceConfig source = sourceConfig(queryStructure);
+        if (source != null) searchBuilder.source(source);
+        Map<String, Aggregation> aggregations = aggregations(request);
+        if (!aggregations.isEmpty()) searchBuilder.aggregations(aggregations);
+        Integer size = queryStructure.getPagination() == null ? null : queryStructure.getPagination().getSize();
+        shape(searchBuilder, shaping, size != null && size == 0 && !aggregations.isEmpty());
+        return searchBuilder.sort(sortOptions(queryStructure));
+    }
+
+    /**
+     * Request-level shaping: preference, and request_cache when only aggregations are asked for
+     */
+    public static SearchRequest.Builder shape(SearchRequest.Builder searchBuilder, QueryShaping shaping,
+                                              boolean aggregationOnly) {
+        if (shaping.preference() != null) searchBuilder.preference(shaping.preference());
+        if (shaping.requestCache() && aggregationOnly) searchBuilder.requestCache(true);
+        return searchBuilder;
+    }
+
+    /**
+     * Typed aggregations requested alongside the query (empty when none)
+     */
+    public Map<String, Aggregation> aggregations(ElasticsearchQueryRequest request) {
+        var queryAggregations = request.getQueryAggregations();
+        return queryAggregations == null ? Map.of() : aggregationCompiler.compile(queryAggregations.getAggregations());
+    }
+
+    /**
+     * Same request as {@link #searchRequest} as one _msearch item (header + body)
+     */
+    public RequestItem multiSearchItem(String indexName, ElasticsearchQueryRequest request) {
+        var queryStructure = request.getQueryStructure();
+        Query query = compile(queryStructure.getQuery());
+        SourceConfig source = sourceConfig(queryStructure);
+        List<SortOptions> sorts = sortOptions(queryStructure);
+        PaginationRequest pagination = queryStructure.getPagination();
+        Map<String, Aggregation> aggregations = aggregations(request);
+        HitCount hitCount = HitCount.of(queryStructure);
+
+        return RequestItem.of(item -> item
+                .header(h -> h.index(indexName))
+                .body(b -> {
+                    b.trackTotalHits(hitCount.trackHits()).query(query).sort(sorts);
+                    if (!aggregations.isEmpty()) b.aggregations(aggregations);
+                    if (pagination != null) b.from(pagination.getFrom());
+                    b.size(hitCount.requestSize(pagination));
+                    return source == null ? b : b.source(source);
+                }));
+    }
+
+    /**
+     * Body shared by every page of a point-in-time stream. The query is compiled once; the
+     * returned function applies it with _source, the requested sorts and a trailing
+     * _shard_doc tiebreaker so search_after is stable. Index and from are left out since
+     * the PIT and search_after replace them.
+     */
+    public UnaryOperator<SearchRequest.Builder> streamTemplate(ElasticsearchQueryRequest request) {
+        var queryStructure = request.getQueryStructure();
+        Query query = compile(queryStructure.getQuery());
+        SourceConfig source = sourceConfig(queryStructure);
+        List<SortOptions> sorts = new ArrayList<>(sortOptions(queryStructure));
+        sorts.add(SortOptions.of(so -> so.field(f -> f.field("_shard_doc").order(SortOrder.Asc))));
+        return searchBuilder -> {
+            searchBuilder.trackTotalHits(t -> t.enabled(false)).query(query).sort(sorts);
+            return source == null ? searchBuilder : searchBuilder.source(source);
+        };
+    }
+
+    /**
+     * Compile the root query group; the result goes through {@link BoolQueryOptimizer}
+     */
+    public Query compile(QueryGroup group) {
+        return compile(group, QueryShaping.NONE);
+    }
+
+    /**
+     * With {@link QueryShaping#filterContext()} clauses that need no score go into filter,
+     * and a root that needs none at all is wrapped in one
+     */
+    public Query compile(QueryGroup group, QueryShaping shaping) {
+        if (group == null) {
+            throw new InvalidValueException("Query structure requires a root query group");
+        }
+        Query query = groupToQuery(group, null, shaping);
+        if (shaping.filterContext() && "OR".equals(group.getOperator()) && !scores(group)) {
+            Query root = query;
+            query = Query.of(q -> q.bool(b -> b.filter(root)));
+        }
+        return optimizer.optimize(query);
+    }
+
+    private static SourceConfig sourceConfig(QueryStructureRequest queryStructure) {
+        List<String> includes = queryStructure.getSourceFields();
+        if (includes == null || includes.isEmpty()) return null;
+        return SourceConfig.of(s -> s.filter(f -> f.includes(includes)));
+    }
+
+    private static List<SortOptions> sortOptions(QueryStructureRequest queryStructure) {
+        if (queryStructure.getSort() == null) return List.of();
+        List<SortOptions> sorts = new ArrayList<>(queryStructure.getSort().size());
+        queryStructure.getSort().forEach(s -> {
+            String field = s.getField();
+            if (field == null || field.isBlank()) {
+                return; // ignore invalid sort entry without field
+            }
+            SortOrder order = "desc".equalsIgnoreCase(s.getOrder()) ? SortOrder.Desc : SortOrder.Asc;
+            sorts.add(SortOptions.of(so -> so.field(f -> f.field(field).order(order))));
+        });
+        return sorts;
+    }
+
+    private Query groupToQuery(QueryGroup group, String inheritedNestedPath, QueryShaping shaping) {
+        String logic = Optional.ofNullable(group.getOperator()).orElse("AND");
+        String currentNestedPath = Optional.ofNullable(group.getNestedPath()).orElse(inheritedNestedPath);
+        String hasChildType = group.getHasChildType();
+
+        List<Query> clauses = new ArrayList<>();
+        // AND clauses that need no score, when shaping asks for filter context
+        List<Query> filters = new ArrayList<>();
+        List<Query> unscored = "OR".equals(logic) || "NOT".equals(logic) || !shaping.filterContext() ? clauses : filters;
+        // conditions[] may hold inline sub-groups, groups[] may hold conditions
+        addClauses(clauses, unscored, group.getConditions(), currentNestedPath, shaping);
+        addClauses(clauses, unscored, group.getGroups(), currentNestedPath, shaping);
+
+        BoolQuery.Builder bool = new BoolQuery.Builder();
+        switch (logic) {
+            case "OR" -> bool.should(clauses).minimumShouldMatch("1");
+            case "NOT" -> bool.mustNot(clauses);
+            default -> {
+                bool.must(clauses);
+                if (!filters.isEmpty()) bool.filter(filters);
+            }
+        }
+        Query query = Query.of(q -> q.bool(bool.build()));
+
+        if (hasChildType != null) {
+            Query inner = query;
+            query = Query.of(q -> q.hasChild(h -> h.type(hasChildType).query(inner)));
+        } else if (currentNestedPath != null) {
+            Query inner = query;
+            query = Query.of(q -> q.nested(n -> n.path(currentNestedPath).query(inner)));
+        }
+
+        if (Boolean.TRUE.equals(group.getNegate())) {
+            Query inner = query;
+            query = Query.of(q -> q.bool(b -> b.mustNot(inner)));
+        }
+        return query;
+    }
+
+    /**
+     * @param unscored where clauses that need no score go (the same list as {@code clauses}
+     *                 unless they are filtered)
+     */
+    private void addClauses(List<Query> clauses, List<Query> unscored, List<Map<String, Object>> items,
+                            String currentNestedPath, QueryShaping shaping) {
+        if (items == null) return;
+        for (Map<String, Object> item : items) {
+            if (item == null) continue;
+            List<Query> target = unscored == clauses || scores(item) ? clauses : unscored;
+            if (item.containsKey("field")) {
+                target.add(conditionToQuery(ElasticsearchQueryBuilderService.mapToCondition(item), shaping));
+                continue;
+            }
+            QueryGroup sub = ElasticsearchQueryBuilderService.mapToQueryGroup(item);
+            if (sub.getNestedPath() != null) {
+                target.add(groupToQuery(sub, sub.getNestedPath(), shaping));
+            } else if (sub.getHasChildType() != null) {
+                target.add(groupToQuery(sub, sub.getHasChildType(), shaping));
+            } else {
+                target.add(groupToQuery(sub, currentNestedPath, shaping));
+            }
+        }
+    }
+
+    /**
+     * Whether a condition or inline group contributes to the score: only match does, and
+     * NOT or negated groups never do
+     */
+    private static boolean scores(Map<String, Object> item) {
+        if (item.containsKey("field")) {
+            return SCORING_OPERATORS.contains(item.get("operator"));
+        }
+        return scores(ElasticsearchQueryBuilderService.mapToQueryGroup(item));
+    }
+
+    private static boolean scores(QueryGroup group) {
+        if ("NOT".equals(group.getOperator()) || Boolean.TRUE.equals(group.getNegate())) return false;
+        return anyScores(group.getConditions()) || anyScores(group.getGroups());
+    }
+
+    private static boolean anyScores(List<Map<String, Object>> items) {
+        if (items == null) return false;
+        for (Map<String, Object> item : items) {
+            if (item != null && scores(item)) return true;
+        }
+        return false;
+    }
+
+    private Query conditionToQuery(QueryCondition condition, QueryShaping shaping) {
+        String field = condition.getField();
+        String operator = condition.getOperator();
+        Object value = condition.getValue();
+        Float boost = condition.getBoost() == null ? null : condition.getBoost().floatValue();
+        String fieldType = Optional.ofNullable(condition.getFieldType()).orElse("keyword");
+
+        if (operator == null) {
+            throw new InvalidOperatorException("Unsupported operator: null");
+        }
+        return switch (operator) {
+            case "==" -> Query.of(q -> q.term(t -> t.field(field).value(toFieldValue(value)).boost(boost)));
+            case "!=" -> Query.of(q -> q.bool(b -> b.mustNot(n -> n.term(t -> t.field(field).value(toFieldValue(value))))));
+            case ">" -> range(field, r -> r.gt(JsonData.of(shaping.roundNow(value))));
+            case ">=" -> range(field, r -> r.gte(JsonData.of(shaping.roundNow(value))));
+            case "<" -> range(field, r -> r.lt(JsonData.of(shaping.roundNow(value))));
+            case "<=" -> range(field, r -> r.lte(JsonData.of(shaping.roundNow(value))));
+            case "range" -> {
+                if (!(value instanceof Map<?, ?> valueMap)) {
+                    throw new InvalidValueException("Range operator requires Map with 'gte' and/or 'lte' keys");
+                }
+                yield range(field, r -> {
+                    valueMap.forEach((k, raw) -> {
+                        if (!(k instanceof String key) || !RANGE_KEYS.contains(key)) return;
+                        JsonData v = JsonData.of(shaping.roundNow(raw));
+                        switch (key) {
+                            case "gte" -> r.gte(v);
+                            case "lte" -> r.lte(v);
+                            case "gt" -> r.gt(v);
+                            default -> r.lt(v);
+                        }
+                    });
+                    return r;
+                });
+            }
+            case "wildcard" -> Query.of(q -> q.wildcard(w -> w.field(field).value(String.valueOf(value)).boost(boost)));
+            case "match" -> Query.of(q -> q.match(m -> m.field(field).query(toFieldValue(value)).boost(boost)));
+            case "in" -> {
+                if (!(value instanceof List<?> valueList)) {
+                    throw new InvalidValueException("The 'in' operator expects a list of values");
+                }
+                List<FieldValue> fieldValues = new ArrayList<>(valueList.size());
+                for (Object v : valueList) fieldValues.add(toFieldValue(v));
+                yield Query.of(q -> q.terms(t -> t.field(field).terms(terms -> terms.value(fieldValues))));
+            }
+            case "between" -> {
+                if (!(value instanceof List<?> valueList) || valueList.size() != 2) {
+                    throw new InvalidValueException("Between needs two values");
+                }
+                boolean dateField = List.of("date", "datetime").contains(fieldType);
+                yield range(field, r -> {
+                    r.gte(JsonData.of(shaping.roundNow(valueList.get(0)))).lte(JsonData.of(shaping.roundNow(valueList.get(1))));
+                    return dateField ? r.format("strict_date_optional_time") : r;
+                });
+            }
+            case "exists" -> Query.of(q -> q.exists(e -> e.field(field)));
+            case "missing" -> Query.of(q -> q.bool(b -> b.mustNot(n -> n.exists(e -> e.field(field)))));
+            default -> throw new InvalidOperatorException("Unsupported operator: " + operator);
+        };
+    }
+
+    private static Query range(String field, UnaryOperator<RangeQuery.Builder> bounds) {
+        RangeQuery.Builder builder = new RangeQuery.Builder().field(field);
+        return Query.of(q -> q.range(bounds.apply(builder).build()));
+    }
+
+    static FieldValue toFieldValue(Object value) {
+        if (value == null) {
+            return FieldValue.of(JsonData.of((Object) null));
+        }
+        if (value instanceof String s) return FieldValue.of(s);
+        if (value instanceof Integer i) return FieldValue.of(i.longValue());
+        if (value instanceof Long l) return FieldValue.of(l);
+        if (value instanceof Short s) return FieldValue.of((long) s);
+        if (value instanceof Byte b) return FieldValue.of((long) b);
+        if (value instanceof Double d) return FieldValue.of(d);
+        if (value instanceof Float f) return FieldValue.of((double) f);
+        if (value instanceof Boolean b) return FieldValue.of(b);
+        return FieldValue.of(JsonData.of(value));
+    }
+}
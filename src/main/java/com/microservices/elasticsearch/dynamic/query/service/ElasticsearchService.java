@@ -1,43 +1,42 @@
 package com.microservices.elasticsearch.dynamic.query.service;
 
-import java.io.ByteArrayInputStream;
+import java.io.StringReader;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import org.springframework.data.elasticsearch.client.elc.NativeQuery;
 import org.springframework.data.elasticsearch.core.ReactiveElasticsearchOperations;
 import org.springframework.data.elasticsearch.core.SearchHit;
 import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.microservices.elasticsearch.dynamic.query.dto.ElasticsearchQueryRequest;
 import com.microservices.elasticsearch.dynamic.query.dto.ElasticsearchResponse;
-import com.microservices.elasticsearch.dynamic.query.dto.HitEnvelope;
+import com.microservices.elasticsearch.dynamic.query.dto.RawJson;
 import com.microservices.elasticsearch.dynamic.query.dto.SearchResult;
+import com.microservices.elasticsearch.dynamic.query.exception.InvalidValueException;
+import com.microservices.elasticsearch.dynamic.query.service.SearchBulkheads.TrafficClass;
+import com.microservices.elasticsearch.dynamic.query.service.SearchMetrics.Stage;
+import com.microservices.elasticsearch.dynamic.query.util.QueryFingerprint;
 
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
 import co.elastic.clients.elasticsearch.ElasticsearchClient;
-import co.elastic.clients.elasticsearch._types.FieldValue;
 import co.elastic.clients.elasticsearch._types.SortOrder;
-import co.elastic.clients.elasticsearch._types.query_dsl.BoolQuery;
-import co.elastic.clients.elasticsearch._types.query_dsl.MatchQuery;
 import co.elastic.clients.elasticsearch._types.query_dsl.Query;
-import co.elastic.clients.elasticsearch._types.query_dsl.RangeQuery;
-import co.elastic.clients.elasticsearch._types.query_dsl.TermQuery;
-import co.elastic.clients.elasticsearch._types.query_dsl.WildcardQuery;
 import co.elastic.clients.elasticsearch.core.SearchRequest;
 import co.elastic.clients.elasticsearch.core.SearchResponse;
 import co.elastic.clients.elasticsearch.core.search.Hit;
-import co.elastic.clients.json.JsonData;
+import co.elastic.clients.elasticsearch.core.search.ResponseBody;
+import co.elastic.clients.elasticsearch.core.search.TrackHits;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.scheduler.Schedulers;
 
 @Slf4j
 @Service
@@ -45,73 +44,166 @@ import reactor.core.scheduler.Schedulers;
 public class ElasticsearchService {
 
     private  final ElasticsearchClient elasticsearchClient;
+    private final ElasticsearchAsyncClient elasticsearchAsyncClient;
     private final ElasticsearchQueryBuilderService queryBuilderService;
+    private final ElasticsearchQueryCompiler queryCompiler;
+    private final ElasticsearchAggregationCompiler aggregationCompiler;
     private final ObjectMapper objectMapper=new ObjectMapper();
     private final ReactiveElasticsearchOperations reactiveElasticsearchOperations;
+    private final SearchBulkheads bulkheads;
+    private final PointInTimeStreamer pointInTimeStreamer;
+    private final MultiSearchBatcher multiSearchBatcher;
+    private final SearchCoalescer searchCoalescer;
+    private final SearchResultCache searchResultCache;
+    private final SearchResponseConverter responseConverter;
+    private final TermsAggregationStreamer termsAggregationStreamer;
+    private final HitCountCache hitCountCache;
+    private final HitCountPolicy hitCountPolicy;
 
     public <T> Mono<SearchResult<T>> searchAsync(String indexName,
                                                  ElasticsearchQueryRequest queryRequest,
                                                  Class<T> targetClass) {
-        return Mono.fromCallable(() -> {
-            log.info("Building Elasticsearch query for index: {}", indexName);
-            Map<String, Object> esQuery = queryBuilderService.buildEsQuery(queryRequest);
-            log.info("esQuery: {}", esQuery);
-            System.out.println(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(esQuery));
-            return executeSearch(indexName, esQuery, targetClass);
-        })
-        .subscribeOn(Schedulers.boundedElastic())
-        .doOnSuccess(result -> log.info("Search completed for index: {} with {} results", indexName, result.getTotalHits()))
+        return searchAsync(indexName, queryRequest, targetClass, false, QueryShaping.NONE, SearchMetrics.Trace.NONE);
+    }
+
+    /**
+     * @param cacheable serve from / store into the result cache (see {@link SearchResultCache#isEnabledFor})
+     * @param shaping   how the request is shaped for Elasticsearch's caches (see {@link QueryShapingPolicy})
+     * @param trace     request whose stage timings this search records
+     */
+    public <T> Mono<SearchResult<T>> searchAsync(String indexName,
+                                                 ElasticsearchQueryRequest queryRequest,
+                                                 Class<T> targetClass,
+                                                 boolean cacheable,
+                                                 QueryShaping shaping,
+                                                 SearchMetrics.Trace trace) {
+        trace.index(indexName);
+        return shared(indexName, queryRequest, targetClass, cacheable, shaping, trace,
+                () -> bulkheads.guard(indexName, TrafficClass.INTERACTIVE, Mono.defer(() -> {
+                    log.debug("Building Elasticsearch query for index: {}", indexName);
+                    logDebugQuery(queryRequest);
+                    return searchNonBlocking(indexName, queryRequest, targetClass, shaping, trace);
+                })))
+        .doOnNext(result -> trace.hits(result.getResults() == null ? 0 : result.getResults().size()))
+        .doOnSuccess(result -> log.debug("Search completed for index: {} with {} results", indexName, result.getTotalHits()))
         .doOnError(error -> log.error("Search failed for index: {}", indexName, error));
     }
 
-    @Async("virtualThreadExecutor")
     public <T> CompletableFuture<SearchResult<T>> searchWithVirtualThreads(String indexName,
                                                                            ElasticsearchQueryRequest queryRequest,
                                                                            Class<T> targetClass) {
-        return CompletableFuture.supplyAsync(() -> {
+        return searchWithVirtualThreads(indexName, queryRequest, targetClass, false, QueryShaping.NONE, SearchMetrics.Trace.NONE);
+    }
+
+    public <T> CompletableFuture<SearchResult<T>> searchWithVirtualThreads(String indexName,
+                                                                           ElasticsearchQueryRequest queryRequest,
+                                                                           Class<T> targetClass,
+                                                                           boolean cacheable,
+                                                                           QueryShaping shaping,
+                                                                           SearchMetrics.Trace trace) {
+        trace.index(indexName);
+        return shared(indexName, queryRequest, targetClass, cacheable, shaping, trace,
+                () -> Mono.fromFuture(() -> bulkheads.supplyAsync(indexName, TrafficClass.INTERACTIVE, () -> {
+                    try {
+                        log.debug("Executing search with virtual thread for index: {}", indexName);
+                        logDebugQuery(queryRequest);
+                        return executeSearch(indexName, queryRequest, targetClass, shaping, trace);
+                    } catch (Exception e) {
+                        log.error("Virtual thread search failed for index: {}", indexName, e);
+                        throw new RuntimeException("Search failed", e);
+                    }
+                })))
+                .doOnNext(result -> trace.hits(result.getResults() == null ? 0 : result.getResults().size()))
+                .toFuture();
+    }
+
+    /**
+     * Identical concurrent searches (same index, normalized query, shaping and result type) share
+     * one call; cacheable ones are served from the result cache first
+     */
+    private <T> Mono<SearchResult<T>> shared(String indexName, ElasticsearchQueryRequest queryRequest,
+                                             Class<T> targetClass, boolean cacheable, QueryShaping shaping,
+                                             SearchMetrics.Trace trace, Supplier<Mono<SearchResult<T>>> call) {
+        return Mono.defer(() -> {
+            trace.query(queryRequest);
+            String key = searchKey(indexName, queryRequest, targetClass, shaping);
+            Supplier<Mono<SearchResult<T>>> coalesced = () -> searchCoalescer.execute(key, trace, call);
+            return cacheable ? searchResultCache.get(indexName, key, coalesced) : coalesced.get();
+        });
+    }
+
+    /**
+     * Coalescer and result cache key. Shaping is part of it: rounded "now" bounds can change
+     * which documents come back
+     */
+    static String searchKey(String indexName, ElasticsearchQueryRequest queryRequest, Class<?> targetClass,
+                            QueryShaping shaping) {
+        return targetClass.getName() + ':' + shaping.key() + ':' + QueryFingerprint.of(indexName, queryRequest);
+    }
+
+    /**
+     * Runs the batch as chunked _msearch calls; results come back in request order and a
+     * failing item yields an unsuccessful result carrying its error instead of failing the batch
+     */
+    public Flux<SearchResult<Map>> batchSearch(
+            List<com.microservices.elasticsearch.dynamic.query.dto.SearchRequest<Map>> searchRequests) {
+        return Flux.defer(() -> {
+            List<com.microservices.elasticsearch.dynamic.query.dto.SearchRequest<Map>> requests = List.copyOf(searchRequests);
+            List<MultiSearchBatcher.Item> items = requests.stream().map(this::toMultiSearchItem).toList();
+            return multiSearchBatcher.execute(items)
+                    .index()
+                    .map(indexed -> toBatchResult(requests.get(indexed.getT1().intValue()), indexed.getT2()));
+        })
+        .doOnComplete(() -> log.debug("Batch search completed"));
+    }
+
+    /**
+     * Batch items get their hit counting from {@link HitCountPolicy} like single searches, so the
+     * configured default and threshold apply before the item is compiled
+     */
+    private MultiSearchBatcher.Item toMultiSearchItem(com.microservices.elasticsearch.dynamic.query.dto.SearchRequest<Map> request) {
+        try {
+            var queryStructure = request.getQueryRequest().getQueryStructure();
+            queryStructure.setHitCount(hitCountPolicy.resolve(queryStructure.getHitCount(), null));
+            return MultiSearchBatcher.Item.of(queryCompiler.multiSearchItem(request.getIndexName(), request.getQueryRequest()));
+        } catch (Exception e) {
+            log.error("Batch search failed for index: {}", request.getIndexName(), e);
+            return MultiSearchBatcher.Item.failed(e.getMessage());
+        }
+    }
+
+    private SearchResult<Map> toBatchResult(com.microservices.elasticsearch.dynamic.query.dto.SearchRequest<Map> request,
+                                            MultiSearchBatcher.Outcome outcome) {
+        if (outcome.error() == null) {
             try {
-                log.info("Executing search with virtual thread for index: {}", indexName);
-                Map<String, Object> esQuery = queryBuilderService.buildEsQuery(queryRequest);
-				/*
-				 * log.info("Executing search with virtual thread for esQuery : {}", esQuery);
-				 */
-                System.out.println(objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(esQuery));
-                return executeSearch(indexName, esQuery, targetClass);
+                return convert(request.getIndexName(), request.getQueryRequest(), outcome.response(), Map.class);
             } catch (Exception e) {
-                log.error("Virtual thread search failed for index: {}", indexName, e);
-                throw new RuntimeException("Search failed", e);
+                log.error("Batch search failed for index: {}", request.getIndexName(), e);
+                return failedBatchResult(e.getMessage());
             }
-        }, java.util.concurrent.Executors.newVirtualThreadPerTaskExecutor());
+        }
+        log.error("Batch search failed for index: {}: {}", request.getIndexName(), outcome.error());
+        return failedBatchResult(outcome.error());
     }
 
-    public Flux<SearchResult<Map>> batchSearch(
-            List<com.microservices.elasticsearch.dynamic.query.dto.SearchRequest<Map>> searchRequests) {
-        return Flux.fromIterable(searchRequests)
-                .flatMap(request -> searchAsync(request.getIndexName(), request.getQueryRequest(), Map.class)
-                        .onErrorResume(error -> {
-                            log.error("Batch search failed for index: {}", request.getIndexName(), error);
-                            return Mono.just(SearchResult.<Map>builder()
-                                    .documents(List.of())
-                                    .totalHits(0L)
-                                    .build());
-                        }))
-                .doOnComplete(() -> log.info("Batch search completed"));
+    private static SearchResult<Map> failedBatchResult(String error) {
+        return SearchResult.<Map>builder()
+                .documents(List.of())
+                .totalHits(0L)
+                .error(error)
+                .build();
     }
 
+    /**
+     * Streams every matching document via point-in-time + search_after, one page at a time
+     * as downstream demand allows; pagination.from/size are ignored.
+     */
     public <T> Flux<T> searchStream(String indexName,
                                     ElasticsearchQueryRequest queryRequest,
                                     Class<T> targetClass) {
-        return Mono.fromCallable(() -> queryBuilderService.buildEsQuery(queryRequest))
-                .subscribeOn(Schedulers.boundedElastic())
-                .flatMapMany(esQuery -> {
-                    try {
-                        SearchResult<T> result = executeSearch(indexName, esQuery, targetClass);
-                        return Flux.fromIterable(result.getDocuments());
-                    } catch (Exception e) {
-                        return Flux.error(e);
-                    }
-                })
-                .doOnComplete(() -> log.info("Stream search completed for index: {}", indexName));
+        return bulkheads.guard(indexName, TrafficClass.EXPORT, pointInTimeStreamer.stream(indexName, queryRequest))
+                .mapNotNull(hit -> responseConverter.convertSource(hit.source(), targetClass))
+                .doOnComplete(() -> log.debug("Stream search completed for index: {}", indexName));
     }
 
     /**
@@ -119,56 +211,65 @@ public class ElasticsearchService {
      */
     public Flux<Map> searchWithReactiveOps(String indexName,
                                            ElasticsearchQueryRequest queryRequest) {
-        return Mono.fromCallable(() -> queryBuilderService.buildEsQuery(queryRequest))
-                .map(this::convertToElasticsearchQuery)
-                .flatMapMany(query -> {
-                    NativeQuery nativeQuery = NativeQuery.builder().withQuery(query).build();
-                    return reactiveElasticsearchOperations
-                            .search(nativeQuery, Map.class, IndexCoordinates.of(indexName))
-                            .map(SearchHit::getContent);
-                })
-                .doOnSubscribe(s -> log.info("ReactiveOps search started for index: {}", indexName))
-                .doOnComplete(() -> log.info("ReactiveOps search completed for index: {}", indexName));
+        return bulkheads.guard(indexName, TrafficClass.EXPORT,
+                Mono.fromCallable(() -> queryCompiler.compile(queryRequest.getQueryStructure().getQuery()))
+                        .flatMapMany(query -> {
+                            NativeQuery nativeQuery = NativeQuery.builder().withQuery(query).build();
+                            return reactiveElasticsearchOperations
+                                    .search(nativeQuery, Map.class, IndexCoordinates.of(indexName))
+                                    .map(SearchHit::getContent);
+                        }))
+                .doOnSubscribe(s -> log.debug("ReactiveOps search started for index: {}", indexName))
+                .doOnComplete(() -> log.debug("ReactiveOps search completed for index: {}", indexName));
     }
 
     public Mono<Map<String, Object>> executeAggregation(String indexName,
                                                         ElasticsearchQueryRequest queryRequest) {
-        return Mono.fromCallable(() -> {
-            Map<String, Object> esQuery = queryBuilderService.buildEsQuery(queryRequest);
-            try {
-                SearchRequest.Builder searchBuilder = new SearchRequest.Builder()
-                        .index(indexName)
-                        .size(0)
-                        .trackTotalHits(t -> t.enabled(true));
-
-                Query query = convertToElasticsearchQuery(esQuery);
-                searchBuilder.query(query);
+        return executeAggregation(indexName, queryRequest, QueryShaping.NONE);
+    }
 
-                SearchRequest searchRequest = searchBuilder.build();
-                SearchResponse<Map> response = elasticsearchClient.search(searchRequest, Map.class);
+    public Mono<Map<String, Object>> executeAggregation(String indexName,
+                                                        ElasticsearchQueryRequest queryRequest,
+                                                        QueryShaping shaping) {
+        return bulkheads.guard(indexName, TrafficClass.INTERACTIVE, Mono.defer(() -> {
+            SearchRequest.Builder searchBuilder = new SearchRequest.Builder()
+                    .index(indexName)
+                    .size(0)
+                    .trackTotalHits(HitCount.of(queryRequest.getQueryStructure()).trackHits())
+                    .query(queryCompiler.compile(queryRequest.getQueryStructure().getQuery(), shaping));
+            var aggregations = queryCompiler.aggregations(queryRequest);
+            if (!aggregations.isEmpty()) searchBuilder.aggregations(aggregations);
+            ElasticsearchQueryCompiler.shape(searchBuilder, shaping, true);
+            SearchRequest searchRequest = searchBuilder.build();
+            return Mono.fromFuture(() -> elasticsearchAsyncClient.search(searchRequest, Map.class))
+                    .map(response -> Map.<String, Object>of(
+                            "aggregations", aggregationCompiler.flatten(response.aggregations()),
+                            "total_hits", response.hits().total() != null ? response.hits().total().value() : 0L))
+                    .onErrorMap(e -> new RuntimeException("Aggregation failed", e));
+        }))
+        .doOnSuccess(aggs -> log.debug("Aggregation completed for index: {}", indexName));
+    }
 
-                return Map.<String, Object>of(
-                        "aggregations", response.aggregations(),
-                        "total_hits", response.hits().total() != null ? response.hits().total().value() : 0L);
-            } catch (Exception e) {
-                throw new RuntimeException("Aggregation failed", e);
-            }
-        })
-        .subscribeOn(Schedulers.boundedElastic())
-        .doOnSuccess(aggs -> log.info("Aggregation completed for index: {}", indexName));
+    /**
+     * Every bucket of a single terms aggregation, streamed via include partitions or
+     * composite paging depending on the field's estimated cardinality.
+     */
+    public Flux<Map<String, Object>> streamTermsAggregation(String indexName,
+                                                            ElasticsearchQueryRequest queryRequest,
+                                                            TermsAggregationStreamer.Mode mode) {
+        return bulkheads.guard(indexName, TrafficClass.EXPORT, termsAggregationStreamer.stream(indexName, queryRequest, mode))
+                .doOnComplete(() -> log.debug("Terms aggregation stream completed for index: {}", indexName));
     }
 
-    @Async("virtualThreadExecutor")
     public CompletableFuture<ElasticsearchResponse<Map<String, Object>>> executeRawQuery(
             String indexName, Map<String, Object> esQuery) {
-        return CompletableFuture.supplyAsync(() -> {
+        return bulkheads.supplyAsync(indexName, TrafficClass.INTERACTIVE, () -> {
             try {
                 SearchRequest.Builder searchBuilder = new SearchRequest.Builder()
                         .index(indexName)
-                        .trackTotalHits(t -> t.enabled(true));
+                        .trackTotalHits(rawTrackTotalHits(esQuery.get("track_total_hits")));
 
-                Query query = convertToElasticsearchQuery(esQuery);
-                searchBuilder.query(query);
+                searchBuilder.query(convertToElasticsearchQuery(esQuery));
 
                 if (esQuery.containsKey("from")) {
                     searchBuilder.from((Integer) esQuery.get("from"));
@@ -187,69 +288,86 @@ public class ElasticsearchService {
                 log.error("Raw query execution failed for index: {}", indexName, e);
                 throw new RuntimeException("Raw query failed", e);
             }
-        }, java.util.concurrent.Executors.newVirtualThreadPerTaskExecutor());
+        });
+    }
+
+    /**
+     * Search on the async client: the returned Mono completes on the HTTP client's I/O
+     * threads without parking a worker thread, and cancelling it aborts the request.
+     */
+    private <T> Mono<SearchResult<T>> searchNonBlocking(String indexName,
+                                                        ElasticsearchQueryRequest queryRequest,
+                                                        Class<T> targetClass,
+                                                        QueryShaping shaping,
+                                                        SearchMetrics.Trace trace) {
+        return Mono.fromCallable(() -> trace.time(Stage.COMPILE,
+                        () -> queryCompiler.searchRequest(indexName, queryRequest, shaping).build()))
+                .flatMap(searchRequest -> Mono.defer(() -> {
+                    trace.query(searchRequest);
+                    long start = System.nanoTime();
+                    return Mono.fromFuture(() -> elasticsearchAsyncClient.search(searchRequest, documentClass(targetClass)))
+                            .doOnNext(resp -> trace.record(Stage.ELASTICSEARCH, System.nanoTime() - start));
+                }))
+                .map(resp -> {
+                    log.debug("total={} took={} hits={}",
+                             resp.hits().total() == null ? null : resp.hits().total().value(),
+                             resp.took(),
+                             resp.hits().hits().size());
+                    trace.took(resp.took());
+                    return trace.time(Stage.CONVERT, () -> convert(indexName, queryRequest, resp, targetClass));
+                })
+                .onErrorMap(e -> new RuntimeException("Search failed", e));
     }
 
     private <T> SearchResult<T> executeSearch(String indexName,
-                                              Map<String, Object> esQuery,
-                                              Class<T> targetClass) {
+                                              ElasticsearchQueryRequest queryRequest,
+                                              Class<T> targetClass,
+                                              QueryShaping shaping,
+                                              SearchMetrics.Trace trace) {
         try {
-            SearchRequest.Builder searchBuilder = new SearchRequest.Builder()
-                    .index(indexName)
-                    .trackTotalHits(t -> t.enabled(true));
-
-            Query query = convertToElasticsearchQuery(esQuery);
-            searchBuilder.query(query);
-
-            if (esQuery.containsKey("from")) {
-                searchBuilder.from((Integer) esQuery.get("from"));
-            }
-            if (esQuery.containsKey("size")) {
-                searchBuilder.size((Integer) esQuery.get("size"));
-            }
-
-            if (esQuery.containsKey("_source")) {
-                Object sourceCfg = esQuery.get("_source");
-                try {
-                    if (sourceCfg instanceof List<?> list) {
-                        List<String> includes = list.stream().map(String::valueOf).toList();
-                        searchBuilder.source(s -> s.filter(f -> f.includes(includes)));
-                    } else if (sourceCfg instanceof Map<?, ?> m) {
-                        Object inc = m.get("includes");
-                        Object exc = m.get("excludes");
-                        List<String> includes = inc instanceof List<?> li ? li.stream().map(String::valueOf).toList() : List.of();
-                        List<String> excludes = exc instanceof List<?> le ? le.stream().map(String::valueOf).toList() : List.of();
-                        searchBuilder.source(s -> s.filter(f -> f.includes(includes).excludes(excludes)));
-                    } else if (sourceCfg instanceof Boolean b) {
-                        boolean fetch = (Boolean) b;
-                        searchBuilder.source(s -> s.fetch(fetch));
-                    } else if (sourceCfg instanceof String s) {
-                        // Single field convenience
-                        searchBuilder.source(sc -> sc.filter(f -> f.includes(s)));
-                    }
-                } catch (Exception ignore) {
-                    // Fallback: ignore malformed _source config
-                }
-            }
-
-            // Apply sort options if present
-            applySorts(searchBuilder, esQuery);
-
-            SearchRequest searchRequest = searchBuilder.build();
-            SearchResponse<Map> resp = elasticsearchClient.search(searchRequest, Map.class);
-            log.info("total={} took={} hits={}",
+            SearchRequest searchRequest = trace.time(Stage.COMPILE,
+                    () -> queryCompiler.searchRequest(indexName, queryRequest, shaping).build());
+            trace.query(searchRequest);
+            long start = System.nanoTime();
+            SearchResponse<?> resp = elasticsearchClient.search(searchRequest, documentClass(targetClass));
+            trace.record(Stage.ELASTICSEARCH, System.nanoTime() - start);
+            trace.took(resp.took());
+            log.debug("total={} took={} hits={}",
                      resp.hits().total() == null ? null : resp.hits().total().value(),
                      resp.took(),
                      resp.hits().hits().size());
-
-            log.info("response:::::::::",resp);
-            return convertElasticsearchResponse(resp, targetClass, esQuery);
+            return trace.time(Stage.CONVERT, () -> convert(indexName, queryRequest, resp, targetClass));
         } catch (Exception e) {
             log.error("Search execution failed for index: {}", indexName, e);
             throw new RuntimeException("Search failed", e);
         }
     }
 
+    /**
+     * Converts per the request's hit counting; cached counting swaps in the cached exact total
+     */
+    private <T> SearchResult<T> convert(String indexName, ElasticsearchQueryRequest queryRequest,
+                                        ResponseBody<?> resp, Class<T> targetClass) {
+        var queryStructure = queryRequest.getQueryStructure();
+        HitCount hitCount = HitCount.of(queryStructure);
+        SearchResult<T> result = responseConverter.convert(resp, targetClass, queryStructure.getPagination(), hitCount);
+        return hitCount.mode() == HitCount.Mode.CACHED
+                ? hitCountCache.apply(indexName, queryStructure.getQuery(), result)
+                : result;
+    }
+
+    /**
+     * The Map form of the query is only built when debug logging is enabled
+     */
+    private void logDebugQuery(ElasticsearchQueryRequest queryRequest) {
+        if (!log.isDebugEnabled()) return;
+        try {
+            log.debug("esQuery: {}", objectMapper.writeValueAsString(queryBuilderService.buildEsQuery(queryRequest)));
+        } catch (Exception e) {
+            log.debug("Failed to render debug query: {}", e.getMessage());
+        }
+    }
+
     private void applySorts(SearchRequest.Builder searchBuilder, Map<String, Object> esQuery) {
         if (!esQuery.containsKey("sort")) return;
         try {
@@ -272,194 +390,35 @@ public class ElasticsearchService {
         }
     }
 
-    private Query convertToElasticsearchQuery(Map<String, Object> esQuery) {
-        if (!esQuery.containsKey("query")) {
-            return Query.of(q -> q.matchAll(m -> m));
-        }
-        Map<String, Object> queryMap = (Map<String, Object>) esQuery.get("query");
-        return convertQueryMap(queryMap);
-    }
-
-    private Query convertQueryMap(Map<String, Object> queryMap) {
-        if (queryMap.containsKey("bool")) {
-            return convertBoolQuery((Map<String, Object>) queryMap.get("bool"));
-        }
-        if (queryMap.containsKey("term")) {
-            return convertTermQuery((Map<String, Object>) queryMap.get("term"));
-        }
-        if (queryMap.containsKey("range")) {
-            return convertRangeQuery((Map<String, Object>) queryMap.get("range"));
-        }
-        if (queryMap.containsKey("match")) {
-            return convertMatchQuery((Map<String, Object>) queryMap.get("match"));
-        }
-        if (queryMap.containsKey("wildcard")) {
-            return convertWildcardQuery((Map<String, Object>) queryMap.get("wildcard"));
-        }
-        if (queryMap.containsKey("terms")) {
-            return convertTermsQuery((Map<String, Object>) queryMap.get("terms"));
-        }
-        if (queryMap.containsKey("exists")) {
-            return convertExistsQuery((Map<String, Object>) queryMap.get("exists"));
-        }
-        return Query.of(q -> q.matchAll(m -> m));
-    }
-
-    private Query convertBoolQuery(Map<String, Object> boolMap) {
-        BoolQuery.Builder boolBuilder = new BoolQuery.Builder();
-
-        if (boolMap.containsKey("must")) {
-            List<Map<String, Object>> mustClauses = (List<Map<String, Object>>) boolMap.get("must");
-            for (Map<String, Object> clause : mustClauses) {
-                boolBuilder.must(convertQueryMap(clause));
-            }
-        }
-        if (boolMap.containsKey("should")) {
-            List<Map<String, Object>> shouldClauses = (List<Map<String, Object>>) boolMap.get("should");
-            for (Map<String, Object> clause : shouldClauses) {
-                boolBuilder.should(convertQueryMap(clause));
-            }
-        }
-        if (boolMap.containsKey("must_not")) {
-            List<Map<String, Object>> mustNotClauses = (List<Map<String, Object>>) boolMap.get("must_not");
-            for (Map<String, Object> clause : mustNotClauses) {
-                boolBuilder.mustNot(convertQueryMap(clause));
-            }
-        }
-        if (boolMap.containsKey("minimum_should_match")) {
-            boolBuilder.minimumShouldMatch(String.valueOf(boolMap.get("minimum_should_match")));
-        }
-        return Query.of(q -> q.bool(boolBuilder.build()));
-    }
-
-    private Query convertTermQuery(Map<String, Object> termMap) {
-        String field = termMap.keySet().iterator().next();
-        Object valueObj = termMap.get(field);
-        if (valueObj instanceof Map) {
-            Map<String, Object> termValue = (Map<String, Object>) valueObj;
-            Object value = termValue.get("value");
-            TermQuery.Builder termBuilder = new TermQuery.Builder().field(field).value(toFieldValue(value));
-            if (termValue.containsKey("boost")) {
-                termBuilder.boost(((Number) termValue.get("boost")).floatValue());
-            }
-            return Query.of(q -> q.term(termBuilder.build()));
-        } else {
-            return Query.of(q -> q.term(t -> t.field(field).value(toFieldValue(valueObj))));
-        }
-    }
-
-    private Query convertRangeQuery(Map<String, Object> rangeMap) {
-        String field = rangeMap.keySet().iterator().next();
-        Map<String, Object> rangeValue = (Map<String, Object>) rangeMap.get(field);
-        RangeQuery.Builder rangeBuilder = new RangeQuery.Builder().field(field);
-        if (rangeValue.containsKey("gte")) {
-            rangeBuilder.gte(JsonData.of(rangeValue.get("gte")));
-        }
-        if (rangeValue.containsKey("lte")) {
-            rangeBuilder.lte(JsonData.of(rangeValue.get("lte")));
-        }
-        if (rangeValue.containsKey("gt")) {
-            rangeBuilder.gt(JsonData.of(rangeValue.get("gt")));
-        }
-        if (rangeValue.containsKey("lt")) {
-            rangeBuilder.lt(JsonData.of(rangeValue.get("lt")));
-        }
-        return Query.of(q -> q.range(rangeBuilder.build()));
-    }
-
-    private Query convertMatchQuery(Map<String, Object> matchMap) {
-        String field = matchMap.keySet().iterator().next();
-        Object valueObj = matchMap.get(field);
-        if (valueObj instanceof Map) {
-            Map<String, Object> matchValue = (Map<String, Object>) valueObj;
-            Object query = matchValue.get("query");
-            MatchQuery.Builder matchBuilder = new MatchQuery.Builder().field(field).query(toFieldValue(query));
-            if (matchValue.containsKey("boost")) {
-                matchBuilder.boost(((Number) matchValue.get("boost")).floatValue());
-            }
-            return Query.of(q -> q.match(matchBuilder.build()));
-        } else {
-            return Query.of(q -> q.match(m -> m.field(field).query(toFieldValue(valueObj))));
+    /**
+     * Raw query bodies are parsed by the client itself, so every query type is supported
+     */
+    /**
+     * track_total_hits of a raw body (true, false or a count); without one the configured
+     * default hit counting applies
+     */
+    private TrackHits rawTrackTotalHits(Object requested) {
+        if (requested instanceof Boolean enabled) return TrackHits.of(t -> t.enabled(enabled));
+        if (requested instanceof Number count) return TrackHits.of(t -> t.count(count.intValue()));
+        if (requested != null) {
+            throw new InvalidValueException("track_total_hits must be a boolean or a number: " + requested);
         }
+        return HitCount.of(hitCountPolicy.resolve(null, null)).trackHits();
     }
 
-    private Query convertWildcardQuery(Map<String, Object> wildcardMap) {
-        String field = wildcardMap.keySet().iterator().next();
-        Object valueObj = wildcardMap.get(field);
-        if (valueObj instanceof Map) {
-            Map<String, Object> wildcardValue = (Map<String, Object>) valueObj;
-            String value = (String) wildcardValue.get("value");
-            WildcardQuery.Builder wildcardBuilder = new WildcardQuery.Builder().field(field).value(value);
-            if (wildcardValue.containsKey("boost")) {
-                wildcardBuilder.boost(((Number) wildcardValue.get("boost")).floatValue());
-            }
-            return Query.of(q -> q.wildcard(wildcardBuilder.build()));
-        } else {
-            return Query.of(q -> q.wildcard(w -> w.field(field).value((String) valueObj)));
+    private Query convertToElasticsearchQuery(Map<String, Object> esQuery) throws JsonProcessingException {
+        if (!esQuery.containsKey("query")) {
+            return Query.of(q -> q.matchAll(m -> m));
         }
+        String json = objectMapper.writeValueAsString(esQuery.get("query"));
+        return Query.of(q -> q.withJson(new StringReader(json)));
     }
 
-    private Query convertTermsQuery(Map<String, Object> termsMap) {
-        String field = termsMap.keySet().iterator().next();
-        List<Object> values = (List<Object>) termsMap.get(field);
-        List<FieldValue> fieldValues = values.stream().map(this::toFieldValue).collect(Collectors.toList());
-        return Query.of(q -> q.terms(t -> t.field(field).terms(terms -> terms.value(fieldValues))));
-    }
-
-    private Query convertExistsQuery(Map<String, Object> existsMap) {
-        String field = (String) existsMap.get("field");
-        return Query.of(q -> q.exists(e -> e.field(field)));
-    }
-
-    private <T> SearchResult<T> convertElasticsearchResponse(SearchResponse<Map> response,
-                                                             Class<T> targetClass,
-                                                             Map<String, Object> esQuery) {
-        try {
-        	 log.info("Error converting hit to target class", response);
-        	 List<HitEnvelope<T>> wrapped = response.hits().hits().stream()
-        	            .map(hit -> {
-        	                try {
-        	                    T data;
-        	                    Map<String, Object> src = hit.source();
-        	                    if (src == null) return null; // skip if no _source
-
-        	                    if (targetClass == Map.class || targetClass == Object.class) {
-        	                        data = (T) src;
-        	                    } else {
-        	                        data = objectMapper.convertValue(src, targetClass);
-        	                    }
-
-        	                    return HitEnvelope.<T>builder()
-        	                            .id(hit.id())
-        	                            .score(hit.score()) // may be null if scores aren’t tracked
-        	                            .data(data)
-        	                            .build();
-
-        	                } catch (Exception e) {
-        	                    log.error("Error converting hit to target class {}", targetClass, e);
-        	                    return null;
-        	                }
-        	            })
-        	            .filter(Objects::nonNull)
-        	            .collect(Collectors.toList());
-            
-            Integer pageSize = (Integer) esQuery.getOrDefault("size", 10);
-            Integer from = (Integer) esQuery.getOrDefault("from", 0);
-            Integer currentPage = pageSize == 0 ? 0 : from / pageSize;
-            long totalHits = response.hits().total() != null ? response.hits().total().value() : 0L;
-
-            return SearchResult.<T>builder().success(Boolean.TRUE)
-                    .results(wrapped)
-                    .totalHits(totalHits)
-                    .took(response.took())
-                    .hasMore(pageSize != 0 && wrapped.size() == pageSize && from + pageSize < totalHits)
-                    .currentPage(currentPage)
-                    .pageSize(pageSize)
-                    .build();
-        } catch (Exception e) {
-            log.error("Error converting Elasticsearch response", e);
-            throw new RuntimeException("Response conversion failed", e);
-        }
+    /**
+     * RawJson targets keep _source as bytes; everything else is read as a Map first
+     */
+    private static Class<?> documentClass(Class<?> targetClass) {
+        return targetClass == RawJson.class ? RawJson.class : Map.class;
     }
 
     private ElasticsearchResponse<Map<String, Object>> convertToElasticsearchResponse(SearchResponse<Map> response) {
@@ -493,19 +452,4 @@ public class ElasticsearchService {
                 .hits(hitsContainer)
                 .build();
     }
-
-    private FieldValue toFieldValue(Object value) {
-        if (value == null) {
-            return FieldValue.of(JsonData.of((Object) null));
-        }
-        if (value instanceof String s) return FieldValue.of(s);
-        if (value instanceof Integer i) return FieldValue.of(i.longValue());
-        if (value instanceof Long l) return FieldValue.of(l);
-        if (value instanceof Short s) return FieldValue.of((long) s);
-        if (value instanceof Byte b) return FieldValue.of((long) b);
-        if (value instanceof Double d) return FieldValue.of(d);
-        if (value instanceof Float f) return FieldValue.of((double) f);
-        if (value instanceof Boolean b) return FieldValue.of(b);
-        return FieldValue.of(JsonData.of(value));
-    }
 }
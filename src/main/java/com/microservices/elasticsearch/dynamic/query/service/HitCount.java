@@ -0,0 +1,79 @@
+package com.microservices.elasticsearch.dynamic.query.service;
+
+import java.util.Locale;
+
+import com.microservices.elasticsearch.dynamic.query.dto.HitCountRequest;
+import com.microservices.elasticsearch.dynamic.query.dto.PaginationRequest;
+import com.microservices.elasticsearch.dynamic.query.dto.QueryStructureRequest;
+import com.microservices.elasticsearch.dynamic.query.exception.InvalidValueException;
+
+import co.elastic.clients.elasticsearch.core.search.TrackHits;
+
+/**
+ * Resolved hit counting strategy of one search. Every mode but exact asks Elasticsearch for one
+ * hit more than the page (size + 1) so hasMore does not depend on the total.
+ */
+public record HitCount(Mode mode, int threshold) {
+
+    public enum Mode { EXACT, BOUNDED, NONE, CACHED }
+
+    /** What requests without hit_count get: the count is always exact */
+    public static final HitCount EXACT = new HitCount(Mode.EXACT, 0);
+
+    private static final int DEFAULT_PAGE_SIZE = 10;
+
+    public static HitCount of(QueryStructureRequest queryStructure) {
+        return queryStructure == null ? EXACT : of(queryStructure.getHitCount());
+    }
+
+    public static HitCount of(HitCountRequest request) {
+        if (request == null || request.getMode() == null) return EXACT;
+        Mode mode;
+        try {
+            mode = Mode.valueOf(request.getMode().trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidValueException("Unsupported hit_count mode: " + request.getMode());
+        }
+        int threshold = request.getThreshold() == null ? 0 : request.getThreshold();
+        if ((mode == Mode.BOUNDED || mode == Mode.CACHED) && threshold <= 0) {
+            throw new InvalidValueException("hit_count mode " + request.getMode() + " needs a positive threshold");
+        }
+        return new HitCount(mode, threshold);
+    }
+
+    /**
+     * track_total_hits as it goes into the request body: true, false or the threshold
+     */
+    public Object trackTotalHits() {
+        return switch (mode) {
+            case EXACT -> true;
+            case NONE -> false;
+            case BOUNDED, CACHED -> threshold;
+        };
+    }
+
+    public TrackHits trackHits() {
+        return switch (mode) {
+            case EXACT -> TrackHits.of(t -> t.enabled(true));
+            case NONE -> TrackHits.of(t -> t.enabled(false));
+            case BOUNDED, CACHED -> TrackHits.of(t -> t.count(threshold));
+        };
+    }
+
+    /**
+     * Whether one extra hit is fetched to tell if there is a next page
+     */
+    public boolean probes() {
+        return mode != Mode.EXACT;
+    }
+
+    /**
+     * size to send, or null to leave it out
+     */
+    public Integer requestSize(PaginationRequest pagination) {
+        Integer size = pagination == null ? null : pagination.getSize();
+        if (!probes()) return size;
+        int pageSize = size == null ? DEFAULT_PAGE_SIZE : size;
+        return pageSize == 0 ? 0 : pageSize + 1;
+    }
+}
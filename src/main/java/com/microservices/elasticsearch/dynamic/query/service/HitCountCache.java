@@ -0,0 +1,88 @@
+package com.microservices.elasticsearch.dynamic.query.service;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.microservices.elasticsearch.dynamic.query.config.HitCountProperties;
+import com.microservices.elasticsearch.dynamic.query.dto.QueryGroup;
+import com.microservices.elasticsearch.dynamic.query.dto.SearchResult;
+import com.microservices.elasticsearch.dynamic.query.util.QueryFingerprint;
+
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
+import co.elastic.clients.elasticsearch.core.search.TotalHitsRelation;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Exact hit counts for cached hit counting, keyed by (index, query) so every page and sort of
+ * a query shares one count. A search never waits for a count: until the first _count for its
+ * query has come back it keeps the bounded total of its own response, afterwards it gets the
+ * cached count, which is refreshed in the background once it is older than cached-refresh.
+ * Statistics are published as cache.* meters (cache=es.hit.counts).
+ */
+@Slf4j
+@Component
+public class HitCountCache {
+
+    /** The query rides along for loading; equality is by fingerprint only */
+    private record Key(String indexName, String fingerprint, QueryGroup query) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key k && k.indexName.equals(indexName) && k.fingerprint.equals(fingerprint);
+        }
+
+        @Override
+        public int hashCode() {
+            return fingerprint.hashCode();
+        }
+    }
+
+    private final AsyncLoadingCache<Key, Long> cache;
+
+    public HitCountCache(HitCountProperties properties,
+                         ElasticsearchAsyncClient elasticsearchAsyncClient,
+                         ElasticsearchQueryCompiler queryCompiler,
+                         MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getCachedMaxSize())
+                .refreshAfterWrite(properties.getCachedRefresh())
+                .expireAfterAccess(properties.getCachedExpiry())
+                .recordStats()
+                .buildAsync((key, executor) -> count(elasticsearchAsyncClient, queryCompiler, key));
+        CaffeineCacheMetrics.monitor(meterRegistry, cache.synchronous(), "es.hit.counts");
+    }
+
+    /**
+     * Replaces the result's total with the cached exact count when there is one; otherwise
+     * starts counting in the background and leaves the result as it is
+     */
+    public <T> SearchResult<T> apply(String indexName, QueryGroup query, SearchResult<T> result) {
+        CompletableFuture<Long> count = cache.get(new Key(indexName, QueryFingerprint.ofMatches(indexName, query), query));
+        if (count.isDone() && !count.isCompletedExceptionally()) {
+            result.setTotalHits(count.join());
+            result.setTotalHitsRelation(TotalHitsRelation.Eq.jsonValue());
+        }
+        return result;
+    }
+
+    public void clear() {
+        cache.synchronous().invalidateAll();
+    }
+
+    private static CompletableFuture<Long> count(ElasticsearchAsyncClient client, ElasticsearchQueryCompiler compiler, Key key) {
+        try {
+            return client.count(c -> c.index(key.indexName()).query(compiler.compile(key.query())))
+                    .thenApply(response -> response.count())
+                    .whenComplete((n, e) -> {
+                        if (e != null) log.warn("Hit count failed for index {}: {}", key.indexName(), e.getMessage());
+                    });
+        } catch (Exception e) {
+            log.warn("Hit count failed for index {}: {}", key.indexName(), e.getMessage());
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.microservices.elasticsearch.dynamic.query.service;
+
+import org.springframework.stereotype.Component;
+
+import com.microservices.elasticsearch.dynamic.query.config.HitCountProperties;
+import com.microservices.elasticsearch.dynamic.query.dto.HitCountRequest;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Picks the hit counting strategy of a search: the request's own hit_count, else the
+ * mapping's configured mode, else the default. A missing threshold takes the configured one.
+ */
+@Component
+@RequiredArgsConstructor
+public class HitCountPolicy {
+
+    private final HitCountProperties properties;
+
+    /**
+     * @param mappingName mapping of a v1 search, or null
+     * @throws com.microservices.elasticsearch.dynamic.query.exception.InvalidValueException for an unknown mode
+     */
+    public HitCountRequest resolve(HitCountRequest requested, String mappingName) {
+        String mode = requested != null && requested.getMode() != null ? requested.getMode()
+                : mappingName != null && properties.getMappings().containsKey(mappingName)
+                        ? properties.getMappings().get(mappingName)
+                        : properties.getMode();
+        Integer threshold = requested != null && requested.getThreshold() != null
+                ? requested.getThreshold() : properties.getThreshold();
+        HitCountRequest resolved = HitCountRequest.builder().mode(mode).threshold(threshold).build();
+        HitCount.of(resolved); // fail fast on an unknown mode
+        return resolved;
+    }
+}
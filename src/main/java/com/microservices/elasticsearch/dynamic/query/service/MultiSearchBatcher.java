@@ -0,0 +1,171 @@
+package com.microservices.elasticsearch.dynamic.query.service;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.microservices.elasticsearch.dynamic.query.service.SearchBulkheads.TrafficClass;
+import com.microservices.elasticsearch.dynamic.query.util.CountingOutputStream;
+
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
+import co.elastic.clients.elasticsearch.core.MsearchRequest;
+import co.elastic.clients.elasticsearch.core.msearch.MultiSearchResponseItem;
+import co.elastic.clients.elasticsearch.core.msearch.RequestItem;
+import co.elastic.clients.elasticsearch.core.search.ResponseBody;
+import co.elastic.clients.json.JsonpMapper;
+import co.elastic.clients.json.JsonpSerializable;
+import jakarta.json.stream.JsonGenerator;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Sends batches of searches as _msearch calls. Items are packed into chunks bounded by
+ * item count and serialized NDJSON size; chunks run with bounded concurrency and the
+ * outcomes come back in input order, one per item, with per-item failures preserved.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MultiSearchBatcher {
+
+    /**
+     * One batch entry: either a compiled _msearch item or the reason it could not be built
+     */
+    public record Item(RequestItem request, String error) {
+        public static Item of(RequestItem request) {
+            return new Item(request, null);
+        }
+
+        public static Item failed(String error) {
+            return new Item(null, error);
+        }
+    }
+
+    /**
+     * Result for one batch entry: a response body or an error message
+     */
+    public record Outcome(ResponseBody<Map> response, String error) {}
+
+    private final ElasticsearchAsyncClient elasticsearchAsyncClient;
+    private final SearchBulkheads bulkheads;
+
+    @Value("${app.elasticsearch.msearch.max-items:50}")
+    private int maxItems;
+
+    @Value("${app.elasticsearch.msearch.max-bytes:1048576}")
+    private long maxBytes;
+
+    @Value("${app.elasticsearch.msearch.max-concurrent-requests:4}")
+    private int maxConcurrentRequests;
+
+    public Flux<Outcome> execute(List<Item> items) {
+        List<List<Item>> chunks = chunk(items);
+        log.debug("Sending {} searches as {} _msearch request(s)", items.size(), chunks.size());
+        return Flux.fromIterable(chunks)
+                .flatMapSequential(this::executeChunk, Math.max(1, maxConcurrentRequests))
+                .flatMapIterable(outcomes -> outcomes);
+    }
+
+    private Mono<List<Outcome>> executeChunk(List<Item> chunk) {
+        List<RequestItem> searches = chunk.stream().map(Item::request).filter(r -> r != null).toList();
+        if (searches.isEmpty()) {
+            return Mono.just(demux(chunk, List.of(), null));
+        }
+        MsearchRequest request = MsearchRequest.of(m -> m.searches(searches));
+        return bulkheads.guard(indices(searches), TrafficClass.INTERACTIVE,
+                        Mono.fromFuture(() -> elasticsearchAsyncClient.msearch(request, Map.class)))
+                .map(response -> demux(chunk, response.responses(), null))
+                .onErrorResume(e -> {
+                    log.error("_msearch request with {} searches failed", searches.size(), e);
+                    return Mono.just(demux(chunk, List.of(), String.valueOf(e.getMessage())));
+                });
+    }
+
+    /**
+     * Indices a chunk searches, so it holds a permit in each of their bulkheads
+     */
+    private static Set<String> indices(List<RequestItem> searches) {
+        Set<String> indices = new HashSet<>();
+        for (RequestItem search : searches) {
+            List<String> index = search.header().index();
+            if (index.isEmpty()) indices.add(null);
+            else indices.addAll(index);
+        }
+        return indices;
+    }
+
+    /**
+     * Pair each item of the chunk with its response, in order; items that never made it
+     * into the request keep their own error, and a failed request fails all of its items.
+     */
+    private static List<Outcome> demux(List<Item> chunk, List<MultiSearchResponseItem<Map>> responses,
+                                       String requestError) {
+        List<Outcome> out = new ArrayList<>(chunk.size());
+        int next = 0;
+        for (Item item : chunk) {
+            if (item.request() == null) {
+                out.add(new Outcome(null, item.error()));
+            } else if (requestError != null) {
+                out.add(new Outcome(null, requestError));
+            } else if (next >= responses.size()) {
+                out.add(new Outcome(null, "Missing _msearch response item"));
+            } else {
+                MultiSearchResponseItem<Map> response = responses.get(next++);
+                if (response.isResult()) {
+                    out.add(new Outcome(response.result(), null));
+                } else {
+                    var error = response.failure().error();
+                    out.add(new Outcome(null, error.reason() != null ? error.reason() : error.type()));
+                }
+            }
+        }
+        return out;
+    }
+
+    private List<List<Item>> chunk(List<Item> items) {
+        JsonpMapper mapper = elasticsearchAsyncClient._jsonpMapper();
+        List<List<Item>> chunks = new ArrayList<>();
+        List<Item> current = new ArrayList<>();
+        int currentCount = 0;
+        long currentBytes = 0;
+        for (Item item : items) {
+            if (item.request() == null) {
+                current.add(item); // costs nothing on the wire
+                continue;
+            }
+            long bytes = ndjsonSize(item.request(), mapper);
+            if (currentCount > 0 && (currentCount >= maxItems || currentBytes + bytes > maxBytes)) {
+                chunks.add(current);
+                current = new ArrayList<>();
+                currentCount = 0;
+                currentBytes = 0;
+            }
+            current.add(item);
+            currentCount++;
+            currentBytes += bytes;
+        }
+        if (!current.isEmpty()) chunks.add(current);
+        return chunks;
+    }
+
+    /**
+     * Size of the header and body lines, measured by serializing into a counting sink
+     */
+    private static long ndjsonSize(RequestItem item, JsonpMapper mapper) {
+        CountingOutputStream counter = new CountingOutputStream();
+        for (JsonpSerializable part : List.<JsonpSerializable>of(item.header(), item.body())) {
+            JsonGenerator generator = mapper.jsonProvider().createGenerator(counter);
+            part.serialize(generator, mapper);
+            generator.close();
+            counter.write('\n');
+        }
+        return counter.getCount();
+    }
+}
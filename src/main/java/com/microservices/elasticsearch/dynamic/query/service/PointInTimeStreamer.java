@@ -0,0 +1,145 @@
+package com.microservices.elasticsearch.dynamic.query.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.microservices.elasticsearch.dynamic.query.dto.ElasticsearchQueryRequest;
+
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+
+/**
+ * Streams every hit of a query through a point-in-time with search_after paging.
+ * Pages are only fetched while there is downstream demand, sized by that demand
+ * (clamped to the configured bounds), so memory stays at roughly one page no
+ * matter how many documents match. The PIT is closed on completion, error or cancel.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PointInTimeStreamer {
+
+    private final ElasticsearchAsyncClient elasticsearchAsyncClient;
+    private final ElasticsearchQueryCompiler queryCompiler;
+
+    @Value("${app.elasticsearch.stream.keep-alive:1m}")
+    private String keepAlive;
+
+    @Value("${app.elasticsearch.stream.min-page-size:100}")
+    private int minPageSize;
+
+    @Value("${app.elasticsearch.stream.max-page-size:1000}")
+    private int maxPageSize;
+
+    public Flux<Hit<Map>> stream(String indexName, ElasticsearchQueryRequest queryRequest) {
+        return Mono.fromCallable(() -> queryCompiler.streamTemplate(queryRequest))
+                .flatMapMany(template -> Flux.usingWhen(
+                        openPit(indexName),
+                        pit -> Flux.<Hit<Map>>create(sink -> new PageFetcher(pit, template, sink).start()),
+                        this::closePit,
+                        (pit, error) -> closePit(pit),
+                        this::closePit));
+    }
+
+    private Mono<String> openPit(String indexName) {
+        return Mono.fromFuture(() -> elasticsearchAsyncClient.openPointInTime(o -> o
+                        .index(indexName)
+                        .keepAlive(k -> k.time(keepAlive))))
+                .map(response -> response.id())
+                .doOnNext(id -> log.debug("Opened point-in-time for index {}", indexName));
+    }
+
+    private Mono<Void> closePit(String pitId) {
+        return Mono.fromFuture(() -> elasticsearchAsyncClient.closePointInTime(c -> c.id(pitId)))
+                .doOnError(e -> log.warn("Failed to close point-in-time: {}", e.getMessage()))
+                .onErrorResume(e -> Mono.empty())
+                .then();
+    }
+
+    /**
+     * Issues one search at a time while the subscriber has outstanding demand
+     */
+    private final class PageFetcher {
+        private final UnaryOperator<SearchRequest.Builder> template;
+        private final FluxSink<Hit<Map>> sink;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicBoolean fetching = new AtomicBoolean();
+        private volatile String pitId;
+        private volatile List<FieldValue> searchAfter;
+        private volatile boolean done;
+        private volatile CompletableFuture<SearchResponse<Map>> inFlight;
+
+        PageFetcher(String pitId, UnaryOperator<SearchRequest.Builder> template, FluxSink<Hit<Map>> sink) {
+            this.pitId = pitId;
+            this.template = template;
+            this.sink = sink;
+        }
+
+        void start() {
+            sink.onRequest(n -> {
+                demand.getAndAccumulate(n, (current, add) -> current + add < 0 ? Long.MAX_VALUE : current + add);
+                fetchNext();
+            });
+            sink.onCancel(() -> {
+                done = true;
+                CompletableFuture<?> f = inFlight;
+                if (f != null) f.cancel(true);
+            });
+        }
+
+        private void fetchNext() {
+            if (done || demand.get() <= 0 || !fetching.compareAndSet(false, true)) return;
+            int pageSize = (int) Math.max(minPageSize, Math.min(demand.get(), maxPageSize));
+            List<FieldValue> after = searchAfter;
+            SearchRequest request = SearchRequest.of(b -> {
+                template.apply(b)
+                        .pit(p -> p.id(pitId).keepAlive(k -> k.time(keepAlive)))
+                        .size(pageSize);
+                return after == null ? b : b.searchAfter(after);
+            });
+            CompletableFuture<SearchResponse<Map>> future = elasticsearchAsyncClient.search(request, Map.class);
+            inFlight = future;
+            future.whenComplete((response, error) -> {
+                if (error != null) {
+                    done = true;
+                    sink.error(error);
+                    return;
+                }
+                onPage(response, pageSize);
+            });
+        }
+
+        private void onPage(SearchResponse<Map> response, int pageSize) {
+            if (response.pitId() != null) pitId = response.pitId();
+            List<Hit<Map>> hits = response.hits().hits();
+            for (Hit<Map> hit : hits) {
+                if (done) return;
+                sink.next(hit);
+            }
+            demand.getAndUpdate(d -> d == Long.MAX_VALUE ? d : Math.max(0, d - hits.size()));
+            if (hits.size() < pageSize) {
+                done = true;
+                sink.complete();
+                return;
+            }
+            searchAfter = hits.get(hits.size() - 1).sort();
+            fetching.set(false);
+            fetchNext();
+        }
+    }
+}
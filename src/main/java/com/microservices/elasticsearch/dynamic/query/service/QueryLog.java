@@ -0,0 +1,106 @@
+package com.microservices.elasticsearch.dynamic.query.service;
+
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microservices.elasticsearch.dynamic.query.config.QueryLogProperties;
+
+import co.elastic.clients.json.JsonpSerializable;
+import co.elastic.clients.json.JsonpUtils;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Structured query log: one compact JSON line per logged request on the "query-log" logger,
+ * which logback-spring.xml routes through a non-blocking async appender. Whether a request
+ * is sampled is decided when it starts; slow requests are logged regardless. The query and
+ * the line itself are only serialized for requests that are actually logged.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class QueryLog {
+
+    public static final String LOGGER_NAME = "query-log";
+
+    private static final Logger QUERY_LOG = LoggerFactory.getLogger(LOGGER_NAME);
+
+    private final QueryLogProperties properties;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final JacksonJsonpMapper jsonpMapper = new JacksonJsonpMapper();
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    /**
+     * Sampling decision for a request about to start on {@code endpoint}
+     */
+    public boolean sample(String endpoint) {
+        if (!properties.isEnabled() || !QUERY_LOG.isInfoEnabled()) return false;
+        double rate = properties.sampleRateFor(endpoint);
+        return rate >= 1 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    /**
+     * Logs the finished request if it was sampled or crossed the slow threshold
+     *
+     * @param status HTTP status written, or null if none was set (errors, cancellation)
+     */
+    public void completed(SearchMetrics.Trace trace, boolean sampled, Integer status, String outcome) {
+        if (!properties.isEnabled() || !QUERY_LOG.isInfoEnabled()) return;
+        long elapsedNanos = trace.elapsedNanos();
+        long slowNanos = properties.getSlowThreshold().toNanos();
+        boolean slow = slowNanos > 0 && elapsedNanos >= slowNanos;
+        if (!sampled && !slow) return;
+        try {
+            QUERY_LOG.info(line(trace, slow ? "slow" : "sample", elapsedNanos, status, outcome));
+        } catch (Exception e) {
+            log.debug("Could not write query log entry: {}", e.getMessage());
+        }
+    }
+
+    private String line(SearchMetrics.Trace trace, String reason, long elapsedNanos, Integer status,
+                        String outcome) throws Exception {
+        StringWriter out = new StringWriter(256);
+        try (JsonGenerator json = jsonFactory.createGenerator(out)) {
+            json.writeStartObject();
+            json.writeStringField("@timestamp", Instant.now().toString());
+            json.writeStringField("reason", reason);
+            json.writeStringField("endpoint", trace.endpoint());
+            if (trace.indexName() != null) json.writeStringField("index", trace.indexName());
+            if (trace.mappingName() != null) json.writeStringField("mapping", trace.mappingName());
+            if (status != null) json.writeNumberField("status", status);
+            json.writeStringField("outcome", outcome);
+            json.writeNumberField("durationMs", TimeUnit.NANOSECONDS.toMicros(elapsedNanos) / 1000.0);
+            if (trace.tookMillis() >= 0) json.writeNumberField("tookMs", trace.tookMillis());
+            json.writeNumberField("hits", trace.hitCount());
+            writeQuery(json, trace.query());
+            json.writeEndObject();
+        }
+        return out.toString();
+    }
+
+    /**
+     * The compiled request body when the search got that far, otherwise the incoming request
+     */
+    private void writeQuery(JsonGenerator json, Object query) throws Exception {
+        if (query == null) return;
+        String rendered = query instanceof JsonpSerializable serializable
+                ? JsonpUtils.toJsonString(serializable, jsonpMapper)
+                : objectMapper.writeValueAsString(query);
+        if (rendered.length() <= properties.getMaxQueryChars()) {
+            json.writeFieldName("query");
+            json.writeRawValue(rendered);
+        } else {
+            json.writeStringField("queryPrefix", rendered.substring(0, properties.getMaxQueryChars()));
+        }
+    }
+}
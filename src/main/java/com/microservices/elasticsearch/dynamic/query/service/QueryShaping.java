@@ -0,0 +1,38 @@
+package com.microservices.elasticsearch.dynamic.query.service;
+
+import java.util.regex.Pattern;
+
+/**
+ * How one request is shaped for Elasticsearch's caches, see {@link QueryShapingPolicy}.
+ *
+ * @param filterContext clauses that need no score go into bool filter
+ * @param roundNowTo    date math unit appended to "now"-relative range bounds, or null
+ * @param requestCache  set request_cache on aggregation-only (size 0) requests
+ * @param preference    search preference string, or null
+ */
+public record QueryShaping(boolean filterContext, String roundNowTo, boolean requestCache, String preference) {
+
+    /** Requests are sent as compiled */
+    public static final QueryShaping NONE = new QueryShaping(false, null, false, null);
+
+    private static final Pattern NOW = Pattern.compile("now(?:[+-]\\d+[yMwdhHms])*");
+
+    /**
+     * Compact form of the settings that change what a search returns, so differently shaped
+     * requests never share a cached result. The preference is left out: it only picks shard
+     * copies, and keying by it would stop identical queries from different clients sharing
+     * one call (which then runs with the first caller's preference).
+     */
+    public String key() {
+        return (filterContext ? "f" : "-") + (requestCache ? "r" : "-")
+                + '/' + (roundNowTo == null ? "" : roundNowTo);
+    }
+
+    /**
+     * {@code value} with "/unit" appended when it is unrounded "now" date math
+     */
+    public Object roundNow(Object value) {
+        if (roundNowTo == null || !(value instanceof String s) || !NOW.matcher(s).matches()) return value;
+        return s + '/' + roundNowTo;
+    }
+}
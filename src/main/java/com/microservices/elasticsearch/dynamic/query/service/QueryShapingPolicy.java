@@ -0,0 +1,51 @@
+package com.microservices.elasticsearch.dynamic.query.service;
+
+import java.util.Set;
+
+import org.springframework.stereotype.Component;
+
+import com.microservices.elasticsearch.dynamic.query.config.QueryShapingProperties;
+
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Decides per request whether it is shaped for Elasticsearch's caches: non-scoring clauses in
+ * filter context (reusable by the node query cache), "now" rounded so repeated ranges produce
+ * identical queries, request_cache on aggregation-only calls and a per-client preference so
+ * repeats land on the shard copies that already cached them.
+ */
+@Component
+@RequiredArgsConstructor
+public class QueryShapingPolicy {
+
+    public static final String ENDPOINT_AGGREGATION = "aggregation";
+    public static final String CLIENT_ID_HEADER = "X-Client-Id";
+
+    private static final Set<String> ROUNDING_UNITS = Set.of("y", "M", "w", "d", "h", "H", "m", "s");
+
+    private final QueryShapingProperties properties;
+
+    /**
+     * @param mappingName mapping of a v1 search, or null
+     * @param clientId    X-Client-Id header, or null
+     */
+    public QueryShaping forRequest(String endpoint, String mappingName, String clientId) {
+        if (!properties.isEnabled()) return QueryShaping.NONE;
+        boolean optedIn = properties.getEndpoints().contains(endpoint)
+                || (mappingName != null && properties.getMappings().contains(mappingName));
+        if (!optedIn) return QueryShaping.NONE;
+        String unit = properties.getRoundNowTo();
+        return new QueryShaping(
+                properties.isFilterContext(),
+                unit != null && ROUNDING_UNITS.contains(unit) ? unit : null,
+                properties.isRequestCache(),
+                properties.isPreference() && isCustomPreference(clientId) ? clientId : null);
+    }
+
+    /**
+     * Preferences starting with "_" are Elasticsearch's own (_local, _only_nodes:...)
+     */
+    private static boolean isCustomPreference(String clientId) {
+        return clientId != null && !clientId.isBlank() && !clientId.startsWith("_");
+    }
+}
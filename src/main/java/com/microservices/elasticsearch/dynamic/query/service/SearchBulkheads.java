@@ -0,0 +1,192 @@
+package com.microservices.elasticsearch.dynamic.query.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.microservices.elasticsearch.dynamic.query.exception.BulkheadFullException;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Execution layer for Elasticsearch calls: one shared virtual-thread executor plus a
+ * semaphore bulkhead per index and traffic class, so a single hot index (or a long
+ * export) cannot take every slot. Reactive callers fail fast when the bulkhead is full;
+ * virtual-thread callers wait up to the configured acquire timeout.
+ * <p>
+ * At most max-indices indices get a bulkhead (and es.bulkhead.* meters) of their own; calls
+ * for any index seen after that share the "other" bulkhead, so made-up index names in the
+ * path neither grow memory and meters nor escape the limit.
+ */
+@Slf4j
+@Component
+public class SearchBulkheads {
+
+    public enum TrafficClass { INTERACTIVE, EXPORT }
+
+    static final String OTHER = "other";
+    private static final String UNKNOWN = "_unknown";
+
+    private final ExecutorService executor;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentHashMap<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+    private final Set<String> indices = ConcurrentHashMap.newKeySet();
+
+    @Value("${app.elasticsearch.bulkhead.interactive.max-concurrent:64}")
+    private int interactiveMaxConcurrent;
+
+    @Value("${app.elasticsearch.bulkhead.export.max-concurrent:4}")
+    private int exportMaxConcurrent;
+
+    @Value("${app.elasticsearch.bulkhead.acquire-timeout-ms:250}")
+    private long acquireTimeoutMs;
+
+    @Value("${app.elasticsearch.bulkhead.max-indices:50}")
+    private int maxIndices;
+
+    public SearchBulkheads(@Qualifier("virtualThreadExecutor") ExecutorService executor, MeterRegistry meterRegistry) {
+        this.executor = executor;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Run a blocking task on the shared virtual-thread executor inside the index bulkhead
+     */
+    public <T> CompletableFuture<T> supplyAsync(String indexName, TrafficClass trafficClass, Supplier<T> task) {
+        Bulkhead bulkhead = bulkhead(indexName, trafficClass);
+        return CompletableFuture.supplyAsync(() -> {
+            boolean acquired;
+            try {
+                acquired = bulkhead.permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BulkheadFullException("Interrupted waiting for bulkhead " + bulkhead.name);
+            }
+            if (!acquired) {
+                throw bulkhead.rejected();
+            }
+            try {
+                return task.get();
+            } finally {
+                bulkhead.permits.release();
+            }
+        }, executor);
+    }
+
+    /**
+     * Hold a permit for the lifetime of the subscription, failing fast when none is free
+     */
+    public <T> Mono<T> guard(String indexName, TrafficClass trafficClass, Mono<T> source) {
+        return Mono.defer(() -> {
+            Bulkhead bulkhead = bulkhead(indexName, trafficClass);
+            if (!bulkhead.permits.tryAcquire()) {
+                return Mono.error(bulkhead.rejected());
+            }
+            return source.doFinally(signal -> bulkhead.permits.release());
+        });
+    }
+
+    /**
+     * Hold a permit in the bulkhead of every index a call touches (an _msearch over several
+     * indices), failing fast and giving back what was taken when any of them is full
+     */
+    public <T> Mono<T> guard(Collection<String> indexNames, TrafficClass trafficClass, Mono<T> source) {
+        return Mono.defer(() -> {
+            Set<Bulkhead> distinct = new LinkedHashSet<>(); // indices past the cap share "other"
+            Set<String> names = new TreeSet<>();
+            for (String indexName : indexNames) names.add(indexName == null ? UNKNOWN : indexName);
+            for (String name : names) distinct.add(bulkhead(name, trafficClass));
+            List<Bulkhead> held = new ArrayList<>(distinct.size());
+            for (Bulkhead bulkhead : distinct) {
+                if (!bulkhead.permits.tryAcquire()) {
+                    held.forEach(b -> b.permits.release());
+                    return Mono.error(bulkhead.rejected());
+                }
+                held.add(bulkhead);
+            }
+            return source.doFinally(signal -> held.forEach(b -> b.permits.release()));
+        });
+    }
+
+    public <T> Flux<T> guard(String indexName, TrafficClass trafficClass, Flux<T> source) {
+        return Flux.defer(() -> {
+            Bulkhead bulkhead = bulkhead(indexName, trafficClass);
+            if (!bulkhead.permits.tryAcquire()) {
+                return Flux.error(bulkhead.rejected());
+            }
+            return source.doFinally(signal -> bulkhead.permits.release());
+        });
+    }
+
+    private Bulkhead bulkhead(String indexName, TrafficClass trafficClass) {
+        String index = admit(indexName == null ? UNKNOWN : indexName);
+        return bulkheads.computeIfAbsent(index + '|' + trafficClass, k -> {
+            int limit = trafficClass == TrafficClass.EXPORT ? exportMaxConcurrent : interactiveMaxConcurrent;
+            log.info("Creating bulkhead for index {} ({}) with {} permits", index, trafficClass, limit);
+            return new Bulkhead(index, trafficClass, Math.max(1, limit), meterRegistry);
+        });
+    }
+
+    /**
+     * The index itself while fewer than max-indices have a bulkhead, else {@link #OTHER}
+     */
+    private String admit(String index) {
+        if (indices.contains(index)) return index;
+        synchronized (indices) {
+            if (indices.size() >= maxIndices) return OTHER;
+            indices.add(index);
+            return index;
+        }
+    }
+
+    private static final class Bulkhead {
+        private final String name;
+        private final int limit;
+        private final Semaphore permits;
+        private final Counter rejections;
+
+        Bulkhead(String index, TrafficClass trafficClass, int limit, MeterRegistry registry) {
+            this.name = index + "/" + trafficClass.name().toLowerCase();
+            this.limit = limit;
+            this.permits = new Semaphore(limit);
+            String cls = trafficClass.name().toLowerCase();
+            Gauge.builder("es.bulkhead.active", this, b -> b.limit - b.permits.availablePermits())
+                    .description("Elasticsearch calls currently holding a bulkhead permit")
+                    .tags("index", index, "class", cls)
+                    .register(registry);
+            Gauge.builder("es.bulkhead.limit", this, b -> b.limit)
+                    .tags("index", index, "class", cls)
+                    .register(registry);
+            Gauge.builder("es.bulkhead.waiting", this, b -> b.permits.getQueueLength())
+                    .description("Virtual threads waiting for a bulkhead permit")
+                    .tags("index", index, "class", cls)
+                    .register(registry);
+            this.rejections = Counter.builder("es.bulkhead.rejected")
+                    .tags("index", index, "class", cls)
+                    .register(registry);
+        }
+
+        BulkheadFullException rejected() {
+            rejections.increment();
+            return new BulkheadFullException("Too many concurrent requests for " + name);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.microservices.elasticsearch.dynamic.query.service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.microservices.elasticsearch.dynamic.query.service.SearchMetrics.Stage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+/**
+ * Single-flight for searches: concurrent callers with the same key share one in-flight
+ * call and all receive its result. A waiter that cancels only detaches itself; the
+ * underlying call is cancelled once the last waiter is gone. The entry is removed as soon
+ * as the call terminates or is cancelled, before the result reaches the waiters, so a caller
+ * arriving while it is being delivered starts a fresh call: results are never served after
+ * completion (that is what a cache is for). Joining callers run no stages of their own and
+ * record their wait as the "coalesced" stage.
+ */
+@Slf4j
+@Component
+public class SearchCoalescer {
+
+    private final ConcurrentHashMap<String, Mono<?>> inFlight = new ConcurrentHashMap<>();
+    private final Counter requests;
+    private final Counter coalesced;
+
+    @Value("${app.elasticsearch.coalescing.enabled:true}")
+    private boolean enabled;
+
+    public SearchCoalescer(MeterRegistry meterRegistry) {
+        this.requests = Counter.builder("es.coalescing.requests")
+                .description("Searches that went through the single-flight layer")
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("es.coalescing.coalesced")
+                .description("Searches that joined an identical in-flight call instead of starting one")
+                .register(meterRegistry);
+        Gauge.builder("es.coalescing.inflight", inFlight, ConcurrentHashMap::size)
+                .description("Distinct searches currently in flight")
+                .register(meterRegistry);
+        Gauge.builder("es.coalescing.ratio", this,
+                        c -> c.requests.count() == 0 ? 0 : c.coalesced.count() / c.requests.count())
+                .description("Share of searches served by another caller's in-flight call")
+                .register(meterRegistry);
+    }
+
+    public <T> Mono<T> execute(String key, Supplier<Mono<T>> call) {
+        return execute(key, SearchMetrics.Trace.NONE, call);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> execute(String key, SearchMetrics.Trace trace, Supplier<Mono<T>> call) {
+        if (!enabled) return Mono.defer(call);
+        return Mono.defer(() -> {
+            requests.increment();
+            Mono<?>[] created = new Mono<?>[1];
+            Mono<T> shared = (Mono<T>) inFlight.computeIfAbsent(key, k -> created[0] = share(k, call));
+            if (shared == created[0]) return shared;
+            coalesced.increment();
+            log.debug("Joined in-flight search {}", key);
+            long start = System.nanoTime();
+            return shared.doFinally(signal -> trace.record(Stage.COALESCED, System.nanoTime() - start));
+        });
+    }
+
+    private <T> Mono<T> share(String key, Supplier<Mono<T>> call) {
+        Mono<?>[] self = new Mono<?>[1];
+        // upstream of publish(): runs before the signal reaches any waiter
+        Mono<T> shared = Mono.defer(call)
+                .doOnTerminate(() -> inFlight.remove(key, self[0]))
+                .doOnCancel(() -> inFlight.remove(key, self[0]))
+                .flux()
+                .publish()
+                .refCount(1)
+                .singleOrEmpty();
+        self[0] = shared;
+        return shared;
+    }
+}
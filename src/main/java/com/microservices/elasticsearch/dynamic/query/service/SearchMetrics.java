@@ -0,0 +1,226 @@
+package com.microservices.elasticsearch.dynamic.query.service;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Per-stage timings of the search pipeline. A {@link Trace} is opened per HTTP request
+ * (see {@code SearchMetricsWebFilter}) and handed down to the controller and service, which time
+ * each stage against it; the filter adds encoding time, bytes written and the
+ * took-versus-overhead split when the response completes.
+ * <p>
+ * Meters: es.search.stage (timer, tag stage), es.search.took and es.search.overhead (timers),
+ * es.search.hits.returned and es.search.bytes.returned (counters), all tagged endpoint,
+ * index and mapping. Index and mapping values are capped per tag; once the cap is reached
+ * new values are reported as "other".
+ */
+@Component
+@RequiredArgsConstructor
+public class SearchMetrics {
+
+    public static final String TRACE_ATTRIBUTE = "searchMetrics.trace";
+
+    public enum Stage {
+        NORMALIZE, TRANSFORM, COMPILE, ELASTICSEARCH, CONVERT, ENCODE,
+        /** waiting on another caller's identical in-flight search instead of running the stages above */
+        COALESCED;
+
+        final String tag = name().toLowerCase(Locale.ROOT);
+    }
+
+    private static final String NO_VALUE = "none";
+    private static final String OTHER = "other";
+
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentHashMap<String, Set<String>> tagValues = new ConcurrentHashMap<>();
+
+    @Value("${app.elasticsearch.metrics.max-tag-values:50}")
+    private int maxTagValues;
+
+    @Value("${app.elasticsearch.metrics.percentile-histogram:true}")
+    private boolean percentileHistogram;
+
+    public Trace trace(String endpoint, String indexName, String mappingName) {
+        return new Trace(this, endpoint, indexName, mappingName);
+    }
+
+    /**
+     * Keep at most max-tag-values distinct values per tag key
+     */
+    String limit(String key, String value) {
+        if (value == null || value.isBlank()) return NO_VALUE;
+        Set<String> seen = tagValues.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet());
+        if (seen.contains(value)) return value;
+        synchronized (seen) {
+            if (seen.size() >= maxTagValues) return OTHER;
+            seen.add(value);
+            return value;
+        }
+    }
+
+    private Timer timer(String name, String description, Tags tags) {
+        return Timer.builder(name)
+                .description(description)
+                .tags(tags)
+                .publishPercentileHistogram(percentileHistogram)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
+    private Counter counter(String name, String description, String baseUnit, Tags tags) {
+        return Counter.builder(name).description(description).baseUnit(baseUnit).tags(tags).register(meterRegistry);
+    }
+
+    /**
+     * Timings of one request. Stages may run on different threads; fields are written
+     * by whichever stage learns them (the index, for example, is only known after transform).
+     */
+    public static final class Trace {
+
+        /**
+         * Records nothing; for callers outside an instrumented request
+         */
+        public static final Trace NONE = new Trace(null, null, null, null);
+
+        private final SearchMetrics metrics;
+        private final String endpoint;
+        private final String mappingName;
+        private final long startNanos = System.nanoTime();
+        private volatile String indexName;
+        private volatile Tags tags;
+        private volatile long tookMillis = -1;
+        private volatile long hits;
+        private volatile Object query;
+
+        private Trace(SearchMetrics metrics, String endpoint, String indexName, String mappingName) {
+            this.metrics = metrics;
+            this.endpoint = endpoint;
+            this.indexName = indexName;
+            this.mappingName = mappingName;
+        }
+
+        public Trace index(String indexName) {
+            if (indexName != null && !indexName.equals(this.indexName)) {
+                this.indexName = indexName;
+                this.tags = null;
+            }
+            return this;
+        }
+
+        public <T> T time(Stage stage, Supplier<T> task) {
+            if (metrics == null) return task.get();
+            long start = System.nanoTime();
+            try {
+                return task.get();
+            } finally {
+                record(stage, System.nanoTime() - start);
+            }
+        }
+
+        public void record(Stage stage, long nanos) {
+            if (metrics == null) return;
+            metrics.timer("es.search.stage", "Time spent in one stage of the search pipeline",
+                    tags().and("stage", stage.tag)).record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * The took reported by Elasticsearch for the search this request actually executed
+         */
+        public void took(Long tookMillis) {
+            if (metrics == null || tookMillis == null) return;
+            this.tookMillis = tookMillis;
+            metrics.timer("es.search.took", "Search time reported by Elasticsearch", tags())
+                    .record(Duration.ofMillis(tookMillis));
+        }
+
+        public void hits(long hits) {
+            if (metrics == null) return;
+            this.hits += hits;
+            metrics.counter("es.search.hits.returned", "Hits returned to clients", "hits", tags()).increment(hits);
+        }
+
+        public void bytes(long bytes) {
+            if (metrics == null || bytes <= 0) return;
+            metrics.counter("es.search.bytes.returned", "Response bytes written to clients", "bytes", tags())
+                    .increment(bytes);
+        }
+
+        /**
+         * The search this request runs, kept by reference for the query log; it is only
+         * serialized if the request ends up being logged
+         */
+        public void query(Object query) {
+            if (metrics == null || query == null) return;
+            this.query = query;
+        }
+
+        public String endpoint() {
+            return endpoint;
+        }
+
+        public String indexName() {
+            return indexName;
+        }
+
+        public String mappingName() {
+            return mappingName;
+        }
+
+        public long elapsedNanos() {
+            return System.nanoTime() - startNanos;
+        }
+
+        /**
+         * Elasticsearch's took, or -1 when the request executed no search of its own
+         */
+        public long tookMillis() {
+            return tookMillis;
+        }
+
+        public long hitCount() {
+            return hits;
+        }
+
+        public Object query() {
+            return query;
+        }
+
+        /**
+         * Request finished: whatever was not Elasticsearch's own took is service overhead
+         * (transform, compile, transport, conversion, encoding and queueing)
+         */
+        public void complete() {
+            if (metrics == null) return;
+            long took = tookMillis;
+            if (took < 0) return; // served without a search of its own (cache hit, coalesced, no search)
+            long overhead = System.nanoTime() - startNanos - Duration.ofMillis(took).toNanos();
+            metrics.timer("es.search.overhead", "Request time not accounted for by Elasticsearch took", tags())
+                    .record(Math.max(0, overhead), TimeUnit.NANOSECONDS);
+        }
+
+        private Tags tags() {
+            Tags current = tags;
+            if (current == null) {
+                current = Tags.of(
+                        "endpoint", metrics.limit("endpoint", endpoint),
+                        "index", metrics.limit("index", indexName),
+                        "mapping", metrics.limit("mapping", mappingName));
+                tags = current;
+            }
+            return current;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.microservices.elasticsearch.dynamic.query.service;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microservices.elasticsearch.dynamic.query.dto.HitEnvelope;
+import com.microservices.elasticsearch.dynamic.query.dto.PaginationRequest;
+import com.microservices.elasticsearch.dynamic.query.dto.SearchResult;
+
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.elasticsearch.core.search.ResponseBody;
+import co.elastic.clients.elasticsearch.core.search.TotalHits;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Turns Elasticsearch search responses (single searches and _msearch items) into
+ * {@link SearchResult}s: one {@link HitEnvelope} per hit with a _source, paging fields
+ * and flattened aggregations.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SearchResponseConverter {
+
+    private final ElasticsearchAggregationCompiler aggregationCompiler;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    public <T> SearchResult<T> convert(ResponseBody<?> response,
+                                       Class<T> targetClass,
+                                       PaginationRequest pagination) {
+        return convert(response, targetClass, pagination, HitCount.EXACT);
+    }
+
+    /**
+     * With a probing hit count the search asked for one hit more than the page: that hit only
+     * tells hasMore and is dropped. totalHits is null when hits were not counted, and
+     * totalHitsRelation says whether it is exact ("eq") or a lower bound ("gte").
+     */
+    public <T> SearchResult<T> convert(ResponseBody<?> response,
+                                       Class<T> targetClass,
+                                       PaginationRequest pagination,
+                                       HitCount hitCount) {
+        try {
+            int pageSize = pagination != null && pagination.getSize() != null ? pagination.getSize() : 10;
+            int from = pagination != null && pagination.getFrom() != null ? pagination.getFrom() : 0;
+            List<? extends Hit<?>> hits = response.hits().hits();
+            boolean probed = hitCount.probes() && pageSize != 0;
+            boolean moreProbed = probed && hits.size() > pageSize;
+            if (moreProbed) hits = hits.subList(0, pageSize);
+
+            List<HitEnvelope<T>> wrapped = hits.stream()
+                    .map(hit -> {
+                        try {
+                            T data = convertSource(hit.source(), targetClass);
+                            if (data == null) return null; // skip if no _source
+
+                            return HitEnvelope.<T>builder()
+                                    .id(hit.id())
+                                    .score(hit.score()) // may be null if scores aren’t tracked
+                                    .data(data)
+                                    .build();
+
+                        } catch (Exception e) {
+                            log.error("Error converting hit to target class {}", targetClass, e);
+                            return null;
+                        }
+                    })
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+
+            int currentPage = pageSize == 0 ? 0 : from / pageSize;
+            TotalHits total = response.hits().total();
+            Long totalHits = total != null ? Long.valueOf(total.value()) : hitCount.probes() ? null : 0L;
+            boolean hasMore = probed ? moreProbed
+                    : pageSize != 0 && wrapped.size() == pageSize && totalHits != null && from + pageSize < totalHits;
+
+            return SearchResult.<T>builder().success(Boolean.TRUE)
+                    .results(wrapped)
+                    .totalHits(totalHits)
+                    .totalHitsRelation(total == null ? null : total.relation().jsonValue())
+                    .took(response.took())
+                    .aggregations(response.aggregations().isEmpty() ? null : aggregationCompiler.flatten(response.aggregations()))
+                    .hasMore(hasMore)
+                    .currentPage(currentPage)
+                    .pageSize(pageSize)
+                    .build();
+        } catch (Exception e) {
+            log.error("Error converting Elasticsearch response", e);
+            throw new RuntimeException("Response conversion failed", e);
+        }
+    }
+
+    /**
+     * A _source already read as the target type is passed through; anything else is converted
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T convertSource(Object src, Class<T> targetClass) {
+        if (src == null) return null;
+        if (targetClass.isInstance(src)) {
+            return (T) src;
+        }
+        return objectMapper.convertValue(src, targetClass);
+    }
+}
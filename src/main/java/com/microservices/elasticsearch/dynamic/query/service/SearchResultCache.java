@@ -0,0 +1,181 @@
+package com.microservices.elasticsearch.dynamic.query.service;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.microservices.elasticsearch.dynamic.query.config.SearchCacheProperties;
+import com.microservices.elasticsearch.dynamic.query.dto.SearchResult;
+import com.microservices.elasticsearch.dynamic.query.util.CountingOutputStream;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+/**
+ * In-process cache of search results keyed by query fingerprint. Caffeine bounds it by
+ * estimated bytes and admits entries by access frequency (W-TinyLFU), so one-off queries
+ * do not push out hot dashboard queries. Entries are fresh for the index TTL; with
+ * stale-while-revalidate they are kept a little longer and served stale while a single
+ * background refresh runs. Statistics are published as cache.* meters (cache=es.search.results).
+ * <p>
+ * Invalidation bumps a generation (striped by index name) that every load captures when it
+ * starts, so a load or refresh still in flight at that moment does not store its result
+ * afterwards. Callers get their own copy of a cached {@link SearchResult}.
+ */
+@Slf4j
+@Component
+public class SearchResultCache {
+
+    public static final String ENDPOINT_SEARCH = "search";
+    public static final String ENDPOINT_SEARCH_VT = "search-vt";
+    public static final String ENDPOINT_V1_SEARCH = "v1-search";
+
+    private static final int GENERATION_STRIPES = 64;
+
+    private record Entry(Object value, String indexName, long freshUntilNanos, long expireAfterNanos, int weight) {
+        boolean fresh() {
+            return System.nanoTime() - freshUntilNanos < 0;
+        }
+    }
+
+    private final SearchCacheProperties properties;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Cache<String, Entry> cache;
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    public SearchResultCache(SearchCacheProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(properties.getMaxBytes())
+                .weigher((String key, Entry entry) -> entry.weight())
+                .expireAfter(new Expiry<String, Entry>() {
+                    @Override
+                    public long expireAfterCreate(String key, Entry entry, long currentTime) {
+                        return entry.expireAfterNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Entry entry, long currentTime, long currentDuration) {
+                        return entry.expireAfterNanos();
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Entry entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "es.search.results");
+        Gauge.builder("es.search.results.weight", cache,
+                        c -> c.policy().eviction().map(e -> e.weightedSize().orElse(0L)).orElse(0L))
+                .description("Estimated bytes held by the search result cache")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Whether results for this endpoint (and mapping, for the v1 endpoint) should be cached
+     */
+    public boolean isEnabledFor(String endpoint, String mappingName) {
+        if (!properties.isEnabled()) return false;
+        return properties.getEndpoints().contains(endpoint)
+                || (mappingName != null && properties.getMappings().contains(mappingName));
+    }
+
+    /**
+     * Serve from cache or load (and store) via the loader; stale entries trigger one refresh
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> get(String indexName, String key, Supplier<Mono<T>> loader) {
+        return Mono.defer(() -> {
+            Entry entry = cache.getIfPresent(key);
+            if (entry == null) {
+                return load(indexName, key, loader);
+            }
+            if (!entry.fresh()) {
+                refreshInBackground(indexName, key, loader);
+            }
+            return Mono.just((T) copy(entry.value()));
+        });
+    }
+
+    public void invalidateIndex(String indexName) {
+        generations.incrementAndGet(stripe(indexName));
+        cache.asMap().values().removeIf(e -> indexName.equals(e.indexName()));
+        log.info("Invalidated cached search results for index {}", indexName);
+    }
+
+    public void invalidateAll() {
+        for (int i = 0; i < GENERATION_STRIPES; i++) generations.incrementAndGet(i);
+        cache.invalidateAll();
+        log.info("Invalidated all cached search results");
+    }
+
+    private <T> Mono<T> load(String indexName, String key, Supplier<Mono<T>> loader) {
+        return Mono.defer(() -> {
+            long generation = generations.get(stripe(indexName));
+            return Mono.defer(loader).doOnNext(value -> store(indexName, key, value, generation));
+        });
+    }
+
+    private <T> void refreshInBackground(String indexName, String key, Supplier<Mono<T>> loader) {
+        if (!refreshing.add(key)) return;
+        load(indexName, key, loader)
+                .doFinally(signal -> refreshing.remove(key))
+                .subscribe(v -> log.debug("Refreshed stale search result {}", key),
+                        e -> log.warn("Background refresh failed for index {}: {}", indexName, e.getMessage()));
+    }
+
+    /**
+     * Stores unless the index was invalidated since the load started (checked again after the
+     * put, in case the invalidation ran in between)
+     */
+    private void store(String indexName, String key, Object value, long generation) {
+        long ttl = properties.ttlFor(indexName).toNanos();
+        if (ttl <= 0) return;
+        int stripe = stripe(indexName);
+        if (generations.get(stripe) != generation) {
+            log.debug("Dropped search result {} loaded before an invalidation", key);
+            return;
+        }
+        long expireAfter = ttl + Math.max(0, properties.getStaleWhileRevalidate().toNanos());
+        Entry entry = new Entry(copy(value), indexName, System.nanoTime() + ttl, expireAfter, weigh(value));
+        cache.put(key, entry);
+        if (generations.get(stripe) != generation) {
+            cache.asMap().remove(key, entry);
+        }
+    }
+
+    private static int stripe(String indexName) {
+        return (indexName == null ? 0 : indexName.hashCode()) & (GENERATION_STRIPES - 1);
+    }
+
+    private static Object copy(Object value) {
+        return value instanceof SearchResult<?> result ? result.copy() : value;
+    }
+
+    /**
+     * Serialized JSON size is a good proxy for the heap held by a result
+     */
+    private int weigh(Object value) {
+        CountingOutputStream counter = new CountingOutputStream();
+        try {
+            objectMapper.writeValue(counter, value);
+        } catch (Exception e) {
+            return Integer.MAX_VALUE; // unmeasurable: effectively never admitted
+        }
+        return (int) Math.min(Integer.MAX_VALUE, counter.getCount() + 64);
+    }
+}
@@ -0,0 +1,226 @@
+package com.microservices.elasticsearch.dynamic.query.service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.microservices.elasticsearch.dynamic.query.dto.AggregationRequest;
+import com.microservices.elasticsearch.dynamic.query.dto.ElasticsearchQueryRequest;
+import com.microservices.elasticsearch.dynamic.query.exception.InvalidOperatorException;
+import com.microservices.elasticsearch.dynamic.query.exception.InvalidValueException;
+
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregate;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregation;
+import co.elastic.clients.elasticsearch._types.aggregations.CompositeAggregate;
+import co.elastic.clients.elasticsearch._types.aggregations.CompositeAggregationSource;
+import co.elastic.clients.elasticsearch._types.aggregations.CompositeBucket;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Returns every bucket of a terms aggregation, however many distinct values the field has.
+ * The field's cardinality is estimated first: up to the configured limit the terms are split
+ * into include partitions that run concurrently, above it (or when asked) a composite
+ * aggregation is paged with after_key. Either way buckets are emitted as they arrive,
+ * in the same {key, doc_count, ...sub-aggregations} shape as regular aggregation results.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TermsAggregationStreamer {
+
+    public enum Mode {
+        AUTO, COMPOSITE, PARTITIONS;
+
+        public static Mode parse(String value) {
+            try {
+                return value == null ? AUTO : valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new InvalidValueException("Unsupported terms mode: " + value);
+            }
+        }
+    }
+
+    private static final String CARDINALITY = "cardinality";
+
+    private final ElasticsearchAsyncClient elasticsearchAsyncClient;
+    private final ElasticsearchQueryCompiler queryCompiler;
+    private final ElasticsearchAggregationCompiler aggregationCompiler;
+
+    @Value("${app.elasticsearch.terms.partition-max-cardinality:50000}")
+    private long partitionMaxCardinality;
+
+    @Value("${app.elasticsearch.terms.buckets-per-partition:1000}")
+    private int bucketsPerPartition;
+
+    @Value("${app.elasticsearch.terms.max-concurrent-partitions:4}")
+    private int maxConcurrentPartitions;
+
+    @Value("${app.elasticsearch.terms.composite-page-size:1000}")
+    private int compositePageSize;
+
+    @Value("${app.elasticsearch.terms.precision-threshold:3000}")
+    private int precisionThreshold;
+
+    // ES rejects responses above search.max_buckets (65536 by default)
+    @Value("${app.elasticsearch.terms.max-partition-size:65536}")
+    private int maxPartitionSize;
+
+    public Flux<Map<String, Object>> stream(String indexName, ElasticsearchQueryRequest queryRequest, Mode mode) {
+        return Mono.fromCallable(() -> termsAggregation(queryRequest))
+                .flatMapMany(terms -> {
+                    Query query = queryCompiler.compile(queryRequest.getQueryStructure().getQuery());
+                    boolean nested = terms.getNestedPath() != null && !terms.getNestedPath().isEmpty();
+                    if (mode == Mode.COMPOSITE && nested) {
+                        // composite cannot sit under a nested aggregation
+                        throw new InvalidValueException("Composite mode is not supported for nested_path aggregations");
+                    }
+                    if (mode == Mode.COMPOSITE) {
+                        return composite(indexName, query, terms);
+                    }
+                    return estimateCardinality(indexName, query, terms).flatMapMany(cardinality -> {
+                        if (mode == Mode.PARTITIONS || nested || cardinality <= partitionMaxCardinality) {
+                            int partitions = (int) Math.max(1, (cardinality + bucketsPerPartition - 1) / bucketsPerPartition);
+                            log.info("Terms on {}.{}: ~{} values, {} partition(s)",
+                                    indexName, terms.getField(), cardinality, partitions);
+                            return partitions(indexName, query, terms, partitions, cardinality);
+                        }
+                        log.info("Terms on {}.{}: ~{} values, composite paging", indexName, terms.getField(), cardinality);
+                        return composite(indexName, query, terms);
+                    });
+                });
+    }
+
+    private static AggregationRequest termsAggregation(ElasticsearchQueryRequest queryRequest) {
+        List<AggregationRequest> aggregations = queryRequest.getQueryAggregations() != null
+                ? queryRequest.getQueryAggregations().getAggregations() : null;
+        if (aggregations == null || aggregations.size() != 1) {
+            throw new InvalidValueException("Exactly one terms aggregation is required");
+        }
+        AggregationRequest terms = aggregations.get(0);
+        if (!"terms".equals(terms.getType())) {
+            throw new InvalidOperatorException("Unsupported aggregation type for terms streaming: " + terms.getType());
+        }
+        if (terms.getName() == null || terms.getName().isBlank() || terms.getField() == null) {
+            throw new InvalidValueException("Terms aggregation requires a name and a field");
+        }
+        return terms;
+    }
+
+    private Mono<Long> estimateCardinality(String indexName, Query query, AggregationRequest terms) {
+        Aggregation cardinality = nestedIfNeeded(terms, CARDINALITY, Aggregation.of(a -> a
+                .cardinality(c -> c.field(terms.getField()).precisionThreshold(precisionThreshold))));
+        return search(indexName, query, CARDINALITY, cardinality)
+                .map(response -> unwrap(CARDINALITY, response.aggregations().get(CARDINALITY)).cardinality().value());
+    }
+
+    /**
+     * Disjoint include partitions run concurrently. A partition whose terms did not all fit
+     * (sum_other_doc_count &gt; 0) is re-run with twice the size, up to max-partition-size.
+     */
+    private Flux<Map<String, Object>> partitions(String indexName, Query query, AggregationRequest terms,
+                                                 int partitions, long cardinality) {
+        // hashing spreads values unevenly and the estimate is approximate: leave headroom
+        int initialSize = (int) Math.min(maxPartitionSize, Math.max(10, 2 * (cardinality / partitions + 1)));
+        return Flux.range(0, partitions)
+                .flatMap(partition -> partition(indexName, query, terms, partition, partitions, initialSize),
+                        Math.max(1, maxConcurrentPartitions))
+                .flatMapIterable(buckets -> buckets);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Mono<List<Map<String, Object>>> partition(String indexName, Query query, AggregationRequest terms,
+                                                      int partition, int partitions, int size) {
+        Map<String, Aggregation> subs = aggregationCompiler.compile(terms.getSubAggregations());
+        Aggregation aggregation = nestedIfNeeded(terms, terms.getName(), Aggregation.of(a -> {
+            var container = a.terms(t -> t
+                    .field(terms.getField())
+                    .size(size)
+                    .include(i -> i.partition(p -> p.partition(partition).numPartitions(partitions))));
+            return subs.isEmpty() ? container : container.aggregations(subs);
+        }));
+        return search(indexName, query, terms.getName(), aggregation).flatMap(response -> {
+            Aggregate aggregate = response.aggregations().get(terms.getName());
+            Aggregate inner = unwrap(terms.getName(), aggregate);
+            Long otherDocs = inner.isSterms() ? inner.sterms().sumOtherDocCount()
+                    : inner.isLterms() ? inner.lterms().sumOtherDocCount()
+                    : inner.isDterms() ? inner.dterms().sumOtherDocCount() : null;
+            if (otherDocs != null && otherDocs > 0) {
+                if (size >= maxPartitionSize) {
+                    return Mono.error(new IllegalStateException("Terms partition " + partition + " of " + partitions
+                            + " exceeds " + maxPartitionSize + " buckets"));
+                }
+                log.debug("Terms partition {}/{} truncated at size {}, retrying", partition, partitions, size);
+                return partition(indexName, query, terms, partition, partitions, Math.min(maxPartitionSize, size * 2));
+            }
+            Object buckets = aggregationCompiler.flatten(Map.of(terms.getName(), aggregate)).get(terms.getName());
+            return Mono.just(buckets instanceof List<?> list ? (List<Map<String, Object>>) list : List.of());
+        });
+    }
+
+    /**
+     * Pages a composite aggregation with after_key, one request at a time as buckets are consumed
+     */
+    private Flux<Map<String, Object>> composite(String indexName, Query query, AggregationRequest terms) {
+        Map<String, Aggregation> subs = aggregationCompiler.compile(terms.getSubAggregations());
+        return compositePage(indexName, query, terms, subs, null)
+                .expand(page -> page.afterKey() == null || page.buckets().array().isEmpty()
+                        ? Mono.empty()
+                        : compositePage(indexName, query, terms, subs, page.afterKey()))
+                .concatMapIterable(page -> page.buckets().array().stream()
+                        .map(bucket -> compositeRow(terms.getName(), bucket))
+                        .toList());
+    }
+
+    private Mono<CompositeAggregate> compositePage(String indexName, Query query, AggregationRequest terms,
+                                                   Map<String, Aggregation> subs, Map<String, FieldValue> after) {
+        Aggregation aggregation = Aggregation.of(a -> {
+            var container = a.composite(c -> {
+                c.size(compositePageSize)
+                        .sources(Map.of(terms.getName(),
+                                CompositeAggregationSource.of(s -> s.terms(t -> t.field(terms.getField())))));
+                return after == null ? c : c.after(after);
+            });
+            return subs.isEmpty() ? container : container.aggregations(subs);
+        });
+        return search(indexName, query, terms.getName(), aggregation)
+                .map(response -> response.aggregations().get(terms.getName()).composite());
+    }
+
+    private Map<String, Object> compositeRow(String name, CompositeBucket bucket) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        FieldValue key = bucket.key().get(name);
+        row.put("key", key != null ? key._get() : null);
+        row.put("doc_count", bucket.docCount());
+        row.putAll(aggregationCompiler.flatten(bucket.aggregations()));
+        return row;
+    }
+
+    private Mono<SearchResponse<Void>> search(String indexName, Query query, String name, Aggregation aggregation) {
+        return Mono.fromFuture(() -> elasticsearchAsyncClient.search(s -> s
+                .index(indexName)
+                .size(0)
+                .trackTotalHits(t -> t.enabled(false))
+                .query(query)
+                .aggregations(name, aggregation), Void.class));
+    }
+
+    private static Aggregation nestedIfNeeded(AggregationRequest terms, String name, Aggregation aggregation) {
+        if (terms.getNestedPath() == null || terms.getNestedPath().isEmpty()) return aggregation;
+        return Aggregation.of(a -> a.nested(n -> n.path(terms.getNestedPath())).aggregations(name, aggregation));
+    }
+
+    private static Aggregate unwrap(String name, Aggregate aggregate) {
+        return aggregate.isNested() ? aggregate.nested().aggregations().get(name) : aggregate;
+    }
+}
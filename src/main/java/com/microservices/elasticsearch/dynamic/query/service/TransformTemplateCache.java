@@ -0,0 +1,99 @@
+package com.microservices.elasticsearch.dynamic.query.service;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.microservices.elasticsearch.dynamic.query.dto.QueryStructureRequest;
+import com.microservices.elasticsearch.dynamic.query.util.CompiledMapping;
+import com.microservices.elasticsearch.dynamic.query.util.FinalQueryTransformer;
+import com.microservices.elasticsearch.dynamic.query.util.QueryTemplate;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Transformed query structures keyed by (mapping, UI query shape). The UI sends few distinct
+ * shapes with varying values, so a repeat shape only extracts and binds its values instead of
+ * rebuilding the structure. Templates built against an older compiled plan (before a mapping
+ * reload) are rebuilt on first use.
+ * <p>
+ * Meters: cache.* (cache=es.transform.templates) for hit ratio and size, and
+ * es.transform.template timers tagged mapping, shape (a hash of the shape key, capped like
+ * other tags) and result (hit or miss).
+ */
+@Component
+public class TransformTemplateCache {
+
+    private record Key(String mappingName, String shape) {}
+
+    private record Entry(CompiledMapping plan, QueryTemplate template, Timer hits) {}
+
+    private final Cache<Key, Entry> cache;
+    private final boolean enabled;
+    private final SearchMetrics searchMetrics;
+    private final MeterRegistry meterRegistry;
+
+    public TransformTemplateCache(@Value("${app.elasticsearch.transform-templates.enabled:true}") boolean enabled,
+                                  @Value("${app.elasticsearch.transform-templates.max-size:1000}") long maxSize,
+                                  SearchMetrics searchMetrics,
+                                  MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        this.searchMetrics = searchMetrics;
+        this.meterRegistry = meterRegistry;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "es.transform.templates");
+    }
+
+    /**
+     * Same result as {@link FinalQueryTransformer#toQueryStructure(JsonNode, CompiledMapping, int, int, String)}
+     */
+    public QueryStructureRequest toQueryStructure(JsonNode input, CompiledMapping plan,
+                                                  int from, int size, String sortOrder) {
+        if (!enabled) {
+            return FinalQueryTransformer.toQueryStructure(input, plan, from, size, sortOrder);
+        }
+        long start = System.nanoTime();
+        QueryTemplate.Shape shape = FinalQueryTransformer.shape(input, plan);
+        Key key = new Key(plan.mappingName(), shape.key());
+        Entry entry = cache.getIfPresent(key);
+        Timer timer;
+        if (entry != null && entry.plan() == plan) {
+            timer = entry.hits();
+        } else {
+            String shapeId = Integer.toHexString(shape.key().hashCode());
+            entry = new Entry(plan, FinalQueryTransformer.template(input, plan), timer(plan, shapeId, "hit"));
+            cache.put(key, entry);
+            timer = timer(plan, shapeId, "miss");
+        }
+        QueryStructureRequest request = FinalQueryTransformer.toQueryStructure(
+                entry.template().bind(shape.values()), from, size, sortOrder);
+        timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return request;
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    private Timer timer(CompiledMapping plan, String shapeId, String result) {
+        return Timer.builder("es.transform.template")
+                .description("Time to turn a UI query into a query structure via the template cache")
+                .tag("mapping", searchMetrics.limit("mapping", plan.mappingName()))
+                .tag("shape", searchMetrics.limit("shape", shapeId))
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -1,38 +1,197 @@
 package com.microservices.elasticsearch.dynamic.query.service;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.springframework.stereotype.Component;
 
+import com.microservices.elasticsearch.dynamic.query.util.CompiledMapping;
+import com.microservices.elasticsearch.dynamic.query.util.WorkflowMappingCompiler;
+
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Workflow mapping rows and their compiled plans, held as one immutable {@link Snapshot}
+ * behind an atomic reference. Readers never lock and always see a complete snapshot;
+ * writers build the next snapshot off to the side and swap it in.
+ */
 @Slf4j
 @Component
 public class WorkflowMappingsCache {
 
-    private final ConcurrentHashMap<String, Map<String, Object>> cache = new ConcurrentHashMap<>();
+    /**
+     * One consistent version of all mappings
+     *
+     * @param loaded    false until the first load or change was applied, even if it found no rows
+     * @param revisions per mapping, the store's change marker (updated_at) the row was loaded at
+     */
+    public record Snapshot(long version, boolean loaded, Instant loadedAt, Map<String, Map<String, Object>> rows,
+                           Map<String, CompiledMapping> plans, Map<String, String> revisions) {
+
+        static final Snapshot EMPTY = new Snapshot(0, false, Instant.EPOCH, Map.of(), Map.of(), Map.of());
+    }
+
+    /**
+     * A row to add or replace, with the revision it was read at
+     */
+    public record Change(String mappingName, Map<String, Object> row, String revision) {}
 
+    /**
+     * What applying a set of changes did
+     *
+     * @param failed changed rows that did not compile; an existing mapping keeps its previous version
+     */
+    public record Applied(long version, int added, int updated, int removed, Map<String, String> failed) {}
+
+    /**
+     * Told after each row is compiled; may be called from several threads at once
+     */
+    @FunctionalInterface
+    public interface Progress {
+        Progress NONE = (done, total) -> {};
+
+        void compiled(int done, int total);
+    }
+
+    private record Compiled(Change change, CompiledMapping plan, String error) {}
+
+    private final AtomicReference<Snapshot> current = new AtomicReference<>(Snapshot.EMPTY);
+    // serializes publishing only; compilation runs before the lock is taken
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    /**
+     * Store the raw row and compile its transform plan. A row that fails to compile
+     * is still kept (so lookups can tell "missing" from "broken") but has no plan.
+     */
     public void put(String mappingName, Map<String, Object> row) {
         if (mappingName == null || mappingName.isBlank() || row == null) return;
-        cache.put(mappingName, row);
+        apply(List.of(new Change(mappingName, row, null)), List.of());
+    }
+
+    public Applied apply(Collection<Change> changes, Collection<String> removed) {
+        return apply(changes, removed, Progress.NONE);
+    }
+
+    /**
+     * Compiles the changed rows in parallel and publishes a new snapshot with them added or
+     * replaced and {@code removed} dropped. A changed row that fails to compile replaces nothing:
+     * the mapping keeps its previous version, or is stored without a plan if it is new. Writers
+     * are serialized; readers keep using the old snapshot until the swap.
+     */
+    public Applied apply(Collection<Change> changes, Collection<String> removed, Progress progress) {
+        List<Compiled> compiled = compile(changes, progress);
+        writeLock.lock();
+        try {
+            return publish(compiled, removed);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static List<Compiled> compile(Collection<Change> changes, Progress progress) {
+        List<Change> valid = changes.stream()
+                .filter(c -> c.mappingName() != null && !c.mappingName().isBlank() && c.row() != null)
+                .toList();
+        int total = valid.size();
+        AtomicInteger done = new AtomicInteger();
+        return (total > 1 ? valid.parallelStream() : valid.stream())
+                .map(change -> {
+                    Compiled result;
+                    try {
+                        result = new Compiled(change, WorkflowMappingCompiler.compile(change.mappingName(), change.row()), null);
+                    } catch (RuntimeException e) {
+                        log.warn("Failed to compile workflow mapping {}: {}", change.mappingName(), e.getMessage());
+                        result = new Compiled(change, null, String.valueOf(e.getMessage()));
+                    }
+                    progress.compiled(done.incrementAndGet(), total);
+                    return result;
+                })
+                .toList();
+    }
+
+    private Applied publish(List<Compiled> compiled, Collection<String> removed) {
+        Snapshot base = current.get();
+        Map<String, Map<String, Object>> rows = new HashMap<>(base.rows());
+        Map<String, CompiledMapping> plans = new HashMap<>(base.plans());
+        Map<String, String> revisions = new HashMap<>(base.revisions());
+        Map<String, String> failed = new HashMap<>();
+        int added = 0;
+        int updated = 0;
+        int dropped = 0;
+
+        for (Compiled result : compiled) {
+            Change change = result.change();
+            String name = change.mappingName();
+            boolean exists = rows.containsKey(name);
+            CompiledMapping plan = result.plan();
+            if (result.error() != null) {
+                failed.put(name, result.error());
+                if (exists && plans.containsKey(name)) continue;
+            }
+            // not Map.copyOf: SQLite NULL columns are null values
+            rows.put(name, Collections.unmodifiableMap(new HashMap<>(change.row())));
+            if (plan != null) plans.put(name, plan); else plans.remove(name);
+            if (change.revision() != null) revisions.put(name, change.revision()); else revisions.remove(name);
+            if (exists) updated++; else added++;
+        }
+        for (String name : removed) {
+            if (rows.remove(name) != null) dropped++;
+            plans.remove(name);
+            revisions.remove(name);
+        }
+
+        if (added == 0 && updated == 0 && dropped == 0) {
+            if (!base.loaded()) {
+                current.set(new Snapshot(base.version(), true, Instant.now(), base.rows(), base.plans(), base.revisions()));
+            }
+            return new Applied(base.version(), 0, 0, 0, Map.copyOf(failed));
+        }
+        Snapshot next = new Snapshot(base.version() + 1, true, Instant.now(),
+                Collections.unmodifiableMap(rows), Map.copyOf(plans), Map.copyOf(revisions));
+        current.set(next);
+        return new Applied(next.version(), added, updated, dropped, Map.copyOf(failed));
     }
 
     public Map<String, Object> get(String mappingName) {
-        return cache.get(mappingName);
+        return mappingName == null ? null : current.get().rows().get(mappingName);
+    }
+
+    /**
+     * Compiled transform plan for the mapping, or null if absent or not compilable.
+     */
+    public CompiledMapping getPlan(String mappingName) {
+        return mappingName == null ? null : current.get().plans().get(mappingName);
+    }
+
+    /**
+     * The current version; stays consistent however many reloads happen while it is in use
+     */
+    public Snapshot current() {
+        return current.get();
     }
 
     public Map<String, Map<String, Object>> snapshot() {
-        return Collections.unmodifiableMap(cache);
+        return current.get().rows();
     }
 
     public int size() {
-        return cache.size();
+        return current.get().rows().size();
     }
 
     public void clear() {
-        cache.clear();
+        writeLock.lock();
+        try {
+            Snapshot base = current.get();
+            current.set(new Snapshot(base.version() + 1, true, Instant.now(), Map.of(), Map.of(), Map.of()));
+        } finally {
+            writeLock.unlock();
+        }
     }
 }
-
@@ -0,0 +1,184 @@
+package com.microservices.elasticsearch.dynamic.query.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Brings {@link WorkflowMappingsCache} up to date with the mappings store. An incremental
+ * reload compares each row's updated_at with the revision held in the current snapshot and
+ * fetches and compiles only the rows that differ; a full reload recompiles everything.
+ * Either way the result is published as one new snapshot. Polling first checks the database
+ * file's size and modification time and does nothing while they are unchanged.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class WorkflowMappingsReloader {
+
+    /**
+     * Outcome of one reload
+     *
+     * @param version snapshot version after the reload (unchanged if nothing changed)
+     * @param failed  mapping name to compile error for rows that were not applied
+     */
+    public record Result(long version, int added, int updated, int removed, int size, Map<String, String> failed) {
+
+        public boolean changed() {
+            return added + updated + removed > 0;
+        }
+    }
+
+    private static final Duration STORE_TIMEOUT = Duration.ofSeconds(15);
+
+    private final WorkflowMappingsService store;
+    private final WorkflowMappingsCache cache;
+    // not a monitor: reloads block on the store and may run on virtual threads
+    private final ReentrantLock reloadLock = new ReentrantLock();
+
+    /** How often the store is checked for changes; zero or negative disables polling */
+    @Value("${app.elasticsearch.mappings.reload-interval:30s}")
+    private Duration reloadInterval;
+
+    private volatile String lastFingerprint;
+    private volatile Disposable polling;
+
+    /**
+     * Reloads on a worker thread; concurrent calls run one after another
+     *
+     * @param full recompile every row instead of only those whose updated_at moved
+     */
+    public Mono<Result> reload(boolean full) {
+        return reload(full, WorkflowMappingsCache.Progress.NONE);
+    }
+
+    /**
+     * @param progress told as each changed row is compiled
+     */
+    public Mono<Result> reload(boolean full, WorkflowMappingsCache.Progress progress) {
+        return Mono.fromCallable(() -> reloadNow(full, progress))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Starts polling at the configured interval; called once the initial load is done
+     */
+    public synchronized void startPolling() {
+        if (polling != null || reloadInterval == null || reloadInterval.isZero() || reloadInterval.isNegative()) return;
+        polling = Flux.interval(reloadInterval, reloadInterval, Schedulers.boundedElastic())
+                .onBackpressureDrop()
+                .concatMap(tick -> Mono.fromCallable(this::pollNow)
+                        .onErrorResume(e -> {
+                            log.warn("Workflow mappings reload failed: {}", e.getMessage());
+                            return Mono.empty();
+                        }), 1)
+                .subscribe();
+        log.info("Polling workflow mappings for changes every {}", reloadInterval);
+    }
+
+    @PreDestroy
+    public synchronized void stopPolling() {
+        if (polling != null) {
+            polling.dispose();
+            polling = null;
+        }
+    }
+
+    private Result pollNow() {
+        String fingerprint = store.storeFingerprint();
+        if (fingerprint != null && fingerprint.equals(lastFingerprint)) {
+            return unchanged();
+        }
+        return reloadNow(false, WorkflowMappingsCache.Progress.NONE);
+    }
+
+    private Result reloadNow(boolean full, WorkflowMappingsCache.Progress progress) {
+        reloadLock.lock();
+        try {
+            // taken before reading so a write that lands mid-reload is seen by the next poll
+            String fingerprint = store.storeFingerprint();
+            store.reopenIfReplaced();
+            WorkflowMappingsCache.Snapshot current = cache.current();
+            List<Map<String, Object>> rows;
+            Set<String> removed = new HashSet<>(current.rows().keySet());
+            if (full) {
+                rows = store.getAll().collectList().block(STORE_TIMEOUT);
+                if (rows == null) rows = List.of();
+                rows.forEach(row -> removed.remove(mappingName(row)));
+            } else {
+                Map<String, String> revisions = store.getRevisions().block(STORE_TIMEOUT);
+                if (revisions == null) revisions = Map.of();
+                removed.removeAll(revisions.keySet());
+                List<String> changed = new ArrayList<>();
+                revisions.forEach((name, revision) -> {
+                    if (!current.rows().containsKey(name) || !Objects.equals(revision, current.revisions().get(name))) {
+                        changed.add(name);
+                    }
+                });
+                rows = store.getByMappingNames(changed).collectList().block(STORE_TIMEOUT);
+                if (rows == null) rows = List.of();
+            }
+
+            List<WorkflowMappingsCache.Change> changes = new ArrayList<>(rows.size());
+            for (Map<String, Object> row : rows) {
+                if (row == null || row.isEmpty()) continue;
+                String name = mappingName(row);
+                if (name != null) changes.add(new WorkflowMappingsCache.Change(name, row, revision(row)));
+            }
+            WorkflowMappingsCache.Applied applied = cache.apply(changes, removed, progress);
+            lastFingerprint = fingerprint;
+
+            Result result = new Result(applied.version(), applied.added(), applied.updated(), applied.removed(),
+                    cache.size(), applied.failed());
+            if (result.changed()) {
+                log.info("Workflow mappings snapshot {}: {} added, {} updated, {} removed, {} total",
+                        result.version(), result.added(), result.updated(), result.removed(), result.size());
+            }
+            return result;
+        } finally {
+            reloadLock.unlock();
+        }
+    }
+
+    private Result unchanged() {
+        return new Result(cache.current().version(), 0, 0, 0, cache.size(), Map.of());
+    }
+
+    /**
+     * Case-insensitive lookup of the mapping_name column
+     */
+    static String mappingName(Map<String, Object> row) {
+        Object value = column(row, "mapping_name");
+        return value != null ? String.valueOf(value) : null;
+    }
+
+    /**
+     * Rendered the same way as {@link WorkflowMappingsService#getRevisions()}
+     */
+    private static String revision(Map<String, Object> row) {
+        return String.valueOf(column(row, "updated_at"));
+    }
+
+    private static Object column(Map<String, Object> row, String column) {
+        for (Map.Entry<String, Object> entry : row.entrySet()) {
+            if (column.equalsIgnoreCase(entry.getKey())) return entry.getValue();
+        }
+        return null;
+    }
+}
@@ -4,33 +4,56 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Service;
 
+import com.microservices.elasticsearch.dynamic.query.util.SqliteReadPool;
+
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
+/**
+ * Reads workflow mapping rows from SQLite through a small pool of read-only connections.
+ * Request paths should go through {@link WorkflowMappingsCache}; this is the loader's source.
+ */
 @Slf4j
 @Service
 public class WorkflowMappingsService {
 
     private static final String RESOURCE_DB = "workflow_mappings.db";
+    private static final int MAX_IN_PARAMETERS = 500;
+    private static final Duration POOL_ACQUIRE_TIMEOUT = Duration.ofSeconds(5);
     private Path dbPath;
     private String jdbcUrl;
+    private SqliteReadPool pool;
+    // identity of the file the pool's connections were opened on
+    private volatile Object openedFileKey;
+
+    /**
+     * SQLite file to read mappings from in place, so edits are picked up by reloads;
+     * when empty the bundled classpath copy is used
+     */
+    @Value("${app.elasticsearch.mappings.db-path:}")
+    private String configuredDbPath;
+
+    /** Read-only connections kept open to the mappings database */
+    @Value("${app.elasticsearch.mappings.pool-size:2}")
+    private int poolSize;
 
     @PostConstruct
     public void init() {
@@ -39,6 +62,18 @@ public class WorkflowMappingsService {
             try { Class.forName("org.sqlite.JDBC"); } catch (ClassNotFoundException ignore) { 
             	/* auto-register */ }
 
+            if (configuredDbPath != null && !configuredDbPath.isBlank()) {
+                this.dbPath = Path.of(configuredDbPath);
+                if (!Files.isRegularFile(dbPath)) {
+                    log.warn("Workflow mappings DB {} not found; workflow mappings will be unavailable", dbPath);
+                }
+                this.jdbcUrl = "jdbc:sqlite:" + dbPath.toAbsolutePath();
+                this.pool = new SqliteReadPool(jdbcUrl, poolSize, POOL_ACQUIRE_TIMEOUT);
+                this.openedFileKey = fileKey(dbPath);
+                log.info("Workflow mappings DB opened at {}", this.jdbcUrl);
+                return;
+            }
+
             // Copy the DB from classpath to a temp location that SQLite can open
             ClassPathResource resource = new ClassPathResource(RESOURCE_DB);
             if (!resource.exists()) {
@@ -50,6 +85,8 @@ public class WorkflowMappingsService {
                 Files.copy(in, dbPath, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
             }
             this.jdbcUrl = "jdbc:sqlite:" + dbPath.toAbsolutePath();
+            this.pool = new SqliteReadPool(jdbcUrl, poolSize, POOL_ACQUIRE_TIMEOUT);
+            this.openedFileKey = fileKey(dbPath);
             log.info("Workflow mappings DB initialized at {}", this.jdbcUrl);
         } catch (IOException e) {
             log.error("Failed to initialize workflow mappings DB", e);
@@ -68,45 +105,105 @@ public class WorkflowMappingsService {
                 .subscribeOn(Schedulers.boundedElastic());
     }
 
-    private List<Map<String, Object>> queryAll() throws SQLException {
-        if (jdbcUrl == null) return List.of();
-        String sql = "SELECT * FROM workflow_mappings";
-        try (Connection conn = DriverManager.getConnection(jdbcUrl);
-             PreparedStatement ps = conn.prepareStatement(sql);
-             ResultSet rs = ps.executeQuery()) {
-            List<Map<String, Object>> list = new ArrayList<>();
-            while (rs.next()) {
-                list.add(mapRow(rs));
+    /**
+     * updated_at of every mapping, keyed by mapping name; cheap enough to poll
+     */
+    public Mono<Map<String, String>> getRevisions() {
+        return Mono.fromCallable(this::queryRevisions)
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    public Flux<Map<String, Object>> getByMappingNames(Collection<String> mappingNames) {
+        if (mappingNames.isEmpty()) return Flux.empty();
+        return Mono.fromCallable(() -> queryByMappingNames(List.copyOf(mappingNames)))
+                .flatMapMany(Flux::fromIterable)
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Identity, size and modification time of the database file and its write-ahead log;
+     * changes whenever a write is committed or the file is replaced. Null when there is no database.
+     */
+    public String storeFingerprint() {
+        if (dbPath == null) return null;
+        try {
+            StringBuilder fingerprint = new StringBuilder();
+            for (Path file : List.of(dbPath, dbPath.resolveSibling(dbPath.getFileName() + "-wal"))) {
+                if (!Files.exists(file)) continue;
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                fingerprint.append(attributes.fileKey()).append(':').append(attributes.size()).append('@')
+                        .append(attributes.lastModifiedTime().toMillis()).append(';');
             }
-            return list;
+            return fingerprint.toString();
+        } catch (IOException e) {
+            return null;
         }
     }
 
-    private Map<String, Object> queryByMappingName(String mappingName) throws SQLException {
-        if (jdbcUrl == null) return null;
-        String sql = "SELECT * FROM workflow_mappings WHERE mapping_name = ? LIMIT 1";
-        try (Connection conn = DriverManager.getConnection(jdbcUrl);
-             PreparedStatement ps = conn.prepareStatement(sql)) {
-            ps.setString(1, mappingName);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    return mapRow(rs);
-                }
-                return null;
-            }
+    /**
+     * When the database file was replaced (a new file moved over the old path), pooled
+     * connections still read the old one; they are dropped so the next query opens the new file.
+     *
+     * @return whether the pool was reset
+     */
+    public boolean reopenIfReplaced() {
+        if (pool == null || dbPath == null) return false;
+        Object key = fileKey(dbPath);
+        if (key == null || key.equals(openedFileKey)) return false;
+        openedFileKey = key;
+        pool.reset();
+        log.info("Workflow mappings DB {} was replaced; reopened connections", dbPath);
+        return true;
+    }
+
+    private static Object fileKey(Path file) {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            return null;
         }
     }
 
-    private Map<String, Object> mapRow(ResultSet rs) throws SQLException {
-        Map<String, Object> row = new HashMap<>();
-        ResultSetMetaData md = rs.getMetaData();
-        int cols = md.getColumnCount();
-        for (int i = 1; i <= cols; i++) {
-            String name = md.getColumnLabel(i);
-            Object val = rs.getObject(i);
-            row.put(name, val);
+    private Map<String, String> queryRevisions() throws SQLException {
+        if (pool == null) return Map.of();
+        Map<String, String> revisions = new HashMap<>();
+        for (Map<String, Object> row : pool.query("SELECT mapping_name, updated_at FROM workflow_mappings", ps -> {})) {
+            revisions.put(String.valueOf(row.get("mapping_name")), String.valueOf(row.get("updated_at")));
         }
-        return row;
+        return revisions;
+    }
+
+    private List<Map<String, Object>> queryByMappingNames(List<String> mappingNames) throws SQLException {
+        if (pool == null) return List.of();
+        List<Map<String, Object>> list = new ArrayList<>();
+        // stay well below SQLite's bound-parameter limit
+        for (int from = 0; from < mappingNames.size(); from += MAX_IN_PARAMETERS) {
+            List<String> chunk = mappingNames.subList(from, Math.min(mappingNames.size(), from + MAX_IN_PARAMETERS));
+            String sql = "SELECT * FROM workflow_mappings WHERE mapping_name IN ("
+                    + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")";
+            list.addAll(pool.query(sql, ps -> {
+                for (int i = 0; i < chunk.size(); i++) {
+                    ps.setString(i + 1, chunk.get(i));
+                }
+            }));
+        }
+        return list;
     }
-}
 
+    private List<Map<String, Object>> queryAll() throws SQLException {
+        if (pool == null) return List.of();
+        return pool.query("SELECT * FROM workflow_mappings", ps -> {});
+    }
+
+    private Map<String, Object> queryByMappingName(String mappingName) throws SQLException {
+        if (pool == null) return null;
+        List<Map<String, Object>> rows = pool.query("SELECT * FROM workflow_mappings WHERE mapping_name = ? LIMIT 1",
+                ps -> ps.setString(1, mappingName));
+        return rows.isEmpty() ? null : rows.get(0);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (pool != null) pool.close();
+    }
+}
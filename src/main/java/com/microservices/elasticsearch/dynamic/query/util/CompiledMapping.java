@@ -0,0 +1,32 @@
+package com.microservices.elasticsearch.dynamic.query.util;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, per-mapping transform plan compiled once from a workflow_mappings row.
+ *
+ * @param mappingName mapping_name of the source row
+ * @param indexName   index_name of the source row (may be null/blank if the row is incomplete)
+ * @param relations   parsed relationships
+ * @param targets     uiField ("table.field", lower-case) -> resolved ES target
+ */
+public record CompiledMapping(
+        String mappingName,
+        String indexName,
+        List<FinalQueryTransformer.TableRelation> relations,
+        Map<String, FinalQueryTransformer.Target> targets
+) {
+
+    public CompiledMapping {
+        relations = relations == null ? List.of() : List.copyOf(relations);
+        targets = targets == null ? Map.of() : Map.copyOf(targets);
+    }
+
+    /**
+     * Resolve a UI field to its ES target, or null when the field is unmapped.
+     */
+    public FinalQueryTransformer.Target target(String uiField) {
+        return uiField == null ? null : targets.get(uiField);
+    }
+}
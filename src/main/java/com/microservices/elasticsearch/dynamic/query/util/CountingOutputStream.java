@@ -0,0 +1,26 @@
+package com.microservices.elasticsearch.dynamic.query.util;
+
+import java.io.OutputStream;
+
+/**
+ * Discards everything written to it and only counts the bytes; used to measure
+ * serialized sizes without buffering them.
+ */
+public final class CountingOutputStream extends OutputStream {
+
+    private long count;
+
+    @Override
+    public void write(int b) {
+        count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        count += len;
+    }
+
+    public long getCount() {
+        return count;
+    }
+}
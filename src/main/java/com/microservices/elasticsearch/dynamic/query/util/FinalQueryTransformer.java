@@ -7,11 +7,15 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.function.Function;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.microservices.elasticsearch.dynamic.query.dto.PaginationRequest;
+import com.microservices.elasticsearch.dynamic.query.dto.QueryGroup;
+import com.microservices.elasticsearch.dynamic.query.dto.QueryStructureRequest;
+import com.microservices.elasticsearch.dynamic.query.dto.SortSpec;
 
 public class FinalQueryTransformer {
 
@@ -19,10 +23,10 @@ public class FinalQueryTransformer {
     private static final ObjectMapper M = new ObjectMapper();
 
     // Kinds of mapped targets
-    enum Kind { TOP, NESTED, PARENT }
+    public enum Kind { TOP, NESTED, PARENT }
 
     // Result of parsing a mapping value
-    record Target(Kind kind, String scope, String fieldPath) {
+    public record Target(Kind kind, String scope, String fieldPath) {
         // kind:
         //  TOP    : scope = null,                 fieldPath = "esField"
         //  NESTED : scope = nested path,          fieldPath = "nested.path.field"
@@ -45,25 +49,191 @@ public class FinalQueryTransformer {
                                        int from,
                                        int size,
                                        String sortOrder) {
+        return toFinalOutput(buildQuery(input, uiField -> {
+            String mapVal = mapping.get(uiField);
+            return mapVal == null ? null : parseTarget(mapVal);
+        }), from, size, sortOrder);
+    }
+
+    /**
+     * Transform UI input JSON using a precompiled mapping plan; targets are resolved
+     * by lookup instead of re-parsing the mapping value for every UI field.
+     */
+    public static ObjectNode transform(JsonNode input,
+                                       CompiledMapping plan,
+                                       int from,
+                                       int size,
+                                       String sortOrder) {
+        return toFinalOutput(buildQuery(input, plan::target), from, size, sortOrder);
+    }
 
+    /**
+     * Same output as {@link #transform(JsonNode, CompiledMapping, int, int, String)} but built
+     * directly as request objects, so callers skip the JSON write/parse round trip.
+     */
+    public static QueryStructureRequest toQueryStructure(JsonNode input,
+                                                         CompiledMapping plan,
+                                                         int from,
+                                                         int size,
+                                                         String sortOrder) {
+        return toQueryStructure(buildQuery(input, plan::target), from, size, sortOrder);
+    }
+
+    /**
+     * Wraps a query built by {@link #buildQuery} or bound from a {@link QueryTemplate}
+     */
+    public static QueryStructureRequest toQueryStructure(Map<String, Object> query,
+                                                         int from,
+                                                         int size,
+                                                         String sortOrder) {
+        QueryGroup group = QueryGroup.builder()
+                .operator((String) query.get("operator"))
+                .conditions(asItems(query.get("conditions")))
+                .groups(asItems(query.get("groups")))
+                .build();
+
+        List<SortSpec> sort = new ArrayList<>(1);
+        sort.add(SortSpec.builder().order(sortOrder).build());
+
+        return QueryStructureRequest.builder()
+                .query(group)
+                .pagination(PaginationRequest.builder().from(from).size(size).build())
+                .sort(sort)
+                .build();
+    }
+
+    private static ObjectNode toFinalOutput(Map<String, Object> query, int from, int size, String sortOrder) {
         // --- finaloutput root ---
-        ObjectNode finalOut = M.createObjectNode();
-        //finalOut.put("index_name", indexName);
+        Map<String, Object> finalOut = new LinkedHashMap<>();
+        finalOut.put("query", query);
+
+        // pagination
+        Map<String, Object> pagination = new LinkedHashMap<>();
+        pagination.put("from", from);
+        pagination.put("size", size);
+        finalOut.put("pagination", pagination);
+
+        // sort
+        Map<String, Object> sortObj = new LinkedHashMap<>();
+        sortObj.put("order", sortOrder);
+        finalOut.put("sort", List.of(sortObj));
+
+        return M.valueToTree(finalOut);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> asItems(Object items) {
+        return (List<Map<String, Object>>) items;
+    }
+
+    /**
+     * The query structure for inputs of this one's shape, with numbered slots in place of the
+     * values; {@link #shape} extracts the values to bind into it.
+     */
+    public static QueryTemplate template(JsonNode input, CompiledMapping plan) {
+        QueryTemplate.SlotBinder slots = new QueryTemplate.SlotBinder();
+        return new QueryTemplate(buildQuery(input, plan::target, slots), slots.count());
+    }
+
+    /**
+     * Everything about the input that decides the structure {@link #buildQuery} produces (groups,
+     * fields, operators, single or multi-value, and the value count where each value becomes its
+     * own condition), plus the values in the order {@link #buildQuery} consumes them.
+     * Must walk the input exactly as {@link #buildQuery} does.
+     */
+    public static QueryTemplate.Shape shape(JsonNode input, CompiledMapping plan) {
+        StringBuilder key = new StringBuilder(128);
+        List<Object> values = new ArrayList<>();
+        for (JsonNode uiGroup : input.path("fields")) {
+            String groupOp = groupOperator(uiGroup);
+            key.append('(').append(groupOp);
+
+            Iterator<Map.Entry<String, JsonNode>> it = uiGroup.fields();
+            while (it.hasNext()) {
+                Map.Entry<String, JsonNode> e = it.next();
+                String uiField = e.getKey();
+                if ("operator".equalsIgnoreCase(uiField)) continue;
+                if (plan.target(uiField) == null) continue;
+
+                JsonNode condNode = e.getValue();
+                boolean isMulti = isMulti(condNode);
+                String innerOp  = innerOperator(condNode, groupOp);
+                key.append(SEPARATOR).append(uiField).append(SEPARATOR).append(innerOp);
+
+                if (isMulti) {
+                    List<String> fieldValues = toStrings(condNode.path("values"));
+                    key.append(SEPARATOR).append("multi").append(SEPARATOR).append(multiOp(condNode));
+                    if ("AND".equalsIgnoreCase(innerOp)) {
+                        key.append(SEPARATOR).append(fieldValues.size());
+                        values.addAll(fieldValues);
+                    } else {
+                        values.add(fieldValues);
+                    }
+                } else {
+                    JsonNode valNode = condNode.get("value");
+                    key.append(SEPARATOR).append("single").append(SEPARATOR).append(singleOp(condNode));
+                    if (valNode != null) {
+                        values.add(toJava(valNode));
+                    } else {
+                        key.append(SEPARATOR).append("novalue");
+                    }
+                }
+            }
+            key.append(')');
+        }
+        return new QueryTemplate.Shape(key.toString(), values);
+    }
+
+    /**
+     * Where condition values come from while a query is built: straight from the input, or
+     * numbered slots while a {@link QueryTemplate} is built
+     */
+    interface ValueBinder {
+        Object single(JsonNode raw);
+
+        Object element(String value);
+
+        Object list(List<String> values);
+    }
+
+    private static final ValueBinder INPUT_VALUES = new ValueBinder() {
+        @Override
+        public Object single(JsonNode raw) {
+            return toJava(raw);
+        }
+
+        @Override
+        public Object element(String value) {
+            return value;
+        }
+
+        @Override
+        public Object list(List<String> values) {
+            return values;
+        }
+    };
+
+    private static final char SEPARATOR = '\u0001';
+
+    private static Map<String, Object> buildQuery(JsonNode input, Function<String, Target> resolver) {
+        return buildQuery(input, resolver, INPUT_VALUES);
+    }
+
+    private static Map<String, Object> buildQuery(JsonNode input, Function<String, Target> resolver, ValueBinder binder) {
 
         // Top-level query object
-        ObjectNode query = M.createObjectNode();
+        Map<String, Object> query = new LinkedHashMap<>();
         query.put("operator", "AND"); // normalized to AND per your sample
 
-        ArrayNode topConditions = M.createArrayNode(); // holds group objects for non-parent items
-        ArrayNode topGroups     = M.createArrayNode(); // holds parent-child groups at top level
+        List<Map<String, Object>> topConditions = new ArrayList<>(); // holds group objects for non-parent items
+        List<Map<String, Object>> topGroups     = new ArrayList<>(); // holds parent-child groups at top level
 
         // Iterate top-level "fields" array of UI
-        ArrayNode groups = (ArrayNode) input.path("fields");
-        for (JsonNode uiGroup : groups) {
-            String groupOp = uiGroup.path("operator").asText("AND");
+        for (JsonNode uiGroup : input.path("fields")) {
+            String groupOp = groupOperator(uiGroup);
 
             // We'll collect conditions and nested groups together inside this group
-            ArrayNode groupItems = M.createArrayNode();
+            List<Map<String, Object>> groupItems = new ArrayList<>();
             boolean hasNonParentItems = false;
 
             // Each entry in the group (skip the "operator" key)
@@ -74,19 +244,18 @@ public class FinalQueryTransformer {
                 if ("operator".equalsIgnoreCase(uiField)) continue;
 
                 // Resolve mapping
-                String mapVal = mapping.get(uiField);
-                if (mapVal == null) continue; // ignore unmapped
+                Target target = resolver.apply(uiField);
+                if (target == null) continue; // ignore unmapped
 
-                Target target = parseTarget(mapVal);
                 JsonNode condNode = e.getValue();
 
-                boolean isMulti = "multi_value".equalsIgnoreCase(condNode.path("type").asText(""));
-                String innerOp  = condNode.path("operator").asText(groupOp); // OR/AND inside the field; fallback to group op
+                boolean isMulti = isMulti(condNode);
+                String innerOp  = innerOperator(condNode, groupOp); // OR/AND inside the field; fallback to group op
 
                 if (isMulti) {
                     // Multi-value: condNode.values (array), condNode.op (e.g., "in")
                     List<String> values = toStrings(condNode.path("values"));
-                    String op = condNode.path("op").asText("in");
+                    String op = multiOp(condNode);
 
                     switch (target.kind()) {
                         case PARENT -> {
@@ -94,31 +263,28 @@ public class FinalQueryTransformer {
                             if ("AND".equalsIgnoreCase(innerOp)) {
                                 // AND across values => multiple parent groups (each single value)
                                 for (String v : values) {
-                                    ObjectNode pc = parentGroup("AND", target.scope(),
-                                            arrayOf(condition(target.fieldPath(), op, v)));
-                                    topGroups.add(pc);
+                                    topGroups.add(parentGroup("AND", target.scope(),
+                                            condition(target.fieldPath(), op, binder.element(v))));
                                 }
                             } else {
                                 // OR (or default) => one parent group with array
-                                ObjectNode pc = parentGroup("OR", target.scope(),
-                                        arrayOf(condition(target.fieldPath(), op, values)));
-                                topGroups.add(pc);
+                                topGroups.add(parentGroup("OR", target.scope(),
+                                        condition(target.fieldPath(), op, binder.list(values))));
                             }
                         }
                         case NESTED -> {
                             hasNonParentItems = true;
+                            String keywordPath = target.fieldPath() + ".keyword";
                             if ("AND".equalsIgnoreCase(innerOp)) {
                                 // AND across values => multiple nested groups, single value each
                                 for (String v : values) {
-                                    ObjectNode ng = nestedGroup("AND", target.scope(),
-                                            arrayOf(conditionv1(target.fieldPath(), op, v)));
-                                    groupItems.add(ng);
+                                    groupItems.add(nestedGroup("AND", target.scope(),
+                                            condition(keywordPath, op, binder.element(v))));
                                 }
                             } else {
                                 // OR => one nested group with array
-                                ObjectNode ng = nestedGroup("OR", target.scope(),
-                                        arrayOf(conditionv1(target.fieldPath(), op, values)));
-                                groupItems.add(ng);
+                                groupItems.add(nestedGroup("OR", target.scope(),
+                                        condition(keywordPath, op, binder.list(values))));
                             }
                         }
                         case TOP -> {
@@ -126,71 +292,75 @@ public class FinalQueryTransformer {
                             if ("AND".equalsIgnoreCase(innerOp)) {
                                 // multiple single-value conditions
                                 for (String v : values) {
-                                    groupItems.add(condition(target.fieldPath(), op, v));
+                                    groupItems.add(condition(target.fieldPath(), op, binder.element(v)));
                                 }
                             } else {
                                 // one condition carrying array
-                                groupItems.add(condition(target.fieldPath(), op, values));
+                                groupItems.add(condition(target.fieldPath(), op, binder.list(values)));
                             }
                         }
                     }
 
                 } else {
                     // Single value: condNode.value, condNode.op
-                    String op = condNode.path("op").asText("match");
+                    String op = singleOp(condNode);
                     JsonNode valNode = condNode.get("value");
+                    Object value = valNode == null ? null : binder.single(valNode);
 
                     switch (target.kind()) {
-                        case PARENT -> {
-                            ObjectNode pc = parentGroup(innerOp, target.scope(),
-                                    arrayOf(condition(target.fieldPath(), op, valNode)));
-                            topGroups.add(pc);
-                        }
+                        case PARENT -> topGroups.add(parentGroup(innerOp, target.scope(),
+                                singleValueCondition(target.fieldPath(), op, valNode != null, value)));
                         case NESTED -> {
                             hasNonParentItems = true;
-                            ObjectNode ng = nestedGroup(innerOp, target.scope(),
-                                    arrayOf(condition(target.fieldPath(), op, valNode)));
-                            groupItems.add(ng);
+                            groupItems.add(nestedGroup(innerOp, target.scope(),
+                                    singleValueCondition(target.fieldPath(), op, valNode != null, value)));
                         }
                         case TOP -> {
                             hasNonParentItems = true;
-                            groupItems.add(condition(target.fieldPath(), op, valNode));
+                            groupItems.add(singleValueCondition(target.fieldPath(), op, valNode != null, value));
                         }
                     }
                 }
             }
 
             if (hasNonParentItems) {
-                ObjectNode groupNode = M.createObjectNode();
+                Map<String, Object> groupNode = new LinkedHashMap<>();
                 groupNode.put("operator", groupOp);
-                groupNode.set("groups", groupItems); // contains field-conditions and nested groups
+                groupNode.put("groups", groupItems); // contains field-conditions and nested groups
                 topConditions.add(groupNode);
             }
         }
 
-        if (topConditions.size() > 0) query.set("conditions", topConditions);
-        if (topGroups.size() > 0)     query.set("groups",     topGroups);
-        finalOut.set("query", query);
+        if (!topConditions.isEmpty()) query.put("conditions", topConditions);
+        if (!topGroups.isEmpty())     query.put("groups",     topGroups);
+        return query;
+    }
 
-        // pagination
-        ObjectNode pagination = M.createObjectNode();
-        pagination.put("from", from);
-        pagination.put("size", size);
-        finalOut.set("pagination", pagination);
+    // --------- helpers ----------
 
-        // sort
-        ArrayNode sortArr = M.createArrayNode();
-        ObjectNode sortObj = M.createObjectNode();
-        sortObj.put("order", sortOrder);
-        sortArr.add(sortObj);
-        finalOut.set("sort", sortArr);
+    // Read by both buildQuery and shape, so a template and the values bound into it agree on every default
 
-        return finalOut;
+    private static String groupOperator(JsonNode uiGroup) {
+        return uiGroup.path("operator").asText("AND");
     }
 
-    // --------- helpers ----------
+    private static boolean isMulti(JsonNode condNode) {
+        return "multi_value".equalsIgnoreCase(condNode.path("type").asText(""));
+    }
 
-    private static Target parseTarget(String mappingValue) {
+    private static String innerOperator(JsonNode condNode, String groupOp) {
+        return condNode.path("operator").asText(groupOp);
+    }
+
+    private static String multiOp(JsonNode condNode) {
+        return condNode.path("op").asText("in");
+    }
+
+    private static String singleOp(JsonNode condNode) {
+        return condNode.path("op").asText("match");
+    }
+
+    static Target parseTarget(String mappingValue) {
         if (mappingValue.contains("#")) {
             String[] parts = mappingValue.split("#", 2);
             String parent = parts[0];
@@ -205,72 +375,68 @@ public class FinalQueryTransformer {
         }
     }
 
-    private static ObjectNode nestedGroup(String operator, String nestedPath, ArrayNode conditions) {
-        ObjectNode g = M.createObjectNode();
+    private static Map<String, Object> nestedGroup(String operator, String nestedPath, Map<String, Object> condition) {
+        Map<String, Object> g = new LinkedHashMap<>();
         g.put("operator", operator);
         g.put("nested_path", nestedPath);
-        g.set("conditions", conditions);
+        g.put("conditions", singleItem(condition));
         return g;
     }
 
-    private static ObjectNode parentGroup(String operator, String parent, ArrayNode conditions) {
-        ObjectNode g = M.createObjectNode();
+    private static Map<String, Object> parentGroup(String operator, String parent, Map<String, Object> condition) {
+        Map<String, Object> g = new LinkedHashMap<>();
         g.put("operator", operator);
         g.put("has_child", parent);
-        g.set("conditions", conditions);
+        g.put("conditions", singleItem(condition));
         return g;
     }
 
-    private static ObjectNode condition(String fieldPath, String operator, String singleValue) {
-        ObjectNode n = M.createObjectNode();
+    private static Map<String, Object> condition(String fieldPath, String operator, Object value) {
+        Map<String, Object> n = new LinkedHashMap<>();
         n.put("field", fieldPath);
         n.put("operator", operator);
-        n.put("value", singleValue);
-        return n;
-    }
-    
-    private static ObjectNode conditionv1(String fieldPath, String operator, String singleValue) {
-        ObjectNode n = M.createObjectNode();
-        n.put("field", fieldPath+".keyword");
-        n.put("operator", operator);
-        n.put("value", singleValue);
+        n.put("value", value);
         return n;
     }
 
-    private static ObjectNode condition(String fieldPath, String operator, List<String> values) {
-        ObjectNode n = M.createObjectNode();
+    /**
+     * A single-value condition; "value" is left out when the input had none
+     */
+    private static Map<String, Object> singleValueCondition(String fieldPath, String operator, boolean present,
+                                                            Object value) {
+        Map<String, Object> n = new LinkedHashMap<>();
         n.put("field", fieldPath);
         n.put("operator", operator);
-        ArrayNode arr = M.createArrayNode();
-        for (String v : values) arr.add(v);
-        n.set("value", arr);
-        return n;
-    }
-    
-    
-    
-    private static ObjectNode conditionv1(String fieldPath, String operator, List<String> values) {
-        ObjectNode n = M.createObjectNode();
-        n.put("field", fieldPath+".keyword");
-        n.put("operator", operator);
-        ArrayNode arr = M.createArrayNode();
-        for (String v : values) arr.add(v);
-        n.set("value", arr);
+        if (present) n.put("value", value);
         return n;
     }
 
-    private static ObjectNode condition(String fieldPath, String operator, JsonNode rawValue) {
-        ObjectNode n = M.createObjectNode();
-        n.put("field", fieldPath);
-        n.put("operator", operator);
-        if (rawValue != null) n.set("value", rawValue.deepCopy());
-        return n;
+    private static List<Map<String, Object>> singleItem(Map<String, Object> item) {
+        List<Map<String, Object>> a = new ArrayList<>(1);
+        a.add(item);
+        return a;
     }
 
-    private static ArrayNode arrayOf(JsonNode... nodes) {
-        ArrayNode a = M.createArrayNode();
-        for (JsonNode n : nodes) a.add(n);
-        return a;
+    /**
+     * Convert a JSON tree value to the plain Java value Jackson would bind for an untyped Object.
+     */
+    private static Object toJava(JsonNode node) {
+        if (node == null || node.isNull() || node.isMissingNode()) return null;
+        if (node.isTextual()) return node.textValue();
+        if (node.isBoolean()) return node.booleanValue();
+        if (node.isIntegralNumber()) return node.numberValue();
+        if (node.isNumber()) return node.doubleValue();
+        if (node.isArray()) {
+            List<Object> out = new ArrayList<>(node.size());
+            for (JsonNode v : node) out.add(toJava(v));
+            return out;
+        }
+        if (node.isObject()) {
+            Map<String, Object> out = new LinkedHashMap<>();
+            node.fields().forEachRemaining(e -> out.put(e.getKey(), toJava(e.getValue())));
+            return out;
+        }
+        return node.asText();
     }
 
     private static List<String> toStrings(JsonNode values) {
@@ -0,0 +1,99 @@
+package com.microservices.elasticsearch.dynamic.query.util;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.microservices.elasticsearch.dynamic.query.dto.ElasticsearchQueryRequest;
+import com.microservices.elasticsearch.dynamic.query.dto.PaginationRequest;
+import com.microservices.elasticsearch.dynamic.query.dto.QueryAggregationsRequest;
+import com.microservices.elasticsearch.dynamic.query.dto.QueryGroup;
+import com.microservices.elasticsearch.dynamic.query.dto.QueryStructureRequest;
+import com.microservices.elasticsearch.dynamic.query.dto.SortSpec;
+
+/**
+ * Canonical fingerprint of a search: index plus normalized query, pagination, sort,
+ * _source, aggregations and hit counting. Map keys and bean properties are serialized in sorted order, defaults are
+ * filled in and _source is treated as a set, so requests that hit Elasticsearch with the
+ * same body get the same SHA-256 hex digest.
+ */
+public final class QueryFingerprint {
+
+    private static final ObjectMapper CANONICAL = JsonMapper.builder()
+            .enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+            .enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+            .serializationInclusion(JsonInclude.Include.NON_NULL)
+            .build();
+
+    private QueryFingerprint() {}
+
+    public static String of(String indexName, ElasticsearchQueryRequest request) {
+        QueryStructureRequest queryStructure = request.getQueryStructure();
+        Map<String, Object> canonical = new LinkedHashMap<>();
+        canonical.put("index", indexName);
+        canonical.put("query", queryStructure.getQuery());
+
+        PaginationRequest pagination = queryStructure.getPagination();
+        canonical.put("from", pagination != null && pagination.getFrom() != null ? pagination.getFrom() : 0);
+        canonical.put("size", pagination != null && pagination.getSize() != null ? pagination.getSize() : 10);
+
+        List<String> sorts = new ArrayList<>();
+        if (queryStructure.getSort() != null) {
+            for (SortSpec s : queryStructure.getSort()) {
+                if (s == null || s.getField() == null || s.getField().isBlank()) continue; // ignored by the compiler too
+                String order = "desc".equalsIgnoreCase(s.getOrder()) ? "desc" : "asc";
+                sorts.add(s.getField() + ":" + order);
+            }
+        }
+        canonical.put("sort", sorts);
+
+        List<String> source = queryStructure.getSourceFields();
+        canonical.put("_source", source == null || source.isEmpty() ? List.of() : new TreeSet<>(source));
+
+        QueryAggregationsRequest aggregations = request.getQueryAggregations();
+        if (aggregations != null && aggregations.getAggregations() != null && !aggregations.getAggregations().isEmpty()) {
+            canonical.put("aggs", aggregations.getAggregations());
+        }
+        if (queryStructure.getHitCount() != null) {
+            canonical.put("hit_count", queryStructure.getHitCount());
+        }
+        return digest(canonical);
+    }
+
+    /**
+     * Fingerprint of the documents a query matches (index and query only), as used for counts
+     */
+    public static String ofMatches(String indexName, QueryGroup query) {
+        Map<String, Object> canonical = new LinkedHashMap<>();
+        canonical.put("index", indexName);
+        canonical.put("query", query);
+        return digest(canonical);
+    }
+
+    private static String digest(Map<String, Object> canonical) {
+        try {
+            return sha256(CANONICAL.writeValueAsBytes(canonical));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Query cannot be fingerprinted: " + e.getMessage(), e);
+        }
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
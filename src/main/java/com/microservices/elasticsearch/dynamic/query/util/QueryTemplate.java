@@ -0,0 +1,91 @@
+package com.microservices.elasticsearch.dynamic.query.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * A transformed query structure with numbered slots where the condition values go. Built once
+ * per (mapping, UI query shape) by {@link FinalQueryTransformer#template}; each request with the
+ * same shape only extracts its values ({@link FinalQueryTransformer#shape}) and binds them.
+ */
+public final class QueryTemplate {
+
+    /**
+     * The structural key of a UI query and its values in slot order
+     */
+    public record Shape(String key, List<Object> values) {}
+
+    private record Slot(int index) {}
+
+    private final Map<String, Object> query;
+    private final int slots;
+
+    QueryTemplate(Map<String, Object> query, int slots) {
+        this.query = query;
+        this.slots = slots;
+    }
+
+    public int slots() {
+        return slots;
+    }
+
+    /**
+     * A fresh query structure (callers may modify it) with {@code values} in the slots
+     */
+    public Map<String, Object> bind(List<Object> values) {
+        if (values.size() != slots) {
+            throw new IllegalArgumentException("Template has " + slots + " slots but " + values.size() + " values were given");
+        }
+        return copyMap(query, values);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object copy(Object node, List<Object> values) {
+        if (node instanceof Slot slot) return values.get(slot.index());
+        if (node instanceof Map<?, ?> map) return copyMap((Map<String, Object>) map, values);
+        if (node instanceof List<?> list) {
+            List<Object> out = new ArrayList<>(list.size());
+            for (Object item : list) out.add(copy(item, values));
+            return out;
+        }
+        return node; // strings and other immutable leaves are shared
+    }
+
+    private static Map<String, Object> copyMap(Map<String, Object> map, List<Object> values) {
+        Map<String, Object> out = new LinkedHashMap<>((int) (map.size() / 0.75f) + 1);
+        for (Map.Entry<String, Object> e : map.entrySet()) {
+            out.put(e.getKey(), copy(e.getValue(), values));
+        }
+        return out;
+    }
+
+    /**
+     * Hands out slots in the order the transformer consumes values
+     */
+    static final class SlotBinder implements FinalQueryTransformer.ValueBinder {
+        private int next;
+
+        int count() {
+            return next;
+        }
+
+        @Override
+        public Object single(JsonNode raw) {
+            return new Slot(next++);
+        }
+
+        @Override
+        public Object element(String value) {
+            return new Slot(next++);
+        }
+
+        @Override
+        public Object list(List<String> values) {
+            return new Slot(next++);
+        }
+    }
+}
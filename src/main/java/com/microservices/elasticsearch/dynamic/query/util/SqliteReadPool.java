@@ -0,0 +1,224 @@
+package com.microservices.elasticsearch.dynamic.query.util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.sqlite.SQLiteConfig;
+
+/**
+ * A few long-lived read-only SQLite connections, each with its own cache of prepared
+ * statements. Rows are mapped by column index with the labels read once per result set.
+ * Connections are opened lazily and kept until {@link #reset()} or {@link #close()}. A
+ * permit is held per leased connection, so a waiter is woken by any release, including one
+ * that discards a broken or reset connection.
+ */
+public final class SqliteReadPool implements AutoCloseable {
+
+    /**
+     * Binds parameters on a cached statement before it is executed
+     */
+    @FunctionalInterface
+    public interface Binder {
+        void bind(PreparedStatement statement) throws SQLException;
+    }
+
+    private static final int MAX_CACHED_STATEMENTS = 16;
+
+    private final String jdbcUrl;
+    private final Duration acquireTimeout;
+    private final BlockingQueue<Lease> idle;
+    private final List<Lease> all = new ArrayList<>();
+    private final Semaphore leases;
+    private volatile boolean closed;
+    private volatile long generation;
+
+    public SqliteReadPool(String jdbcUrl, int size, Duration acquireTimeout) {
+        this.jdbcUrl = jdbcUrl;
+        this.acquireTimeout = acquireTimeout;
+        this.idle = new ArrayBlockingQueue<>(Math.max(1, size));
+        this.leases = new Semaphore(Math.max(1, size), true);
+    }
+
+    /**
+     * Runs {@code sql} and maps every row to a column-label keyed map
+     */
+    public List<Map<String, Object>> query(String sql, Binder binder) throws SQLException {
+        Lease lease = acquire();
+        try {
+            PreparedStatement statement = lease.statement(sql);
+            statement.clearParameters();
+            binder.bind(statement);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rows(rs);
+            }
+        } catch (SQLException e) {
+            lease.broken = true;
+            throw e;
+        } finally {
+            release(lease);
+        }
+    }
+
+    private static List<Map<String, Object>> rows(ResultSet rs) throws SQLException {
+        ResultSetMetaData md = rs.getMetaData();
+        int cols = md.getColumnCount();
+        String[] labels = new String[cols];
+        for (int i = 0; i < cols; i++) {
+            labels[i] = md.getColumnLabel(i + 1);
+        }
+        List<Map<String, Object>> list = new ArrayList<>();
+        while (rs.next()) {
+            Map<String, Object> row = HashMap.newHashMap(cols);
+            for (int i = 0; i < cols; i++) {
+                row.put(labels[i], rs.getObject(i + 1));
+            }
+            list.add(row);
+        }
+        return list;
+    }
+
+    /**
+     * Takes a permit, then an idle current connection or, when there is none, a new one: idle
+     * plus leased connections never exceed the pool size, so a permit always leaves room
+     */
+    private Lease acquire() throws SQLException {
+        if (closed) throw new SQLException("Connection pool is closed");
+        try {
+            if (!leases.tryAcquire(acquireTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new SQLException("No SQLite connection available within " + acquireTimeout);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a connection", e);
+        }
+        try {
+            if (closed) throw new SQLException("Connection pool is closed");
+            Lease lease;
+            while ((lease = idle.poll()) != null) {
+                if (current(lease)) return lease;
+                discard(lease);
+            }
+            synchronized (all) {
+                Lease opened = new Lease(open(), generation);
+                all.add(opened);
+                return opened;
+            }
+        } catch (SQLException | RuntimeException e) {
+            leases.release();
+            throw e;
+        }
+    }
+
+    private void release(Lease lease) {
+        try {
+            if (lease.broken || closed || !current(lease)) {
+                discard(lease);
+            } else {
+                idle.offer(lease);
+            }
+        } finally {
+            leases.release();
+        }
+    }
+
+    private boolean current(Lease lease) {
+        return lease.generation == generation;
+    }
+
+    private void discard(Lease lease) {
+        synchronized (all) {
+            all.remove(lease);
+        }
+        lease.close();
+    }
+
+    /**
+     * Drops every connection: idle ones now, leased ones when they are released. The next
+     * queries open fresh connections, which see a database file that was replaced since.
+     */
+    public void reset() {
+        synchronized (all) {
+            generation++;
+        }
+        Lease lease;
+        while ((lease = idle.poll()) != null) {
+            discard(lease);
+        }
+    }
+
+    private Connection open() throws SQLException {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        return config.createConnection(jdbcUrl);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (all) {
+            all.forEach(Lease::close);
+            all.clear();
+        }
+        idle.clear();
+    }
+
+    private static final class Lease {
+        private final Connection connection;
+        private final Map<String, PreparedStatement> statements =
+                new LinkedHashMap<>(MAX_CACHED_STATEMENTS, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                        if (size() <= MAX_CACHED_STATEMENTS) return false;
+                        closeQuietly(eldest.getValue());
+                        return true;
+                    }
+                };
+        private final long generation;
+        private boolean broken;
+
+        Lease(Connection connection, long generation) {
+            this.connection = connection;
+            this.generation = generation;
+        }
+
+        PreparedStatement statement(String sql) throws SQLException {
+            PreparedStatement statement = statements.get(sql);
+            if (statement == null) {
+                statement = connection.prepareStatement(sql);
+                statements.put(sql, statement);
+            }
+            return statement;
+        }
+
+        void close() {
+            statements.values().forEach(Lease::closeQuietly);
+            statements.clear();
+            try {
+                connection.close();
+            } catch (SQLException ignore) {
+                // closing anyway
+            }
+        }
+
+        private static void closeQuietly(PreparedStatement statement) {
+            try {
+                statement.close();
+            } catch (SQLException ignore) {
+                // closing anyway
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.microservices.elasticsearch.dynamic.query.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Compiles a raw workflow_mappings row into a {@link CompiledMapping}.
+ * Parses relationships/table_structures, builds the role map and resolves
+ * every mapped UI field to its target once, so requests only do lookups.
+ */
+@Slf4j
+public final class WorkflowMappingCompiler {
+
+    private static final ObjectMapper M = new ObjectMapper();
+
+    private WorkflowMappingCompiler() {}
+
+    /**
+     * @throws IllegalArgumentException if the row describes an unknown relation type
+     */
+    public static CompiledMapping compile(String mappingName, Map<String, Object> row) {
+        String indexName = stringValue(row, "index_name");
+        List<FinalQueryTransformer.TableRelation> relations = relations(row);
+        Map<String, List<FinalQueryTransformer.Column>> tableColumns = tableColumns(row);
+
+        Map<String, String> roleMap = FinalQueryTransformer.buildFieldRoleMap(relations, tableColumns);
+        Map<String, String> finalMap = FinalQueryTransformer.transformByRole(roleMap);
+
+        Map<String, FinalQueryTransformer.Target> targets = new HashMap<>(finalMap.size() * 2);
+        finalMap.forEach((uiField, mapVal) -> targets.put(uiField, FinalQueryTransformer.parseTarget(mapVal)));
+
+        log.debug("Compiled mapping {} -> index {} with {} targets", mappingName, indexName, targets.size());
+        return new CompiledMapping(mappingName, indexName, relations, targets);
+    }
+
+    /**
+     * The row's relationships column as table relations (empty if missing or unparseable)
+     */
+    public static List<FinalQueryTransformer.TableRelation> relations(Map<String, Object> row) {
+        return parseRelations(row.get(key(row, "relationships")));
+    }
+
+    /**
+     * The row's table_structures column as table name -> columns (empty if missing or unparseable)
+     */
+    public static Map<String, List<FinalQueryTransformer.Column>> tableColumns(Map<String, Object> row) {
+        return parseTableStructures(row.get(key(row, "table_structures")));
+    }
+
+    // --------- row helpers ----------
+
+    private static String key(Map<String, Object> row, String desired) {
+        String d = desired.toLowerCase(Locale.ROOT);
+        for (String k : row.keySet()) {
+            if (k != null && k.toLowerCase(Locale.ROOT).equals(d)) return k;
+        }
+        return desired;
+    }
+
+    private static String stringValue(Map<String, Object> row, String key) {
+        Object v = row.get(key(row, key));
+        return v == null ? null : String.valueOf(v);
+    }
+
+    private static List<FinalQueryTransformer.TableRelation> parseRelations(Object src) {
+        try {
+            if (src == null) return List.of();
+            if (src instanceof String s) {
+                JsonNode node = M.readTree(s);
+                List<FinalQueryTransformer.TableRelation> out = new ArrayList<>();
+                if (node.isArray()) {
+                    for (JsonNode n : node) {
+                        out.add(new FinalQueryTransformer.TableRelation(text(n, "parentTable"), text(n, "parentField"),
+                                text(n, "childTable"), text(n, "childField"), text(n, "type"), n.path("id").asLong(0L),
+                                text(n, "source")));
+                    }
+                }
+                return out;
+            }
+            // already mapped structure? treat as list of maps
+            if (src instanceof List<?> list) {
+                List<FinalQueryTransformer.TableRelation> out = new ArrayList<>();
+                for (Object o : list) {
+                    if (o instanceof Map<?, ?> m) {
+                        out.add(new FinalQueryTransformer.TableRelation(str(m.get("parentTable")),
+                                str(m.get("parentField")), str(m.get("childTable")), str(m.get("childField")),
+                                str(m.get("type")), toLong(m.get("id")), str(m.get("source"))));
+                    }
+                }
+                return out;
+            }
+        } catch (Exception e) {
+            log.warn("Failed to parse relationships: {}", e.getMessage());
+        }
+        return List.of();
+    }
+
+    private static Map<String, List<FinalQueryTransformer.Column>> parseTableStructures(Object src) {
+        try {
+            if (src == null) return Map.of();
+            JsonNode root = src instanceof String s ? M.readTree(s) : M.valueToTree(src);
+
+            Map<String, List<FinalQueryTransformer.Column>> out = new HashMap<>();
+            if (root.isObject()) {
+                root.fields().forEachRemaining(e -> {
+                    String table = e.getKey();
+                    JsonNode arr = e.getValue();
+                    List<FinalQueryTransformer.Column> cols = new ArrayList<>();
+                    if (arr.isArray()) {
+                        for (JsonNode c : arr) {
+                            cols.add(new FinalQueryTransformer.Column(text(c, "name"), text(c, "type"),
+                                    c.path("length").isNull() ? null : c.path("length").asInt(),
+                                    c.path("nullable").asBoolean(true)));
+                        }
+                    }
+                    out.put(table, cols);
+                });
+            }
+            return out;
+        } catch (Exception e) {
+            log.warn("Failed to parse table_structures: {}", e.getMessage());
+            return Map.of();
+        }
+    }
+
+    private static String text(JsonNode n, String field) {
+        JsonNode v = n.get(field);
+        if (v == null) {
+            // try case-insensitive
+            for (var it = n.fieldNames(); it.hasNext();) {
+                String k = it.next();
+                if (k.equalsIgnoreCase(field)) return n.get(k).asText();
+            }
+            return null;
+        }
+        return v.asText();
+    }
+
+    private static String str(Object o) {
+        return o == null ? null : String.valueOf(o);
+    }
+
+    private static long toLong(Object o) {
+        if (o == null) return 0L;
+        if (o instanceof Number n) return n.longValue();
+        try {
+            return Long.parseLong(String.valueOf(o));
+        } catch (Exception e) {
+            return 0L;
+        }
+    }
+}
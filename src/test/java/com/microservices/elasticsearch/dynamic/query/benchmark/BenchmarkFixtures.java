@@ -0,0 +1,211 @@
+package com.microservices.elasticsearch.dynamic.query.benchmark;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ClassPathResource;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.microservices.elasticsearch.dynamic.query.dto.ElasticsearchQueryRequest;
+import com.microservices.elasticsearch.dynamic.query.dto.RawJson;
+import com.microservices.elasticsearch.dynamic.query.util.CompiledMapping;
+import com.microservices.elasticsearch.dynamic.query.util.FinalQueryTransformer;
+import com.microservices.elasticsearch.dynamic.query.util.WorkflowMappingCompiler;
+
+import ch.qos.logback.classic.Level;
+import co.elastic.clients.elasticsearch._types.ShardStatistics;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.elasticsearch.core.search.TotalHitsRelation;
+
+/**
+ * Benchmark fixtures built from the sample rows shipped in workflow_mappings.db.
+ */
+public final class BenchmarkFixtures {
+
+    private static final ObjectMapper M = new ObjectMapper();
+
+    private BenchmarkFixtures() {}
+
+    /**
+     * First row of the bundled workflow_mappings table
+     */
+    public static Map<String, Object> sampleMappingRow() {
+        try {
+            Path db = Files.createTempFile("workflow_mappings_bench", ".db");
+            db.toFile().deleteOnExit();
+            try (InputStream in = new ClassPathResource("workflow_mappings.db").getInputStream()) {
+                Files.copy(in, db, StandardCopyOption.REPLACE_EXISTING);
+            }
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + db.toAbsolutePath());
+                 Statement st = conn.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT * FROM workflow_mappings LIMIT 1")) {
+                if (!rs.next()) throw new IllegalStateException("workflow_mappings.db has no rows");
+                Map<String, Object> row = new HashMap<>();
+                ResultSetMetaData md = rs.getMetaData();
+                for (int i = 1; i <= md.getColumnCount(); i++) {
+                    row.put(md.getColumnLabel(i), rs.getObject(i));
+                }
+                return row;
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException("Failed to load sample mapping row", e);
+        }
+    }
+
+    public static CompiledMapping sampleMapping() {
+        Map<String, Object> row = sampleMappingRow();
+        return WorkflowMappingCompiler.compile(String.valueOf(row.get("mapping_name")), row);
+    }
+
+    /**
+     * UI query (the /v1/search "query" shape) touching {@code fieldCount} mapped fields,
+     * in groups of up to ten, mixing single-value and multi_value conditions.
+     */
+    public static ObjectNode uiQuery(CompiledMapping plan, int fieldCount) {
+        List<String> uiFields = new ArrayList<>(plan.targets().keySet());
+        uiFields.sort(null);
+
+        ObjectNode root = M.createObjectNode();
+        root.put("operator", "AND");
+        ArrayNode groups = root.putArray("fields");
+
+        ObjectNode group = null;
+        for (int i = 0; i < fieldCount; i++) {
+            if (i % 10 == 0) {
+                group = groups.addObject();
+                group.put("operator", (i / 10) % 2 == 0 ? "AND" : "OR");
+            }
+            String uiField = uiFields.get(i % uiFields.size());
+            ObjectNode cond = group.putObject(uiField);
+            if (i % 3 == 0) {
+                cond.put("type", "multi_value");
+                // as the UI sends them: OR carries the list to "in", AND splits into one match per value
+                boolean any = i % 2 == 0;
+                cond.put("operator", any ? "OR" : "AND");
+                cond.put("op", any ? "in" : "match");
+                ArrayNode values = cond.putArray("values");
+                values.add("value-" + i + "-a");
+                values.add("value-" + i + "-b");
+                values.add("value-" + i + "-c");
+            } else {
+                cond.put("op", "match");
+                cond.put("value", "value-" + i);
+            }
+        }
+        return root;
+    }
+
+    /**
+     * The /v1/search request the transform service would hand to the search service
+     */
+    public static ElasticsearchQueryRequest queryRequest(CompiledMapping plan, int fieldCount) {
+        return new ElasticsearchQueryRequest(
+                FinalQueryTransformer.toQueryStructure(uiQuery(plan, fieldCount), plan, 0, 10, "desc"),
+                null, plan.indexName());
+    }
+
+    /**
+     * A document holding every field the mapping targets, nested paths as nested objects
+     */
+    public static Map<String, Object> sampleDocument(CompiledMapping plan, int seed) {
+        Map<String, Object> doc = new LinkedHashMap<>();
+        List<String> uiFields = new ArrayList<>(plan.targets().keySet());
+        uiFields.sort(null);
+        for (String uiField : uiFields) {
+            put(doc, plan.target(uiField), uiField + "-value-" + seed);
+        }
+        return doc;
+    }
+
+    /**
+     * Like {@link #sampleDocument} but matching {@link #uiQuery} of the same {@code fieldCount}:
+     * each queried field holds "value-i-a", which satisfies its match, in and multi-match condition
+     */
+    public static Map<String, Object> matchingDocument(CompiledMapping plan, int fieldCount, int seed) {
+        Map<String, Object> doc = sampleDocument(plan, seed);
+        List<String> uiFields = new ArrayList<>(plan.targets().keySet());
+        uiFields.sort(null);
+        for (int i = 0; i < Math.min(fieldCount, uiFields.size()); i++) {
+            put(doc, plan.target(uiFields.get(i)), "value-" + i + "-a");
+        }
+        return doc;
+    }
+
+    private static void put(Map<String, Object> doc, FinalQueryTransformer.Target target, String value) {
+        if (target == null || target.fieldPath() == null) return;
+        String[] path = target.fieldPath().split("\\.");
+        Map<String, Object> node = doc;
+        for (int i = 0; i < path.length - 1; i++) {
+            Object child = node.computeIfAbsent(path[i], k -> new LinkedHashMap<String, Object>());
+            if (!(child instanceof Map)) break;
+            @SuppressWarnings("unchecked")
+            Map<String, Object> next = (Map<String, Object>) child;
+            node = next;
+        }
+        node.put(path[path.length - 1], value);
+    }
+
+    /**
+     * Search response with {@code hits} documents read as Maps (the default /search path)
+     */
+    public static SearchResponse<Map> mapResponse(CompiledMapping plan, int hits) {
+        List<Hit<Map>> list = new ArrayList<>(hits);
+        for (int i = 0; i < hits; i++) {
+            Map<String, Object> doc = sampleDocument(plan, i);
+            String id = String.valueOf(i);
+            list.add(Hit.of(h -> h.index(plan.indexName()).id(id).score(1.0).source(doc)));
+        }
+        return response(list);
+    }
+
+    /**
+     * Same documents kept as raw bytes (the rawSource=true path)
+     */
+    public static SearchResponse<RawJson> rawResponse(CompiledMapping plan, int hits) {
+        List<Hit<RawJson>> list = new ArrayList<>(hits);
+        for (int i = 0; i < hits; i++) {
+            try {
+                RawJson doc = new RawJson(M.writeValueAsBytes(sampleDocument(plan, i)));
+                String id = String.valueOf(i);
+                list.add(Hit.of(h -> h.index(plan.indexName()).id(id).score(1.0).source(doc)));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return response(list);
+    }
+
+    private static <T> SearchResponse<T> response(List<Hit<T>> hits) {
+        return SearchResponse.of(r -> r
+                .took(3)
+                .timedOut(false)
+                .shards(ShardStatistics.of(s -> s.total(1).successful(1).failed(0)))
+                .hits(h -> h.total(t -> t.value(hits.size() * 10L).relation(TotalHitsRelation.Eq)).hits(hits)));
+    }
+
+    /**
+     * Benchmarks measure the code, not console logging at logback's default DEBUG level
+     */
+    public static void quietLogging() {
+        if (LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME) instanceof ch.qos.logback.classic.Logger root) {
+            root.setLevel(Level.WARN);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.microservices.elasticsearch.dynamic.query.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.microservices.elasticsearch.dynamic.query.dto.QueryStructureRequest;
+import com.microservices.elasticsearch.dynamic.query.util.CompiledMapping;
+import com.microservices.elasticsearch.dynamic.query.util.FinalQueryTransformer;
+
+/**
+ * Compares the old ObjectNode -> String -> QueryStructureRequest round trip of
+ * QueryTransformService.buildFinalQuery with building the request objects directly.
+ * Run {@link #main} (or org.openjdk.jmh.Main with -prof gc) and compare gc.alloc.rate.norm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BuildFinalQueryBenchmark {
+
+    private static final ObjectMapper M = new ObjectMapper();
+
+    @Param({"20", "50"})
+    public int fields;
+
+    private CompiledMapping plan;
+    private JsonNode uiQuery;
+
+    @Setup
+    public void setup() {
+        plan = BenchmarkFixtures.sampleMapping();
+        uiQuery = BenchmarkFixtures.uiQuery(plan, fields);
+    }
+
+    @Benchmark
+    public QueryStructureRequest jsonRoundTrip() throws Exception {
+        ObjectNode out = FinalQueryTransformer.transform(uiQuery, plan, 0, 10, "desc");
+        String requestQuery = M.writeValueAsString(out);
+        QueryStructureRequest request = M.readValue(requestQuery, QueryStructureRequest.class);
+        M.writerWithDefaultPrettyPrinter().writeValueAsString(out);
+        return request;
+    }
+
+    @Benchmark
+    public QueryStructureRequest direct() {
+        return FinalQueryTransformer.toQueryStructure(uiQuery, plan, 0, 10, "desc");
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(BuildFinalQueryBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
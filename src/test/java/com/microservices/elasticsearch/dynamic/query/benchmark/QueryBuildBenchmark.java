@@ -0,0 +1,89 @@
+package com.microservices.elasticsearch.dynamic.query.benchmark;
+
+import java.io.StringReader;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microservices.elasticsearch.dynamic.query.dto.ElasticsearchQueryRequest;
+import com.microservices.elasticsearch.dynamic.query.service.BoolQueryOptimizer;
+import com.microservices.elasticsearch.dynamic.query.service.ElasticsearchAggregationCompiler;
+import com.microservices.elasticsearch.dynamic.query.service.ElasticsearchQueryBuilderService;
+import com.microservices.elasticsearch.dynamic.query.service.ElasticsearchQueryCompiler;
+import com.microservices.elasticsearch.dynamic.query.util.CompiledMapping;
+
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+
+/**
+ * Query structure -> Elasticsearch request: the Map DSL of buildEsQuery, the Map -> Query
+ * conversion through JSON that the search path used to do, and the typed compiler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBuildBenchmark {
+
+    private static final ObjectMapper M = new ObjectMapper();
+
+    @Param({"10", "50"})
+    public int fields;
+
+    private ElasticsearchQueryBuilderService queryBuilder;
+    private ElasticsearchQueryCompiler queryCompiler;
+    private ElasticsearchQueryRequest request;
+    private String indexName;
+    private Object mapQuery;
+
+    @Setup
+    public void setup() {
+        BenchmarkFixtures.quietLogging();
+        CompiledMapping plan = BenchmarkFixtures.sampleMapping();
+        queryBuilder = new ElasticsearchQueryBuilderService();
+        queryCompiler = new ElasticsearchQueryCompiler(new ElasticsearchAggregationCompiler(), new BoolQueryOptimizer(true));
+        request = BenchmarkFixtures.queryRequest(plan, fields);
+        indexName = plan.indexName();
+        mapQuery = queryBuilder.buildEsQuery(request).get("query");
+    }
+
+    @Benchmark
+    public Map<String, Object> buildEsQuery() {
+        return queryBuilder.buildEsQuery(request);
+    }
+
+    @Benchmark
+    public Query mapToQuery() throws Exception {
+        String json = M.writeValueAsString(mapQuery);
+        return Query.of(q -> q.withJson(new StringReader(json)));
+    }
+
+    @Benchmark
+    public SearchRequest typedSearchRequest() {
+        return queryCompiler.searchRequest(indexName, request).build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(QueryBuildBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,113 @@
+package com.microservices.elasticsearch.dynamic.query.benchmark;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.microservices.elasticsearch.dynamic.query.dto.QueryStructureRequest;
+import com.microservices.elasticsearch.dynamic.query.util.CompiledMapping;
+import com.microservices.elasticsearch.dynamic.query.util.FinalQueryTransformer;
+import com.microservices.elasticsearch.dynamic.query.util.QueryTemplate;
+import com.microservices.elasticsearch.dynamic.query.util.WorkflowMappingCompiler;
+
+/**
+ * UI query -> query structure: the per-request transform (with the raw mapping map, with the
+ * compiled plan, and bound from a cached template) and the per-mapping role resolution that
+ * builds that map.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryTransformBenchmark {
+
+    @Param({"10", "50"})
+    public int fields;
+
+    private Map<String, Object> row;
+    private List<FinalQueryTransformer.TableRelation> relations;
+    private Map<String, List<FinalQueryTransformer.Column>> tableColumns;
+    private Map<String, String> roleMap;
+    private Map<String, String> mapping;
+    private CompiledMapping plan;
+    private JsonNode uiQuery;
+    private QueryTemplate template;
+
+    @Setup
+    public void setup() {
+        BenchmarkFixtures.quietLogging();
+        row = BenchmarkFixtures.sampleMappingRow();
+        relations = WorkflowMappingCompiler.relations(row);
+        tableColumns = WorkflowMappingCompiler.tableColumns(row);
+        roleMap = FinalQueryTransformer.buildFieldRoleMap(relations, tableColumns);
+        mapping = FinalQueryTransformer.transformByRole(roleMap);
+        plan = WorkflowMappingCompiler.compile(String.valueOf(row.get("mapping_name")), row);
+        uiQuery = BenchmarkFixtures.uiQuery(plan, fields);
+        template = FinalQueryTransformer.template(uiQuery, plan);
+    }
+
+    @Benchmark
+    public ObjectNode transformWithMapping() {
+        return FinalQueryTransformer.transform(uiQuery, mapping, plan.indexName(), 0, 10, "desc");
+    }
+
+    @Benchmark
+    public ObjectNode transformWithPlan() {
+        return FinalQueryTransformer.transform(uiQuery, plan, 0, 10, "desc");
+    }
+
+    @Benchmark
+    public QueryStructureRequest toQueryStructure() {
+        return FinalQueryTransformer.toQueryStructure(uiQuery, plan, 0, 10, "desc");
+    }
+
+    /**
+     * Repeat shape: only the values are extracted and bound into the cached template
+     */
+    @Benchmark
+    public QueryStructureRequest toQueryStructureFromTemplate() {
+        QueryTemplate.Shape shape = FinalQueryTransformer.shape(uiQuery, plan);
+        return FinalQueryTransformer.toQueryStructure(template.bind(shape.values()), 0, 10, "desc");
+    }
+
+    @Benchmark
+    public Map<String, String> buildFieldRoleMap() {
+        return FinalQueryTransformer.buildFieldRoleMap(relations, tableColumns);
+    }
+
+    @Benchmark
+    public Map<String, String> transformByRole() {
+        return FinalQueryTransformer.transformByRole(roleMap);
+    }
+
+    @Benchmark
+    public CompiledMapping compileMapping() {
+        return WorkflowMappingCompiler.compile(plan.mappingName(), row);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(QueryTransformBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,75 @@
+package com.microservices.elasticsearch.dynamic.query.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.microservices.elasticsearch.dynamic.query.dto.PaginationRequest;
+import com.microservices.elasticsearch.dynamic.query.dto.RawJson;
+import com.microservices.elasticsearch.dynamic.query.dto.SearchResult;
+import com.microservices.elasticsearch.dynamic.query.service.ElasticsearchAggregationCompiler;
+import com.microservices.elasticsearch.dynamic.query.service.SearchResponseConverter;
+import com.microservices.elasticsearch.dynamic.query.util.CompiledMapping;
+
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+
+/**
+ * Search response -> SearchResult for Map and raw _source hits
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResponseConversionBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int hits;
+
+    private SearchResponseConverter converter;
+    private SearchResponse<Map> mapResponse;
+    private SearchResponse<RawJson> rawResponse;
+    private PaginationRequest pagination;
+
+    @Setup
+    public void setup() {
+        BenchmarkFixtures.quietLogging();
+        CompiledMapping plan = BenchmarkFixtures.sampleMapping();
+        converter = new SearchResponseConverter(new ElasticsearchAggregationCompiler());
+        mapResponse = BenchmarkFixtures.mapResponse(plan, hits);
+        rawResponse = BenchmarkFixtures.rawResponse(plan, hits);
+        pagination = PaginationRequest.builder().from(0).size(hits).build();
+    }
+
+    @Benchmark
+    public SearchResult<Map> convertMapHits() {
+        return converter.convert(mapResponse, Map.class, pagination);
+    }
+
+    @Benchmark
+    public SearchResult<RawJson> convertRawHits() {
+        return converter.convert(rawResponse, RawJson.class, pagination);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(ResponseConversionBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,96 @@
+package com.microservices.elasticsearch.dynamic.query.config;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+
+import com.microservices.elasticsearch.dynamic.query.service.QueryLog;
+import com.microservices.elasticsearch.dynamic.query.service.SearchMetrics;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+class SearchMetricsWebFilterTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final SearchMetrics metrics = new SearchMetrics(registry);
+    private final QueryLogProperties queryLogProperties = new QueryLogProperties();
+    private final SearchMetricsWebFilter filter = new SearchMetricsWebFilter(metrics, new QueryLog(queryLogProperties));
+    private final AtomicReference<SearchMetrics.Trace> seen = new AtomicReference<>();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(metrics, "maxTagValues", 50);
+        queryLogProperties.setEnabled(false);
+    }
+
+    private static DataBuffer buffer(String text) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void run(String path, WebFilterChain handler) {
+        MockServerWebExchange exchange = MockServerWebExchange.from(
+                MockServerHttpRequest.post(path).header("service_id", "orders_search"));
+        filter.filter(exchange, handled -> {
+            seen.set(handled.getAttribute(SearchMetrics.TRACE_ATTRIBUTE));
+            return handler.filter(handled);
+        }).block();
+    }
+
+    private static WebFilterChain writes(String body) {
+        return exchange -> exchange.getResponse().writeWith(Mono.just(buffer(body)));
+    }
+
+    @Test
+    void singleValueBodyIsTimedAsEncodeAndCounted() {
+        run("/api/elasticsearch/search/orders", exchange -> {
+            SearchMetrics.Trace trace = exchange.getAttribute(SearchMetrics.TRACE_ATTRIBUTE);
+            trace.index("orders");
+            trace.took(3L);
+            return writes("{\"results\":[]}").filter(exchange);
+        });
+
+        assertThat(registry.get("es.search.stage").tag("stage", "encode").tag("endpoint", "search")
+                .tag("index", "orders").tag("mapping", "orders_search").timer().count()).isEqualTo(1);
+        assertThat(registry.get("es.search.bytes.returned").counter().count()).isEqualTo(14);
+        assertThat(registry.get("es.search.overhead").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void streamedBodiesCountBytesWithoutAnEncodeStage() {
+        run("/api/elasticsearch/v1/export/orders", exchange -> exchange.getResponse()
+                .writeAndFlushWith(Flux.just(Flux.just(buffer("{\"a\":1}\n")), Flux.just(buffer("{\"a\":2}\n")))));
+
+        assertThat(seen.get().endpoint()).isEqualTo("v1-export");
+        assertThat(registry.find("es.search.stage").timer()).isNull();
+        assertThat(registry.get("es.search.bytes.returned").tag("endpoint", "v1-export").counter().count())
+                .isEqualTo(16);
+    }
+
+    @Test
+    void otherPathsAreNotTraced() {
+        run("/actuator/health", writes("{}"));
+
+        assertThat(seen.get()).isNull();
+        assertThat(registry.getMeters()).isEmpty();
+    }
+
+    @Test
+    void endpointIsTheFirstSegmentOrTheV1Pair() {
+        assertThat(SearchMetricsWebFilter.endpoint("/api/elasticsearch/search/orders")).isEqualTo("search");
+        assertThat(SearchMetricsWebFilter.endpoint("/api/elasticsearch/v1/search/orders")).isEqualTo("v1-search");
+        assertThat(SearchMetricsWebFilter.endpoint("/api/elasticsearch/batch-search")).isEqualTo("batch-search");
+    }
+}
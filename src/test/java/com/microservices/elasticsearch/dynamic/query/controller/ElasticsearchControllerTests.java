@@ -0,0 +1,113 @@
+package com.microservices.elasticsearch.dynamic.query.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import com.microservices.elasticsearch.dynamic.query.simulator.ElasticsearchSimulator;
+import com.microservices.elasticsearch.dynamic.query.simulator.Latency;
+
+/**
+ * Error mapping of {@link ElasticsearchController} against a simulator, with a one-permit
+ * bulkhead so a single slow search saturates it.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ElasticsearchControllerTests {
+
+    private static final ElasticsearchSimulator ES = ElasticsearchSimulator.start();
+    private static final String INDEX = "orders";
+
+    @Autowired
+    private WebTestClient web;
+
+    @DynamicPropertySource
+    static void elasticsearch(DynamicPropertyRegistry registry) {
+        registry.add("app.elasticsearch.host", ES::host);
+        registry.add("app.elasticsearch.port", ES::port);
+        registry.add("spring.elasticsearch.uris", ES::url);
+        registry.add("app.elasticsearch.bulkhead.interactive.max-concurrent", () -> "1");
+        registry.add("app.elasticsearch.bulkhead.acquire-timeout-ms", () -> "50");
+    }
+
+    @AfterAll
+    static void stop() {
+        ES.close();
+    }
+
+    @BeforeEach
+    void reset() {
+        ES.deleteAll().resetFaults().clearRequests();
+        ES.indexAll(INDEX, List.of(Map.of("status", "open"), Map.of("status", "closed")));
+    }
+
+    @Test
+    void saturatedBulkheadAnswersTooManyRequests() throws Exception {
+        ES.latency("_search", Latency.fixed(1_500));
+        CompletableFuture<Void> slow = CompletableFuture.runAsync(() -> web.post()
+                .uri("/api/elasticsearch/search/" + INDEX)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(request("open"))
+                .exchange()
+                .expectStatus().isOk());
+        for (int i = 0; i < 100 && ES.requests("_search").isEmpty(); i++) Thread.sleep(20);
+        assertThat(ES.requests("_search")).hasSize(1);
+
+        for (String endpoint : List.of("search", "search-vt", "aggregation")) {
+            Map<String, Object> body = web.post().uri("/api/elasticsearch/" + endpoint + "/" + INDEX)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(request("closed"))
+                    .exchange()
+                    .expectStatus().isEqualTo(429)
+                    .expectBody(new ParameterizedTypeReference<Map<String, Object>>() {})
+                    .returnResult().getResponseBody();
+            assertThat(body).containsEntry("status", "rejected");
+        }
+        web.post().uri("/api/elasticsearch/raw-query/" + INDEX)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(Map.of("query", Map.of("match_all", Map.of())))
+                .exchange()
+                .expectStatus().isEqualTo(429);
+
+        slow.join();
+        ES.resetFaults();
+        web.post().uri("/api/elasticsearch/search/" + INDEX)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(request("closed"))
+                .exchange()
+                .expectStatus().isOk();
+    }
+
+    @Test
+    void elasticsearchFailureIsStillAServerError() {
+        ES.failNext("_search", 1, 500);
+
+        web.post().uri("/api/elasticsearch/search-vt/" + INDEX)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(request("open"))
+                .exchange()
+                .expectStatus().isEqualTo(500);
+    }
+
+    private static Map<String, Object> request(String status) {
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("queryStructure", Map.of(
+                "query", Map.of("operator", "AND",
+                        "conditions", List.of(Map.of("field", "status", "operator", "==", "value", status))),
+                "pagination", Map.of("from", 0, "size", 10)));
+        return request;
+    }
+}
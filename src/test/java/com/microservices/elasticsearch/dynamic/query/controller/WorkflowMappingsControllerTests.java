@@ -0,0 +1,51 @@
+package com.microservices.elasticsearch.dynamic.query.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import com.microservices.elasticsearch.dynamic.query.service.WorkflowMappingsCache;
+import com.microservices.elasticsearch.dynamic.query.service.WorkflowMappingsReloader;
+import com.microservices.elasticsearch.dynamic.query.service.WorkflowMappingsService;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+class WorkflowMappingsControllerTests {
+
+    private final WorkflowMappingsService service = mock(WorkflowMappingsService.class);
+    private final WorkflowMappingsCache cache = new WorkflowMappingsCache();
+    private final WorkflowMappingsController controller =
+            new WorkflowMappingsController(service, cache, mock(WorkflowMappingsReloader.class));
+
+    @Test
+    void readsTheStoreUntilTheFirstLoad() {
+        when(service.getAll()).thenReturn(Flux.just(Map.of("mapping_name", "m1")));
+        when(service.getByMappingName(anyString())).thenReturn(Mono.empty());
+
+        assertThat(controller.getAll().collectList().block()).hasSize(1);
+        assertThat(controller.getByName("m1").block().getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+        verify(service).getAll();
+        verify(service).getByMappingName("m1");
+    }
+
+    @Test
+    void emptyStoreCountsAsLoaded() {
+        cache.apply(List.of(), List.of());
+
+        assertThat(cache.current().loaded()).isTrue();
+        assertThat(cache.current().version()).isZero();
+        assertThat(controller.getAll().collectList().block()).isEmpty();
+        assertThat(controller.getByName("m1").block().getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+        verifyNoInteractions(service);
+    }
+}
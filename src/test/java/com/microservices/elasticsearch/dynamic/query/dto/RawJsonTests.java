@@ -0,0 +1,61 @@
+package com.microservices.elasticsearch.dynamic.query.dto;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+class RawJsonTests {
+
+    private static final ObjectMapper M = new ObjectMapper();
+    private static final String JSON = "{\"name\":\"Zoë \\\"Z\\\"\",\"n\":1}";
+
+    @Test
+    void bytesAreWrittenBackVerbatim() throws Exception {
+        RawJson raw = M.readValue(JSON, RawJson.class);
+
+        assertThat(raw.toString()).isEqualTo(JSON);
+        assertThat(M.writeValueAsString(Map.of("doc", raw))).isEqualTo("{\"doc\":" + JSON + "}");
+    }
+
+    @Test
+    void quotedFormsMatchJacksonsOwn() throws Exception {
+        RawJson.Utf8Bytes raw = new RawJson.Utf8Bytes(JSON.getBytes(StandardCharsets.UTF_8));
+        SerializedString expected = new SerializedString(JSON);
+
+        assertThat(raw.charLength()).isEqualTo(expected.charLength());
+        assertThat(raw.asQuotedChars()).isEqualTo(expected.asQuotedChars());
+        assertThat(raw.asQuotedUTF8()).isEqualTo(expected.asQuotedUTF8());
+
+        byte[] bytes = new byte[200];
+        int n = raw.appendQuotedUTF8(bytes, 3);
+        assertThat(new String(bytes, 3, n, StandardCharsets.UTF_8)).isEqualTo(new String(expected.asQuotedChars()));
+        char[] chars = new char[200];
+        n = raw.appendQuoted(chars, 3);
+        assertThat(new String(chars, 3, n)).isEqualTo(new String(expected.asQuotedChars()));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        raw.writeQuotedUTF8(out);
+        assertThat(out.toByteArray()).isEqualTo(expected.asQuotedUTF8());
+        ByteBuffer buffer = ByteBuffer.allocate(200);
+        raw.putQuotedUTF8(buffer);
+        assertThat(buffer.flip().remaining()).isEqualTo(expected.asQuotedUTF8().length);
+    }
+
+    @Test
+    void appendsThatDoNotFitReportMinusOne() {
+        RawJson.Utf8Bytes raw = new RawJson.Utf8Bytes(JSON.getBytes(StandardCharsets.UTF_8));
+
+        assertThat(raw.appendQuotedUTF8(new byte[4], 0)).isEqualTo(-1);
+        assertThat(raw.appendQuoted(new char[4], 0)).isEqualTo(-1);
+        assertThat(raw.appendUnquotedUTF8(new byte[4], 0)).isEqualTo(-1);
+        assertThat(raw.putQuotedUTF8(ByteBuffer.allocate(4))).isEqualTo(-1);
+    }
+}
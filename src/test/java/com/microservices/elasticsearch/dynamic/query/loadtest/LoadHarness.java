@@ -0,0 +1,168 @@
+package com.microservices.elasticsearch.dynamic.query.loadtest;
+
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.microservices.elasticsearch.dynamic.query.ElasticsearchApplication;
+import com.microservices.elasticsearch.dynamic.query.benchmark.BenchmarkFixtures;
+import com.microservices.elasticsearch.dynamic.query.simulator.ElasticsearchSimulator;
+import com.microservices.elasticsearch.dynamic.query.simulator.Latency;
+import com.microservices.elasticsearch.dynamic.query.util.CompiledMapping;
+
+/**
+ * End-to-end load test: boots the service against an {@link ElasticsearchSimulator} holding
+ * documents for the sample workflow mapping, then drives each endpoint at fixed open-loop
+ * arrival rates and reports throughput, latency percentiles, error rate, and CPU and
+ * allocation per request.
+ * <p>
+ * Run with {@code mvn -Pload verify}; settings are system properties passed through by the
+ * profile (see pom.xml), e.g. {@code -Dload.rates=100,400 -Dload.scenarios=search,search-vt}.
+ * Each run writes target/load-reports/load-&lt;time&gt;.json, latest.json and one HdrHistogram
+ * percentile file per scenario. When load.baseline names an earlier report, metrics that moved
+ * past load.tolerance are listed, and with load.fail-on-regression=true the run fails.
+ */
+public final class LoadHarness {
+
+    private LoadHarness() {}
+
+    public static void main(String[] args) throws Exception {
+        List<String> scenarioNames = list("load.scenarios", String.join(",", LoadScenario.NAMES));
+        List<Integer> rates = list("load.rates", "200").stream().map(Integer::parseInt).toList();
+        Duration warmup = Duration.ofSeconds(Long.getLong("load.warmup", 10));
+        Duration duration = Duration.ofSeconds(Long.getLong("load.duration", 30));
+        int documents = Integer.getInteger("load.documents", 1000);
+        int fields = Integer.getInteger("load.fields", 10);
+        int batchSize = Integer.getInteger("load.batch-size", 5);
+        long esLatencyMs = Long.getLong("load.es-latency-ms", 5);
+        double esLatencySigma = Double.parseDouble(System.getProperty("load.es-latency-sigma", "0.5"));
+        Duration timeout = Duration.ofMillis(Long.getLong("load.timeout-ms", 5000));
+        int maxOutstanding = Integer.getInteger("load.max-outstanding", 2000);
+        long seed = Long.getLong("load.seed", 42);
+        Path reportDir = Path.of(System.getProperty("load.report-dir", "target/load-reports"));
+        String baseline = System.getProperty("load.baseline", "");
+        double tolerance = Double.parseDouble(System.getProperty("load.tolerance", "0.10"));
+        boolean failOnRegression = Boolean.getBoolean("load.fail-on-regression");
+
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("scenarios", scenarioNames);
+        settings.put("rates", rates);
+        settings.put("warmupSeconds", warmup.toSeconds());
+        settings.put("durationSeconds", duration.toSeconds());
+        settings.put("documents", documents);
+        settings.put("fields", fields);
+        settings.put("batchSize", batchSize);
+        settings.put("esLatencyMedianMs", esLatencyMs);
+        settings.put("esLatencySigma", esLatencySigma);
+        settings.put("seed", seed);
+
+        CompiledMapping plan = BenchmarkFixtures.sampleMapping();
+        List<LoadReport.Scenario> results = new ArrayList<>();
+        String startedAt = LocalDateTime.now().withNano(0).toString();
+
+        try (ElasticsearchSimulator es = ElasticsearchSimulator.start(seed)) {
+            for (int i = 0; i < documents; i++) {
+                es.index(plan.indexName(), String.valueOf(i), BenchmarkFixtures.matchingDocument(plan, fields, i));
+            }
+            es.latency(Latency.logNormal(esLatencyMs, esLatencySigma));
+
+            String logLevel = System.getProperty("load.log-level", "WARN");
+            try (ConfigurableApplicationContext app = new SpringApplicationBuilder(ElasticsearchApplication.class).run(
+                    "--server.port=0",
+                    "--app.elasticsearch.host=" + es.host(),
+                    "--app.elasticsearch.port=" + es.port(),
+                    "--spring.elasticsearch.uris=" + es.url(),
+                    "--logging.level.root=" + logLevel,
+                    "--logging.level.com.microservices.elasticsearch.dynamic.query=" + logLevel);
+                 OpenLoopDriver driver = new OpenLoopDriver(
+                         "http://127.0.0.1:" + app.getEnvironment().getProperty("local.server.port"),
+                         timeout, maxOutstanding, es::cpuNanos, es::allocatedBytes)) {
+
+                awaitReady("http://127.0.0.1:" + app.getEnvironment().getProperty("local.server.port"));
+
+                for (String name : scenarioNames) {
+                    LoadScenario scenario = LoadScenario.of(name, plan, fields, batchSize);
+                    for (int rate : rates) {
+                        System.out.printf("%s @ %d req/s: warmup %ds, measuring %ds%n",
+                                name, rate, warmup.toSeconds(), duration.toSeconds());
+                        if (!warmup.isZero()) driver.run(scenario, rate, warmup);
+                        System.gc();
+                        es.clearRequests();
+                        OpenLoopDriver.Result result = driver.run(scenario, rate, duration);
+                        results.add(LoadReport.Scenario.of(name, rate, result));
+                        writeHistogram(reportDir.resolve(name + "-" + rate + ".hgrm"), result);
+                    }
+                }
+            }
+        }
+
+        LoadReport report = new LoadReport(startedAt, environment(), settings, results);
+        System.out.println();
+        System.out.print(report.table());
+        Path file = reportDir.resolve("load-" + startedAt.replace(":", "") + ".json");
+        report.write(file);
+        report.write(reportDir.resolve("latest.json"));
+        System.out.println("Report written to " + file);
+
+        if (!baseline.isBlank()) {
+            List<LoadReport.Regression> regressions = report.regressionsAgainst(LoadReport.read(Path.of(baseline)), tolerance);
+            if (regressions.isEmpty()) {
+                System.out.printf("No regressions against %s (tolerance %.0f%%)%n", baseline, tolerance * 100);
+            } else {
+                System.out.printf("Regressions against %s (tolerance %.0f%%):%n", baseline, tolerance * 100);
+                regressions.forEach(r -> System.out.println("  " + r));
+                if (failOnRegression) System.exit(1);
+            }
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Mappings are compiled in the background after startup; wait for the readiness probe
+     */
+    private static void awaitReady(String baseUrl) throws Exception {
+        try (HttpClient client = HttpClient.newHttpClient()) {
+            HttpRequest probe = HttpRequest.newBuilder(URI.create(baseUrl + "/actuator/health/readiness")).build();
+            long deadline = System.nanoTime() + Duration.ofSeconds(60).toNanos();
+            while (client.send(probe, HttpResponse.BodyHandlers.discarding()).statusCode() != 200) {
+                if (System.nanoTime() > deadline) throw new IllegalStateException("Service did not become ready");
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    private static void writeHistogram(Path file, OpenLoopDriver.Result result) throws Exception {
+        Files.createDirectories(file.getParent());
+        try (PrintStream out = new PrintStream(Files.newOutputStream(file))) {
+            result.latency().outputPercentileDistribution(out, 1_000_000.0); // nanoseconds -> ms
+        }
+    }
+
+    private static Map<String, Object> environment() {
+        Map<String, Object> env = new LinkedHashMap<>();
+        env.put("java", System.getProperty("java.vm.name") + " " + System.getProperty("java.version"));
+        env.put("os", System.getProperty("os.name") + " " + System.getProperty("os.arch"));
+        env.put("cpus", Runtime.getRuntime().availableProcessors());
+        env.put("maxHeapMb", Runtime.getRuntime().maxMemory() / (1024 * 1024));
+        return env;
+    }
+
+    private static List<String> list(String property, String defaultValue) {
+        return Arrays.stream(System.getProperty(property, defaultValue).split(","))
+                .map(String::trim).filter(s -> !s.isEmpty()).toList();
+    }
+}
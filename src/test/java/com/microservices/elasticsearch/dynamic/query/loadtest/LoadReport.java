@@ -0,0 +1,119 @@
+package com.microservices.elasticsearch.dynamic.query.loadtest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.HdrHistogram.Histogram;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Results of one harness run, written as JSON so later runs can be compared against it.
+ * Latencies are in milliseconds. CPU and allocation are per completed request and cover the
+ * service plus the load generator's HTTP client; the simulator's own share is subtracted.
+ */
+record LoadReport(String startedAt, Map<String, Object> environment, Map<String, Object> settings,
+                  List<Scenario> scenarios) {
+
+    private static final ObjectMapper M = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    record Scenario(String name, int targetRate, double throughput, long requests, long errors, long dropped,
+                    double errorRate, double p50, double p90, double p99, double p999, double max,
+                    double cpuMillisPerRequest, double allocatedKbPerRequest) {
+
+        static Scenario of(String name, int targetRate, OpenLoopDriver.Result r) {
+            Histogram h = r.latency();
+            long completed = Math.max(1, r.completed());
+            return new Scenario(name, targetRate,
+                    round(r.completed() / (r.elapsedNanos() / 1e9)),
+                    r.completed(), r.errors(), r.dropped(),
+                    round((double) (r.errors() + r.dropped()) / Math.max(1, r.sent() + r.dropped())),
+                    millis(h.getValueAtPercentile(50)), millis(h.getValueAtPercentile(90)),
+                    millis(h.getValueAtPercentile(99)), millis(h.getValueAtPercentile(99.9)),
+                    millis(h.getMaxValue()),
+                    r.cpuNanos() < 0 ? -1 : round(r.cpuNanos() / 1e6 / completed),
+                    r.allocatedBytes() < 0 ? -1 : round(r.allocatedBytes() / 1024.0 / completed));
+        }
+    }
+
+    /**
+     * One metric that moved past the tolerance in the wrong direction
+     */
+    record Regression(String scenario, String metric, double baseline, double current) {
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%s %s: %.3f -> %.3f (%+.1f%%)", scenario, metric, baseline, current,
+                    baseline == 0 ? 0 : (current - baseline) / baseline * 100);
+        }
+    }
+
+    void write(Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        M.writeValue(file.toFile(), this);
+    }
+
+    static LoadReport read(Path file) throws IOException {
+        return M.readValue(file.toFile(), LoadReport.class);
+    }
+
+    String table() {
+        StringBuilder sb = new StringBuilder(String.format(Locale.ROOT,
+                "%-14s %8s %9s %8s %8s %8s %8s %8s %7s %9s %10s%n", "scenario", "rate", "req/s", "p50 ms",
+                "p90 ms", "p99 ms", "p999 ms", "max ms", "errors", "cpu ms/rq", "alloc KB/rq"));
+        for (Scenario s : scenarios) {
+            sb.append(String.format(Locale.ROOT, "%-14s %8d %9.1f %8.2f %8.2f %8.2f %8.2f %8.2f %6.2f%% %9.3f %10.1f%n",
+                    s.name(), s.targetRate(), s.throughput(), s.p50(), s.p90(), s.p99(), s.p999(), s.max(),
+                    s.errorRate() * 100, s.cpuMillisPerRequest(), s.allocatedKbPerRequest()));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Metrics worse than {@code baseline} by more than {@code tolerance} (0.10 = 10%): lower
+     * throughput, higher p99/p999, error rate, CPU or allocation per request. Scenarios missing
+     * from either report are skipped.
+     */
+    List<Regression> regressionsAgainst(LoadReport baseline, double tolerance) {
+        List<Regression> out = new ArrayList<>();
+        for (Scenario current : scenarios) {
+            Scenario base = baseline.scenarios().stream()
+                    .filter(s -> s.name().equals(current.name()) && s.targetRate() == current.targetRate())
+                    .findFirst().orElse(null);
+            if (base == null) continue;
+            lower(out, current.name(), "throughput", base.throughput(), current.throughput(), tolerance);
+            higher(out, current.name(), "p99", base.p99(), current.p99(), tolerance);
+            higher(out, current.name(), "p999", base.p999(), current.p999(), tolerance);
+            higher(out, current.name(), "cpu ms/request", base.cpuMillisPerRequest(), current.cpuMillisPerRequest(), tolerance);
+            higher(out, current.name(), "alloc KB/request", base.allocatedKbPerRequest(), current.allocatedKbPerRequest(), tolerance);
+            // error rates start at zero, so any absolute increase above the tolerance counts
+            if (current.errorRate() - base.errorRate() > tolerance / 10) {
+                out.add(new Regression(current.name(), "error rate", base.errorRate(), current.errorRate()));
+            }
+        }
+        return out;
+    }
+
+    private static void higher(List<Regression> out, String scenario, String metric, double base, double current,
+                               double tolerance) {
+        if (base > 0 && current > base * (1 + tolerance)) out.add(new Regression(scenario, metric, base, current));
+    }
+
+    private static void lower(List<Regression> out, String scenario, String metric, double base, double current,
+                              double tolerance) {
+        if (base > 0 && current < base * (1 - tolerance)) out.add(new Regression(scenario, metric, base, current));
+    }
+
+    private static double millis(long nanos) {
+        return round(nanos / 1e6);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+}
@@ -0,0 +1,79 @@
+package com.microservices.elasticsearch.dynamic.query.loadtest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.microservices.elasticsearch.dynamic.query.benchmark.BenchmarkFixtures;
+import com.microservices.elasticsearch.dynamic.query.dto.ElasticsearchQueryRequest;
+import com.microservices.elasticsearch.dynamic.query.util.CompiledMapping;
+
+/**
+ * One endpoint under load: the path, headers and a family of request bodies. Bodies vary by
+ * {@code variant} so that coalescing and caching see a realistic mix instead of a single
+ * repeated request.
+ */
+record LoadScenario(String name, String path, Map<String, String> headers, IntFunction<byte[]> body) {
+
+    private static final ObjectMapper M = new ObjectMapper();
+
+    static final List<String> NAMES = List.of("search", "search-vt", "batch-search", "v1-search");
+
+    /**
+     * The scenario of one endpoint, built against the sample workflow mapping
+     */
+    static LoadScenario of(String name, CompiledMapping plan, int fieldCount, int batchSize) {
+        String index = plan.indexName();
+        return switch (name) {
+            case "search" -> new LoadScenario(name, "/api/elasticsearch/search/" + index, Map.of(),
+                    variant -> json(queryRequest(plan, fieldCount, variant)));
+            case "search-vt" -> new LoadScenario(name, "/api/elasticsearch/search-vt/" + index, Map.of(),
+                    variant -> json(queryRequest(plan, fieldCount, variant)));
+            case "batch-search" -> new LoadScenario(name, "/api/elasticsearch/batch-search", Map.of(),
+                    variant -> {
+                        List<Map<String, Object>> batch = new ArrayList<>(batchSize);
+                        for (int i = 0; i < batchSize; i++) {
+                            Map<String, Object> item = new LinkedHashMap<>();
+                            item.put("indexName", index);
+                            item.put("queryRequest", queryRequest(plan, fieldCount, variant * batchSize + i));
+                            batch.add(item);
+                        }
+                        return json(batch);
+                    });
+            case "v1-search" -> new LoadScenario(name, "/api/elasticsearch/v1/search",
+                    Map.of("service_id", plan.mappingName()),
+                    variant -> {
+                        ObjectNode request = M.createObjectNode();
+                        request.set("query", BenchmarkFixtures.uiQuery(plan, fieldCount));
+                        request.putObject("pagination").put("from", pageOffset(variant)).put("size", 10);
+                        return json(request);
+                    });
+            default -> throw new IllegalArgumentException("Unknown scenario '" + name + "', expected one of " + NAMES);
+        };
+    }
+
+    private static ElasticsearchQueryRequest queryRequest(CompiledMapping plan, int fieldCount, int variant) {
+        ElasticsearchQueryRequest request = BenchmarkFixtures.queryRequest(plan, fieldCount);
+        request.getQueryStructure().getPagination().setFrom(pageOffset(variant));
+        return request;
+    }
+
+    /**
+     * Variants differ only in the page requested, so each one is a distinct search of equal cost
+     */
+    private static int pageOffset(int variant) {
+        return (variant % 10) * 10;
+    }
+
+    private static byte[] json(Object value) {
+        try {
+            return M.writeValueAsBytes(value);
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not serialize load request", e);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.microservices.elasticsearch.dynamic.query.loadtest;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Issues requests on a fixed schedule regardless of how fast responses come back (open loop).
+ * Latency is measured from each request's scheduled send time, not the moment it was actually
+ * sent, so a stalled server shows up as queueing delay instead of silently lowering the
+ * offered load (coordinated omission).
+ */
+final class OpenLoopDriver implements AutoCloseable {
+
+    /**
+     * What one phase measured
+     *
+     * @param cpuNanos       process CPU time consumed during the phase, less the excluded share
+     * @param allocatedBytes heap allocated by all threads during the phase, less the excluded share
+     */
+    record Result(Histogram latency, long sent, long completed, long errors, long dropped,
+                  long elapsedNanos, long cpuNanos, long allocatedBytes) {}
+
+    private static final byte[] ERROR_FIELD = "\"error\":\"".getBytes(StandardCharsets.UTF_8);
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final HttpClient client;
+    private final String baseUrl;
+    private final Duration timeout;
+    private final int maxOutstanding;
+    private final LongSupplier excludedCpuNanos;
+    private final LongSupplier excludedAllocatedBytes;
+
+    /**
+     * @param excludedCpuNanos       running total of CPU time not to charge to the service
+     *                               (the in-process Elasticsearch stand-in)
+     * @param excludedAllocatedBytes likewise for heap allocation
+     */
+    OpenLoopDriver(String baseUrl, Duration timeout, int maxOutstanding,
+                   LongSupplier excludedCpuNanos, LongSupplier excludedAllocatedBytes) {
+        this.baseUrl = baseUrl;
+        this.timeout = timeout;
+        this.maxOutstanding = maxOutstanding;
+        this.excludedCpuNanos = excludedCpuNanos;
+        this.excludedAllocatedBytes = excludedAllocatedBytes;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .executor(executor)
+                .build();
+    }
+
+    /**
+     * Sends {@code ratePerSecond} requests per second for {@code duration}, then waits for
+     * the stragglers. Requests that would exceed {@code maxOutstanding} in flight are dropped
+     * and counted, so an overloaded server cannot exhaust the load generator.
+     */
+    Result run(LoadScenario scenario, int ratePerSecond, Duration duration) {
+        Recorder recorder = new Recorder(3);
+        AtomicLong completed = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        AtomicLong outstanding = new AtomicLong();
+        long dropped = 0;
+        long sent = 0;
+        Phaser inFlight = new Phaser(1);
+
+        long intervalNanos = 1_000_000_000L / ratePerSecond;
+        long durationNanos = duration.toNanos();
+        long cpuStart = cpuNanos() - excludedCpuNanos.getAsLong();
+        long allocStart = allocatedBytes() - excludedAllocatedBytes.getAsLong();
+        long start = System.nanoTime();
+        for (long i = 0; ; i++) {
+            long scheduled = start + i * intervalNanos;
+            if (scheduled - start >= durationNanos) break;
+            long wait;
+            while ((wait = scheduled - System.nanoTime()) > 0) LockSupport.parkNanos(wait);
+
+            if (outstanding.get() >= maxOutstanding) {
+                dropped++;
+                continue;
+            }
+            HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(baseUrl + scenario.path()))
+                    .timeout(timeout)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(scenario.body().apply((int) i)));
+            scenario.headers().forEach(request::header);
+            outstanding.incrementAndGet();
+            inFlight.register();
+            sent++;
+            client.sendAsync(request.build(), HttpResponse.BodyHandlers.ofByteArray())
+                    .whenComplete((response, error) -> {
+                        recorder.recordValue(Math.max(1, System.nanoTime() - scheduled));
+                        if (error != null || response.statusCode() >= 400 || reportsError(response.body())) {
+                            errors.incrementAndGet();
+                        }
+                        completed.incrementAndGet();
+                        outstanding.decrementAndGet();
+                        inFlight.arriveAndDeregister();
+                    });
+        }
+        inFlight.arriveAndAwaitAdvance();
+        long elapsed = System.nanoTime() - start;
+        return new Result(recorder.getIntervalHistogram(), sent, completed.get(), errors.get(), dropped, elapsed,
+                cpuNanos() - excludedCpuNanos.getAsLong() - cpuStart,
+                allocatedBytes() - excludedAllocatedBytes.getAsLong() - allocStart);
+    }
+
+    /**
+     * A 200 can still carry failures: /batch-search reports failed items in their "error" field
+     */
+    private static boolean reportsError(byte[] body) {
+        outer:
+        for (int i = 0; i + ERROR_FIELD.length <= body.length; i++) {
+            for (int j = 0; j < ERROR_FIELD.length; j++) {
+                if (body[i + j] != ERROR_FIELD[j]) continue outer;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private static long cpuNanos() {
+        return ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os
+                ? os.getProcessCpuTime() : -1;
+    }
+
+    private static long allocatedBytes() {
+        return ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                ? threads.getTotalThreadAllocatedBytes() : -1;
+    }
+
+    @Override
+    public void close() {
+        client.close();
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,447 @@
+package com.microservices.elasticsearch.dynamic.query.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.microservices.elasticsearch.dynamic.query.dto.QueryGroup;
+import com.microservices.elasticsearch.dynamic.query.simulator.QueryMatcher;
+
+import co.elastic.clients.elasticsearch._types.query_dsl.ChildScoreMode;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.json.JsonpUtils;
+import co.elastic.clients.json.jackson.JacksonJsonpMapper;
+
+/**
+ * The optimized (and filter-context shaped) query must match exactly the documents the compiled
+ * one matches. Random query groups are compiled with and without {@link BoolQueryOptimizer} and
+ * both are evaluated by the simulator's {@link QueryMatcher} against a small random index.
+ */
+class BoolQueryOptimizerTests {
+
+    private static final ObjectMapper M = new ObjectMapper();
+    private static final JacksonJsonpMapper JSONP = new JacksonJsonpMapper();
+    private static final List<String> STATUSES = List.of("open", "closed", "held");
+    private static final List<String> REGIONS = List.of("r0", "r1", "r2");
+    private static final List<String> SKUS = List.of("a", "b", "c");
+
+    private static final ElasticsearchQueryCompiler RAW =
+            new ElasticsearchQueryCompiler(new ElasticsearchAggregationCompiler(), new BoolQueryOptimizer(false));
+    private static final ElasticsearchQueryCompiler OPTIMIZED =
+            new ElasticsearchQueryCompiler(new ElasticsearchAggregationCompiler(), new BoolQueryOptimizer(true));
+
+    private static final QueryMatcher INDEX = new QueryMatcher("orders");
+
+    @BeforeAll
+    static void index() {
+        Random random = new Random(7);
+        for (int i = 0; i < 60; i++) {
+            ObjectNode doc = M.createObjectNode();
+            if (random.nextInt(8) != 0) doc.put("status", pick(random, STATUSES));
+            doc.put("region", pick(random, REGIONS));
+            doc.put("n", random.nextInt(10));
+            var tags = doc.putArray("tags");
+            for (int t = random.nextInt(3); t > 0; t--) tags.add(pick(random, STATUSES));
+            var items = doc.putArray("items");
+            for (int t = random.nextInt(3); t > 0; t--) {
+                items.addObject().put("sku", pick(random, SKUS)).put("qty", random.nextInt(5));
+            }
+            INDEX.put(String.valueOf(i), doc);
+        }
+    }
+
+    @Test
+    void randomGroupsMatchTheSameDocuments() {
+        Random random = new Random(42);
+        long rawChars = 0;
+        long optimizedChars = 0;
+        for (int i = 0; i < 2000; i++) {
+            QueryGroup group = group(randomGroup(random, 0, null));
+            JsonNode raw = json(RAW.compile(group));
+            JsonNode optimized = json(OPTIMIZED.compile(group));
+
+            assertThat(matching(optimized)).as("optimized %s%nraw %s", optimized, raw).isEqualTo(matching(raw));
+            assertThat(optimized.toString().length()).isLessThanOrEqualTo(raw.toString().length());
+            rawChars += raw.toString().length();
+            optimizedChars += optimized.toString().length();
+        }
+        assertThat(optimizedChars).isLessThan(rawChars * 9 / 10);
+    }
+
+    @Test
+    void filterContextShapingMatchesTheSameDocuments() {
+        QueryShaping shaping = new QueryShaping(true, null, false, null);
+        Random random = new Random(43);
+        for (int i = 0; i < 1000; i++) {
+            QueryGroup group = group(randomGroup(random, 0, null));
+            JsonNode raw = json(RAW.compile(group));
+            JsonNode shaped = json(OPTIMIZED.compile(group, shaping));
+
+            assertThat(matching(shaped)).as("shaped %s%nraw %s", shaped, raw).isEqualTo(matching(raw));
+            assertThat(shaped.toString()).doesNotContain("\"must\"");
+        }
+    }
+
+    @Test
+    void nowRelativeRangeBoundsAreRounded() {
+        QueryGroup group = group(Map.of("operator", "AND", "conditions", List.of(
+                condition("created", "between", List.of("now-7d", "now")),
+                condition("updated", ">=", "now-1h/d"),
+                condition("status", "==", "now"))));
+
+        JsonNode shaped = json(OPTIMIZED.compile(group, new QueryShaping(false, "m", false, null)));
+
+        assertThat(shaped.toString())
+                .contains("\"gte\":\"now-7d/m\"", "\"lte\":\"now/m\"", "\"gte\":\"now-1h/d\"", "\"value\":\"now\"");
+    }
+
+    @Test
+    void nestedAndGroupsFlattenAndSingleClausesCollapse() {
+        QueryGroup group = group(Map.of("operator", "AND", "groups", List.of(
+                Map.of("operator", "AND", "conditions", List.of(condition("status", "==", "open"))),
+                Map.of("operator", "AND", "conditions", List.of(condition("region", "==", "r1"))))));
+
+        JsonNode optimized = json(OPTIMIZED.compile(group));
+
+        assertThat(optimized.toString()).isEqualTo(
+                "{\"bool\":{\"must\":[{\"term\":{\"status\":{\"value\":\"open\"}}},{\"term\":{\"region\":{\"value\":\"r1\"}}}]}}");
+    }
+
+    @Test
+    void sameFieldTermsInAnOrMergeIntoOneTermsQuery() {
+        QueryGroup group = group(Map.of("operator", "OR", "conditions", List.of(
+                condition("status", "==", "open"),
+                condition("status", "in", List.of("held", "open")),
+                condition("region", "==", "r1"))));
+
+        JsonNode optimized = json(OPTIMIZED.compile(group));
+
+        assertThat(optimized.path("bool").path("should")).hasSize(2);
+        assertThat(optimized.path("bool").path("should").get(0).toString())
+                .isEqualTo("{\"terms\":{\"status\":[\"open\",\"held\"]}}");
+    }
+
+    @Test
+    void repeatedLeafClausesAreDroppedByFieldAndValue() {
+        QueryGroup group = group(Map.of("operator", "AND", "conditions", List.of(
+                condition("status", "==", "open"),
+                condition("n", ">", 3),
+                condition("status", "exists", null),
+                condition("status", "==", "open"),
+                condition("n", ">", 3),
+                condition("n", ">", 4),
+                condition("status", "exists", null))));
+
+        JsonNode optimized = json(OPTIMIZED.compile(group));
+
+        assertThat(optimized.path("bool").path("must").toString()).isEqualTo("[{\"term\":{\"status\":{\"value\":\"open\"}}},"
+                + "{\"range\":{\"n\":{\"gt\":3}}},{\"exists\":{\"field\":\"status\"}},{\"range\":{\"n\":{\"gt\":4}}}]");
+    }
+
+    @Test
+    void leafClausesWithABoostOrNameAreKept() {
+        Query boosted = Query.of(q -> q.term(t -> t.field("status").value("open").boost(2f)));
+        Query query = Query.of(q -> q.bool(b -> b.must(boosted, boosted, term("status", "open"))));
+
+        JsonNode optimized = json(new BoolQueryOptimizer(true).optimize(query));
+
+        assertThat(optimized.path("bool").path("must")).hasSize(3);
+    }
+
+    @Test
+    void negatedGroupsFoldIntoMustNot() {
+        Map<String, Object> negated = new LinkedHashMap<>();
+        negated.put("operator", "OR");
+        negated.put("negate", true);
+        negated.put("conditions", List.of(condition("status", "==", "open"), condition("status", "==", "held")));
+        QueryGroup group = group(Map.of("operator", "AND", "groups", List.of(
+                negated, Map.of("operator", "AND", "conditions", List.of(condition("region", "!=", "r2"))))));
+
+        JsonNode optimized = json(OPTIMIZED.compile(group));
+
+        assertThat(optimized.toString()).isEqualTo("{\"bool\":{\"must_not\":["
+                + "{\"terms\":{\"status\":[\"open\",\"held\"]}},{\"term\":{\"region\":{\"value\":\"r2\"}}}]}}");
+    }
+
+    @Test
+    void samePathNestedClausesMergeUnderOrButNotUnderAnd() {
+        List<Map<String, Object>> nested = List.of(
+                Map.of("operator", "AND", "nested_path", "items", "conditions", List.of(condition("items.sku", "==", "a"))),
+                Map.of("operator", "AND", "nested_path", "items", "conditions", List.of(condition("items.qty", ">", 3))),
+                Map.of("operator", "AND", "nested_path", "items", "conditions", List.of(condition("items.sku", "==", "b"))));
+
+        JsonNode or = json(OPTIMIZED.compile(group(Map.of("operator", "OR", "conditions", nested))));
+        JsonNode and = json(OPTIMIZED.compile(group(Map.of("operator", "AND", "conditions", nested))));
+
+        assertThat(or.toString()).isEqualTo("{\"nested\":{\"path\":\"items\",\"query\":{\"bool\":{"
+                + "\"minimum_should_match\":\"1\",\"should\":["
+                + "{\"terms\":{\"items.sku\":[\"a\",\"b\"]}},{\"range\":{\"items.qty\":{\"gt\":3}}}]}}}}");
+        assertThat(and.path("bool").path("must")).hasSize(3);
+        assertThat(matching(and)).isEqualTo(matching(json(RAW.compile(group(Map.of("operator", "AND", "conditions", nested))))));
+    }
+
+    @Test
+    void samePathNestedClausesMergeInMustNot() {
+        Query query = Query.of(q -> q.bool(b -> b.mustNot(items("items.sku", "a"), items("items.sku", "b"))));
+
+        JsonNode optimized = json(new BoolQueryOptimizer(true).optimize(query));
+
+        assertThat(optimized.toString()).isEqualTo("{\"bool\":{\"must_not\":[{\"nested\":{\"path\":\"items\",\"query\":"
+                + "{\"terms\":{\"items.sku\":[\"a\",\"b\"]}}}}]}}");
+        assertThat(matching(optimized)).isEqualTo(matching(json(query)));
+    }
+
+    @Test
+    void samePathNestedClausesStayApartUnderMustAndFilter() {
+        Query must = Query.of(q -> q.bool(b -> b.must(items("items.sku", "a"), items("items.sku", "b"))));
+        Query filter = Query.of(q -> q.bool(b -> b.filter(items("items.sku", "a"), items("items.sku", "b"))));
+
+        JsonNode optimizedMust = json(new BoolQueryOptimizer(true).optimize(must));
+        JsonNode optimizedFilter = json(new BoolQueryOptimizer(true).optimize(filter));
+
+        // each clause may be satisfied by a different item
+        assertThat(optimizedMust.path("bool").path("must")).hasSize(2);
+        assertThat(optimizedFilter.path("bool").path("filter")).hasSize(2);
+        assertThat(matching(optimizedMust)).isEqualTo(matching(json(must)));
+        assertThat(matching(optimizedFilter)).isEqualTo(matching(json(filter)));
+    }
+
+    @Test
+    void samePathNestedClausesStayApartUnlessExactlyOneShouldIsRequired() {
+        Query atLeastTwo = Query.of(q -> q.bool(b -> b
+                .should(items("items.sku", "a"), items("items.sku", "b"), items("items.sku", "c"))
+                .minimumShouldMatch("2")));
+        Query optional = Query.of(q -> q.bool(b -> b
+                .must(term("region", "r1"))
+                .should(items("items.sku", "a"), items("items.sku", "b"))));
+
+        JsonNode optimizedAtLeastTwo = json(new BoolQueryOptimizer(true).optimize(atLeastTwo));
+        JsonNode optimizedOptional = json(new BoolQueryOptimizer(true).optimize(optional));
+
+        assertThat(optimizedAtLeastTwo.path("bool").path("should")).hasSize(3);
+        assertThat(optimizedOptional.path("bool").path("should")).hasSize(2);
+        assertThat(matching(optimizedAtLeastTwo)).isEqualTo(matching(json(atLeastTwo)));
+        assertThat(matching(optimizedOptional)).isEqualTo(matching(json(optional)));
+    }
+
+    @Test
+    void nestedClausesWithScoreModeOrInnerHitsAreNotMerged() {
+        Query scored = Query.of(q -> q.nested(n -> n.path("items").scoreMode(ChildScoreMode.Max)
+                .query(term("items.sku", "a"))));
+        Query withInnerHits = Query.of(q -> q.nested(n -> n.path("items").innerHits(h -> h.name("skus"))
+                .query(term("items.sku", "b"))));
+        Query query = Query.of(q -> q.bool(b -> b.should(scored, withInnerHits, items("items.sku", "c"))));
+
+        JsonNode optimized = json(new BoolQueryOptimizer(true).optimize(query));
+
+        assertThat(optimized.path("bool").path("should")).hasSize(3);
+        assertThat(optimized.path("bool").path("should").get(0).path("nested").path("score_mode").asText()).isEqualTo("max");
+        assertThat(optimized.path("bool").path("should").get(1).path("nested").path("inner_hits").path("name").asText())
+                .isEqualTo("skus");
+    }
+
+    @Test
+    void optionalShouldClausesStayOptionalWhenMustClausesAreFolded() {
+        Query negation = Query.of(q -> q.bool(b -> b.mustNot(n -> n.term(t -> t.field("status").value("open")))));
+        Query query = Query.of(q -> q.bool(b -> b
+                .must(negation)
+                .should(s -> s.term(t -> t.field("region").value("r1")))));
+
+        JsonNode raw = json(query);
+        JsonNode optimized = json(new BoolQueryOptimizer(true).optimize(query));
+
+        assertThat(matching(optimized)).isEqualTo(matching(raw));
+        assertThat(matching(optimized)).hasSizeGreaterThan(matching(json(Query.of(q -> q.bool(b -> b
+                .mustNot(n -> n.term(t -> t.field("status").value("open")))
+                .should(s -> s.term(t -> t.field("region").value("r1"))))))).size());
+    }
+
+    @Test
+    void orChildWithMinimumShouldMatchAboveOneIsNotSpliced() {
+        Query atLeastTwo = Query.of(q -> q.bool(b -> b
+                .should(term("status", "open"), term("region", "r1"), term("tags", "held"))
+                .minimumShouldMatch("2")));
+        Query query = Query.of(q -> q.bool(b -> b.should(atLeastTwo, term("region", "r2"))));
+
+        JsonNode optimized = json(new BoolQueryOptimizer(true).optimize(query));
+
+        assertThat(optimized.path("bool").path("should")).hasSize(2);
+        assertThat(optimized.path("bool").path("should").get(0).path("bool").path("minimum_should_match").asText())
+                .isEqualTo("2");
+        assertThat(matching(optimized)).isEqualTo(matching(json(query)));
+    }
+
+    @Test
+    void percentageMinimumShouldMatchIsLeftAlone() {
+        Query anyOf = Query.of(q -> q.bool(b -> b.should(term("region", "r1"), term("region", "r2"))));
+        Query query = Query.of(q -> q.bool(b -> b
+                .should(term("status", "open"), term("status", "held"), anyOf)
+                .minimumShouldMatch("50%")));
+
+        JsonNode optimized = json(new BoolQueryOptimizer(true).optimize(query));
+
+        // neither the same-field terms nor the OR child may be folded: each changes the clause count
+        assertThat(optimized.path("bool").path("minimum_should_match").asText()).isEqualTo("50%");
+        assertThat(optimized.path("bool").path("should")).hasSize(3);
+        assertThat(matching(optimized)).isEqualTo(matching(json(query)));
+    }
+
+    @Test
+    void negativeMinimumShouldMatchBecomesAPlainCountWhenClausesMerge() {
+        Query query = Query.of(q -> q.bool(b -> b
+                .should(term("status", "open"), term("status", "held"))
+                .minimumShouldMatch("-1")));
+
+        JsonNode optimized = json(new BoolQueryOptimizer(true).optimize(query));
+
+        // "-1" over the one merged clause would require none
+        assertThat(optimized.toString()).isEqualTo("{\"terms\":{\"status\":[\"open\",\"held\"]}}");
+        assertThat(matching(optimized)).isEqualTo(matching(json(query)));
+    }
+
+    @Test
+    void requiredShouldNextToMustKeepsMinimumShouldMatchWhileFlattening() {
+        Query anyOf = Query.of(q -> q.bool(b -> b.should(term("status", "held"), term("status", "closed"))));
+        Query query = Query.of(q -> q.bool(b -> b
+                .must(term("region", "r1"))
+                .should(term("status", "open"), anyOf)
+                .minimumShouldMatch("1")));
+
+        JsonNode optimized = json(new BoolQueryOptimizer(true).optimize(query));
+
+        assertThat(optimized.toString()).isEqualTo("{\"bool\":{\"minimum_should_match\":\"1\","
+                + "\"must\":[{\"term\":{\"region\":{\"value\":\"r1\"}}}],\"should\":[{\"terms\":{\"status\":[\"open\",\"held\",\"closed\"]}}]}}");
+        assertThat(matching(optimized)).isEqualTo(matching(json(query)));
+    }
+
+    @Test
+    void optionalShouldClausesUnderMustAreNeitherMergedNorRequired() {
+        Query query = Query.of(q -> q.bool(b -> b
+                .must(m -> m.bool(i -> i.must(term("region", "r1"))))
+                .should(term("status", "open"), term("status", "held"))));
+
+        JsonNode optimized = json(new BoolQueryOptimizer(true).optimize(query));
+
+        assertThat(optimized.path("bool").has("minimum_should_match")).isFalse();
+        assertThat(optimized.path("bool").path("must")).hasSize(1);
+        assertThat(optimized.path("bool").path("should")).hasSize(2);
+        assertThat(matching(optimized)).isEqualTo(matching(json(query)));
+    }
+
+    @Test
+    void foldingTheOnlyFilterAwayAddsMatchAllToKeepShouldOptional() {
+        Query query = Query.of(q -> q.bool(b -> b
+                .filter(f -> f.bool(i -> i.mustNot(term("status", "open"))))
+                .should(term("region", "r1"))));
+
+        JsonNode optimized = json(new BoolQueryOptimizer(true).optimize(query));
+
+        assertThat(optimized.path("bool").path("filter").toString()).isEqualTo("[{\"match_all\":{}}]");
+        assertThat(optimized.path("bool").path("must_not")).hasSize(1);
+        assertThat(matching(optimized)).isEqualTo(matching(json(query)));
+    }
+
+    @Test
+    void disabledOptimizerLeavesTheQueryAlone() {
+        Query query = Query.of(q -> q.bool(b -> b.must(m -> m.bool(i -> i.must(t -> t.term(v -> v.field("status").value("open")))))));
+
+        assertThat(new BoolQueryOptimizer(false).optimize(query)).isSameAs(query);
+    }
+
+    // ---------- random query groups ----------
+
+    private static Map<String, Object> randomGroup(Random random, int depth, String nestedPath) {
+        Map<String, Object> group = new LinkedHashMap<>();
+        group.put("operator", pick(random, List.of("AND", "AND", "OR", "OR", "NOT")));
+        if (random.nextInt(5) == 0) group.put("negate", true);
+        boolean nested = nestedPath == null && depth > 0 && random.nextInt(5) == 0;
+        if (nested) group.put("nested_path", "items");
+        String path = nested ? "items" : nestedPath;
+
+        List<Map<String, Object>> conditions = new ArrayList<>();
+        for (int i = 1 + random.nextInt(3); i > 0; i--) {
+            // one nested group per condition, as FinalQueryTransformer emits them
+            conditions.add(path == null && random.nextInt(3) == 0
+                    ? Map.of("operator", pick(random, List.of("AND", "OR")), "nested_path", "items",
+                            "conditions", List.of(randomCondition(random, "items")))
+                    : randomCondition(random, path));
+        }
+        group.put("conditions", conditions);
+
+        if (depth < 3) {
+            List<Map<String, Object>> groups = new ArrayList<>();
+            for (int i = random.nextInt(3); i > 0; i--) groups.add(randomGroup(random, depth + 1, path));
+            if (!groups.isEmpty()) group.put("groups", groups);
+        }
+        return group;
+    }
+
+    private static Map<String, Object> randomCondition(Random random, String nestedPath) {
+        if ("items".equals(nestedPath)) {
+            return random.nextBoolean()
+                    ? condition("items.sku", pick(random, List.of("==", "==", "!=", "in")), skuValue(random))
+                    : condition("items.qty", pick(random, List.of(">", "<=", "==")), random.nextInt(5));
+        }
+        return switch (random.nextInt(8)) {
+            case 0, 1 -> condition("status", pick(random, List.of("==", "==", "!=")), pick(random, STATUSES));
+            case 2 -> condition("status", "in", List.of(pick(random, STATUSES), pick(random, STATUSES)));
+            case 3 -> condition("region", pick(random, List.of("==", "!=")), pick(random, REGIONS));
+            case 4 -> condition("tags", "==", pick(random, STATUSES));
+            case 5 -> condition("n", pick(random, List.of(">", ">=", "<", "<=")), random.nextInt(10));
+            case 6 -> condition("n", "between", List.of(random.nextInt(5), 5 + random.nextInt(5)));
+            default -> condition("status", pick(random, List.of("exists", "missing")), null);
+        };
+    }
+
+    private static Object skuValue(Random random) {
+        return random.nextInt(4) == 0 ? List.of(pick(random, SKUS), pick(random, SKUS)) : pick(random, SKUS);
+    }
+
+    private static Map<String, Object> condition(String field, String operator, Object value) {
+        Map<String, Object> condition = new LinkedHashMap<>();
+        condition.put("field", field);
+        condition.put("operator", "in".equals(operator) && !(value instanceof List) ? "==" : operator);
+        if (value != null) condition.put("value", value);
+        return condition;
+    }
+
+    private static Query term(String field, String value) {
+        return Query.of(q -> q.term(t -> t.field(field).value(value)));
+    }
+
+    private static Query items(String field, String value) {
+        return Query.of(q -> q.nested(n -> n.path("items").query(term(field, value))));
+    }
+
+    private static <T> T pick(Random random, List<T> values) {
+        return values.get(random.nextInt(values.size()));
+    }
+
+    // ---------- evaluation ----------
+
+    private static List<String> matching(JsonNode query) {
+        return INDEX.matching(query);
+    }
+
+    private static JsonNode json(Query query) {
+        try {
+            return M.readTree(JsonpUtils.toJsonString(query, JSONP));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static QueryGroup group(Map<String, Object> map) {
+        return M.convertValue(map, QueryGroup.class);
+    }
+}
@@ -0,0 +1,65 @@
+package com.microservices.elasticsearch.dynamic.query.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.microservices.elasticsearch.dynamic.query.dto.ElasticsearchQueryRequest;
+import com.microservices.elasticsearch.dynamic.query.dto.QueryGroup;
+import com.microservices.elasticsearch.dynamic.query.dto.QueryStructureRequest;
+
+class ElasticsearchServiceTests {
+
+    private static final String INDEX = "orders";
+
+    private static ElasticsearchQueryRequest request(Object created) {
+        QueryGroup query = QueryGroup.builder()
+                .operator("AND")
+                .conditions(List.of(Map.of("field", "created", "operator", ">=", "value", created)))
+                .build();
+        return new ElasticsearchQueryRequest(QueryStructureRequest.builder().query(query).build(), null, INDEX);
+    }
+
+    private static String key(QueryShaping shaping) {
+        return ElasticsearchService.searchKey(INDEX, request("now-1h"), Map.class, shaping);
+    }
+
+    @Test
+    void identicalRequestsWithTheSameShapingShareAKey() {
+        QueryShaping shaping = new QueryShaping(true, "m", false, "client-a");
+
+        assertThat(ElasticsearchService.searchKey(INDEX, request("now-1h"), Map.class, shaping))
+                .isEqualTo(ElasticsearchService.searchKey(INDEX, request("now-1h"), Map.class,
+                        new QueryShaping(true, "m", false, "client-a")));
+        assertThat(key(QueryShaping.NONE)).isEqualTo(key(new QueryShaping(false, null, false, null)));
+    }
+
+    @Test
+    void shapedAndUnshapedRequestsDoNotShareAKey() {
+        String unshaped = key(QueryShaping.NONE);
+
+        assertThat(key(new QueryShaping(false, "m", false, null))).isNotEqualTo(unshaped);
+        assertThat(key(new QueryShaping(true, null, false, null))).isNotEqualTo(unshaped);
+        assertThat(key(new QueryShaping(false, null, true, null))).isNotEqualTo(unshaped);
+    }
+
+    @Test
+    void roundingUnitIsPartOfTheKeyButPreferenceIsNot() {
+        assertThat(key(new QueryShaping(true, "m", false, null)))
+                .isNotEqualTo(key(new QueryShaping(true, "h", false, null)));
+        assertThat(key(new QueryShaping(true, "m", false, "client-a")))
+                .isEqualTo(key(new QueryShaping(true, "m", false, "client-b")))
+                .isEqualTo(key(new QueryShaping(true, "m", false, null)));
+    }
+
+    @Test
+    void resultTypeAndQueryStillSeparateKeys() {
+        assertThat(ElasticsearchService.searchKey(INDEX, request("now-1h"), Object.class, QueryShaping.NONE))
+                .isNotEqualTo(key(QueryShaping.NONE));
+        assertThat(ElasticsearchService.searchKey(INDEX, request("now-2h"), Map.class, QueryShaping.NONE))
+                .isNotEqualTo(key(QueryShaping.NONE));
+    }
+}
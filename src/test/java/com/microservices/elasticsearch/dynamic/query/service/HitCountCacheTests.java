@@ -0,0 +1,128 @@
+package com.microservices.elasticsearch.dynamic.query.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.microservices.elasticsearch.dynamic.query.config.HitCountProperties;
+import com.microservices.elasticsearch.dynamic.query.dto.QueryGroup;
+import com.microservices.elasticsearch.dynamic.query.dto.SearchResult;
+
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
+import co.elastic.clients.elasticsearch._types.ShardStatistics;
+import co.elastic.clients.elasticsearch.core.CountRequest;
+import co.elastic.clients.elasticsearch.core.CountResponse;
+import co.elastic.clients.util.ObjectBuilder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class HitCountCacheTests {
+
+    private static final String INDEX = "orders";
+
+    private final ElasticsearchAsyncClient client = mock(ElasticsearchAsyncClient.class);
+    private final List<CountRequest> counts = new ArrayList<>();
+    private final Deque<CompletableFuture<CountResponse>> responses = new ArrayDeque<>();
+    private HitCountCache cache;
+
+    @BeforeEach
+    void setUp() {
+        when(client.count(any(Function.class))).thenAnswer(invocation -> {
+            Function<CountRequest.Builder, ObjectBuilder<CountRequest>> fn = invocation.getArgument(0);
+            counts.add(fn.apply(new CountRequest.Builder()).build());
+            return responses.isEmpty() ? new CompletableFuture<>() : responses.poll();
+        });
+        ElasticsearchQueryCompiler compiler =
+                new ElasticsearchQueryCompiler(new ElasticsearchAggregationCompiler(), new BoolQueryOptimizer(true));
+        cache = new HitCountCache(new HitCountProperties(), client, compiler, new SimpleMeterRegistry());
+    }
+
+    private static QueryGroup query(String status) {
+        return QueryGroup.builder()
+                .operator("AND")
+                .conditions(List.of(Map.of("field", "status", "operator", "==", "value", status)))
+                .build();
+    }
+
+    /**
+     * What a cached-mode search converts to before the cache sees it: a bounded total
+     */
+    private static SearchResult<Map> bounded() {
+        return SearchResult.<Map>builder().success(true).totalHits(1_000L).totalHitsRelation("gte").build();
+    }
+
+    private static CountResponse count(long n) {
+        return CountResponse.of(c -> c.count(n).shards(ShardStatistics.of(s -> s.total(1).successful(1).failed(0))));
+    }
+
+    @Test
+    void searchKeepsItsBoundedTotalUntilTheCountIsBack() {
+        CompletableFuture<CountResponse> pending = new CompletableFuture<>();
+        responses.add(pending);
+
+        SearchResult<Map> first = cache.apply(INDEX, query("open"), bounded());
+        pending.complete(count(2_500));
+        SearchResult<Map> second = cache.apply(INDEX, query("open"), bounded());
+
+        assertThat(first.getTotalHits()).isEqualTo(1_000);
+        assertThat(first.getTotalHitsRelation()).isEqualTo("gte");
+        assertThat(second.getTotalHits()).isEqualTo(2_500);
+        assertThat(second.getTotalHitsRelation()).isEqualTo("eq");
+        assertThat(counts).hasSize(1);
+        assertThat(counts.get(0).index()).containsExactly(INDEX);
+        assertThat(counts.get(0).query().toString()).contains("open");
+    }
+
+    @Test
+    void oneQueryIsCountedOnceAndOtherQueriesApart() {
+        responses.add(CompletableFuture.completedFuture(count(7)));
+        responses.add(CompletableFuture.completedFuture(count(9)));
+
+        cache.apply(INDEX, query("open"), bounded());
+        SearchResult<Map> again = cache.apply(INDEX, query("open"), bounded());
+        SearchResult<Map> other = cache.apply(INDEX, query("closed"), bounded());
+        SearchResult<Map> otherIndex = cache.apply("archive", query("open"), bounded());
+
+        assertThat(again.getTotalHits()).isEqualTo(7);
+        assertThat(other.getTotalHits()).isEqualTo(9);
+        assertThat(otherIndex.getTotalHits()).isEqualTo(1_000); // its count is still pending
+        assertThat(counts).hasSize(3);
+    }
+
+    @Test
+    void failedCountLeavesTheResultAloneAndIsRetried() {
+        responses.add(CompletableFuture.failedFuture(new IllegalStateException("es down")));
+        responses.add(CompletableFuture.completedFuture(count(42)));
+
+        SearchResult<Map> failed = cache.apply(INDEX, query("open"), bounded());
+        SearchResult<Map> retried = cache.apply(INDEX, query("open"), bounded());
+
+        assertThat(failed.getTotalHits()).isEqualTo(1_000);
+        assertThat(failed.getTotalHitsRelation()).isEqualTo("gte");
+        assertThat(retried.getTotalHits()).isEqualTo(42);
+        assertThat(counts).hasSize(2);
+    }
+
+    @Test
+    void clearDropsCachedCounts() {
+        responses.add(CompletableFuture.completedFuture(count(7)));
+        responses.add(CompletableFuture.completedFuture(count(8)));
+
+        cache.apply(INDEX, query("open"), bounded());
+        cache.clear();
+
+        assertThat(cache.apply(INDEX, query("open"), bounded()).getTotalHits()).isEqualTo(8);
+        assertThat(counts).hasSize(2);
+    }
+}
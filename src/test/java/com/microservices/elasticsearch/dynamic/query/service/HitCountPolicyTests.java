@@ -0,0 +1,72 @@
+package com.microservices.elasticsearch.dynamic.query.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.microservices.elasticsearch.dynamic.query.config.HitCountProperties;
+import com.microservices.elasticsearch.dynamic.query.dto.HitCountRequest;
+import com.microservices.elasticsearch.dynamic.query.exception.InvalidValueException;
+
+class HitCountPolicyTests {
+
+    private final HitCountProperties properties = new HitCountProperties();
+    private HitCountPolicy policy;
+
+    @BeforeEach
+    void setUp() {
+        properties.setMode("bounded");
+        properties.setThreshold(1_000);
+        properties.getMappings().put("orders_search", "none");
+        properties.getMappings().put("broken_search", "sometimes");
+        policy = new HitCountPolicy(properties);
+    }
+
+    private static HitCountRequest requested(String mode, Integer threshold) {
+        return HitCountRequest.builder().mode(mode).threshold(threshold).build();
+    }
+
+    @Test
+    void requestWinsOverMappingAndDefault() {
+        HitCountRequest resolved = policy.resolve(requested("cached", 50), "orders_search");
+
+        assertThat(resolved.getMode()).isEqualTo("cached");
+        assertThat(resolved.getThreshold()).isEqualTo(50);
+    }
+
+    @Test
+    void mappingWinsOverDefault() {
+        assertThat(policy.resolve(null, "orders_search").getMode()).isEqualTo("none");
+        assertThat(policy.resolve(requested(null, 20), "orders_search").getMode()).isEqualTo("none");
+    }
+
+    @Test
+    void defaultAppliesToUnknownOrMissingMappings() {
+        assertThat(policy.resolve(null, "unknown_search").getMode()).isEqualTo("bounded");
+        assertThat(policy.resolve(null, null).getMode()).isEqualTo("bounded");
+    }
+
+    @Test
+    void missingThresholdTakesTheConfiguredOne() {
+        assertThat(policy.resolve(requested("bounded", null), null).getThreshold()).isEqualTo(1_000);
+        assertThat(policy.resolve(null, null).getThreshold()).isEqualTo(1_000);
+        assertThat(policy.resolve(requested(null, 20), null).getThreshold()).isEqualTo(20);
+    }
+
+    @Test
+    void unknownModesFailWhereverTheyComeFrom() {
+        assertThatThrownBy(() -> policy.resolve(requested("sometimes", null), null))
+                .isInstanceOf(InvalidValueException.class);
+        assertThatThrownBy(() -> policy.resolve(null, "broken_search"))
+                .isInstanceOf(InvalidValueException.class);
+    }
+
+    @Test
+    void defaultPropertiesKeepCountsExact() {
+        HitCountRequest resolved = new HitCountPolicy(new HitCountProperties()).resolve(null, null);
+
+        assertThat(HitCount.of(resolved).mode()).isEqualTo(HitCount.Mode.EXACT);
+    }
+}
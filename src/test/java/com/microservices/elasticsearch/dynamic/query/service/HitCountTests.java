@@ -0,0 +1,78 @@
+package com.microservices.elasticsearch.dynamic.query.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+
+import com.microservices.elasticsearch.dynamic.query.dto.HitCountRequest;
+import com.microservices.elasticsearch.dynamic.query.dto.PaginationRequest;
+import com.microservices.elasticsearch.dynamic.query.dto.QueryStructureRequest;
+import com.microservices.elasticsearch.dynamic.query.exception.InvalidValueException;
+
+class HitCountTests {
+
+    private static HitCount of(String mode, Integer threshold) {
+        return HitCount.of(HitCountRequest.builder().mode(mode).threshold(threshold).build());
+    }
+
+    @Test
+    void absentHitCountIsExact() {
+        assertThat(HitCount.of((QueryStructureRequest) null)).isEqualTo(HitCount.EXACT);
+        assertThat(HitCount.of(new QueryStructureRequest())).isEqualTo(HitCount.EXACT);
+        assertThat(HitCount.of((HitCountRequest) null)).isEqualTo(HitCount.EXACT);
+        assertThat(of(null, 500)).isEqualTo(HitCount.EXACT);
+    }
+
+    @Test
+    void modesParseCaseInsensitively() {
+        assertThat(of(" Bounded ", 100)).isEqualTo(new HitCount(HitCount.Mode.BOUNDED, 100));
+        assertThat(of("none", null)).isEqualTo(new HitCount(HitCount.Mode.NONE, 0));
+        assertThat(of("CACHED", 5)).isEqualTo(new HitCount(HitCount.Mode.CACHED, 5));
+        assertThat(of("exact", null)).isEqualTo(HitCount.EXACT);
+    }
+
+    @Test
+    void unknownModesAndMissingThresholdsAreRejected() {
+        assertThatThrownBy(() -> of("approximate", 10)).isInstanceOf(InvalidValueException.class)
+                .hasMessageContaining("approximate");
+        assertThatThrownBy(() -> of("bounded", null)).isInstanceOf(InvalidValueException.class);
+        assertThatThrownBy(() -> of("cached", 0)).isInstanceOf(InvalidValueException.class);
+        assertThatThrownBy(() -> of("bounded", -1)).isInstanceOf(InvalidValueException.class);
+    }
+
+    @Test
+    void trackTotalHitsFollowsTheMode() {
+        assertThat(HitCount.EXACT.trackTotalHits()).isEqualTo(true);
+        assertThat(of("none", null).trackTotalHits()).isEqualTo(false);
+        assertThat(of("bounded", 100).trackTotalHits()).isEqualTo(100);
+        assertThat(of("cached", 50).trackTotalHits()).isEqualTo(50);
+
+        assertThat(HitCount.EXACT.trackHits().enabled()).isTrue();
+        assertThat(of("none", null).trackHits().enabled()).isFalse();
+        assertThat(of("bounded", 100).trackHits().count()).isEqualTo(100);
+        assertThat(of("cached", 50).trackHits().count()).isEqualTo(50);
+    }
+
+    @Test
+    void everyModeButExactProbesOneHitPastThePage() {
+        PaginationRequest page = new PaginationRequest(20, 10);
+
+        assertThat(HitCount.EXACT.probes()).isFalse();
+        assertThat(HitCount.EXACT.requestSize(page)).isEqualTo(10);
+        assertThat(HitCount.EXACT.requestSize(null)).isNull();
+        for (String mode : new String[] {"bounded", "none", "cached"}) {
+            HitCount hitCount = of(mode, 100);
+            assertThat(hitCount.probes()).as(mode).isTrue();
+            assertThat(hitCount.requestSize(page)).as(mode).isEqualTo(11);
+            assertThat(hitCount.requestSize(null)).as(mode).isEqualTo(11);
+            assertThat(hitCount.requestSize(new PaginationRequest(0, null))).as(mode).isEqualTo(11);
+        }
+    }
+
+    @Test
+    void aggregationOnlyRequestsAreNotProbed() {
+        assertThat(of("none", null).requestSize(new PaginationRequest(0, 0))).isZero();
+        assertThat(of("bounded", 10).requestSize(new PaginationRequest(0, 0))).isZero();
+    }
+}
@@ -0,0 +1,168 @@
+package com.microservices.elasticsearch.dynamic.query.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.microservices.elasticsearch.dynamic.query.config.QueryLogProperties;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import co.elastic.clients.json.JsonpSerializable;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class QueryLogTests {
+
+    private static final ObjectMapper M = new ObjectMapper();
+
+    private final Logger logger = (Logger) LoggerFactory.getLogger(QueryLog.LOGGER_NAME);
+    private final ListAppender<ILoggingEvent> appender = new ListAppender<>();
+    private final QueryLogProperties properties = new QueryLogProperties();
+    private final QueryLog queryLog = new QueryLog(properties);
+    private final SearchMetrics metrics = new SearchMetrics(new SimpleMeterRegistry());
+    private Level level;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(metrics, "maxTagValues", 50);
+        properties.setSlowThreshold(Duration.ofHours(1));
+        level = logger.getLevel();
+        logger.setLevel(Level.INFO);
+        appender.start();
+        logger.addAppender(appender);
+    }
+
+    @AfterEach
+    void tearDown() {
+        logger.detachAppender(appender);
+        logger.setLevel(level);
+    }
+
+    /**
+     * A query that counts how often it is serialized
+     */
+    private static JsonpSerializable query(AtomicInteger serialized) {
+        return (generator, mapper) -> {
+            serialized.incrementAndGet();
+            generator.writeStartObject();
+            generator.write("size", 10);
+            generator.writeEnd();
+        };
+    }
+
+    private SearchMetrics.Trace trace(Object query) {
+        SearchMetrics.Trace trace = metrics.trace("search", "orders", "orders_search");
+        trace.query(query);
+        return trace;
+    }
+
+    private List<JsonNode> lines() {
+        return appender.list.stream().map(event -> {
+            try {
+                return M.readTree(event.getFormattedMessage());
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }).toList();
+    }
+
+    @Test
+    void sampleRateIsLookedUpPerEndpoint() {
+        properties.setDefaultSampleRate(0.5);
+        properties.getSampleRates().put("search", 1.0);
+        properties.getSampleRates().put("export", 0.0);
+
+        int sampled = 0;
+        for (int i = 0; i < 2_000; i++) {
+            assertThat(queryLog.sample("search")).isTrue();
+            assertThat(queryLog.sample("export")).isFalse();
+            if (queryLog.sample("batch-search")) sampled++;
+        }
+        assertThat(sampled).isBetween(800, 1_200);
+    }
+
+    @Test
+    void unsampledFastRequestIsNeverSerialized() {
+        AtomicInteger serialized = new AtomicInteger();
+
+        queryLog.completed(trace(query(serialized)), false, 200, "ok");
+
+        assertThat(appender.list).isEmpty();
+        assertThat(serialized).hasValue(0);
+    }
+
+    @Test
+    void sampledRequestIsLoggedWithItsQuery() {
+        AtomicInteger serialized = new AtomicInteger();
+        SearchMetrics.Trace trace = trace(query(serialized));
+        trace.took(7L);
+        trace.hits(3);
+
+        queryLog.completed(trace, true, 200, "ok");
+
+        assertThat(serialized).hasValue(1);
+        assertThat(lines()).singleElement().satisfies(line -> {
+            assertThat(line.path("reason").asText()).isEqualTo("sample");
+            assertThat(line.path("endpoint").asText()).isEqualTo("search");
+            assertThat(line.path("index").asText()).isEqualTo("orders");
+            assertThat(line.path("mapping").asText()).isEqualTo("orders_search");
+            assertThat(line.path("status").asInt()).isEqualTo(200);
+            assertThat(line.path("tookMs").asLong()).isEqualTo(7);
+            assertThat(line.path("hits").asLong()).isEqualTo(3);
+            assertThat(line.path("query").toString()).isEqualTo("{\"size\":10}");
+        });
+    }
+
+    @Test
+    void slowRequestIsLoggedEvenWhenNotSampled() {
+        properties.setSlowThreshold(Duration.ofNanos(1));
+
+        queryLog.completed(trace(Map.of("size", 10)), false, null, "error");
+
+        assertThat(lines()).singleElement().satisfies(line -> {
+            assertThat(line.path("reason").asText()).isEqualTo("slow");
+            assertThat(line.path("outcome").asText()).isEqualTo("error");
+            assertThat(line.has("status")).isFalse();
+            assertThat(line.has("tookMs")).isFalse();
+        });
+    }
+
+    @Test
+    void longQueriesAreCutToMaxQueryChars() {
+        properties.setMaxQueryChars(12);
+
+        queryLog.completed(trace(Map.of("field", "a-rather-long-value")), true, 200, "ok");
+
+        assertThat(lines()).singleElement().satisfies(line -> {
+            assertThat(line.has("query")).isFalse();
+            assertThat(line.path("queryPrefix").asText()).isEqualTo("{\"field\":\"a-");
+        });
+    }
+
+    @Test
+    void disabledLogNeitherSamplesNorLogsSlowRequests() {
+        properties.setEnabled(false);
+        properties.setSlowThreshold(Duration.ofNanos(1));
+        properties.setDefaultSampleRate(1.0);
+        AtomicInteger serialized = new AtomicInteger();
+
+        assertThat(queryLog.sample("search")).isFalse();
+        queryLog.completed(trace(query(serialized)), true, 200, "ok");
+
+        assertThat(appender.list).isEmpty();
+        assertThat(serialized).hasValue(0);
+    }
+}
@@ -0,0 +1,90 @@
+package com.microservices.elasticsearch.dynamic.query.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.microservices.elasticsearch.dynamic.query.exception.BulkheadFullException;
+import com.microservices.elasticsearch.dynamic.query.service.SearchBulkheads.TrafficClass;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+class SearchBulkheadsTests {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private SearchBulkheads bulkheads;
+
+    @BeforeEach
+    void setUp() {
+        bulkheads = new SearchBulkheads(executor, registry);
+        ReflectionTestUtils.setField(bulkheads, "interactiveMaxConcurrent", 1);
+        ReflectionTestUtils.setField(bulkheads, "exportMaxConcurrent", 1);
+        ReflectionTestUtils.setField(bulkheads, "acquireTimeoutMs", 10L);
+        ReflectionTestUtils.setField(bulkheads, "maxIndices", 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void indicesPastTheCapShareTheOtherBulkhead() {
+        Disposable held = bulkheads.guard("made-up-3", TrafficClass.INTERACTIVE, Mono.never()).subscribe();
+        try {
+            bulkheads.guard("orders", TrafficClass.INTERACTIVE, Mono.just(1)).block();
+            bulkheads.guard("customers", TrafficClass.INTERACTIVE, Mono.just(1)).block();
+            // made-up-3 arrived first and took one of the two slots; the rest share "other"
+            Disposable other = bulkheads.guard("made-up-4", TrafficClass.INTERACTIVE, Mono.never()).subscribe();
+            assertThatThrownBy(() -> bulkheads.guard("made-up-5", TrafficClass.INTERACTIVE, Mono.just(1)).block())
+                    .isInstanceOf(BulkheadFullException.class)
+                    .hasMessageContaining(SearchBulkheads.OTHER);
+            other.dispose();
+        } finally {
+            held.dispose();
+        }
+
+        for (int i = 0; i < 100; i++) {
+            bulkheads.guard("random-" + i, TrafficClass.INTERACTIVE, Mono.just(i)).block();
+        }
+        assertThat(registry.find("es.bulkhead.limit").gauges())
+                .extracting(g -> g.getId().getTag("index"))
+                .containsExactlyInAnyOrder("made-up-3", "orders", SearchBulkheads.OTHER);
+    }
+
+    @Test
+    void multiIndexCallHoldsAPermitPerIndexAndGivesThemBackWhenOneIsFull() {
+        Disposable batch = bulkheads.guard(List.of("orders", "customers", "orders"), TrafficClass.INTERACTIVE, Mono.never())
+                .subscribe();
+        assertThatThrownBy(() -> bulkheads.guard("orders", TrafficClass.INTERACTIVE, Mono.just(1)).block())
+                .isInstanceOf(BulkheadFullException.class);
+        assertThatThrownBy(() -> bulkheads.guard("customers", TrafficClass.INTERACTIVE, Mono.just(1)).block())
+                .isInstanceOf(BulkheadFullException.class);
+        batch.dispose();
+
+        Disposable orders = bulkheads.guard("orders", TrafficClass.INTERACTIVE, Mono.never()).subscribe();
+        assertThatThrownBy(() -> bulkheads.guard(List.of("orders", "customers"), TrafficClass.INTERACTIVE, Mono.just(1)).block())
+                .isInstanceOf(BulkheadFullException.class)
+                .hasMessageContaining("orders");
+        // permits are taken in name order: the customers one taken before orders was found full is back
+        assertThat(bulkheads.guard("customers", TrafficClass.INTERACTIVE, Mono.just(1)).block()).isEqualTo(1);
+        orders.dispose();
+    }
+
+    @Test
+    void permitIsReleasedWhenTheCallEnds() {
+        assertThat(bulkheads.supplyAsync("orders", TrafficClass.EXPORT, () -> 1).join()).isEqualTo(1);
+        assertThat(bulkheads.supplyAsync("orders", TrafficClass.EXPORT, () -> 2).join()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,169 @@
+package com.microservices.elasticsearch.dynamic.query.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+class SearchCoalescerTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final AtomicInteger subscriptions = new AtomicInteger();
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private SearchCoalescer coalescer;
+    private Sinks.One<String> upstream;
+
+    @BeforeEach
+    void setUp() {
+        coalescer = new SearchCoalescer(registry);
+        ReflectionTestUtils.setField(coalescer, "enabled", true);
+        upstream = Sinks.one();
+    }
+
+    /**
+     * A call that completes when {@link #upstream} is emitted to, counting subscriptions and cancels
+     */
+    private Supplier<Mono<String>> call() {
+        return () -> {
+            subscriptions.incrementAndGet();
+            return upstream.asMono().doOnCancel(() -> cancelled.set(true));
+        };
+    }
+
+    @Test
+    void concurrentIdenticalCallsShareOneUpstreamSubscription() {
+        List<String> results = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            coalescer.execute("k", call()).subscribe(results::add);
+        }
+        upstream.tryEmitValue("hit");
+
+        assertThat(subscriptions).hasValue(1);
+        assertThat(results).hasSize(10).containsOnly("hit");
+        assertThat(registry.get("es.coalescing.coalesced").counter().count()).isEqualTo(9);
+        assertThat(registry.get("es.coalescing.inflight").gauge().value()).isZero();
+    }
+
+    @Test
+    void differentKeysDoNotShare() {
+        coalescer.execute("a", call()).subscribe();
+        coalescer.execute("b", call()).subscribe();
+
+        assertThat(subscriptions).hasValue(2);
+    }
+
+    @Test
+    void errorReachesEveryWaiter() {
+        List<Throwable> errors = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            coalescer.execute("k", call()).subscribe(v -> {}, errors::add);
+        }
+        upstream.tryEmitError(new IllegalStateException("boom"));
+
+        assertThat(errors).hasSize(3).allSatisfy(e -> assertThat(e).hasMessage("boom"));
+        assertThat(subscriptions).hasValue(1);
+    }
+
+    @Test
+    void cancellingOneOfSeveralWaitersKeepsTheCall() {
+        Disposable first = coalescer.execute("k", call()).subscribe();
+        List<String> results = new ArrayList<>();
+        coalescer.execute("k", call()).subscribe(results::add);
+
+        first.dispose();
+        assertThat(cancelled).isFalse();
+
+        upstream.tryEmitValue("hit");
+        assertThat(results).containsExactly("hit");
+    }
+
+    @Test
+    void cancellingTheLastWaiterCancelsTheCall() {
+        Disposable first = coalescer.execute("k", call()).subscribe();
+        Disposable second = coalescer.execute("k", call()).subscribe();
+
+        first.dispose();
+        second.dispose();
+
+        assertThat(cancelled).isTrue();
+        assertThat(registry.get("es.coalescing.inflight").gauge().value()).isZero();
+    }
+
+    @Test
+    void callerArrivingAfterCompletionStartsAFreshCall() {
+        upstream.tryEmitValue("first");
+        StepVerifier.create(coalescer.execute("k", call())).expectNext("first").verifyComplete();
+
+        upstream = Sinks.one();
+        upstream.tryEmitValue("second");
+        StepVerifier.create(coalescer.execute("k", call())).expectNext("second").verifyComplete();
+
+        assertThat(subscriptions).hasValue(2);
+    }
+
+    @Test
+    void callerArrivingWhileTheResultIsBeingDeliveredStartsAFreshCall() {
+        List<String> late = new ArrayList<>();
+        AtomicBoolean lateCompleted = new AtomicBoolean();
+        coalescer.execute("k", call()).subscribe(v -> {
+            upstream = Sinks.one();
+            upstream.tryEmitValue("second");
+            coalescer.execute("k", call()).subscribe(late::add, e -> {}, () -> lateCompleted.set(true));
+        });
+        upstream.tryEmitValue("first");
+
+        assertThat(lateCompleted).isTrue();
+        assertThat(late).containsExactly("second");
+        assertThat(subscriptions).hasValue(2);
+        assertThat(registry.get("es.coalescing.coalesced").counter().count()).isZero();
+    }
+
+    @Test
+    void cancelledCallIsForgottenBeforeTheNextCaller() {
+        coalescer.execute("k", call()).subscribe().dispose();
+        assertThat(cancelled).isTrue();
+
+        upstream = Sinks.one();
+        upstream.tryEmitValue("fresh");
+        StepVerifier.create(coalescer.execute("k", call())).expectNext("fresh").verifyComplete();
+        assertThat(subscriptions).hasValue(2);
+    }
+
+    @Test
+    void onlyJoiningCallersRecordACoalescedStage() {
+        SearchMetrics metrics = new SearchMetrics(registry);
+        ReflectionTestUtils.setField(metrics, "maxTagValues", 50);
+        coalescer.execute("k", metrics.trace("search", "first", null), call()).subscribe();
+        coalescer.execute("k", metrics.trace("search", "joined", null), call()).subscribe();
+        upstream.tryEmitValue("hit");
+
+        assertThat(registry.find("es.search.stage").tag("stage", "coalesced").timers())
+                .singleElement()
+                .satisfies(timer -> {
+                    assertThat(timer.getId().getTag("index")).isEqualTo("joined");
+                    assertThat(timer.count()).isEqualTo(1);
+                });
+    }
+
+    @Test
+    void disabledCoalescingCallsThrough() {
+        ReflectionTestUtils.setField(coalescer, "enabled", false);
+        coalescer.execute("k", call()).subscribe();
+        coalescer.execute("k", call()).subscribe();
+
+        assertThat(subscriptions).hasValue(2);
+    }
+}
@@ -0,0 +1,94 @@
+package com.microservices.elasticsearch.dynamic.query.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.microservices.elasticsearch.dynamic.query.service.SearchMetrics.Stage;
+
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class SearchMetricsTests {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final SearchMetrics metrics = new SearchMetrics(registry);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(metrics, "maxTagValues", 2);
+        ReflectionTestUtils.setField(metrics, "percentileHistogram", false);
+    }
+
+    private Timer stage(Stage stage) {
+        return registry.find("es.search.stage").tag("stage", stage.name().toLowerCase()).timer();
+    }
+
+    @Test
+    void stagesAreTimedWithTheRequestTags() {
+        SearchMetrics.Trace trace = metrics.trace("search", null, "orders_search");
+
+        assertThat(trace.time(Stage.TRANSFORM, () -> "done")).isEqualTo("done");
+        trace.index("orders");
+        trace.record(Stage.ELASTICSEARCH, TimeUnit.MILLISECONDS.toNanos(12));
+        trace.record(Stage.ELASTICSEARCH, TimeUnit.MILLISECONDS.toNanos(8));
+
+        Timer transform = stage(Stage.TRANSFORM);
+        assertThat(transform.count()).isEqualTo(1);
+        assertThat(transform.getId().getTag("endpoint")).isEqualTo("search");
+        assertThat(transform.getId().getTag("index")).isEqualTo("none"); // not known before transform
+        assertThat(transform.getId().getTag("mapping")).isEqualTo("orders_search");
+        Timer search = stage(Stage.ELASTICSEARCH);
+        assertThat(search.count()).isEqualTo(2);
+        assertThat(search.totalTime(TimeUnit.MILLISECONDS)).isEqualTo(20);
+        assertThat(search.getId().getTag("index")).isEqualTo("orders");
+    }
+
+    @Test
+    void tookHitsAndOverheadAreRecordedWhenTheRequestExecutedASearch() {
+        SearchMetrics.Trace trace = metrics.trace("search", "orders", null);
+        trace.took(5L);
+        trace.hits(3);
+        trace.hits(4);
+        trace.complete();
+
+        assertThat(registry.get("es.search.took").timer().totalTime(TimeUnit.MILLISECONDS)).isEqualTo(5);
+        assertThat(registry.get("es.search.overhead").timer().count()).isEqualTo(1);
+        assertThat(registry.get("es.search.hits.returned").counter().count()).isEqualTo(7);
+        assertThat(trace.hitCount()).isEqualTo(7);
+    }
+
+    @Test
+    void requestsServedWithoutASearchRecordNoOverhead() {
+        metrics.trace("search", "orders", null).complete();
+
+        assertThat(registry.find("es.search.overhead").timer()).isNull();
+    }
+
+    @Test
+    void tagValuesPastMaxTagValuesAreReportedAsOther() {
+        for (String index : new String[] {"a", "b", "c", "d", "a"}) {
+            metrics.trace("search", index, null).record(Stage.COMPILE, 1);
+        }
+
+        assertThat(registry.find("es.search.stage").timers())
+                .extracting(timer -> timer.getId().getTag("index"))
+                .containsExactlyInAnyOrder("a", "b", "other");
+        assertThat(registry.get("es.search.stage").tag("index", "a").timer().count()).isEqualTo(2);
+        assertThat(registry.get("es.search.stage").tag("index", "other").timer().count()).isEqualTo(2);
+    }
+
+    @Test
+    void noneTraceRecordsNothing() {
+        SearchMetrics.Trace.NONE.record(Stage.COMPILE, 1);
+        SearchMetrics.Trace.NONE.took(5L);
+        SearchMetrics.Trace.NONE.hits(3);
+        SearchMetrics.Trace.NONE.complete();
+
+        assertThat(registry.getMeters()).isEmpty();
+    }
+}
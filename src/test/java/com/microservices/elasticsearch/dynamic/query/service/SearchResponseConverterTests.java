@@ -0,0 +1,147 @@
+package com.microservices.elasticsearch.dynamic.query.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.microservices.elasticsearch.dynamic.query.dto.HitCountRequest;
+import com.microservices.elasticsearch.dynamic.query.dto.PaginationRequest;
+import com.microservices.elasticsearch.dynamic.query.dto.SearchResult;
+
+import co.elastic.clients.elasticsearch._types.ShardStatistics;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import co.elastic.clients.elasticsearch.core.search.TotalHitsRelation;
+
+class SearchResponseConverterTests {
+
+    private final SearchResponseConverter converter = new SearchResponseConverter(new ElasticsearchAggregationCompiler());
+
+    private static final HitCount BOUNDED = hitCount("bounded", 1_000);
+    private static final HitCount NONE = hitCount("none", null);
+    private static final HitCount CACHED = hitCount("cached", 1_000);
+
+    private static HitCount hitCount(String mode, Integer threshold) {
+        return HitCount.of(HitCountRequest.builder().mode(mode).threshold(threshold).build());
+    }
+
+    /**
+     * {@code hits} documents numbered from {@code first}; {@code total} null leaves hits.total out
+     */
+    private static SearchResponse<Map> response(int first, int hits, Long total, TotalHitsRelation relation) {
+        List<Hit<Map>> list = new ArrayList<>(hits);
+        for (int i = first; i < first + hits; i++) {
+            String id = String.valueOf(i);
+            list.add(Hit.of(h -> h.index("orders").id(id).score(1.0).source(Map.of("order_no", id))));
+        }
+        return SearchResponse.of(r -> r
+                .took(2)
+                .timedOut(false)
+                .shards(ShardStatistics.of(s -> s.total(1).successful(1).failed(0)))
+                .hits(h -> {
+                    h.hits(list);
+                    if (total != null) h.total(t -> t.value(total).relation(relation));
+                    return h;
+                }));
+    }
+
+    private SearchResult<Map> convert(SearchResponse<Map> response, int from, int size, HitCount hitCount) {
+        return converter.convert(response, Map.class, new PaginationRequest(from, size), hitCount);
+    }
+
+    @Test
+    void exactCountsDecideHasMoreFromTheTotal() {
+        SearchResult<Map> first = convert(response(0, 10, 25L, TotalHitsRelation.Eq), 0, 10, HitCount.EXACT);
+        SearchResult<Map> last = convert(response(20, 5, 25L, TotalHitsRelation.Eq), 20, 10, HitCount.EXACT);
+        SearchResult<Map> full = convert(response(10, 10, 20L, TotalHitsRelation.Eq), 10, 10, HitCount.EXACT);
+
+        assertThat(first.getTotalHits()).isEqualTo(25);
+        assertThat(first.getTotalHitsRelation()).isEqualTo("eq");
+        assertThat(first.getHasMore()).isTrue();
+        assertThat(last.getResults()).hasSize(5);
+        assertThat(last.getHasMore()).isFalse();
+        assertThat(last.getCurrentPage()).isEqualTo(2);
+        assertThat(full.getHasMore()).isFalse();
+    }
+
+    @Test
+    void exactCountWithoutATotalReportsZero() {
+        SearchResult<Map> result = convert(response(0, 3, null, null), 0, 10, HitCount.EXACT);
+
+        assertThat(result.getTotalHits()).isZero();
+        assertThat(result.getTotalHitsRelation()).isNull();
+    }
+
+    @Test
+    void probeHitPastThePageIsDroppedAndMeansHasMore() {
+        for (HitCount hitCount : List.of(BOUNDED, NONE, CACHED)) {
+            SearchResult<Map> result = convert(response(0, 11, null, null), 0, 10, hitCount);
+
+            assertThat(result.getResults()).as("%s", hitCount).hasSize(10);
+            assertThat(result.getResults()).extracting(hit -> hit.getId()).as("%s", hitCount).doesNotContain("10");
+            assertThat(result.getHasMore()).as("%s", hitCount).isTrue();
+            assertThat(result.getPageSize()).as("%s", hitCount).isEqualTo(10);
+        }
+    }
+
+    @Test
+    void exactlyAPageOfHitsUnderProbingHasNoMore() {
+        for (HitCount hitCount : List.of(BOUNDED, NONE, CACHED)) {
+            SearchResult<Map> result = convert(response(0, 10, null, null), 0, 10, hitCount);
+
+            assertThat(result.getResults()).as("%s", hitCount).hasSize(10);
+            assertThat(result.getHasMore()).as("%s", hitCount).isFalse();
+        }
+    }
+
+    @Test
+    void probingIgnoresTheTotalForHasMore() {
+        // a bounded total above the page would say "more" for the last page; the probe hit decides
+        SearchResult<Map> result = convert(response(20, 5, 1_000L, TotalHitsRelation.Gte), 20, 10, BOUNDED);
+
+        assertThat(result.getHasMore()).isFalse();
+        assertThat(result.getTotalHits()).isEqualTo(1_000);
+    }
+
+    @Test
+    void boundedTotalsAreMarkedAsLowerBounds() {
+        SearchResult<Map> bounded = convert(response(0, 11, 1_000L, TotalHitsRelation.Gte), 0, 10, BOUNDED);
+        SearchResult<Map> underThreshold = convert(response(0, 4, 4L, TotalHitsRelation.Eq), 0, 10, BOUNDED);
+
+        assertThat(bounded.getTotalHits()).isEqualTo(1_000);
+        assertThat(bounded.getTotalHitsRelation()).isEqualTo("gte");
+        assertThat(underThreshold.getTotalHits()).isEqualTo(4);
+        assertThat(underThreshold.getTotalHitsRelation()).isEqualTo("eq");
+        assertThat(underThreshold.getHasMore()).isFalse();
+    }
+
+    @Test
+    void uncountedSearchesHaveNoTotal() {
+        SearchResult<Map> result = convert(response(0, 11, null, null), 0, 10, NONE);
+
+        assertThat(result.getTotalHits()).isNull();
+        assertThat(result.getTotalHitsRelation()).isNull();
+    }
+
+    @Test
+    void defaultPageSizeIsProbedWithoutPagination() {
+        SearchResult<Map> result = converter.convert(response(0, 11, null, null), Map.class, null, NONE);
+
+        assertThat(result.getResults()).hasSize(10);
+        assertThat(result.getHasMore()).isTrue();
+    }
+
+    @Test
+    void aggregationOnlyRequestsAreNotProbed() {
+        SearchResult<Map> result = convert(response(0, 0, 1_000L, TotalHitsRelation.Gte), 0, 0, BOUNDED);
+
+        assertThat(result.getResults()).isEmpty();
+        assertThat(result.getHasMore()).isFalse();
+        assertThat(result.getCurrentPage()).isZero();
+        assertThat(result.getTotalHitsRelation()).isEqualTo("gte");
+    }
+}
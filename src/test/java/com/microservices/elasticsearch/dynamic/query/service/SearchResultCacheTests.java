@@ -0,0 +1,156 @@
+package com.microservices.elasticsearch.dynamic.query.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.microservices.elasticsearch.dynamic.query.config.SearchCacheProperties;
+import com.microservices.elasticsearch.dynamic.query.dto.HitEnvelope;
+import com.microservices.elasticsearch.dynamic.query.dto.SearchResult;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+class SearchResultCacheTests {
+
+    private static final String INDEX = "orders";
+
+    private final SearchCacheProperties properties = new SearchCacheProperties();
+    private final AtomicInteger loads = new AtomicInteger();
+    private SearchResultCache cache;
+
+    @BeforeEach
+    void setUp() {
+        properties.setDefaultTtl(Duration.ofMinutes(1));
+        cache = new SearchResultCache(properties, new SimpleMeterRegistry());
+    }
+
+    /**
+     * Each load returns a result whose totalHits is the load number
+     */
+    private Supplier<Mono<SearchResult<Map>>> loader() {
+        return () -> Mono.fromSupplier(() -> result(loads.incrementAndGet()));
+    }
+
+    private static SearchResult<Map> result(long totalHits) {
+        List<HitEnvelope<Map>> hits = new ArrayList<>();
+        hits.add(HitEnvelope.<Map>builder().id("1").data(Map.of("a", 1)).build());
+        return SearchResult.<Map>builder().success(true).totalHits(totalHits).results(hits).build();
+    }
+
+    private long get(String key) {
+        return cache.get(INDEX, key, loader()).block().getTotalHits();
+    }
+
+    @Test
+    void freshResultIsServedFromCache() {
+        assertThat(get("k")).isEqualTo(1);
+        assertThat(get("k")).isEqualTo(1);
+        assertThat(get("other")).isEqualTo(2);
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void expiredResultIsLoadedAgain() throws InterruptedException {
+        properties.setIndexTtl(Map.of(INDEX, Duration.ofMillis(50)));
+
+        assertThat(get("k")).isEqualTo(1);
+        Thread.sleep(120);
+        assertThat(get("k")).isEqualTo(2);
+    }
+
+    @Test
+    void zeroTtlIsNeverStored() {
+        properties.setIndexTtl(Map.of(INDEX, Duration.ZERO));
+
+        get("k");
+        get("k");
+        assertThat(loads).hasValue(2);
+    }
+
+    @Test
+    void staleResultIsServedWhileOneRefreshRuns() throws InterruptedException {
+        properties.setIndexTtl(Map.of(INDEX, Duration.ofMillis(50)));
+        properties.setStaleWhileRevalidate(Duration.ofMinutes(1));
+        assertThat(get("k")).isEqualTo(1);
+        Thread.sleep(100);
+
+        Sinks.One<SearchResult<Map>> refresh = Sinks.one();
+        AtomicInteger refreshes = new AtomicInteger();
+        Supplier<Mono<SearchResult<Map>>> slowLoader = () -> {
+            refreshes.incrementAndGet();
+            return refresh.asMono();
+        };
+        assertThat(cache.get(INDEX, "k", slowLoader).block().getTotalHits()).isEqualTo(1);
+        assertThat(cache.get(INDEX, "k", slowLoader).block().getTotalHits()).isEqualTo(1);
+        assertThat(refreshes).hasValue(1);
+
+        refresh.tryEmitValue(result(42));
+        assertThat(get("k")).isEqualTo(42);
+    }
+
+    @Test
+    void invalidationDropsStoredResults() {
+        get("k");
+        cache.invalidateIndex("customers");
+        assertThat(get("k")).isEqualTo(1);
+
+        cache.invalidateIndex(INDEX);
+        assertThat(get("k")).isEqualTo(2);
+
+        cache.invalidateAll();
+        assertThat(get("k")).isEqualTo(3);
+    }
+
+    @Test
+    void loadInFlightDuringInvalidationIsNotStored() {
+        Sinks.One<SearchResult<Map>> inFlight = Sinks.one();
+        List<Long> delivered = new ArrayList<>();
+        cache.get(INDEX, "k", inFlight::asMono).subscribe(r -> delivered.add(r.getTotalHits()));
+
+        cache.invalidateIndex(INDEX);
+        inFlight.tryEmitValue(result(99));
+
+        assertThat(delivered).containsExactly(99L); // the caller still gets its answer
+        assertThat(get("k")).isEqualTo(1);
+    }
+
+    @Test
+    void refreshInFlightDuringInvalidationIsNotStored() throws InterruptedException {
+        properties.setIndexTtl(Map.of(INDEX, Duration.ofMillis(50)));
+        properties.setStaleWhileRevalidate(Duration.ofMinutes(1));
+        get("k");
+        Thread.sleep(100);
+
+        Sinks.One<SearchResult<Map>> refresh = Sinks.one();
+        cache.get(INDEX, "k", refresh::asMono).block();
+        cache.invalidateAll();
+        refresh.tryEmitValue(result(99));
+
+        assertThat(get("k")).isEqualTo(2);
+    }
+
+    @Test
+    void callersGetTheirOwnCopy() {
+        SearchResult<Map> first = cache.get(INDEX, "k", loader()).block();
+        first.setTotalHits(-1L);
+        first.getResults().clear();
+
+        SearchResult<Map> second = cache.get(INDEX, "k", loader()).block();
+        second.getResults().get(0).setId("changed");
+
+        SearchResult<Map> third = cache.get(INDEX, "k", loader()).block();
+        assertThat(third.getTotalHits()).isEqualTo(1);
+        assertThat(third.getResults()).extracting(HitEnvelope::getId).containsExactly("1");
+        assertThat(loads).hasValue(1);
+    }
+}
@@ -0,0 +1,228 @@
+package com.microservices.elasticsearch.dynamic.query.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.microservices.elasticsearch.dynamic.query.dto.AggregationRequest;
+import com.microservices.elasticsearch.dynamic.query.dto.ElasticsearchQueryRequest;
+import com.microservices.elasticsearch.dynamic.query.dto.QueryAggregationsRequest;
+import com.microservices.elasticsearch.dynamic.query.dto.QueryGroup;
+import com.microservices.elasticsearch.dynamic.query.dto.QueryStructureRequest;
+import com.microservices.elasticsearch.dynamic.query.service.TermsAggregationStreamer.Mode;
+
+import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
+import co.elastic.clients.elasticsearch._types.FieldValue;
+import co.elastic.clients.elasticsearch._types.ShardStatistics;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregate;
+import co.elastic.clients.elasticsearch._types.aggregations.Aggregation;
+import co.elastic.clients.elasticsearch._types.aggregations.CompositeBucket;
+import co.elastic.clients.elasticsearch._types.aggregations.StringTermsBucket;
+import co.elastic.clients.elasticsearch._types.aggregations.TermsAggregation;
+import co.elastic.clients.elasticsearch._types.aggregations.TermsPartition;
+import co.elastic.clients.elasticsearch.core.SearchRequest;
+import co.elastic.clients.elasticsearch.core.SearchResponse;
+import co.elastic.clients.util.ObjectBuilder;
+
+/**
+ * Runs the streamer against a mocked client that answers cardinality, partitioned terms and
+ * composite aggregations over the values v00..v(n-1) of one field, and records every request
+ */
+class TermsAggregationStreamerTests {
+
+    private static final String INDEX = "orders";
+    private static final String NAME = "by_region";
+
+    private final ElasticsearchAsyncClient client = mock(ElasticsearchAsyncClient.class);
+    private final List<SearchRequest> requests = new ArrayList<>();
+    private TermsAggregationStreamer streamer;
+
+    /** distinct values the field really has */
+    private int values;
+    /** what the cardinality aggregation reports */
+    private long estimate;
+
+    @BeforeEach
+    void setUp() {
+        when(client.search(any(Function.class), eq(Void.class))).thenAnswer(invocation -> {
+            Function<SearchRequest.Builder, ObjectBuilder<SearchRequest>> fn = invocation.getArgument(0);
+            SearchRequest request = fn.apply(new SearchRequest.Builder()).build();
+            synchronized (requests) {
+                requests.add(request);
+            }
+            return CompletableFuture.completedFuture(respond(request));
+        });
+        ElasticsearchQueryCompiler compiler =
+                new ElasticsearchQueryCompiler(new ElasticsearchAggregationCompiler(), new BoolQueryOptimizer(true));
+        streamer = new TermsAggregationStreamer(client, compiler, new ElasticsearchAggregationCompiler());
+        ReflectionTestUtils.setField(streamer, "partitionMaxCardinality", 100L);
+        ReflectionTestUtils.setField(streamer, "bucketsPerPartition", 10);
+        ReflectionTestUtils.setField(streamer, "maxConcurrentPartitions", 2);
+        ReflectionTestUtils.setField(streamer, "compositePageSize", 10);
+        ReflectionTestUtils.setField(streamer, "precisionThreshold", 3000);
+        ReflectionTestUtils.setField(streamer, "maxPartitionSize", 65536);
+    }
+
+    @Test
+    void lowCardinalityRunsOnePartitionPerBucketsPerPartition() {
+        values = 35;
+        estimate = 35;
+
+        List<Map<String, Object>> buckets = streamer.stream(INDEX, request(), Mode.AUTO).collectList().block();
+
+        assertThat(keys(buckets)).containsExactlyInAnyOrderElementsOf(allValues());
+        assertThat(buckets).allSatisfy(bucket -> assertThat(bucket).containsEntry("doc_count", 1L));
+        assertThat(kinds()).containsExactly("cardinality", "terms", "terms", "terms", "terms");
+        assertThat(termsRequests()).extracting(r -> r.include().partition().numPartitions())
+                .containsOnly(4L);
+        assertThat(termsRequests()).extracting(r -> r.include().partition().partition())
+                .containsExactlyInAnyOrder(0L, 1L, 2L, 3L);
+    }
+
+    @Test
+    void truncatedPartitionIsRetriedWithTwiceTheSize() {
+        values = 40;
+        estimate = 5; // one partition sized for ~5 values: 2 * (5 + 1) = 12 buckets
+
+        List<Map<String, Object>> buckets = streamer.stream(INDEX, request(), Mode.AUTO).collectList().block();
+
+        assertThat(keys(buckets)).containsExactlyInAnyOrderElementsOf(allValues());
+        assertThat(termsRequests()).extracting(r -> r.size()).containsExactly(12, 24, 48);
+        assertThat(termsRequests()).extracting(r -> r.include().partition().partition()).containsOnly(0L);
+    }
+
+    @Test
+    void highCardinalityPagesACompositeAggregationWithAfterKey() {
+        values = 25;
+        estimate = 500;
+
+        List<Map<String, Object>> buckets = streamer.stream(INDEX, request(), Mode.AUTO).collectList().block();
+
+        assertThat(keys(buckets)).containsExactlyElementsOf(allValues());
+        assertThat(kinds()).containsExactly("cardinality", "composite", "composite", "composite", "composite");
+        assertThat(compositeAfterKeys()).containsExactly(null, "v09", "v19", "v24");
+    }
+
+    @Test
+    void explicitModesSkipOrOverrideTheCardinalityChoice() {
+        values = 15;
+        estimate = 500;
+
+        List<Map<String, Object>> composite = streamer.stream(INDEX, request(), Mode.COMPOSITE).collectList().block();
+        assertThat(keys(composite)).containsExactlyElementsOf(allValues());
+        assertThat(kinds()).doesNotContain("cardinality", "terms");
+
+        requests.clear();
+        estimate = 15;
+        List<Map<String, Object>> partitions = streamer.stream(INDEX, request(), Mode.PARTITIONS).collectList().block();
+        assertThat(keys(partitions)).containsExactlyInAnyOrderElementsOf(allValues());
+        assertThat(kinds()).containsExactly("cardinality", "terms", "terms");
+    }
+
+    // ---------- fake Elasticsearch ----------
+
+    private SearchResponse<Void> respond(SearchRequest request) {
+        Aggregation aggregation = request.aggregations().values().iterator().next();
+        Aggregate aggregate = switch (aggregation._kind()) {
+            case Cardinality -> Aggregate.of(a -> a.cardinality(c -> c.value(estimate)));
+            case Terms -> partition(aggregation.terms().include().partition(), aggregation.terms().size());
+            case Composite -> compositePage(aggregation.composite().after(), aggregation.composite().size());
+            default -> throw new IllegalArgumentException(aggregation._kind().name());
+        };
+        String name = request.aggregations().keySet().iterator().next();
+        return SearchResponse.of(r -> r
+                .took(1)
+                .timedOut(false)
+                .shards(ShardStatistics.of(s -> s.total(1).successful(1).failed(0)))
+                .hits(h -> h.hits(List.of()))
+                .aggregations(name, aggregate));
+    }
+
+    private Aggregate partition(TermsPartition include, int size) {
+        List<StringTermsBucket> matching = new ArrayList<>();
+        for (int i = 0; i < values; i++) {
+            if (i % include.numPartitions() == include.partition()) matching.add(bucket(value(i)));
+        }
+        List<StringTermsBucket> returned = matching.subList(0, Math.min(size, matching.size()));
+        long other = matching.size() - returned.size();
+        return Aggregate.of(a -> a.sterms(t -> t.buckets(b -> b.array(returned)).sumOtherDocCount(other)));
+    }
+
+    private Aggregate compositePage(Map<String, FieldValue> after, int size) {
+        int from = after.isEmpty() ? 0 : allValues().indexOf(after.get(NAME).stringValue()) + 1;
+        List<CompositeBucket> page = new ArrayList<>();
+        for (int i = from; i < Math.min(values, from + size); i++) {
+            String key = value(i);
+            page.add(CompositeBucket.of(b -> b.key(Map.of(NAME, FieldValue.of(key))).docCount(1)));
+        }
+        // Elasticsearch keeps returning after_key until a page comes back empty
+        return Aggregate.of(a -> a.composite(c -> {
+            c.buckets(b -> b.array(page));
+            return page.isEmpty() ? c : c.afterKey(page.get(page.size() - 1).key());
+        }));
+    }
+
+    private static StringTermsBucket bucket(String key) {
+        return StringTermsBucket.of(b -> b.key(FieldValue.of(key)).docCount(1));
+    }
+
+    private static String value(int i) {
+        return String.format("v%02d", i);
+    }
+
+    private List<String> allValues() {
+        List<String> all = new ArrayList<>(values);
+        for (int i = 0; i < values; i++) all.add(value(i));
+        return all;
+    }
+
+    // ---------- recorded requests ----------
+
+    private List<String> kinds() {
+        return requests.stream()
+                .map(r -> r.aggregations().values().iterator().next()._kind().jsonValue())
+                .toList();
+    }
+
+    private List<TermsAggregation> termsRequests() {
+        return requests.stream()
+                .map(r -> r.aggregations().values().iterator().next())
+                .filter(Aggregation::isTerms)
+                .map(Aggregation::terms)
+                .toList();
+    }
+
+    private List<String> compositeAfterKeys() {
+        return requests.stream()
+                .map(r -> r.aggregations().values().iterator().next())
+                .filter(Aggregation::isComposite)
+                .map(a -> a.composite().after().isEmpty() ? null : a.composite().after().get(NAME).stringValue())
+                .toList();
+    }
+
+    private static List<Object> keys(List<Map<String, Object>> buckets) {
+        return buckets.stream().map(bucket -> bucket.get("key")).toList();
+    }
+
+    private static ElasticsearchQueryRequest request() {
+        QueryGroup query = QueryGroup.builder()
+                .operator("AND")
+                .conditions(List.of(Map.of("field", "status", "operator", "==", "value", "open")))
+                .build();
+        AggregationRequest terms = AggregationRequest.builder().name(NAME).type("terms").field("region").build();
+        return new ElasticsearchQueryRequest(QueryStructureRequest.builder().query(query).build(),
+                QueryAggregationsRequest.builder().aggregations(List.of(terms)).build(), INDEX);
+    }
+}
@@ -0,0 +1,191 @@
+package com.microservices.elasticsearch.dynamic.query.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * {@link WorkflowMappingsReloader} against a real SQLite file that the test edits and replaces
+ */
+class WorkflowMappingsReloaderTests {
+
+    @TempDir
+    Path dir;
+
+    private Path db;
+    private WorkflowMappingsService store;
+    private WorkflowMappingsCache cache;
+    private WorkflowMappingsReloader reloader;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        db = create(dir.resolve("mappings.db"));
+        insert(db, "m1", "index_1", "r1");
+        insert(db, "m2", "index_2", "r1");
+
+        WorkflowMappingsService service = new WorkflowMappingsService();
+        ReflectionTestUtils.setField(service, "configuredDbPath", db.toString());
+        ReflectionTestUtils.setField(service, "poolSize", 1);
+        service.init();
+        store = spy(service);
+        cache = new WorkflowMappingsCache();
+        reloader = new WorkflowMappingsReloader(store, cache);
+        ReflectionTestUtils.setField(reloader, "reloadInterval", Duration.ofMillis(20));
+    }
+
+    @AfterEach
+    void tearDown() {
+        reloader.stopPolling();
+        store.close();
+    }
+
+    private static Path create(Path file) throws SQLException {
+        try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + file);
+             Statement s = c.createStatement()) {
+            s.execute("CREATE TABLE workflow_mappings (id INTEGER PRIMARY KEY, mapping_name TEXT UNIQUE, "
+                    + "index_name TEXT, relationships TEXT, table_structures TEXT, updated_at TEXT)");
+        }
+        return file;
+    }
+
+    private static void insert(Path file, String name, String index, String revision) throws SQLException {
+        execute(file, "INSERT INTO workflow_mappings (mapping_name, index_name, relationships, table_structures, updated_at) "
+                + "VALUES (?, ?, '[]', '{}', ?)", name, index, revision);
+    }
+
+    private static void execute(Path file, String sql, String... args) throws SQLException {
+        try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + file);
+             PreparedStatement ps = c.prepareStatement(sql)) {
+            for (int i = 0; i < args.length; i++) ps.setString(i + 1, args[i]);
+            ps.executeUpdate();
+        }
+    }
+
+    private String indexOf(String mappingName) {
+        return cache.getPlan(mappingName) == null ? null : cache.getPlan(mappingName).indexName();
+    }
+
+    @Test
+    void initialReloadLoadsEveryRow() {
+        WorkflowMappingsReloader.Result result = reloader.reload(false).block();
+
+        assertThat(result.added()).isEqualTo(2);
+        assertThat(result.size()).isEqualTo(2);
+        assertThat(indexOf("m1")).isEqualTo("index_1");
+        assertThat(cache.current().revisions()).containsEntry("m1", "r1");
+    }
+
+    @Test
+    void incrementalReloadFetchesOnlyRowsWhoseUpdatedAtMoved() throws SQLException {
+        reloader.reload(false).block();
+        long version = cache.current().version();
+        insert(db, "m3", "index_3", "r1");
+        execute(db, "UPDATE workflow_mappings SET index_name = 'index_1b', updated_at = 'r2' WHERE mapping_name = 'm1'");
+        execute(db, "UPDATE workflow_mappings SET index_name = 'index_2b' WHERE mapping_name = 'm2'"); // same updated_at
+        clearInvocations(store);
+
+        WorkflowMappingsReloader.Result result = reloader.reload(false).block();
+
+        assertThat(result.added()).isEqualTo(1);
+        assertThat(result.updated()).isEqualTo(1);
+        assertThat(result.version()).isEqualTo(version + 1);
+        verify(store).getByMappingNames(argThat(
+                (Collection<String> names) -> names.size() == 2 && names.containsAll(List.of("m1", "m3"))));
+        assertThat(indexOf("m1")).isEqualTo("index_1b");
+        assertThat(indexOf("m2")).isEqualTo("index_2"); // invisible without an updated_at change
+        assertThat(indexOf("m3")).isEqualTo("index_3");
+    }
+
+    @Test
+    void incrementalReloadDropsDeletedRows() throws SQLException {
+        reloader.reload(false).block();
+        execute(db, "DELETE FROM workflow_mappings WHERE mapping_name = 'm2'");
+
+        WorkflowMappingsReloader.Result result = reloader.reload(false).block();
+
+        assertThat(result.removed()).isEqualTo(1);
+        assertThat(cache.get("m2")).isNull();
+        assertThat(cache.current().revisions()).doesNotContainKey("m2");
+    }
+
+    @Test
+    void fullReloadRereadsEveryRow() throws SQLException {
+        reloader.reload(false).block();
+        execute(db, "UPDATE workflow_mappings SET index_name = 'index_2b' WHERE mapping_name = 'm2'");
+        execute(db, "DELETE FROM workflow_mappings WHERE mapping_name = 'm1'");
+        insert(db, "m3", "index_3", "r1");
+        clearInvocations(store);
+
+        WorkflowMappingsReloader.Result result = reloader.reload(true).block();
+
+        verify(store).getAll();
+        verify(store, never()).getRevisions();
+        assertThat(result.added()).isEqualTo(1);
+        assertThat(result.updated()).isEqualTo(1);
+        assertThat(result.removed()).isEqualTo(1);
+        assertThat(cache.snapshot().keySet()).containsExactlyInAnyOrder("m2", "m3");
+        assertThat(indexOf("m2")).isEqualTo("index_2b");
+    }
+
+    @Test
+    void reloadWithoutChangesKeepsTheSnapshot() {
+        reloader.reload(false).block();
+        WorkflowMappingsCache.Snapshot before = cache.current();
+
+        WorkflowMappingsReloader.Result result = reloader.reload(false).block();
+
+        assertThat(result.changed()).isFalse();
+        assertThat(cache.current()).isSameAs(before);
+    }
+
+    @Test
+    void pollingSkipsAnUnchangedStore() throws InterruptedException {
+        reloader.reload(false).block();
+        clearInvocations(store);
+
+        reloader.startPolling();
+        Thread.sleep(200);
+
+        verify(store, atLeastOnce()).storeFingerprint();
+        verify(store, never()).getRevisions();
+        verify(store, never()).getByMappingNames(any());
+    }
+
+    @Test
+    void pollingFollowsAReplacedDatabaseFile() throws Exception {
+        reloader.reload(false).block();
+        reloader.startPolling();
+
+        Path next = create(dir.resolve("next.db"));
+        insert(next, "m1", "index_1", "r1");
+        insert(next, "m9", "index_9", "r1");
+        Files.move(next, db, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        for (int i = 0; i < 100 && cache.get("m9") == null; i++) Thread.sleep(20);
+        assertThat(cache.snapshot().keySet()).containsExactlyInAnyOrder("m1", "m9");
+        assertThat(indexOf("m9")).isEqualTo("index_9");
+    }
+}
@@ -0,0 +1,254 @@
+package com.microservices.elasticsearch.dynamic.query.simulator;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.microservices.elasticsearch.dynamic.query.simulator.QueryEvaluator.Scope;
+
+/**
+ * Computes aggregations over the matching documents. Results are exact (cardinality is a true
+ * distinct count) and keyed "type#name" when the caller asks for typed_keys, as the Java client
+ * always does. Supports terms (with include partitions), composite over terms sources, nested,
+ * cardinality, avg, sum, min, max and value_count.
+ */
+final class AggregationEvaluator {
+
+    private static final ObjectMapper M = new ObjectMapper();
+    private static final JsonNodeFactory F = JsonNodeFactory.instance;
+
+    private final QueryEvaluator queries;
+
+    AggregationEvaluator(QueryEvaluator queries) {
+        this.queries = queries;
+    }
+
+    ObjectNode evaluate(JsonNode aggregations, List<Scope> scopes, boolean typedKeys) {
+        ObjectNode out = M.createObjectNode();
+        Iterator<Map.Entry<String, JsonNode>> it = aggregations.fields();
+        while (it.hasNext()) {
+            Map.Entry<String, JsonNode> agg = it.next();
+            String name = agg.getKey();
+            JsonNode def = agg.getValue();
+            JsonNode subs = def.has("aggs") ? def.get("aggs") : def.path("aggregations");
+            String type = type(def);
+            JsonNode body = def.get(type);
+            ObjectNode result;
+            String typedName;
+            switch (type) {
+                case "terms" -> {
+                    result = terms(body, subs, scopes, typedKeys);
+                    typedName = result.remove("_type").asText();
+                }
+                case "composite" -> {
+                    result = composite(body, subs, scopes, typedKeys);
+                    typedName = "composite";
+                }
+                case "nested" -> {
+                    String path = body.path("path").asText();
+                    List<Scope> nested = nestedScopes(path, scopes);
+                    result = M.createObjectNode().put("doc_count", nested.size());
+                    if (subs.isObject()) result.setAll(evaluate(subs, nested, typedKeys));
+                    typedName = "nested";
+                }
+                case "cardinality" -> {
+                    Set<String> distinct = new LinkedHashSet<>();
+                    for (Scope scope : scopes) {
+                        for (JsonNode v : queries.values(body.path("field").asText(), scope)) distinct.add(v.asText());
+                    }
+                    result = M.createObjectNode().put("value", distinct.size());
+                    typedName = "cardinality";
+                }
+                case "avg", "sum", "min", "max", "value_count" -> {
+                    result = metric(type, body.path("field").asText(), scopes);
+                    typedName = type;
+                }
+                default -> throw new UnsupportedOperationException("Aggregation type not simulated: " + type);
+            }
+            out.set(typedKeys ? typedName + "#" + name : name, result);
+        }
+        return out;
+    }
+
+    private static String type(JsonNode def) {
+        Iterator<String> names = def.fieldNames();
+        while (names.hasNext()) {
+            String name = names.next();
+            if (!name.equals("aggs") && !name.equals("aggregations") && !name.equals("meta")) return name;
+        }
+        throw new IllegalArgumentException("Aggregation without a type: " + def);
+    }
+
+    private List<Scope> nestedScopes(String path, List<Scope> scopes) {
+        List<Scope> out = new ArrayList<>();
+        for (Scope scope : scopes) {
+            List<JsonNode> objects = new ArrayList<>();
+            QueryEvaluator.collect(scope.doc().source(), path, objects);
+            for (JsonNode object : objects) {
+                if (object.isObject()) out.add(new Scope(scope.doc(), path, object));
+            }
+        }
+        return out;
+    }
+
+    // ---------- terms ----------
+
+    private ObjectNode terms(JsonNode body, JsonNode subs, List<Scope> scopes, boolean typedKeys) {
+        String field = body.path("field").asText();
+        int size = body.path("size").asInt(10);
+        JsonNode partition = body.path("include");
+        Map<JsonNode, List<Scope>> groups = group(field, scopes);
+        if (partition.has("num_partitions")) {
+            int n = partition.path("num_partitions").asInt();
+            int p = partition.path("partition").asInt();
+            groups.keySet().removeIf(key -> Math.floorMod(key.asText().hashCode(), n) != p);
+        }
+        List<Map.Entry<JsonNode, List<Scope>>> ordered = new ArrayList<>(groups.entrySet());
+        ordered.sort(Comparator.<Map.Entry<JsonNode, List<Scope>>>comparingInt(e -> e.getValue().size()).reversed()
+                .thenComparing(e -> e.getKey(), AggregationEvaluator::compareKeys));
+        long otherDocs = 0;
+        ArrayNode buckets = F.arrayNode();
+        for (int i = 0; i < ordered.size(); i++) {
+            Map.Entry<JsonNode, List<Scope>> e = ordered.get(i);
+            if (i >= size) {
+                otherDocs += e.getValue().size();
+                continue;
+            }
+            ObjectNode bucket = buckets.addObject();
+            bucket.set("key", e.getKey());
+            bucket.put("doc_count", e.getValue().size());
+            if (subs.isObject()) bucket.setAll(evaluate(subs, e.getValue(), typedKeys));
+        }
+        String typed = groups.keySet().stream().findFirst()
+                .map(k -> k.isIntegralNumber() ? "lterms" : k.isNumber() ? "dterms" : "sterms").orElse("sterms");
+        ObjectNode result = M.createObjectNode();
+        result.put("_type", typed);
+        result.put("doc_count_error_upper_bound", 0);
+        result.put("sum_other_doc_count", otherDocs);
+        result.set("buckets", buckets);
+        return result;
+    }
+
+    /**
+     * Documents per distinct value of {@code field}; a document with several values lands in each
+     */
+    private Map<JsonNode, List<Scope>> group(String field, List<Scope> scopes) {
+        Map<JsonNode, List<Scope>> groups = new LinkedHashMap<>();
+        for (Scope scope : scopes) {
+            Set<JsonNode> seen = new LinkedHashSet<>(queries.values(field, scope));
+            for (JsonNode value : seen) groups.computeIfAbsent(value, k -> new ArrayList<>()).add(scope);
+        }
+        return groups;
+    }
+
+    private static int compareKeys(JsonNode a, JsonNode b) {
+        if (a.isNumber() && b.isNumber()) return Double.compare(a.asDouble(), b.asDouble());
+        return a.asText().compareTo(b.asText());
+    }
+
+    // ---------- composite ----------
+
+    private ObjectNode composite(JsonNode body, JsonNode subs, List<Scope> scopes, boolean typedKeys) {
+        int size = body.path("size").asInt(10);
+        List<String> names = new ArrayList<>();
+        List<String> fields = new ArrayList<>();
+        for (JsonNode source : body.path("sources")) {
+            Map.Entry<String, JsonNode> named = source.fields().next();
+            names.add(named.getKey());
+            fields.add(named.getValue().path("terms").path("field").asText());
+        }
+        Map<List<JsonNode>, List<Scope>> groups = new LinkedHashMap<>();
+        for (Scope scope : scopes) {
+            List<List<JsonNode>> keys = new ArrayList<>();
+            keys.add(List.of());
+            for (String field : fields) {
+                List<List<JsonNode>> next = new ArrayList<>();
+                for (JsonNode value : new LinkedHashSet<>(queries.values(field, scope))) {
+                    for (List<JsonNode> prefix : keys) {
+                        List<JsonNode> key = new ArrayList<>(prefix);
+                        key.add(value);
+                        next.add(key);
+                    }
+                }
+                keys = next; // composite skips documents missing any source value
+            }
+            for (List<JsonNode> key : keys) groups.computeIfAbsent(key, k -> new ArrayList<>()).add(scope);
+        }
+        Comparator<List<JsonNode>> order = (a, b) -> {
+            for (int i = 0; i < a.size(); i++) {
+                int c = compareKeys(a.get(i), b.get(i));
+                if (c != 0) return c;
+            }
+            return 0;
+        };
+        List<List<JsonNode>> keys = new ArrayList<>(groups.keySet());
+        keys.sort(order);
+        JsonNode after = body.path("after");
+        if (after.isObject()) {
+            List<JsonNode> afterKey = new ArrayList<>();
+            for (String name : names) afterKey.add(after.path(name));
+            keys.removeIf(k -> order.compare(k, afterKey) <= 0);
+        }
+        ObjectNode result = M.createObjectNode();
+        ArrayNode buckets = F.arrayNode();
+        ObjectNode lastKey = null;
+        for (List<JsonNode> key : keys.subList(0, Math.min(size, keys.size()))) {
+            ObjectNode bucket = buckets.addObject();
+            ObjectNode keyNode = bucket.putObject("key");
+            for (int i = 0; i < names.size(); i++) keyNode.set(names.get(i), key.get(i));
+            bucket.put("doc_count", groups.get(key).size());
+            if (subs.isObject()) bucket.setAll(evaluate(subs, groups.get(key), typedKeys));
+            lastKey = keyNode;
+        }
+        if (lastKey != null) result.set("after_key", lastKey.deepCopy());
+        result.set("buckets", buckets);
+        return result;
+    }
+
+    // ---------- metrics ----------
+
+    private ObjectNode metric(String type, String field, List<Scope> scopes) {
+        double sum = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        long count = 0;
+        for (Scope scope : scopes) {
+            for (JsonNode v : queries.values(field, scope)) {
+                count++;
+                if (type.equals("value_count")) continue;
+                double d = v.isNumber() ? v.asDouble() : Double.parseDouble(v.asText());
+                sum += d;
+                min = Math.min(min, d);
+                max = Math.max(max, d);
+            }
+        }
+        ObjectNode result = M.createObjectNode();
+        switch (type) {
+            case "value_count" -> result.put("value", count);
+            case "sum" -> result.put("value", sum);
+            case "avg" -> {
+                if (count == 0) result.putNull("value");
+                else result.put("value", sum / count);
+            }
+            case "min" -> {
+                if (count == 0) result.putNull("value");
+                else result.put("value", min);
+            }
+            default -> {
+                if (count == 0) result.putNull("value");
+                else result.put("value", max);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,921 @@
+package com.microservices.elasticsearch.dynamic.query.simulator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.microservices.elasticsearch.dynamic.query.simulator.QueryEvaluator.Scope;
+import com.microservices.elasticsearch.dynamic.query.simulator.SimulatedIndex.Doc;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process stand-in for an Elasticsearch 8 node, for tests that need the real client, real
+ * HTTP and real JSON but not a real cluster.
+ * <p>
+ * Serves _search (including point-in-time and search_after), _msearch, _count, _pit, _bulk,
+ * _mapping, _doc, index create/delete/exists and _cluster/health over an in-memory document set.
+ * Queries and aggregations are evaluated by {@link QueryEvaluator} and {@link AggregationEvaluator};
+ * scoring is constant, so unsorted hits come back in insertion order.
+ * <p>
+ * Faults are configured globally or per endpoint ("_search", "_msearch", "_count", "_pit",
+ * "_bulk", "_mapping", "_doc", "index"): a {@link Latency} distribution, a random error rate,
+ * a random stall rate (the request is held before being answered; set it above the client's
+ * socket timeout to produce timeouts) and a fixed number of upcoming failures. Every request
+ * is recorded for assertions.
+ * <pre>
+ * try (ElasticsearchSimulator es = ElasticsearchSimulator.start()) {
+ *     es.index("orders", "1", Map.of("status", "open"));
+ *     es.latency("_search", Latency.logNormal(20, 0.5));
+ *     ... point the client at es.url() ...
+ *     assertEquals(1, es.requests("_search").size());
+ * }
+ * </pre>
+ */
+public final class ElasticsearchSimulator implements AutoCloseable {
+
+    private static final ObjectMapper M = new ObjectMapper();
+    private static final String ALL = "*";
+    private static final int DEFAULT_TRACK_TOTAL_HITS = 10_000;
+
+    static {
+        // without TCP_NODELAY, header and body writes meet delayed ACKs and every response waits ~40ms
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+    // platform threads, so the CPU and allocation of serving each request can be measured
+    private final ExecutorService executor = Executors.newCachedThreadPool(
+            Thread.ofPlatform().name("es-simulator-", 0).daemon().factory());
+    private final AtomicLong cpuNanos = new AtomicLong();
+    private final AtomicLong allocatedBytes = new AtomicLong();
+    private final Random random;
+    private final ConcurrentSkipListMap<String, SimulatedIndex> indices = new ConcurrentSkipListMap<>();
+    private final Map<String, List<Doc>> pointsInTime = new ConcurrentHashMap<>();
+    private final Map<String, Faults> faults = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<RecordedRequest> recorded = new ConcurrentLinkedQueue<>();
+    private final QueryEvaluator queries = new QueryEvaluator(indices::get, Clock.systemUTC());
+    private final AggregationEvaluator aggregations = new AggregationEvaluator(queries);
+    // search responses by request until the next write; replaced, never cleared, so a search
+    // racing a write can only fill the discarded map
+    private volatile Map<String, ObjectNode> searchCache = new ConcurrentHashMap<>();
+
+    private ElasticsearchSimulator(long seed) throws IOException {
+        this.random = new Random(seed);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public static ElasticsearchSimulator start() {
+        return start(42L);
+    }
+
+    /**
+     * @param seed seeds latency and fault draws, so runs with the same request order repeat exactly
+     */
+    public static ElasticsearchSimulator start(long seed) {
+        try {
+            return new ElasticsearchSimulator(seed);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not start Elasticsearch simulator", e);
+        }
+    }
+
+    public String host() {
+        return server.getAddress().getHostString();
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    public String url() {
+        return "http://" + host() + ":" + port();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    // ---------- data ----------
+
+    public ElasticsearchSimulator createIndex(String name, String mappingJson) {
+        index(name).mapping(readTree(mappingJson));
+        return this;
+    }
+
+    /**
+     * Declares the parent/child join field of an index, for has_child / has_parent
+     */
+    public ElasticsearchSimulator joinField(String indexName, String field) {
+        index(indexName).joinField(field);
+        return this;
+    }
+
+    public ElasticsearchSimulator index(String indexName, String id, Object source) {
+        JsonNode node = source instanceof String json ? readTree(json) : M.valueToTree(source);
+        index(indexName).put(id, (ObjectNode) node);
+        return this;
+    }
+
+    /**
+     * Adds documents with ids "1", "2", ... continuing after the current document count
+     */
+    public ElasticsearchSimulator indexAll(String indexName, List<?> sources) {
+        SimulatedIndex index = index(indexName);
+        for (Object source : sources) index(indexName, String.valueOf(index.size() + 1), source);
+        return this;
+    }
+
+    public int documentCount(String indexName) {
+        SimulatedIndex index = indices.get(indexName);
+        return index == null ? 0 : index.size();
+    }
+
+    public ElasticsearchSimulator deleteAll() {
+        indices.clear();
+        pointsInTime.clear();
+        changed();
+        return this;
+    }
+
+    /**
+     * Fixes "now" in date math, for deterministic range queries
+     */
+    public ElasticsearchSimulator clock(Clock clock) {
+        queries.clock(clock);
+        changed();
+        return this;
+    }
+
+    /**
+     * The index {@code name}, created if missing, for a write
+     */
+    private SimulatedIndex index(String name) {
+        changed();
+        return indices.computeIfAbsent(name, SimulatedIndex::new);
+    }
+
+    private void changed() {
+        searchCache = new ConcurrentHashMap<>();
+    }
+
+    // ---------- faults ----------
+
+    public ElasticsearchSimulator latency(Latency latency) {
+        return latency(ALL, latency);
+    }
+
+    public ElasticsearchSimulator latency(String endpoint, Latency latency) {
+        faults(endpoint).latency = latency;
+        return this;
+    }
+
+    /**
+     * Answers {@code rate} of requests with an error of the given HTTP status
+     */
+    public ElasticsearchSimulator errorRate(double rate, int status) {
+        return errorRate(ALL, rate, status);
+    }
+
+    public ElasticsearchSimulator errorRate(String endpoint, double rate, int status) {
+        Faults f = faults(endpoint);
+        f.errorRate = rate;
+        f.errorStatus = status;
+        return this;
+    }
+
+    /**
+     * Holds {@code rate} of requests for {@code hangMillis} before answering them
+     */
+    public ElasticsearchSimulator timeoutRate(double rate, long hangMillis) {
+        return timeoutRate(ALL, rate, hangMillis);
+    }
+
+    public ElasticsearchSimulator timeoutRate(String endpoint, double rate, long hangMillis) {
+        Faults f = faults(endpoint);
+        f.timeoutRate = rate;
+        f.hangMillis = hangMillis;
+        return this;
+    }
+
+    /**
+     * Fails exactly the next {@code count} requests, then recovers
+     */
+    public ElasticsearchSimulator failNext(int count, int status) {
+        return failNext(ALL, count, status);
+    }
+
+    public ElasticsearchSimulator failNext(String endpoint, int count, int status) {
+        Faults f = faults(endpoint);
+        f.failNext.set(count);
+        f.failNextStatus = status;
+        return this;
+    }
+
+    public ElasticsearchSimulator resetFaults() {
+        faults.clear();
+        return this;
+    }
+
+    private Faults faults(String endpoint) {
+        return faults.computeIfAbsent(endpoint, e -> new Faults());
+    }
+
+    /**
+     * Fault settings of one endpoint (or "*"); unset values fall back to "*"
+     */
+    private static final class Faults {
+        volatile Latency latency;
+        volatile double errorRate = -1;
+        volatile int errorStatus;
+        volatile double timeoutRate = -1;
+        volatile long hangMillis;
+        final AtomicInteger failNext = new AtomicInteger();
+        volatile int failNextStatus;
+    }
+
+    // ---------- recording ----------
+
+    public List<RecordedRequest> requests() {
+        return List.copyOf(recorded);
+    }
+
+    public List<RecordedRequest> requests(String endpoint) {
+        return recorded.stream().filter(r -> r.endpoint().equals(endpoint)).toList();
+    }
+
+    public ElasticsearchSimulator clearRequests() {
+        recorded.clear();
+        return this;
+    }
+
+    /**
+     * CPU time spent serving requests so far, excluding injected delays; in-process load tests
+     * subtract it to report the cost of the code under test alone
+     */
+    public long cpuNanos() {
+        return cpuNanos.get();
+    }
+
+    /**
+     * Heap allocated while serving requests so far
+     */
+    public long allocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    // ---------- HTTP ----------
+
+    private record Response(int status, JsonNode body) {}
+
+    /**
+     * An Elasticsearch-style error: {"error":{"type":..,"reason":..},"status":..}
+     */
+    private static final class SimulatedError extends RuntimeException {
+        final int status;
+        final String type;
+
+        SimulatedError(int status, String type, String reason) {
+            super(reason);
+            this.status = status;
+            this.type = type;
+        }
+
+        JsonNode body() {
+            ObjectNode body = M.createObjectNode();
+            ObjectNode error = body.putObject("error");
+            error.putArray("root_cause").addObject().put("type", type).put("reason", getMessage());
+            error.put("type", type);
+            error.put("reason", getMessage());
+            body.put("status", status);
+            return body;
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long cpuStart = threads.getCurrentThreadCpuTime();
+        long allocStart = threads.getCurrentThreadAllocatedBytes();
+        try {
+            serve(exchange);
+        } finally {
+            cpuNanos.addAndGet(threads.getCurrentThreadCpuTime() - cpuStart);
+            allocatedBytes.addAndGet(threads.getCurrentThreadAllocatedBytes() - allocStart);
+        }
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        Response response;
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getRawPath();
+            Map<String, String> params = params(exchange.getRequestURI().getRawQuery());
+            String body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+            List<String> segments = Arrays.stream(path.split("/")).filter(s -> !s.isEmpty())
+                    .map(s -> URLDecoder.decode(s, StandardCharsets.UTF_8)).toList();
+            String endpoint = endpoint(segments);
+            recorded.add(new RecordedRequest(method, path, params, body, endpoint, start));
+            try {
+                injectFaults(endpoint);
+                response = route(method, segments, params, body);
+            } catch (SimulatedError e) {
+                response = new Response(e.status, e.body());
+            } catch (UnsupportedOperationException | IllegalArgumentException e) {
+                response = new Response(400, new SimulatedError(400, "parsing_exception", e.getMessage()).body());
+            } catch (RuntimeException e) {
+                // a simulator bug should read as a server error, not a dropped connection
+                response = new Response(500, new SimulatedError(500, "simulator_exception", String.valueOf(e)).body());
+            }
+            if (response.body() instanceof ObjectNode object && object.has("took")) {
+                object.put("took", (System.nanoTime() - start) / 1_000_000);
+            }
+            exchange.getResponseHeaders().add("X-Elastic-Product", "Elasticsearch");
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            if ("HEAD".equals(method) || response.body() == null) {
+                exchange.sendResponseHeaders(response.status(), -1);
+                return;
+            }
+            byte[] bytes = M.writeValueAsBytes(response.body());
+            exchange.sendResponseHeaders(response.status(), bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+
+    private void injectFaults(String endpoint) {
+        Faults specific = faults.get(endpoint);
+        Faults global = faults.get(ALL);
+        for (Faults f : new Faults[] {specific, global}) {
+            if (f == null) continue;
+            if (f.failNext.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                throw injected(f.failNextStatus);
+            }
+        }
+        Latency latency = specific != null && specific.latency != null ? specific.latency
+                : global != null ? global.latency : null;
+        Faults errors = specific != null && specific.errorRate >= 0 ? specific : global;
+        Faults stalls = specific != null && specific.timeoutRate >= 0 ? specific : global;
+        long delay;
+        boolean fail;
+        boolean stall;
+        synchronized (random) {
+            delay = latency == null ? 0 : latency.nextMillis(random);
+            fail = errors != null && errors.errorRate > 0 && random.nextDouble() < errors.errorRate;
+            stall = stalls != null && stalls.timeoutRate > 0 && random.nextDouble() < stalls.timeoutRate;
+        }
+        sleep(delay + (stall ? stalls.hangMillis : 0));
+        if (fail) throw injected(errors.errorStatus);
+    }
+
+    private static SimulatedError injected(int status) {
+        String type = switch (status) {
+            case 429 -> "es_rejected_execution_exception";
+            case 503 -> "cluster_block_exception";
+            case 504 -> "timeout_exception";
+            default -> "simulated_exception";
+        };
+        return new SimulatedError(status, type, "Injected failure");
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String endpoint(List<String> segments) {
+        if (segments.isEmpty()) return "info";
+        for (String segment : segments) {
+            if (segment.startsWith("_")) return segment;
+        }
+        return "index";
+    }
+
+    private Response route(String method, List<String> s, Map<String, String> params, String body) {
+        int n = s.size();
+        if (n == 0) return new Response(200, info());
+        String last = s.get(n - 1);
+        if (n >= 2 && s.get(0).equals("_cluster") && s.get(1).equals("health")) {
+            return ok(M.createObjectNode().put("cluster_name", "simulator").put("status", "green")
+                    .put("number_of_nodes", 1).put("number_of_data_nodes", 1));
+        }
+        String target = n >= 2 ? s.get(0) : null;
+        if (n >= 2 && s.get(1).equals("_doc")) return doc(method, s, params, body);
+        return switch (last) {
+            case "_search" -> ok(search(target, readTree(body), params));
+            case "_msearch" -> ok(multiSearch(target, body, params));
+            case "_count" -> ok(count(target, readTree(body), params));
+            case "_pit" -> "DELETE".equals(method) ? ok(closePit(readTree(body))) : ok(openPit(target));
+            case "_bulk" -> ok(bulk(target, body));
+            case "_mapping" -> mapping(method, target, readTree(body));
+            case "_refresh" -> ok(M.createObjectNode().set("_shards", shards()));
+            default -> {
+                if (last.startsWith("_")) throw new SimulatedError(400, "illegal_argument_exception",
+                        "Endpoint not simulated: " + method + " /" + String.join("/", s));
+                yield indexAdmin(method, last, readTree(body));
+            }
+        };
+    }
+
+    private static Response ok(JsonNode body) {
+        return new Response(200, body);
+    }
+
+    // ---------- search ----------
+
+    /**
+     * Identical searches between writes are answered from {@link #searchCache}, so a load test
+     * repeating a few queries measures the service rather than the simulator's linear scan
+     */
+    private ObjectNode search(String target, JsonNode body, Map<String, String> params) {
+        Map<String, ObjectNode> cache = searchCache;
+        String key = target + '\n' + params + '\n' + body;
+        ObjectNode cached = cache.get(key);
+        if (cached == null) {
+            cached = evaluateSearch(target, body, params);
+            if (cache.size() < 10_000) cache.put(key, cached);
+        }
+        return cached.deepCopy();
+    }
+
+    private ObjectNode evaluateSearch(String target, JsonNode body, Map<String, String> params) {
+        List<Doc> docs;
+        String pitId = body.path("pit").path("id").asText(null);
+        if (pitId != null) {
+            docs = pointsInTime.get(pitId);
+            if (docs == null) throw new SimulatedError(404, "search_context_missing_exception",
+                    "No search context found for id [" + pitId + "]");
+        } else {
+            docs = documents(target, params);
+        }
+        List<Scope> matched = new ArrayList<>();
+        for (Doc doc : docs) {
+            Scope scope = Scope.of(doc);
+            if (queries.matches(body.path("query"), scope)) matched.add(scope);
+        }
+        List<SortSpec> sort = sortSpecs(body.path("sort"));
+        List<Hit> hits = new ArrayList<>(matched.size());
+        for (Scope scope : matched) hits.add(new Hit(scope.doc(), sortValues(sort, scope)));
+        if (!sort.isEmpty()) hits.sort((a, b) -> compareSortValues(sort, a.sort(), b.sort()));
+        JsonNode after = body.path("search_after");
+        if (after.isArray() && !sort.isEmpty()) {
+            List<JsonNode> afterValues = new ArrayList<>();
+            after.forEach(afterValues::add);
+            hits.removeIf(hit -> compareSortValues(sort, hit.sort(), afterValues) <= 0);
+        }
+        int from = body.path("from").asInt(intParam(params, "from", 0));
+        int size = body.path("size").asInt(intParam(params, "size", 10));
+
+        ObjectNode response = M.createObjectNode();
+        response.put("took", 0);
+        response.put("timed_out", false);
+        response.set("_shards", shards());
+        ObjectNode hitsNode = response.putObject("hits");
+        JsonNode track = body.path("track_total_hits");
+        if (!(track.isBoolean() && !track.asBoolean())) {
+            long cap = track.isBoolean() ? Long.MAX_VALUE : track.isNumber() ? track.asLong() : DEFAULT_TRACK_TOTAL_HITS;
+            hitsNode.putObject("total").put("value", Math.min(hits.size(), cap))
+                    .put("relation", hits.size() > cap ? "gte" : "eq");
+        }
+        if (sort.isEmpty() && !hits.isEmpty()) hitsNode.put("max_score", 1.0);
+        else hitsNode.putNull("max_score");
+        ArrayNode page = hitsNode.putArray("hits");
+        for (Hit hit : hits.subList(Math.min(from, hits.size()), Math.min(from + size, hits.size()))) {
+            ObjectNode h = page.addObject();
+            h.put("_index", hit.doc().index());
+            h.put("_id", hit.doc().id());
+            if (sort.isEmpty()) h.put("_score", 1.0);
+            else h.putNull("_score");
+            JsonNode source = source(hit.doc().source(), body.path("_source"));
+            if (source != null) h.set("_source", source);
+            if (!sort.isEmpty()) {
+                ArrayNode values = h.putArray("sort");
+                hit.sort().forEach(values::add);
+            }
+        }
+        JsonNode aggs = body.has("aggs") ? body.get("aggs") : body.path("aggregations");
+        if (aggs.isObject() && !aggs.isEmpty()) {
+            response.set("aggregations", aggregations.evaluate(aggs, matched,
+                    Boolean.parseBoolean(params.getOrDefault("typed_keys", "false"))));
+        }
+        if (pitId != null) response.put("pit_id", pitId);
+        return response;
+    }
+
+    private ObjectNode multiSearch(String target, String body, Map<String, String> params) {
+        ObjectNode response = M.createObjectNode();
+        response.put("took", 0);
+        ArrayNode responses = response.putArray("responses");
+        List<String> lines = Arrays.stream(body.split("\n")).filter(l -> !l.isBlank()).toList();
+        if (lines.size() % 2 != 0) {
+            throw new SimulatedError(400, "illegal_argument_exception", "_msearch body must be header/body pairs");
+        }
+        for (int i = 0; i < lines.size(); i += 2) {
+            JsonNode header = readTree(lines.get(i));
+            JsonNode index = header.path("index");
+            String itemTarget = index.isArray() ? String.join(",", M.convertValue(index, String[].class))
+                    : index.isTextual() ? index.asText() : target;
+            Map<String, String> itemParams = new LinkedHashMap<>(params);
+            if (header.has("ignore_unavailable")) itemParams.put("ignore_unavailable", header.get("ignore_unavailable").asText());
+            try {
+                responses.add(search(itemTarget, readTree(lines.get(i + 1)), itemParams).put("status", 200));
+            } catch (SimulatedError e) {
+                responses.add(e.body());
+            } catch (UnsupportedOperationException | IllegalArgumentException e) {
+                responses.add(new SimulatedError(400, "parsing_exception", e.getMessage()).body());
+            }
+        }
+        return response;
+    }
+
+    private ObjectNode count(String target, JsonNode body, Map<String, String> params) {
+        long count = 0;
+        for (Doc doc : documents(target, params)) {
+            if (queries.matches(body.path("query"), Scope.of(doc))) count++;
+        }
+        ObjectNode response = M.createObjectNode().put("count", count);
+        response.set("_shards", shards());
+        return response;
+    }
+
+    private ObjectNode openPit(String target) {
+        String id = UUID.randomUUID().toString();
+        pointsInTime.put(id, documents(target, Map.of()));
+        return M.createObjectNode().put("id", id);
+    }
+
+    private ObjectNode closePit(JsonNode body) {
+        boolean freed = pointsInTime.remove(body.path("id").asText()) != null;
+        return M.createObjectNode().put("succeeded", true).put("num_freed", freed ? 1 : 0);
+    }
+
+    /**
+     * Documents of every index named by {@code target} ("a,b", wildcards, "_all" or null for all)
+     */
+    private List<Doc> documents(String target, Map<String, String> params) {
+        boolean ignoreUnavailable = Boolean.parseBoolean(params.getOrDefault("ignore_unavailable", "false"));
+        List<Doc> docs = new ArrayList<>();
+        if (target == null || target.equals("_all") || target.equals("*")) {
+            for (SimulatedIndex index : indices.values()) docs.addAll(index.snapshot());
+            return docs;
+        }
+        for (String name : target.split(",")) {
+            if (name.contains("*")) {
+                Pattern pattern = Pattern.compile(QueryEvaluator.globToRegex(name));
+                for (SimulatedIndex index : indices.values()) {
+                    if (pattern.matcher(index.name).matches()) docs.addAll(index.snapshot());
+                }
+                continue;
+            }
+            SimulatedIndex index = indices.get(name);
+            if (index == null) {
+                if (ignoreUnavailable) continue;
+                throw new SimulatedError(404, "index_not_found_exception", "no such index [" + name + "]");
+            }
+            docs.addAll(index.snapshot());
+        }
+        return docs;
+    }
+
+    // ---------- sorting ----------
+
+    private record SortSpec(String field, boolean desc, String mode, boolean missingFirst) {}
+
+    private record Hit(Doc doc, List<JsonNode> sort) {}
+
+    private static List<SortSpec> sortSpecs(JsonNode sort) {
+        List<SortSpec> specs = new ArrayList<>();
+        List<JsonNode> entries = new ArrayList<>();
+        if (sort.isArray()) sort.forEach(entries::add);
+        else if (!sort.isMissingNode() && !sort.isNull()) entries.add(sort);
+        for (JsonNode entry : entries) {
+            if (entry.isTextual()) {
+                specs.add(new SortSpec(entry.asText(), entry.asText().equals("_score"), null, false));
+                continue;
+            }
+            Iterator<Map.Entry<String, JsonNode>> fields = entry.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> f = fields.next();
+                JsonNode spec = f.getValue();
+                String defaultOrder = f.getKey().equals("_score") ? "desc" : "asc";
+                String order = spec.isTextual() ? spec.asText() : spec.path("order").asText(defaultOrder);
+                specs.add(new SortSpec(f.getKey(), "desc".equals(order), spec.path("mode").asText(null),
+                        "_first".equals(spec.path("missing").asText())));
+            }
+        }
+        return specs;
+    }
+
+    private List<JsonNode> sortValues(List<SortSpec> specs, Scope scope) {
+        List<JsonNode> values = new ArrayList<>(specs.size());
+        for (SortSpec spec : specs) {
+            switch (spec.field()) {
+                case "_score" -> values.add(M.getNodeFactory().numberNode(1.0));
+                case "_doc", "_shard_doc" -> values.add(M.getNodeFactory().numberNode(scope.doc().seq()));
+                default -> {
+                    List<JsonNode> candidates = queries.values(spec.field(), scope);
+                    boolean useMax = spec.mode() != null ? spec.mode().equals("max") : spec.desc();
+                    JsonNode chosen = candidates.stream()
+                            .reduce((a, b) -> (compareValues(a, b) >= 0) == useMax ? a : b).orElse(null);
+                    values.add(chosen == null ? M.nullNode() : chosen);
+                }
+            }
+        }
+        return values;
+    }
+
+    private static int compareSortValues(List<SortSpec> specs, List<JsonNode> a, List<JsonNode> b) {
+        for (int i = 0; i < specs.size() && i < a.size() && i < b.size(); i++) {
+            SortSpec spec = specs.get(i);
+            JsonNode x = a.get(i);
+            JsonNode y = b.get(i);
+            boolean xMissing = x == null || x.isNull();
+            boolean yMissing = y == null || y.isNull();
+            int c;
+            if (xMissing || yMissing) {
+                // missing values sort last (or first) regardless of direction
+                if (xMissing && yMissing) continue;
+                c = xMissing == spec.missingFirst() ? -1 : 1;
+            } else {
+                c = compareValues(x, y);
+                if (spec.desc()) c = -c;
+            }
+            if (c != 0) return c;
+        }
+        return 0;
+    }
+
+    private static int compareValues(JsonNode a, JsonNode b) {
+        if (a.isNumber() && b.isNumber()) return Double.compare(a.asDouble(), b.asDouble());
+        if (a.isBoolean() && b.isBoolean()) return Boolean.compare(a.asBoolean(), b.asBoolean());
+        return a.asText().compareTo(b.asText());
+    }
+
+    private static int intParam(Map<String, String> params, String name, int defaultValue) {
+        String value = params.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    // ---------- _source filtering ----------
+
+    private static JsonNode source(ObjectNode source, JsonNode spec) {
+        if (spec.isMissingNode() || spec.isNull()) return source;
+        if (spec.isBoolean()) return spec.asBoolean() ? source : null;
+        List<String> includes = new ArrayList<>();
+        List<String> excludes = new ArrayList<>();
+        if (spec.isTextual()) includes.add(spec.asText());
+        else if (spec.isArray()) spec.forEach(v -> includes.add(v.asText()));
+        else {
+            JsonNode in = spec.has("includes") ? spec.get("includes") : spec.path("include");
+            JsonNode ex = spec.has("excludes") ? spec.get("excludes") : spec.path("exclude");
+            (in.isArray() ? in : M.createArrayNode().add(in)).forEach(v -> { if (!v.isMissingNode()) includes.add(v.asText()); });
+            (ex.isArray() ? ex : M.createArrayNode().add(ex)).forEach(v -> { if (!v.isMissingNode()) excludes.add(v.asText()); });
+            includes.removeIf(String::isEmpty);
+            excludes.removeIf(String::isEmpty);
+        }
+        return filter(source, "", patterns(includes), patterns(excludes), includes.isEmpty());
+    }
+
+    private static List<Pattern> patterns(List<String> globs) {
+        return globs.stream().map(g -> Pattern.compile(QueryEvaluator.globToRegex(g))).toList();
+    }
+
+    private static ObjectNode filter(ObjectNode node, String prefix, List<Pattern> includes, List<Pattern> excludes,
+                                     boolean included) {
+        ObjectNode out = M.createObjectNode();
+        Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            String path = prefix + field.getKey();
+            if (matchesAny(excludes, path)) continue;
+            boolean in = included || matchesAny(includes, path);
+            JsonNode value = field.getValue();
+            if (value.isObject()) {
+                ObjectNode child = filter((ObjectNode) value, path + ".", includes, excludes, in);
+                if (in || !child.isEmpty()) out.set(field.getKey(), child);
+            } else if (value.isArray() && !value.isEmpty() && value.get(0).isObject()) {
+                ArrayNode array = M.createArrayNode();
+                for (JsonNode element : value) {
+                    ObjectNode child = filter((ObjectNode) element, path + ".", includes, excludes, in);
+                    if (in || !child.isEmpty()) array.add(child);
+                }
+                if (!array.isEmpty()) out.set(field.getKey(), array);
+            } else if (in) {
+                out.set(field.getKey(), value);
+            }
+        }
+        return out;
+    }
+
+    private static boolean matchesAny(List<Pattern> patterns, String path) {
+        for (Pattern p : patterns) if (p.matcher(path).matches()) return true;
+        return false;
+    }
+
+    // ---------- writes and admin ----------
+
+    private ObjectNode bulk(String target, String body) {
+        ObjectNode response = M.createObjectNode();
+        response.put("took", 0);
+        ArrayNode items = M.createArrayNode();
+        boolean errors = false;
+        Iterator<String> lines = Arrays.stream(body.split("\n")).filter(l -> !l.isBlank()).iterator();
+        while (lines.hasNext()) {
+            JsonNode action = readTree(lines.next());
+            String op = action.fieldNames().next();
+            JsonNode meta = action.get(op);
+            String indexName = meta.path("_index").asText(target);
+            String id = meta.path("_id").asText(null);
+            if (id == null) id = UUID.randomUUID().toString();
+            SimulatedIndex index = index(indexName);
+            ObjectNode item = M.createObjectNode().put("_index", indexName).put("_id", id).put("_version", 1);
+            switch (op) {
+                case "index", "create" -> {
+                    ObjectNode source = (ObjectNode) readTree(lines.next());
+                    boolean exists = index.get(id) != null;
+                    if ("create".equals(op) && exists) {
+                        errors = true;
+                        item.put("status", 409).set("error", M.createObjectNode()
+                                .put("type", "version_conflict_engine_exception")
+                                .put("reason", "[" + id + "]: document already exists"));
+                    } else {
+                        index.put(id, source);
+                        item.put("result", exists ? "updated" : "created").put("status", exists ? 200 : 201);
+                    }
+                }
+                case "update" -> {
+                    JsonNode update = readTree(lines.next());
+                    Doc existing = index.get(id);
+                    if (existing == null && !update.path("doc_as_upsert").asBoolean(false) && !update.has("upsert")) {
+                        errors = true;
+                        item.put("status", 404).set("error", M.createObjectNode()
+                                .put("type", "document_missing_exception").put("reason", "[" + id + "]: document missing"));
+                    } else {
+                        ObjectNode merged = existing != null ? existing.source().deepCopy()
+                                : update.has("upsert") ? (ObjectNode) update.get("upsert").deepCopy() : M.createObjectNode();
+                        if (existing != null || !update.has("upsert")) merged.setAll((ObjectNode) update.path("doc"));
+                        index.put(id, merged);
+                        item.put("result", existing != null ? "updated" : "created").put("status", existing != null ? 200 : 201);
+                    }
+                }
+                case "delete" -> {
+                    boolean deleted = index.delete(id);
+                    item.put("result", deleted ? "deleted" : "not_found").put("status", deleted ? 200 : 404);
+                }
+                default -> throw new SimulatedError(400, "illegal_argument_exception", "Unknown bulk action: " + op);
+            }
+            item.set("_shards", shards());
+            items.addObject().set(op, item);
+        }
+        response.put("errors", errors);
+        response.set("items", items);
+        return response;
+    }
+
+    private Response doc(String method, List<String> s, Map<String, String> params, String body) {
+        String indexName = s.get(0);
+        String id = s.size() > 2 ? s.get(2) : UUID.randomUUID().toString();
+        ObjectNode result = M.createObjectNode().put("_index", indexName).put("_id", id);
+        switch (method) {
+            case "GET", "HEAD" -> {
+                SimulatedIndex index = indices.get(indexName);
+                Doc doc = index == null ? null : index.get(id);
+                result.put("found", doc != null);
+                if (doc == null) return new Response(404, result);
+                result.put("_version", 1).set("_source", doc.source());
+                return ok(result);
+            }
+            case "DELETE" -> {
+                SimulatedIndex index = indices.get(indexName);
+                boolean deleted = index != null && index.delete(id);
+                changed();
+                return new Response(deleted ? 200 : 404, result.put("result", deleted ? "deleted" : "not_found"));
+            }
+            default -> {
+                boolean exists = index(indexName).get(id) != null;
+                index(indexName).put(id, (ObjectNode) readTree(body));
+                result.put("_version", 1).put("result", exists ? "updated" : "created");
+                return new Response(exists ? 200 : 201, result);
+            }
+        }
+    }
+
+    private Response mapping(String method, String target, JsonNode body) {
+        if ("PUT".equals(method) || "POST".equals(method)) {
+            index(target).mapping(body);
+            return ok(M.createObjectNode().put("acknowledged", true));
+        }
+        ObjectNode response = M.createObjectNode();
+        List<SimulatedIndex> selected = target == null ? List.copyOf(indices.values())
+                : Arrays.stream(target.split(",")).map(name -> {
+                    SimulatedIndex index = indices.get(name);
+                    if (index == null) throw new SimulatedError(404, "index_not_found_exception", "no such index [" + name + "]");
+                    return index;
+                }).toList();
+        for (SimulatedIndex index : selected) response.putObject(index.name).set("mappings", index.mapping());
+        return ok(response);
+    }
+
+    private Response indexAdmin(String method, String name, JsonNode body) {
+        switch (method) {
+            case "PUT" -> {
+                if (indices.containsKey(name)) throw new SimulatedError(400, "resource_already_exists_exception",
+                        "index [" + name + "] already exists");
+                index(name).mapping(body.path("mappings"));
+                return ok(M.createObjectNode().put("acknowledged", true).put("shards_acknowledged", true).put("index", name));
+            }
+            case "DELETE" -> {
+                changed();
+                if (indices.remove(name) == null) throw new SimulatedError(404, "index_not_found_exception",
+                        "no such index [" + name + "]");
+                return ok(M.createObjectNode().put("acknowledged", true));
+            }
+            case "HEAD" -> {
+                return new Response(indices.containsKey(name) ? 200 : 404, null);
+            }
+            default -> {
+                SimulatedIndex index = indices.get(name);
+                if (index == null) throw new SimulatedError(404, "index_not_found_exception", "no such index [" + name + "]");
+                ObjectNode response = M.createObjectNode();
+                response.putObject(name).set("mappings", index.mapping());
+                return ok(response);
+            }
+        }
+    }
+
+    private static ObjectNode shards() {
+        return M.createObjectNode().put("total", 1).put("successful", 1).put("skipped", 0).put("failed", 0);
+    }
+
+    private static ObjectNode info() {
+        ObjectNode info = M.createObjectNode().put("name", "simulator").put("cluster_name", "simulator")
+                .put("cluster_uuid", "simulator");
+        info.putObject("version").put("number", "8.11.0").put("build_flavor", "default").put("build_type", "docker")
+                .put("build_hash", "simulator").put("build_date", "2023-11-04T10:04:57.184859352Z")
+                .put("build_snapshot", false).put("lucene_version", "9.8.0")
+                .put("minimum_wire_compatibility_version", "7.17.0")
+                .put("minimum_index_compatibility_version", "7.0.0");
+        info.put("tagline", "You Know, for Search");
+        return info;
+    }
+
+    private static Map<String, String> params(String rawQuery) {
+        Map<String, String> params = new LinkedHashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) return params;
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "true" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            params.put(key, value);
+        }
+        return params;
+    }
+
+    private static JsonNode readTree(String json) {
+        if (json == null || json.isBlank()) return M.createObjectNode();
+        try {
+            return M.readTree(json);
+        } catch (IOException e) {
+            throw new SimulatedError(400, "x_content_parse_exception", "Malformed JSON: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.microservices.elasticsearch.dynamic.query.simulator;
+
+import java.util.Random;
+
+/**
+ * Delay added before the simulator answers a request. Draws come from the simulator's
+ * seeded random, so a given seed and request order always produce the same delays.
+ */
+@FunctionalInterface
+public interface Latency {
+
+    long nextMillis(Random random);
+
+    static Latency none() {
+        return random -> 0L;
+    }
+
+    static Latency fixed(long millis) {
+        return random -> millis;
+    }
+
+    static Latency uniform(long minMillis, long maxMillis) {
+        return random -> minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+    }
+
+    /**
+     * Log-normal around {@code medianMillis}; sigma 0.5 puts p99 near 3.2x the median,
+     * roughly the shape of a healthy search tier
+     */
+    static Latency logNormal(long medianMillis, double sigma) {
+        double mu = Math.log(Math.max(1, medianMillis));
+        return random -> Math.round(Math.exp(mu + sigma * random.nextGaussian()));
+    }
+
+    /**
+     * Mostly {@code base}, but {@code tailRate} of requests take {@code tail} instead
+     */
+    static Latency withTail(Latency base, double tailRate, Latency tail) {
+        return random -> random.nextDouble() < tailRate ? tail.nextMillis(random) : base.nextMillis(random);
+    }
+}
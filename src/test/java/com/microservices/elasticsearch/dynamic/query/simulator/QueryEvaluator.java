@@ -0,0 +1,442 @@
+package com.microservices.elasticsearch.dynamic.query.simulator;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.microservices.elasticsearch.dynamic.query.simulator.SimulatedIndex.Doc;
+
+/**
+ * Decides whether a document matches a query DSL body. Covers the queries this service
+ * emits (bool, term, terms, match, range, wildcard, prefix, exists, ids, nested, has_child,
+ * has_parent, constant_score, match_all/none) with simplified text handling: term compares
+ * exact values, match compares lower-cased word tokens, and a missing "x.keyword" sub-field
+ * falls back to "x".
+ */
+final class QueryEvaluator {
+
+    /**
+     * Where field paths resolve: the document root, or one object of a nested path
+     */
+    record Scope(Doc doc, String nestedPath, JsonNode nested) {
+        static Scope of(Doc doc) {
+            return new Scope(doc, null, null);
+        }
+    }
+
+    private static final Pattern DATE_MATH = Pattern.compile("([+-])(\\d+)([yMwdhHms])");
+
+    private final Function<String, SimulatedIndex> indices;
+    private volatile Clock clock;
+
+    QueryEvaluator(Function<String, SimulatedIndex> indices, Clock clock) {
+        this.indices = indices;
+        this.clock = clock;
+    }
+
+    /**
+     * Clock that "now" in date math resolves against
+     */
+    void clock(Clock clock) {
+        this.clock = clock;
+    }
+
+    boolean matches(JsonNode query, Scope scope) {
+        if (query == null || query.isNull() || query.isMissingNode() || query.isEmpty()) return true;
+        Map.Entry<String, JsonNode> clause = query.fields().next();
+        JsonNode body = clause.getValue();
+        return switch (clause.getKey()) {
+            case "match_all" -> true;
+            case "match_none" -> false;
+            case "bool" -> bool(body, scope);
+            case "constant_score" -> matches(body.path("filter"), scope);
+            case "term" -> term(body, scope);
+            case "terms" -> terms(body, scope);
+            case "match" -> match(body, scope);
+            case "range" -> range(body, scope);
+            case "wildcard" -> wildcard(body, scope);
+            case "prefix" -> prefix(body, scope);
+            case "exists" -> !values(body.path("field").asText(), scope).isEmpty();
+            case "ids" -> contains(body.path("values"), scope.doc().id());
+            case "nested" -> nested(body, scope);
+            case "has_child" -> hasChild(body, scope);
+            case "has_parent" -> hasParent(body, scope);
+            default -> throw new UnsupportedOperationException("Query type not simulated: " + clause.getKey());
+        };
+    }
+
+    // ---------- compound ----------
+
+    private boolean bool(JsonNode bool, Scope scope) {
+        for (JsonNode q : clauses(bool.path("must"))) if (!matches(q, scope)) return false;
+        for (JsonNode q : clauses(bool.path("filter"))) if (!matches(q, scope)) return false;
+        for (JsonNode q : clauses(bool.path("must_not"))) if (matches(q, scope)) return false;
+        List<JsonNode> should = clauses(bool.path("should"));
+        if (should.isEmpty()) return true;
+        boolean onlyShould = clauses(bool.path("must")).isEmpty() && clauses(bool.path("filter")).isEmpty();
+        int required = minimumShouldMatch(bool.path("minimum_should_match"), should.size(), onlyShould ? 1 : 0);
+        int matched = 0;
+        for (JsonNode q : should) if (matches(q, scope)) matched++;
+        return matched >= required;
+    }
+
+    private static List<JsonNode> clauses(JsonNode node) {
+        List<JsonNode> out = new ArrayList<>();
+        if (node.isArray()) node.forEach(out::add);
+        else if (node.isObject()) out.add(node);
+        return out;
+    }
+
+    private static int minimumShouldMatch(JsonNode spec, int clauses, int defaultValue) {
+        if (spec.isMissingNode() || spec.isNull()) return defaultValue;
+        String text = spec.asText().trim();
+        if (text.endsWith("%")) {
+            int pct = Integer.parseInt(text.substring(0, text.length() - 1));
+            int n = (int) Math.floor(clauses * Math.abs(pct) / 100.0);
+            return pct < 0 ? clauses - n : n;
+        }
+        int n = Integer.parseInt(text);
+        return n < 0 ? clauses + n : n;
+    }
+
+    private boolean nested(JsonNode nested, Scope scope) {
+        String path = nested.path("path").asText();
+        List<JsonNode> objects = new ArrayList<>();
+        if (scope.nestedPath() != null && path.startsWith(scope.nestedPath() + ".")) {
+            collect(scope.nested(), path.substring(scope.nestedPath().length() + 1), objects);
+        } else {
+            collect(scope.doc().source(), path, objects);
+        }
+        for (JsonNode object : objects) {
+            if (object.isObject() && matches(nested.path("query"), new Scope(scope.doc(), path, object))) return true;
+        }
+        return false;
+    }
+
+    private boolean hasChild(JsonNode hasChild, Scope scope) {
+        SimulatedIndex index = indices.apply(scope.doc().index());
+        String join = index == null ? null : index.joinField();
+        if (join == null) return false;
+        String type = hasChild.path("type").asText();
+        for (Doc child : index.snapshot()) {
+            JsonNode relation = child.source().path(join);
+            if (type.equals(relation.path("name").asText()) && scope.doc().id().equals(relation.path("parent").asText())
+                    && matches(hasChild.path("query"), Scope.of(child))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasParent(JsonNode hasParent, Scope scope) {
+        SimulatedIndex index = indices.apply(scope.doc().index());
+        String join = index == null ? null : index.joinField();
+        if (join == null) return false;
+        JsonNode relation = scope.doc().source().path(join);
+        Doc parent = relation.has("parent") ? index.get(relation.path("parent").asText()) : null;
+        if (parent == null) return false;
+        String parentType = hasParent.path("parent_type").asText();
+        JsonNode parentRelation = parent.source().path(join);
+        String parentName = parentRelation.isTextual() ? parentRelation.asText() : parentRelation.path("name").asText();
+        return parentType.equals(parentName) && matches(hasParent.path("query"), Scope.of(parent));
+    }
+
+    // ---------- leaf queries ----------
+
+    private boolean term(JsonNode term, Scope scope) {
+        Map.Entry<String, JsonNode> field = fieldClause(term);
+        JsonNode expected = field.getValue().isObject() ? field.getValue().path("value") : field.getValue();
+        boolean caseInsensitive = field.getValue().path("case_insensitive").asBoolean(false);
+        for (JsonNode actual : values(field.getKey(), scope)) {
+            if (equal(actual, expected, caseInsensitive)) return true;
+        }
+        return false;
+    }
+
+    private boolean terms(JsonNode terms, Scope scope) {
+        Map.Entry<String, JsonNode> field = fieldClause(terms);
+        for (JsonNode actual : values(field.getKey(), scope)) {
+            for (JsonNode expected : field.getValue()) {
+                if (equal(actual, expected, false)) return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean match(JsonNode match, Scope scope) {
+        Map.Entry<String, JsonNode> field = fieldClause(match);
+        JsonNode spec = field.getValue();
+        JsonNode query = spec.isObject() ? spec.path("query") : spec;
+        boolean and = "and".equalsIgnoreCase(spec.path("operator").asText("or"));
+        List<String> wanted = tokens(query.asText());
+        if (wanted.isEmpty()) return false;
+        List<String> present = new ArrayList<>();
+        for (JsonNode actual : values(field.getKey(), scope)) present.addAll(tokens(actual.asText()));
+        int hits = 0;
+        for (String token : wanted) if (present.contains(token)) hits++;
+        return and ? hits == wanted.size() : hits > 0;
+    }
+
+    private boolean range(JsonNode range, Scope scope) {
+        Map.Entry<String, JsonNode> field = fieldClause(range);
+        JsonNode bounds = field.getValue();
+        for (JsonNode actual : values(field.getKey(), scope)) {
+            if (within(actual, bounds)) return true;
+        }
+        return false;
+    }
+
+    private boolean within(JsonNode actual, JsonNode bounds) {
+        for (String op : List.of("gt", "gte", "lt", "lte")) {
+            JsonNode bound = bounds.get(op);
+            if (bound == null || bound.isNull()) continue;
+            Integer cmp = compare(actual, bound, op.startsWith("lt"));
+            if (cmp == null) return false;
+            boolean ok = switch (op) {
+                case "gt" -> cmp > 0;
+                case "gte" -> cmp >= 0;
+                case "lt" -> cmp < 0;
+                default -> cmp <= 0;
+            };
+            if (!ok) return false;
+        }
+        return true;
+    }
+
+    private boolean wildcard(JsonNode wildcard, Scope scope) {
+        Map.Entry<String, JsonNode> field = fieldClause(wildcard);
+        JsonNode spec = field.getValue();
+        String pattern = spec.isObject() ? spec.path(spec.has("value") ? "value" : "wildcard").asText() : spec.asText();
+        boolean caseInsensitive = spec.path("case_insensitive").asBoolean(false);
+        Pattern regex = Pattern.compile(globToRegex(pattern), caseInsensitive ? Pattern.CASE_INSENSITIVE : 0);
+        for (JsonNode actual : values(field.getKey(), scope)) {
+            if (regex.matcher(actual.asText()).matches()) return true;
+        }
+        return false;
+    }
+
+    private boolean prefix(JsonNode prefix, Scope scope) {
+        Map.Entry<String, JsonNode> field = fieldClause(prefix);
+        String value = field.getValue().isObject() ? field.getValue().path("value").asText() : field.getValue().asText();
+        for (JsonNode actual : values(field.getKey(), scope)) {
+            if (actual.asText().startsWith(value)) return true;
+        }
+        return false;
+    }
+
+    private static Map.Entry<String, JsonNode> fieldClause(JsonNode clause) {
+        Iterator<Map.Entry<String, JsonNode>> it = clause.fields();
+        while (it.hasNext()) {
+            Map.Entry<String, JsonNode> e = it.next();
+            if (!e.getKey().equals("boost") && !e.getKey().equals("_name")) return e;
+        }
+        throw new IllegalArgumentException("Query clause without a field: " + clause);
+    }
+
+    // ---------- field access ----------
+
+    /**
+     * Every leaf value at {@code field} (arrays flattened, nulls dropped)
+     */
+    List<JsonNode> values(String field, Scope scope) {
+        List<JsonNode> out = new ArrayList<>();
+        if (scope.nestedPath() != null && field.startsWith(scope.nestedPath() + ".")) {
+            collect(scope.nested(), field.substring(scope.nestedPath().length() + 1), out);
+        } else {
+            collect(scope.doc().source(), field, out);
+        }
+        if (out.isEmpty() && field.endsWith(".keyword")) {
+            return values(field.substring(0, field.length() - ".keyword".length()), scope);
+        }
+        out.removeIf(v -> v.isNull() || v.isObject());
+        return out;
+    }
+
+    static void collect(JsonNode node, String path, List<JsonNode> out) {
+        if (node == null || node.isMissingNode() || node.isNull()) return;
+        if (node.isArray()) {
+            for (JsonNode element : node) collect(element, path, out);
+            return;
+        }
+        if (path.isEmpty()) {
+            out.add(node);
+            return;
+        }
+        if (!node.isObject()) return;
+        // documents may hold dotted keys ("a.b": 1) as well as objects
+        if (node.has(path)) {
+            collect(node.get(path), "", out);
+            return;
+        }
+        int dot = path.indexOf('.');
+        while (dot > 0) {
+            JsonNode child = node.get(path.substring(0, dot));
+            if (child != null) {
+                collect(child, path.substring(dot + 1), out);
+                return;
+            }
+            dot = path.indexOf('.', dot + 1);
+        }
+    }
+
+    // ---------- comparisons ----------
+
+    private static boolean contains(JsonNode array, String value) {
+        for (JsonNode v : array) if (v.asText().equals(value)) return true;
+        return false;
+    }
+
+    private boolean equal(JsonNode actual, JsonNode expected, boolean caseInsensitive) {
+        if (actual.isNumber() && (expected.isNumber() || isNumeric(expected.asText()))) {
+            return Double.compare(actual.asDouble(), expected.isNumber() ? expected.asDouble()
+                    : Double.parseDouble(expected.asText())) == 0;
+        }
+        if (actual.isBoolean()) return actual.asBoolean() == Boolean.parseBoolean(expected.asText());
+        return caseInsensitive ? actual.asText().equalsIgnoreCase(expected.asText())
+                : actual.asText().equals(expected.asText());
+    }
+
+    /**
+     * Numbers compare numerically, dates (including date math) as instants, anything else as text
+     *
+     * @param upper the bound is an upper bound (rounding in date math rounds up)
+     */
+    Integer compare(JsonNode actual, JsonNode bound, boolean upper) {
+        if (actual.isNumber() && (bound.isNumber() || isNumeric(bound.asText()))) {
+            return Double.compare(actual.asDouble(), bound.isNumber() ? bound.asDouble() : Double.parseDouble(bound.asText()));
+        }
+        Instant boundInstant = instant(bound.asText(), upper);
+        Instant actualInstant = boundInstant == null ? null : instant(actual.asText(), false);
+        if (boundInstant != null && actualInstant != null) return actualInstant.compareTo(boundInstant);
+        return actual.asText().compareTo(bound.asText());
+    }
+
+    private static boolean isNumeric(String text) {
+        if (text == null || text.isBlank()) return false;
+        try {
+            Double.parseDouble(text);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * ISO dates/date-times and date math ("now-7d/d", "2024-01-01||+1M"), UTC
+     */
+    Instant instant(String text, boolean roundUp) {
+        if (text == null || text.isBlank()) return null;
+        String anchor;
+        String math;
+        if (text.startsWith("now")) {
+            anchor = null;
+            math = text.substring(3);
+        } else if (text.contains("||")) {
+            anchor = text.substring(0, text.indexOf("||"));
+            math = text.substring(text.indexOf("||") + 2);
+        } else {
+            anchor = text;
+            math = "";
+        }
+        ZonedDateTime time;
+        if (anchor == null) {
+            time = ZonedDateTime.ofInstant(clock.instant(), ZoneOffset.UTC);
+        } else {
+            Instant parsed = parseDate(anchor);
+            if (parsed == null) return null;
+            time = ZonedDateTime.ofInstant(parsed, ZoneOffset.UTC);
+        }
+        String rounding = null;
+        int slash = math.indexOf('/');
+        if (slash >= 0) {
+            rounding = math.substring(slash + 1);
+            math = math.substring(0, slash);
+        }
+        Matcher m = DATE_MATH.matcher(math);
+        int consumed = 0;
+        while (m.find()) {
+            if (m.start() != consumed) return null;
+            long amount = Long.parseLong(m.group(2)) * ("-".equals(m.group(1)) ? -1 : 1);
+            time = time.plus(amount, unit(m.group(3)));
+            consumed = m.end();
+        }
+        if (consumed != math.length()) return null;
+        if (rounding != null && !rounding.isEmpty()) {
+            time = round(time, rounding);
+            if (roundUp) time = time.plus(1, unit(rounding)).minus(1, ChronoUnit.MILLIS);
+        }
+        return time.toInstant();
+    }
+
+    private static Instant parseDate(String text) {
+        try {
+            if (text.matches("-?\\d{10,}")) return Instant.ofEpochMilli(Long.parseLong(text));
+            if (text.length() == 10) return LocalDate.parse(text).atStartOfDay(ZoneOffset.UTC).toInstant();
+            if (text.endsWith("Z") || text.matches(".*[+-]\\d{2}:\\d{2}$")) return OffsetDateTime.parse(text).toInstant();
+            return LocalDateTime.parse(text).toInstant(ZoneOffset.UTC);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static ChronoUnit unit(String unit) {
+        return switch (unit) {
+            case "y" -> ChronoUnit.YEARS;
+            case "M" -> ChronoUnit.MONTHS;
+            case "w" -> ChronoUnit.WEEKS;
+            case "d" -> ChronoUnit.DAYS;
+            case "h", "H" -> ChronoUnit.HOURS;
+            case "m" -> ChronoUnit.MINUTES;
+            default -> ChronoUnit.SECONDS;
+        };
+    }
+
+    private static ZonedDateTime round(ZonedDateTime time, String unit) {
+        return switch (unit) {
+            case "y" -> time.truncatedTo(ChronoUnit.DAYS).withDayOfYear(1);
+            case "M" -> time.truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1);
+            case "w" -> time.truncatedTo(ChronoUnit.DAYS).minusDays(time.getDayOfWeek().getValue() - 1L);
+            default -> time.truncatedTo(unit(unit));
+        };
+    }
+
+    static List<String> tokens(String text) {
+        List<String> out = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean word = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (word && start < 0) start = i;
+            if (!word && start >= 0) {
+                out.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return out;
+    }
+
+    static String globToRegex(String glob) {
+        StringBuilder sb = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            switch (c) {
+                case '*' -> sb.append(".*");
+                case '?' -> sb.append('.');
+                default -> sb.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return sb.toString();
+    }
+}
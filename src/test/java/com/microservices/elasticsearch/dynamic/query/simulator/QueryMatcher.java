@@ -0,0 +1,41 @@
+package com.microservices.elasticsearch.dynamic.query.simulator;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.microservices.elasticsearch.dynamic.query.simulator.QueryEvaluator.Scope;
+import com.microservices.elasticsearch.dynamic.query.simulator.SimulatedIndex.Doc;
+
+/**
+ * One in-memory index and the simulator's query evaluation, without the HTTP server, for tests
+ * that only need to know which documents a query body matches.
+ */
+public final class QueryMatcher {
+
+    private final SimulatedIndex index;
+    private final QueryEvaluator evaluator;
+
+    public QueryMatcher(String indexName) {
+        this.index = new SimulatedIndex(indexName);
+        this.evaluator = new QueryEvaluator(name -> index, Clock.systemUTC());
+    }
+
+    public QueryMatcher put(String id, ObjectNode source) {
+        index.put(id, source);
+        return this;
+    }
+
+    /**
+     * Ids of the documents {@code query} matches, in insertion order
+     */
+    public List<String> matching(JsonNode query) {
+        List<String> ids = new ArrayList<>();
+        for (Doc doc : index.snapshot()) {
+            if (evaluator.matches(query, Scope.of(doc))) ids.add(doc.id());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,45 @@
+package com.microservices.elasticsearch.dynamic.query.simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * One request as the simulator received it.
+ *
+ * @param endpoint API the request was routed to: _search, _msearch, _count, _pit, _bulk,
+ *                 _mapping, _doc, index or info
+ */
+public record RecordedRequest(String method, String path, Map<String, String> params, String body,
+                              String endpoint, long receivedAtNanos) {
+
+    private static final ObjectMapper M = new ObjectMapper();
+
+    public JsonNode json() {
+        try {
+            return body == null || body.isBlank() ? M.nullNode() : M.readTree(body);
+        } catch (Exception e) {
+            throw new IllegalStateException("Body is not a single JSON document: " + path, e);
+        }
+    }
+
+    /**
+     * Body lines of an NDJSON request (_msearch, _bulk)
+     */
+    public List<JsonNode> ndjson() {
+        List<JsonNode> lines = new ArrayList<>();
+        if (body == null) return lines;
+        for (String line : body.split("\n")) {
+            if (line.isBlank()) continue;
+            try {
+                lines.add(M.readTree(line));
+            } catch (Exception e) {
+                throw new IllegalStateException("Invalid NDJSON line in " + path, e);
+            }
+        }
+        return lines;
+    }
+}
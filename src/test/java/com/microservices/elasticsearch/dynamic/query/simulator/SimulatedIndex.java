@@ -0,0 +1,116 @@
+package com.microservices.elasticsearch.dynamic.query.simulator;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * In-memory index: documents in insertion order plus an optional explicit mapping
+ * and parent/child join field.
+ */
+final class SimulatedIndex {
+
+    /**
+     * A stored document; {@code seq} is its insertion order and doubles as _shard_doc
+     */
+    record Doc(String index, String id, long seq, ObjectNode source) {}
+
+    private static final ObjectMapper M = new ObjectMapper();
+
+    final String name;
+    private final LinkedHashMap<String, Doc> docs = new LinkedHashMap<>();
+    private ObjectNode mapping;
+    private String joinField;
+    private long nextSeq;
+
+    SimulatedIndex(String name) {
+        this.name = name;
+    }
+
+    synchronized Doc put(String id, ObjectNode source) {
+        Doc existing = docs.get(id);
+        Doc doc = new Doc(name, id, existing != null ? existing.seq() : nextSeq++, source);
+        docs.put(id, doc);
+        return doc;
+    }
+
+    synchronized Doc get(String id) {
+        return docs.get(id);
+    }
+
+    synchronized boolean delete(String id) {
+        return docs.remove(id) != null;
+    }
+
+    synchronized List<Doc> snapshot() {
+        return new ArrayList<>(docs.values());
+    }
+
+    synchronized int size() {
+        return docs.size();
+    }
+
+    synchronized void mapping(JsonNode mappings) {
+        if (mappings == null || !mappings.isObject()) return;
+        if (mapping == null) mapping = M.createObjectNode();
+        JsonNode properties = mappings.path("properties");
+        if (properties.isObject()) {
+            ObjectNode target = mapping.has("properties") ? (ObjectNode) mapping.get("properties")
+                    : mapping.putObject("properties");
+            target.setAll((ObjectNode) properties);
+            properties.fields().forEachRemaining(e -> {
+                if ("join".equals(e.getValue().path("type").asText())) joinField = e.getKey();
+            });
+        }
+    }
+
+    synchronized void joinField(String field) {
+        this.joinField = field;
+    }
+
+    synchronized String joinField() {
+        return joinField;
+    }
+
+    /**
+     * The explicit mapping, or one inferred from the stored documents
+     */
+    synchronized ObjectNode mapping() {
+        if (mapping != null) return mapping.deepCopy();
+        ObjectNode inferred = M.createObjectNode();
+        ObjectNode properties = inferred.putObject("properties");
+        for (Doc doc : docs.values()) infer(properties, doc.source());
+        return inferred;
+    }
+
+    private static void infer(ObjectNode properties, JsonNode source) {
+        Iterator<Map.Entry<String, JsonNode>> fields = source.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if (properties.has(field.getKey())) continue;
+            JsonNode value = field.getValue();
+            JsonNode sample = value.isArray() && !value.isEmpty() ? value.get(0) : value;
+            ObjectNode def = M.createObjectNode();
+            if (sample.isObject()) {
+                def.put("type", value.isArray() ? "nested" : "object");
+                infer(def.putObject("properties"), sample);
+            } else if (sample.isIntegralNumber()) {
+                def.put("type", "long");
+            } else if (sample.isNumber()) {
+                def.put("type", "double");
+            } else if (sample.isBoolean()) {
+                def.put("type", "boolean");
+            } else {
+                def.put("type", "text");
+                def.putObject("fields").putObject("keyword").put("type", "keyword");
+            }
+            properties.set(field.getKey(), def);
+        }
+    }
+}
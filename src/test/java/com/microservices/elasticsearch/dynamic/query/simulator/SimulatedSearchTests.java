@@ -0,0 +1,281 @@
+package com.microservices.elasticsearch.dynamic.query.simulator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.microservices.elasticsearch.dynamic.query.service.HitCountCache;
+
+/**
+ * End-to-end through the real controllers, services and Elasticsearch client against
+ * {@link ElasticsearchSimulator}.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class SimulatedSearchTests {
+
+    private static final ElasticsearchSimulator ES = ElasticsearchSimulator.start();
+    private static final String INDEX = "orders";
+
+    @Autowired
+    private WebTestClient web;
+
+    @Autowired
+    private HitCountCache hitCountCache;
+
+    @DynamicPropertySource
+    static void elasticsearch(DynamicPropertyRegistry registry) {
+        registry.add("app.elasticsearch.host", ES::host);
+        registry.add("app.elasticsearch.port", ES::port);
+        registry.add("spring.elasticsearch.uris", ES::url);
+        registry.add("app.elasticsearch.query-shaping.endpoints", () -> "aggregation");
+    }
+
+    @AfterAll
+    static void stop() {
+        ES.close();
+    }
+
+    @BeforeEach
+    void reset() {
+        ES.deleteAll().resetFaults().clearRequests();
+        hitCountCache.clear();
+        List<Map<String, Object>> orders = new ArrayList<>();
+        for (int i = 1; i <= 25; i++) {
+            orders.add(Map.of("order_no", i, "status", i % 5 == 0 ? "closed" : "open", "region", "r" + (i % 3)));
+        }
+        ES.indexAll(INDEX, orders);
+    }
+
+    @Test
+    void searchReturnsMatchingDocuments() {
+        Map<String, Object> result = post("/api/elasticsearch/search/" + INDEX,
+                request("status", "==", "closed", 10));
+
+        assertThat(((Number) result.get("totalHits")).longValue()).isEqualTo(5);
+        assertThat((List<?>) result.get("results")).hasSize(5);
+        JsonNode sent = ES.requests("_search").get(0).json();
+        assertThat(sent.path("query").toString()).contains("closed");
+    }
+
+    @Test
+    void batchSearchGoesOutAsOneMultiSearchWithPerItemErrors() {
+        List<Map<String, Object>> batch = List.of(
+                Map.of("indexName", INDEX, "queryRequest", request("region", "==", "r1", 10)),
+                Map.of("indexName", "missing", "queryRequest", request("region", "==", "r2", 10)));
+
+        List<Map<String, Object>> results = web.post().uri("/api/elasticsearch/batch-search")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(batch)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(new ParameterizedTypeReference<Map<String, Object>>() {})
+                .returnResult().getResponseBody();
+
+        assertThat(ES.requests("_msearch")).hasSize(1);
+        assertThat(ES.requests("_search")).isEmpty();
+        assertThat(results).hasSize(2);
+        assertThat((List<?>) results.get(0).get("results")).hasSize(9);
+        assertThat((String) results.get(1).get("error")).contains("no such index [missing]");
+    }
+
+    @Test
+    void streamPagesThroughPointInTime() {
+        List<Map<String, Object>> streamed = web.post().uri("/api/elasticsearch/search-stream/" + INDEX)
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_NDJSON)
+                .bodyValue(request("status", "==", "open", 10))
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(new ParameterizedTypeReference<Map<String, Object>>() {})
+                .getResponseBody()
+                .collectList()
+                .block();
+
+        assertThat(streamed).hasSize(20);
+        assertThat(streamed).extracting(doc -> doc.get("order_no")).doesNotHaveDuplicates();
+        List<RecordedRequest> pit = ES.requests("_pit");
+        assertThat(pit).extracting(RecordedRequest::method).containsExactly("POST", "DELETE");
+        assertThat(ES.requests("_search")).allSatisfy(r -> assertThat(r.json().has("pit")).isTrue());
+    }
+
+    @Test
+    void injectedFailureSurfacesAsServerError() {
+        ES.failNext("_search", 1, 503);
+
+        web.post().uri("/api/elasticsearch/search/" + INDEX)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(request("status", "==", "open", 5))
+                .exchange()
+                .expectStatus().is5xxServerError();
+
+        Map<String, Object> retried = post("/api/elasticsearch/search/" + INDEX, request("status", "==", "open", 5));
+        assertThat((List<?>) retried.get("results")).hasSize(5);
+    }
+
+    @Test
+    void aggregationBucketsComeFromTheSimulator() {
+        Map<String, Object> body = request("status", "==", "open", 0);
+        body.put("queryAggregations", Map.of("aggregations", List.of(
+                Map.of("name", "by_region", "type", "terms", "field", "region"))));
+
+        Map<String, Object> result = post("/api/elasticsearch/aggregation/" + INDEX, body);
+
+        assertThat(result.toString()).contains("by_region", "r1", "r2", "r0");
+    }
+
+    @Test
+    void shapedAggregationAsksForTheRequestCacheWithClientPreference() {
+        Map<String, Object> body = request("order_no", ">", 10, 0);
+        body.put("queryAggregations", Map.of("aggregations", List.of(
+                Map.of("name", "by_status", "type", "terms", "field", "status"))));
+
+        Map<String, Object> result = web.post().uri("/api/elasticsearch/aggregation/" + INDEX)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header("X-Client-Id", "client-7")
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(new ParameterizedTypeReference<Map<String, Object>>() {})
+                .returnResult().getResponseBody();
+
+        assertThat(((Number) result.get("total_hits")).longValue()).isEqualTo(15);
+        RecordedRequest sent = ES.requests("_search").get(0);
+        assertThat(sent.params()).containsEntry("request_cache", "true").containsEntry("preference", "client-7");
+        assertThat(sent.json().path("query").path("bool").has("filter")).isTrue();
+    }
+
+    @Test
+    void boundedAndUncountedSearchesProbeOneHitPastThePageForHasMore() {
+        Map<String, Object> bounded = post("/api/elasticsearch/search/" + INDEX,
+                request("status", "==", "open", 0, 10, Map.of("mode", "bounded", "threshold", 5)));
+
+        assertThat((List<?>) bounded.get("results")).hasSize(10);
+        assertThat(((Number) bounded.get("totalHits")).longValue()).isEqualTo(5);
+        assertThat(bounded).containsEntry("totalHitsRelation", "gte").containsEntry("hasMore", true);
+        JsonNode sent = ES.requests("_search").get(0).json();
+        assertThat(sent.path("track_total_hits").asInt()).isEqualTo(5);
+        assertThat(sent.path("size").asInt()).isEqualTo(11);
+
+        Map<String, Object> lastPage = post("/api/elasticsearch/search/" + INDEX,
+                request("status", "==", "open", 10, 10, Map.of("mode", "none")));
+
+        assertThat((List<?>) lastPage.get("results")).hasSize(10);
+        assertThat(lastPage).doesNotContainKey("totalHits").containsEntry("hasMore", false);
+        assertThat(ES.requests("_search").get(1).json().path("track_total_hits").asBoolean(true)).isFalse();
+    }
+
+    @Test
+    void cachedCountingSwapsInTheExactCountOnceItIsBack() throws InterruptedException {
+        Map<String, Object> body = request("status", "==", "open", 0, 5, Map.of("mode", "cached", "threshold", 3));
+
+        Map<String, Object> first = post("/api/elasticsearch/search/" + INDEX, body);
+        assertThat((List<?>) first.get("results")).hasSize(5);
+        assertThat(first).containsEntry("hasMore", true);
+
+        Map<String, Object> counted = first;
+        for (int i = 0; i < 50 && !"eq".equals(counted.get("totalHitsRelation")); i++) {
+            Thread.sleep(100);
+            counted = post("/api/elasticsearch/search/" + INDEX, body);
+        }
+        assertThat(((Number) counted.get("totalHits")).longValue()).isEqualTo(20);
+        assertThat(counted).containsEntry("totalHitsRelation", "eq");
+        assertThat(ES.requests("_count")).hasSize(1);
+        assertThat(ES.requests("_search")).allSatisfy(r -> assertThat(r.json().path("track_total_hits").asInt()).isEqualTo(3));
+    }
+
+    @Test
+    void batchItemsResolveHitCountingLikeSingleSearches() throws InterruptedException {
+        List<Map<String, Object>> batch = List.of(
+                Map.of("indexName", INDEX, "queryRequest",
+                        request("status", "==", "open", 0, 5, Map.of("mode", "bounded"))),
+                Map.of("indexName", INDEX, "queryRequest",
+                        request("status", "==", "open", 0, 5, Map.of("mode", "cached", "threshold", 3))));
+
+        List<Map<String, Object>> results = batch(batch);
+
+        // bounded without a threshold takes the configured one instead of failing
+        assertThat(results.get(0)).doesNotContainKey("error").containsEntry("hasMore", true);
+        assertThat((List<?>) results.get(0).get("results")).hasSize(5);
+        assertThat(((Number) results.get(0).get("totalHits")).longValue()).isEqualTo(20);
+
+        Map<String, Object> cached = results.get(1);
+        for (int i = 0; i < 50 && !"eq".equals(cached.get("totalHitsRelation")); i++) {
+            Thread.sleep(100);
+            cached = batch(batch).get(1);
+        }
+        assertThat(((Number) cached.get("totalHits")).longValue()).isEqualTo(20);
+        assertThat(cached).containsEntry("totalHitsRelation", "eq");
+        assertThat(ES.requests("_count")).hasSize(1);
+    }
+
+    @Test
+    void rawQueriesKeepTheirTrackTotalHitsOrGetTheDefault() {
+        Map<String, Object> query = Map.of("term", Map.of("status", "open"));
+
+        post("/api/elasticsearch/raw-query/" + INDEX, Map.of("query", query, "track_total_hits", 3));
+        post("/api/elasticsearch/raw-query/" + INDEX, Map.of("query", query, "track_total_hits", false));
+        post("/api/elasticsearch/raw-query/" + INDEX, Map.of("query", query));
+
+        List<RecordedRequest> sent = ES.requests("_search");
+        assertThat(sent.get(0).json().path("track_total_hits").asInt()).isEqualTo(3);
+        assertThat(sent.get(1).json().path("track_total_hits").asBoolean(true)).isFalse();
+        assertThat(sent.get(2).json().path("track_total_hits").asBoolean()).isTrue(); // default mode is exact
+    }
+
+    private List<Map<String, Object>> batch(List<Map<String, Object>> items) {
+        return web.post().uri("/api/elasticsearch/batch-search")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(items)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(new ParameterizedTypeReference<Map<String, Object>>() {})
+                .returnResult().getResponseBody();
+    }
+
+    private Map<String, Object> post(String uri, Object body) {
+        return web.post().uri(uri)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(body)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(new ParameterizedTypeReference<Map<String, Object>>() {})
+                .returnResult().getResponseBody();
+    }
+
+    private static Map<String, Object> request(String field, String operator, Object value, int size) {
+        Map<String, Object> structure = Map.of(
+                "query", Map.of("operator", "AND",
+                        "conditions", List.of(Map.of("field", field, "operator", operator, "value", value))),
+                "pagination", Map.of("from", 0, "size", size));
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("queryStructure", structure);
+        return request;
+    }
+
+    private static Map<String, Object> request(String field, String operator, Object value, int from, int size,
+                                               Map<String, Object> hitCount) {
+        Map<String, Object> structure = Map.of(
+                "query", Map.of("operator", "AND",
+                        "conditions", List.of(Map.of("field", field, "operator", operator, "value", value))),
+                "pagination", Map.of("from", from, "size", size),
+                "hit_count", hitCount);
+        Map<String, Object> request = new LinkedHashMap<>();
+        request.put("queryStructure", structure);
+        return request;
+    }
+}
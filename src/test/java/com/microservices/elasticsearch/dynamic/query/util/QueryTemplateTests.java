@@ -0,0 +1,165 @@
+package com.microservices.elasticsearch.dynamic.query.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.BooleanNode;
+import com.fasterxml.jackson.databind.node.IntNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.microservices.elasticsearch.dynamic.query.dto.QueryStructureRequest;
+
+/**
+ * {@link FinalQueryTransformer#template} bound with the values from {@link FinalQueryTransformer#shape}
+ * must give exactly what the direct transform gives for the same input.
+ */
+class QueryTemplateTests {
+
+    private static final ObjectMapper M = new ObjectMapper();
+
+    private static final CompiledMapping PLAN = new CompiledMapping("customers", "customers_v1", List.of(), Map.of(
+            "name", FinalQueryTransformer.parseTarget("customer_name"),
+            "status", FinalQueryTransformer.parseTarget("status"),
+            "city", FinalQueryTransformer.parseTarget("addresses.city"),
+            "zip", FinalQueryTransformer.parseTarget("addresses.zip"),
+            "orderStatus", FinalQueryTransformer.parseTarget("orders#status")));
+
+    static Stream<Arguments> inputs() {
+        return Stream.of(
+                Arguments.of("single top-level match", """
+                        {"fields":[{"operator":"AND","name":{"op":"match","value":"Ada"}}]}"""),
+                Arguments.of("single nested and parent", """
+                        {"fields":[{"operator":"OR",
+                          "city":{"op":"term","value":"Berlin"},
+                          "orderStatus":{"op":"match","value":"SHIPPED","operator":"AND"}}]}"""),
+                Arguments.of("multi_value OR across every kind", """
+                        {"fields":[{"operator":"AND",
+                          "status":{"type":"multi_value","operator":"OR","op":"in","values":["A","B"]},
+                          "zip":{"type":"multi_value","operator":"OR","op":"in","values":["10115","10117","10119"]},
+                          "orderStatus":{"type":"multi_value","operator":"OR","op":"in","values":["NEW"]}}]}"""),
+                Arguments.of("multi_value AND splits per value", """
+                        {"fields":[{"operator":"OR",
+                          "name":{"type":"multi_value","operator":"AND","op":"match","values":["a","b","c"]},
+                          "city":{"type":"multi_value","operator":"AND","op":"match","values":["x","y"]},
+                          "orderStatus":{"type":"multi_value","operator":"AND","op":"match","values":["p","q"]}}]}"""),
+                Arguments.of("conditions without a value", """
+                        {"fields":[{"operator":"AND",
+                          "name":{"op":"exists"},
+                          "city":{"op":"exists"},
+                          "orderStatus":{"op":"exists"}}]}"""),
+                Arguments.of("numbers, booleans, nulls and objects", """
+                        {"fields":[{"operator":"AND",
+                          "status":{"op":"gte","value":42},
+                          "zip":{"op":"lt","value":1.5},
+                          "name":{"op":"term","value":true},
+                          "city":{"op":"match","value":null},
+                          "orderStatus":{"op":"range","value":{"gte":1,"lte":[2,3]}}}]}"""),
+                Arguments.of("unmapped fields are skipped", """
+                        {"fields":[{"operator":"AND",
+                          "unknown":{"op":"match","value":"ignored"},
+                          "name":{"op":"match","value":"kept"},
+                          "other":{"type":"multi_value","values":["x"]}}]}"""),
+                Arguments.of("several groups with mixed operators", """
+                        {"fields":[
+                          {"operator":"AND","name":{"op":"match","value":"n"},"city":{"op":"match","value":"c"}},
+                          {"operator":"OR","status":{"type":"multi_value","op":"in","values":["S1","S2"]}},
+                          {"operator":"OR","orderStatus":{"op":"match","value":"o"}},
+                          {"operator":"AND","zip":{"type":"multi_value","operator":"AND","values":[]}}]}"""),
+                Arguments.of("parent-only group", """
+                        {"fields":[{"operator":"AND","orderStatus":{"op":"match","value":"only"}}]}"""),
+                Arguments.of("no fields", """
+                        {"fields":[]}"""),
+                Arguments.of("group operator defaulted", """
+                        {"fields":[{"name":{"value":"defaults"},
+                          "status":{"type":"multi_value","values":["d1","d2"]}}]}"""));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("inputs")
+    void boundTemplateEqualsDirectTransform(String description, String json) throws Exception {
+        JsonNode input = M.readTree(json);
+
+        QueryTemplate template = FinalQueryTransformer.template(input, PLAN);
+        QueryTemplate.Shape shape = FinalQueryTransformer.shape(input, PLAN);
+
+        assertThat(shape.values()).hasSize(template.slots());
+        assertThat(bound(template, shape)).isEqualTo(direct(input));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("inputs")
+    void templateIsReusedAcrossValuesOfTheSameShape(String description, String json) throws Exception {
+        JsonNode input = M.readTree(json);
+        JsonNode other = withOtherValues(input.deepCopy());
+
+        QueryTemplate.Shape shape = FinalQueryTransformer.shape(input, PLAN);
+        QueryTemplate.Shape otherShape = FinalQueryTransformer.shape(other, PLAN);
+
+        assertThat(otherShape.key()).isEqualTo(shape.key());
+        assertThat(bound(FinalQueryTransformer.template(input, PLAN), otherShape)).isEqualTo(direct(other));
+    }
+
+    @Test
+    void structuralDifferencesChangeTheShapeKey() throws Exception {
+        String base = """
+                {"fields":[{"operator":"AND","name":{"type":"multi_value","operator":"AND","values":["a","b"]}}]}""";
+        String key = shapeKey(base);
+
+        assertThat(shapeKey(base.replace("[\"a\",\"b\"]", "[\"a\",\"b\",\"c\"]"))).isNotEqualTo(key);
+        assertThat(shapeKey(base.replace("\"operator\":\"AND\",\"name\"", "\"operator\":\"OR\",\"name\""))).isNotEqualTo(key);
+        assertThat(shapeKey(base.replace("\"name\"", "\"status\""))).isNotEqualTo(key);
+        assertThat(shapeKey(base.replace("\"values\"", "\"op\":\"term\",\"values\""))).isNotEqualTo(key);
+        assertThat(shapeKey("""
+                {"fields":[{"operator":"AND","name":{"op":"match"}}]}""")).isNotEqualTo(shapeKey("""
+                {"fields":[{"operator":"AND","name":{"op":"match","value":"x"}}]}"""));
+        // the value count of an OR list is bound into one slot, so it is not part of the shape
+        String anyOf = """
+                {"fields":[{"operator":"AND","name":{"type":"multi_value","operator":"OR","values":["a","b"]}}]}""";
+        assertThat(shapeKey(anyOf.replace("[\"a\",\"b\"]", "[\"a\"]"))).isEqualTo(shapeKey(anyOf));
+    }
+
+    /**
+     * Same structure, every condition value replaced
+     */
+    private static JsonNode withOtherValues(JsonNode input) {
+        for (JsonNode group : input.path("fields")) {
+            for (JsonNode cond : group) {
+                if (!(cond instanceof ObjectNode condition)) continue;
+                if (condition.has("value")) {
+                    JsonNode value = condition.get("value");
+                    condition.set("value", value.isTextual() ? TextNode.valueOf(value.textValue() + "-other")
+                            : value.isNumber() ? IntNode.valueOf(value.intValue() + 7)
+                            : value.isBoolean() ? BooleanNode.valueOf(!value.booleanValue())
+                            : value);
+                }
+                if (condition.get("values") instanceof ArrayNode values) {
+                    for (int i = 0; i < values.size(); i++) values.set(i, TextNode.valueOf(values.get(i).asText() + "-other"));
+                }
+            }
+        }
+        return input;
+    }
+
+    private static String shapeKey(String json) throws Exception {
+        return FinalQueryTransformer.shape(M.readTree(json), PLAN).key();
+    }
+
+    private static QueryStructureRequest bound(QueryTemplate template, QueryTemplate.Shape shape) {
+        return FinalQueryTransformer.toQueryStructure(template.bind(shape.values()), 0, 10, "desc");
+    }
+
+    private static QueryStructureRequest direct(JsonNode input) {
+        return FinalQueryTransformer.toQueryStructure(input, PLAN, 0, 10, "desc");
+    }
+}
@@ -0,0 +1,178 @@
+package com.microservices.elasticsearch.dynamic.query.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SqliteReadPoolTests {
+
+    @TempDir
+    Path dir;
+
+    private SqliteReadPool pool;
+
+    @AfterEach
+    void close() {
+        if (pool != null) pool.close();
+    }
+
+    private Path database(String name, String... values) throws SQLException {
+        Path file = dir.resolve(name);
+        try (Connection c = DriverManager.getConnection("jdbc:sqlite:" + file);
+             Statement s = c.createStatement()) {
+            s.execute("CREATE TABLE t (id INTEGER PRIMARY KEY, v TEXT)");
+            for (String value : values) s.execute("INSERT INTO t (v) VALUES ('" + value + "')");
+        }
+        return file;
+    }
+
+    private SqliteReadPool open(Path file, int size) {
+        return open(file, size, Duration.ofMillis(100));
+    }
+
+    private SqliteReadPool open(Path file, int size, Duration acquireTimeout) {
+        pool = new SqliteReadPool("jdbc:sqlite:" + file, size, acquireTimeout);
+        return pool;
+    }
+
+    /**
+     * Starts a query on another thread and gives it time to block waiting for a connection
+     */
+    private CompletableFuture<List<Object>> waiting() throws InterruptedException {
+        CompletableFuture<List<Object>> waiter = CompletableFuture.supplyAsync(() -> {
+            try {
+                return values("SELECT v FROM t");
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(200);
+        assertThat(waiter).isNotDone();
+        return waiter;
+    }
+
+    private List<Object> values(String sql) throws SQLException {
+        return pool.query(sql, ps -> {}).stream().map(row -> row.get("v")).toList();
+    }
+
+    @Test
+    void rowsAreKeyedByColumnLabelAndParametersAreRebound() throws SQLException {
+        open(database("a.db", "x", "y"), 1);
+        String sql = "SELECT id, v AS v FROM t WHERE v = ?";
+
+        assertThat(pool.query(sql, ps -> ps.setString(1, "x"))).containsExactly(Map.of("id", 1, "v", "x"));
+        assertThat(pool.query(sql, ps -> ps.setString(1, "y"))).containsExactly(Map.of("id", 2, "v", "y"));
+    }
+
+    @Test
+    void statementsEvictedFromTheCacheAreStillServed() throws SQLException {
+        open(database("a.db", "x"), 1);
+
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 40; i++) {
+                assertThat(values("SELECT v FROM t WHERE " + i + " = " + i)).containsExactly("x");
+            }
+        }
+    }
+
+    @Test
+    void connectionsAreReadOnly() throws SQLException {
+        open(database("a.db", "x"), 1);
+
+        assertThatThrownBy(() -> pool.query("INSERT INTO t (v) VALUES ('z')", ps -> {}))
+                .isInstanceOf(SQLException.class);
+        assertThat(values("SELECT v FROM t")).containsExactly("x"); // the broken lease was replaced
+    }
+
+    @Test
+    void waitsAtMostTheAcquireTimeoutWhenEveryConnectionIsLeased() throws SQLException {
+        open(database("a.db", "x"), 1);
+
+        assertThatThrownBy(() -> pool.query("SELECT v FROM t", ps -> pool.query("SELECT v FROM t", inner -> {})))
+                .isInstanceOf(SQLException.class)
+                .hasMessageContaining("No SQLite connection available");
+    }
+
+    @Test
+    void waiterIsWokenWhenABrokenConnectionIsDiscarded() throws Exception {
+        open(database("a.db", "x"), 1, Duration.ofSeconds(10));
+        List<CompletableFuture<List<Object>>> waiter = new ArrayList<>();
+
+        assertThatThrownBy(() -> pool.query("SELECT v FROM t WHERE v = ?", ps -> {
+            try {
+                waiter.add(waiting());
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            throw new SQLException("bad parameter");
+        })).hasMessage("bad parameter");
+
+        assertThat(waiter.get(0).get(2, TimeUnit.SECONDS)).containsExactly("x");
+    }
+
+    @Test
+    void waiterIsWokenWhenAConnectionHeldDuringResetIsDiscarded() throws Exception {
+        open(database("a.db", "x"), 1, Duration.ofSeconds(10));
+        List<CompletableFuture<List<Object>>> waiter = new ArrayList<>();
+
+        pool.query("SELECT v FROM t", ps -> {
+            try {
+                waiter.add(waiting());
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            pool.reset();
+        });
+
+        assertThat(waiter.get(0).get(2, TimeUnit.SECONDS)).containsExactly("x");
+    }
+
+    @Test
+    void resetOpensTheReplacementFile() throws Exception {
+        Path live = database("live.db", "old");
+        open(live, 2);
+        assertThat(values("SELECT v FROM t")).containsExactly("old");
+
+        Path replacement = database("next.db", "new");
+        Files.move(replacement, live, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        assertThat(values("SELECT v FROM t")).containsExactly("old"); // still the unlinked file
+
+        pool.reset();
+        assertThat(values("SELECT v FROM t")).containsExactly("new");
+    }
+
+    @Test
+    void leaseHeldDuringResetIsNotReused() throws Exception {
+        Path live = database("live.db", "old");
+        open(live, 1);
+        Files.move(database("next.db", "new"), live, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        pool.query("SELECT v FROM t", ps -> pool.reset());
+
+        assertThat(values("SELECT v FROM t")).containsExactly("new");
+    }
+
+    @Test
+    void closedPoolRefusesQueries() throws SQLException {
+        open(database("a.db", "x"), 1).close();
+
+        assertThatThrownBy(() -> values("SELECT v FROM t")).hasMessageContaining("closed");
+    }
+}